@@ -0,0 +1,67 @@
+package org.store.bench;
+
+import org.store.data.Stoka;
+import org.store.enums.StokaCategory;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+// Генератор на данни за бенчмарковете.
+// Всичко се получава от фиксиран seed, затова два пуска с еднакви параметри работят върху еднакви данни.
+public final class BenchData {
+    public static final long SEED = 20240305L;
+
+    private BenchData() {
+    }
+
+    public static EnumMap<StokaCategory, Double> margins() {
+        EnumMap<StokaCategory, Double> marginByCategory = new EnumMap<>(StokaCategory.class);
+        marginByCategory.put(StokaCategory.FOOD, 10.0);
+        marginByCategory.put(StokaCategory.NONFOOD, 15.0);
+        return marginByCategory;
+    }
+
+    // Каталог от стоки с цени между 0.50 и 50.00 и срок на годност до 90 дни
+    public static List<Stoka> catalogue(int size, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        LocalDate today = LocalDate.now();
+        List<Stoka> catalogue = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            StokaCategory category = random.nextBoolean() ? StokaCategory.FOOD : StokaCategory.NONFOOD;
+            long deliveryCents = 50 + random.nextInt(4950);
+            BigDecimal deliveryPrice = BigDecimal.valueOf(deliveryCents, 2);
+            BigDecimal price = BigDecimal.valueOf(deliveryCents + 1 + random.nextInt(500), 2);
+            LocalDate expirationDate = today.plusDays(30 + random.nextInt(60));
+
+            catalogue.add(new Stoka(new UUID(seed, i), "Стока " + i, deliveryPrice, price, expirationDate, category));
+        }
+        return catalogue;
+    }
+
+    // Количка с cartSize различни стоки от каталога, по 1 до 3 броя от всяка
+    public static Map<Stoka, Double> cart(List<Stoka> catalogue, int cartSize, SplittableRandom random) {
+        Map<Stoka, Double> cart = new LinkedHashMap<>();
+        int lines = Math.min(cartSize, catalogue.size());
+        while (cart.size() < lines) {
+            cart.put(catalogue.get(random.nextInt(catalogue.size())), (double) (1 + random.nextInt(3)));
+        }
+        return cart;
+    }
+
+    public static List<Map<Stoka, Double>> carts(List<Stoka> catalogue, int cartSize, int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Map<Stoka, Double>> carts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            carts.add(cart(catalogue, cartSize, random));
+        }
+        return carts;
+    }
+}
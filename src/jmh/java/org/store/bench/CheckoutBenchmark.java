@@ -0,0 +1,102 @@
+package org.store.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.store.data.Cashier;
+import org.store.data.Kasa;
+import org.store.data.Klient;
+import org.store.data.Receipt;
+import org.store.data.Stoka;
+import org.store.data.Store;
+import org.store.service.KasaService;
+import org.store.service.StoreService;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// KasaService.checkout - една каса и осем каси, които продават от един и същ магазин.
+// Наличността е достатъчно голяма, за да не свърши по време на измерването.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CheckoutBenchmark {
+    private static final int CARTS_PER_LANE = 1024;
+    private static final double STOCK_PER_STOKA = 1_000_000_000;
+
+    @State(Scope.Benchmark)
+    public static class StoreState {
+        @Param({"100", "10000"})
+        int catalogueSize;
+
+        @Param({"1", "10", "50"})
+        int cartSize;
+
+        Store store;
+        StoreService storeService;
+        List<Stoka> catalogue;
+        final AtomicInteger lanes = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            store = new Store(15, 10.0, BenchData.margins());
+            storeService = new StoreService(store);
+            catalogue = BenchData.catalogue(catalogueSize, BenchData.SEED);
+            for (Stoka stoka : catalogue) {
+                store.addToInventory(stoka, STOCK_PER_STOKA);
+            }
+        }
+    }
+
+    // Всяка нишка е отделна каса със собствени колички, генерирани от seed според номера ѝ
+    @State(Scope.Thread)
+    public static class LaneState {
+        KasaService kasaService;
+        List<Map<Stoka, Double>> carts;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp(StoreState storeState) {
+            int lane = storeState.lanes.getAndIncrement();
+            Kasa kasa = new Kasa(new Cashier("Касиер " + lane, new BigDecimal("1000")), storeState.store);
+            kasaService = new KasaService(kasa, storeState.storeService);
+            carts = BenchData.carts(storeState.catalogue, storeState.cartSize, CARTS_PER_LANE, BenchData.SEED + lane);
+        }
+
+        Klient nextKlient() {
+            Klient klient = new Klient(new BigDecimal("1000000"));
+            Map<Stoka, Double> cart = carts.get(next++ & (CARTS_PER_LANE - 1));
+            for (Map.Entry<Stoka, Double> entry : cart.entrySet()) {
+                klient.addToCart(entry.getKey(), entry.getValue());
+            }
+            return klient;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Receipt checkoutSingleLane(LaneState lane) {
+        return lane.kasaService.checkout(lane.nextKlient());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Receipt checkoutEightLanes(LaneState lane) {
+        return lane.kasaService.checkout(lane.nextKlient());
+    }
+}
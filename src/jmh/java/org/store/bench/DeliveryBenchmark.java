@@ -0,0 +1,81 @@
+package org.store.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.store.data.DeliveryLine;
+import org.store.data.Stoka;
+import org.store.data.Store;
+import org.store.service.StoreService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// StoreService.deliverStoka по една бройка срещу deliverBatch за цялата доставка
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeliveryBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class DeliveryState {
+        @Param({"100", "10000"})
+        int catalogueSize;
+
+        @Param({"10", "1000"})
+        int deliverySize;
+
+        StoreService storeService;
+        List<Stoka> delivery;
+        List<DeliveryLine> lines;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            storeService = new StoreService(new Store(15, 10.0, BenchData.margins()));
+            List<Stoka> catalogue = BenchData.catalogue(catalogueSize, BenchData.SEED);
+
+            SplittableRandom random = new SplittableRandom(BenchData.SEED);
+            delivery = new ArrayList<>(deliverySize);
+            lines = new ArrayList<>(deliverySize);
+            for (int i = 0; i < deliverySize; i++) {
+                Stoka stoka = catalogue.get(random.nextInt(catalogue.size()));
+                delivery.add(stoka);
+                lines.add(new DeliveryLine(stoka, 1, stoka.getDeliveryPrice()));
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void deliverOneByOne(DeliveryState state) {
+        for (Stoka stoka : state.delivery) {
+            state.storeService.deliverStoka(stoka);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void deliverBatch(DeliveryState state) {
+        state.storeService.deliverBatch(state.lines);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void deliverBatchFourSuppliers(DeliveryState state) {
+        state.storeService.deliverBatch(state.lines);
+    }
+}
@@ -0,0 +1,74 @@
+package org.store.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.store.data.QuantityLedger;
+import org.store.data.Stoka;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Обновяване на количества - QuantityLedger срещу досегашния HashMap<Stoka, Double>
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class QuantityLedgerBenchmark {
+    private static final int UPDATES = 4096;
+
+    @Param({"1000", "200000"})
+    int catalogueSize;
+
+    Stoka[] updates;
+    QuantityLedger ledger;
+    Map<Stoka, Double> map;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Stoka> catalogue = BenchData.catalogue(catalogueSize, BenchData.SEED);
+        SplittableRandom random = new SplittableRandom(BenchData.SEED);
+        updates = new Stoka[UPDATES];
+        for (int i = 0; i < UPDATES; i++) {
+            updates[i] = catalogue.get(random.nextInt(catalogueSize));
+        }
+
+        ledger = new QuantityLedger();
+        map = new HashMap<>();
+        for (Stoka stoka : catalogue) {
+            ledger.add(stoka, 1.0);
+            map.put(stoka, 1.0);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(UPDATES)
+    public void hashMapMerge() {
+        for (Stoka stoka : updates) {
+            map.merge(stoka, 1.0, Double::sum);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(UPDATES)
+    public void ledgerAddMilli() {
+        for (Stoka stoka : updates) {
+            ledger.addMilli(stoka, QuantityLedger.SCALE);
+        }
+    }
+}
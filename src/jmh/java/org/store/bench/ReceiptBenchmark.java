@@ -0,0 +1,67 @@
+package org.store.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.store.data.Cashier;
+import org.store.data.Receipt;
+import org.store.data.Stoka;
+import org.store.service.ReceiptRenderer;
+import org.store.service.ReceiptSerialSource;
+import org.store.service.ReceiptService;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// ReceiptService.calculateTotalPrice и печатът на бележката за бележки с различен брой редове
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReceiptBenchmark {
+    @Param({"1", "10", "50", "200"})
+    int cartSize;
+
+    ReceiptService receiptService;
+    Receipt receipt;
+    ReceiptRenderer renderer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Stoka> catalogue = BenchData.catalogue(Math.max(1000, cartSize), BenchData.SEED);
+        receipt = new Receipt("BENCH", new Cashier("Касиер", new BigDecimal("1000")), LocalDate.now(),
+                BenchData.cart(catalogue, cartSize, new SplittableRandom(BenchData.SEED)));
+        receiptService = new ReceiptService(receipt, new ReceiptSerialSource());
+        renderer = new ReceiptRenderer();
+    }
+
+    @Benchmark
+    public BigDecimal calculateTotalPrice() {
+        return receiptService.calculateTotalPrice();
+    }
+
+    @Benchmark
+    public String getFormattedReceipt() {
+        return receiptService.getFormattedReceipt();
+    }
+
+    @Benchmark
+    public ByteBuffer renderMachine() {
+        return renderer.renderMachine(receipt);
+    }
+}
@@ -0,0 +1,103 @@
+package org.store.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.store.data.Cashier;
+import org.store.data.Receipt;
+import org.store.data.Stoka;
+import org.store.data.Store;
+import org.store.service.EndOfDayReport;
+import org.store.service.EndOfDayReporter;
+import org.store.service.StoreService;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Отчетът за печалбата - текущите суми срещу пълното преизчисляване по всички стоки,
+// и отчетът за края на деня паралелно срещу последователно
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReportingBenchmark {
+    @Param({"100", "10000", "100000"})
+    int catalogueSize;
+
+    @Param({"10"})
+    int cashiers;
+
+    StoreService storeService;
+    EndOfDayReporter reporter;
+    List<Receipt> receipts;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Store store = new Store(15, 10.0, BenchData.margins());
+        storeService = new StoreService(store);
+
+        List<Stoka> catalogue = BenchData.catalogue(catalogueSize, BenchData.SEED);
+        Map<Stoka, Double> sold = new HashMap<>();
+        for (Stoka stoka : catalogue) {
+            storeService.deliverStoka(stoka);
+            sold.put(stoka, 1.0);
+        }
+        storeService.commitSale(sold);
+
+        List<Cashier> hired = new ArrayList<>();
+        for (int i = 0; i < cashiers; i++) {
+            Cashier cashier = new Cashier("Касиер " + i, new BigDecimal("1500"));
+            store.addCashier(cashier);
+            hired.add(cashier);
+        }
+
+        // По една бележка на стока, разпределени между касиерите
+        receipts = new ArrayList<>(catalogue.size());
+        for (int i = 0; i < catalogue.size(); i++) {
+            Stoka stoka = catalogue.get(i);
+            Receipt receipt = new Receipt(String.valueOf(i), hired.get(i % hired.size()), LocalDate.now(), Map.of(stoka, 1.0));
+            receipt.setTotalPrice(stoka.getPrice());
+            receipts.add(receipt);
+        }
+        reporter = new EndOfDayReporter(store);
+    }
+
+    @Benchmark
+    public BigDecimal calculateStoreProfit() {
+        return storeService.calculateStoreProfit();
+    }
+
+    // Отчетът по категории и касиери - паралелно в commonPool и последователно
+    @Benchmark
+    public EndOfDayReport endOfDayParallel() {
+        return reporter.report(receipts);
+    }
+
+    @Benchmark
+    public EndOfDayReport endOfDaySequential() {
+        return reporter.reportSequential(receipts);
+    }
+
+    @Benchmark
+    public BigDecimal recalculateStoreProfit() {
+        return storeService.recalculateStokaSoldRevenue()
+                .subtract(storeService.recalculateStokaDeliveryExpenses())
+                .subtract(storeService.recalculateCashierSalaryExpenses());
+    }
+}
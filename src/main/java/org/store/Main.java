@@ -2,10 +2,12 @@ package org.store;
 
 import org.store.data.*;
 import org.store.enums.StokaCategory;
+import org.store.log.DiagnosticLog;
 import org.store.service.KasaService;
 import org.store.service.ReceiptService;
 import org.store.service.StoreService;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.*;
@@ -63,16 +65,20 @@ public class Main {
 
         // Зареждаме склада с по 5 броя от всеки продукт (за да има наличности)
 
+        List<DeliveryLine> delivery = new ArrayList<>();
         for (Stoka product : products) {
-            for (int i = 0; i < 5; i++) {
-                storeService.deliverStoka(product);
-            }
+            delivery.add(new DeliveryLine(product, 5, product.getDeliveryPrice()));
         }
+        storeService.deliverBatch(delivery);
+        // Предупрежденията от доставката излизат преди менюто
+        DiagnosticLog.shared().flush(1000);
         System.out.println("Доставени са по 5 броя от всеки продукт.");
 
         // Създаваме клиент с 1000 лв.
 
         Klient klient = new Klient(new BigDecimal(1000));
+        // Количката следи сумата за плащане по днешните цени на магазина
+        klient.getKlientCart().setPricing(storeService.expiryPricing(LocalDate.now()));
         System.out.println("\nДобавяне на стоки в количката (въведете 0 за край):");
         while (true) {
             for (int i = 0; i < products.size(); i++) {
@@ -86,7 +92,12 @@ public class Main {
             Stoka product = products.get(prodChoice - 1);
             System.out.print("Въведете количество: ");
             int qty = scanner.nextInt();
+            if (qty <= 0) {
+                System.out.println("Невалидно количество.");
+                continue;
+            }
             klient.addToCart(product, qty);
+            System.out.println("Добавени в количката: " + qty + " бр. от " + product.getName());
         }
 
         Kasa kasa = new Kasa(cashier1, store);
@@ -96,31 +107,14 @@ public class Main {
             Receipt receipt = kasaService.checkout(klient);
             ReceiptService receiptService = new ReceiptService(receipt);
 
-            System.out.println("\n===== КАСОВА БЕЛЕЖКА =====");
-            System.out.println("Номер на бележка: " + receipt.getSerialNumber());
-            System.out.println("Касиер: " + kasaService.getCashierName());
-            System.out.println("Дата: " + LocalDate.now());
-            System.out.println("----------------------");
-            System.out.println("Артикули:");
-
-            BigDecimal totalSum = BigDecimal.ZERO;
-            for (Map.Entry<Stoka, Double> entry : receipt.getStoka().entrySet()) {
-                Stoka item = entry.getKey();
-                Double qty = entry.getValue();
-                BigDecimal price = item.getPrice();
-                BigDecimal itemTotal = price.multiply(BigDecimal.valueOf(qty));
-                totalSum = totalSum.add(itemTotal);
-                System.out.println("  " + item.getName() + " - " + qty + " бр. x " + price + " лв. = " + itemTotal + " лв.");
-            }
-
-            System.out.println("----------------------");
-            System.out.println("Общо: " + totalSum + " лв.");
-            System.out.println("==========================");
-            System.out.println("Общо платено: " + receiptService.calculateTotalPrice() + " лв.");
+            System.out.println();
+            receiptService.printReceipt(System.out);
             System.out.println("Оставащи пари на клиента: " + klient.getMoney() + " лв.");
 
-        } catch (RuntimeException e) {
+        } catch (RuntimeException | IOException e) {
             System.out.println("ГРЕШКА: " + e.getMessage());
+        } finally {
+            kasa.close();
         }
     }
 }
@@ -0,0 +1,27 @@
+package org.store.concurrent;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Натрупваща сума пари, която може да се обновява от няколко каси едновременно.
+// Събирането на BigDecimal е точно, а CAS гарантира, че нито една сума не се губи.
+public class MoneyAccumulator {
+    private final AtomicReference<BigDecimal> total = new AtomicReference<>(BigDecimal.ZERO);
+
+    public void add(BigDecimal amount) {
+        this.total.accumulateAndGet(amount, BigDecimal::add);
+    }
+
+    public BigDecimal get() {
+        return this.total.get();
+    }
+
+    public void set(BigDecimal amount) {
+        this.total.set(amount);
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(get());
+    }
+}
@@ -0,0 +1,96 @@
+package org.store.concurrent;
+
+import org.store.data.Stoka;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Набор от "раирани" (striped) ключалки за стоките в един магазин.
+// Всяка стока попада в една от фиксиран брой ключалки според хеша си,
+// така касите, които продават различни стоки, работят паралелно.
+public class StokaLocks {
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    public StokaLocks(int stripeCount) {
+        if (stripeCount <= 0) {
+            throw new IllegalArgumentException("Броят ключалки трябва да е положително число");
+        }
+
+        // Закръгляме до степен на 2, за да избираме ключалка с маска
+        int size = Integer.highestOneBit(stripeCount);
+        if (size < stripeCount) {
+            size = size << 1;
+        }
+
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+    }
+
+    public int stripeFor(Stoka stoka) {
+        int h = stoka.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    public void lock(Stoka stoka) {
+        this.stripes[stripeFor(stoka)].lock();
+    }
+
+    public void unlock(Stoka stoka) {
+        this.stripes[stripeFor(stoka)].unlock();
+    }
+
+//      Заключва ключалките на всички подадени стоки.
+//      Ключалките се вземат винаги във възходящ ред, за да няма deadlock между две каси.
+//      return индексите на заключените ключалки - подават се на unlockAll
+
+    public int[] lockAll(Collection<Stoka> stokas) {
+        int[] indexes = new int[stokas.size()];
+        int count = 0;
+        for (Stoka stoka : stokas) {
+            indexes[count++] = stripeFor(stoka);
+        }
+
+        Arrays.sort(indexes);
+
+        // Премахваме повторенията - една ключалка се взема само веднъж
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || indexes[unique - 1] != indexes[i]) {
+                indexes[unique++] = indexes[i];
+            }
+        }
+        int[] locked = Arrays.copyOf(indexes, unique);
+
+        for (int index : locked) {
+            this.stripes[index].lock();
+        }
+
+        return locked;
+    }
+
+    // Всички ключалки наведнъж, във възходящ ред - спира всички промени по стоките (например за копие на магазина)
+    public int[] lockEverything() {
+        int[] locked = new int[this.stripes.length];
+        for (int i = 0; i < locked.length; i++) {
+            this.stripes[i].lock();
+            locked[i] = i;
+        }
+
+        return locked;
+    }
+
+    public void unlockAll(int[] locked) {
+        for (int i = locked.length - 1; i >= 0; i--) {
+            this.stripes[locked[i]].unlock();
+        }
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+}
@@ -0,0 +1,237 @@
+package org.store.data;
+
+import org.store.money.MoneyMath;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Неизменимо състояние на количката в един момент.
+// Касата смята сумата и продава точно по това състояние, дори ако клиентът сканира още стоки междувременно.
+// Сумата, броят бройки и най-скъпата стока се пазят заедно със състоянието и се обновяват с разликата
+// при всяка промяна на ред. Те са верни за версиите на цените на стоките в количката, при които са
+// изчислени (по една на магазин - обикновено една за цялата количка) - след смяна на цена в магазина
+// се преизчисляват веднъж при първото четене, а смяна на цена в друг магазин не ги засяга.
+// Ако количката има цени за деня (KlientCart.setPricing), до сумата по продажни цени се поддържа и сумата
+// за плащане - с отстъпката за изтичащ срок, както я взема касата.
+public final class CartSnapshot {
+    static final CartSnapshot EMPTY = new CartSnapshot(new LinkedHashMap<>(), 0, null, null);
+
+    private static final AtomicLong[] NO_SOURCES = new AtomicLong[0];
+    private static final long[] NO_VERSIONS = new long[0];
+
+    private final Map<Stoka, Double> items;
+    private final long version;
+    private final ExpiryPricing pricing;
+    private volatile Totals totals;
+
+    // Стойностите са в хилядни (количество) и хилядни от стотинката (сума), както в MoneyMath
+    // Версиите на цените (sources) и стойностите им при изчисляването - различните версии в количката
+    static final class Totals {
+        private final AtomicLong[] sources;
+        private final long[] versions;
+        private final long totalMilliStotinki;
+        private final long payableMilliStotinki;
+        private final long itemCountMilli;
+        private final Stoka mostExpensive;
+
+        Totals(AtomicLong[] sources, long[] versions, long totalMilliStotinki, long payableMilliStotinki,
+               long itemCountMilli, Stoka mostExpensive) {
+            this.sources = sources;
+            this.versions = versions;
+            this.totalMilliStotinki = totalMilliStotinki;
+            this.payableMilliStotinki = payableMilliStotinki;
+            this.itemCountMilli = itemCountMilli;
+            this.mostExpensive = mostExpensive;
+        }
+
+        private boolean isCurrent() {
+            for (int i = 0; i < sources.length; i++) {
+                if (sources[i].get() != versions[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int indexOf(AtomicLong source) {
+            for (int i = 0; i < sources.length; i++) {
+                if (sources[i] == source) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    CartSnapshot(LinkedHashMap<Stoka, Double> items, long version, ExpiryPricing pricing, Totals totals) {
+        this.items = Collections.unmodifiableMap(items);
+        this.version = version;
+        this.pricing = pricing;
+        this.totals = totals;
+    }
+
+    public Map<Stoka, Double> getItems() {
+        return items;
+    }
+
+    // Нараства с всяка промяна на количката
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    public double getQuantity(Stoka stoka) {
+        Double quantity = items.get(stoka);
+        return quantity == null ? 0 : quantity;
+    }
+
+    // Сума по текущите цени в стотинки - O(1), освен първото четене след смяна на цена
+    public long getTotalStotinki() {
+        return MoneyMath.roundMilli(currentTotals().totalMilliStotinki);
+    }
+
+    public BigDecimal getTotal() {
+        return MoneyMath.toBigDecimal(getTotalStotinki());
+    }
+
+    // Цените за деня, по които се смята сумата за плащане, или null - тогава тя е по продажните цени
+    public ExpiryPricing getPricing() {
+        return pricing;
+    }
+
+//      Сума за плащане в стотинки - по цените за деня на количката, със същото закръгляне като PricedCart.
+//      O(1) като getTotalStotinki; касата пак остойностява количката сама при плащането.
+
+    public long getPayableTotalStotinki() {
+        return MoneyMath.roundMilli(currentTotals().payableMilliStotinki);
+    }
+
+    public double getItemCount() {
+        return QuantityLedger.fromMilli(currentTotals().itemCountMilli);
+    }
+
+    // Стоката с най-висока единична цена или null за празна количка
+    public Stoka getMostExpensive() {
+        return currentTotals().mostExpensive;
+    }
+
+    // Сумите, ако цените на стоките в количката не са се сменили след изчисляването им; иначе null
+    Totals currentTotalsOrNull() {
+        Totals current = this.totals;
+        if (current != null && current.isCurrent()) {
+            return current;
+        }
+        // Празната количка има нулеви суми при всякакви цени
+        return items.isEmpty() ? new Totals(NO_SOURCES, NO_VERSIONS, 0, 0, 0, null) : null;
+    }
+
+    private Totals currentTotals() {
+        Totals current = currentTotalsOrNull();
+        if (current == null) {
+            current = compute(items, pricing);
+            this.totals = current;
+        }
+        return current;
+    }
+
+//      Версиите се четат преди цените - ако цена се смени по време на сметката, резултатът остава остарял
+//      и се преизчислява при следващото четене.
+
+    static Totals compute(Map<Stoka, Double> items, ExpiryPricing pricing) {
+        Totals tracked = new Totals(NO_SOURCES, NO_VERSIONS, 0, 0, 0, null);
+        if (pricing != null) {
+            tracked = withSource(tracked, pricing.getSettingsVersion());
+        }
+        for (Stoka stoka : items.keySet()) {
+            tracked = withSource(tracked, stoka.getPriceVersion());
+        }
+
+        long totalMilliStotinki = 0;
+        long payableMilliStotinki = 0;
+        long itemCountMilli = 0;
+        Stoka mostExpensive = null;
+
+        for (Map.Entry<Stoka, Double> entry : items.entrySet()) {
+            Stoka stoka = entry.getKey();
+            long quantityMilli = QuantityLedger.toMilli(entry.getValue());
+
+            totalMilliStotinki = Math.addExact(totalMilliStotinki,
+                    MoneyMath.lineTotalMilli(stoka.getPriceStotinki(), quantityMilli));
+            payableMilliStotinki = Math.addExact(payableMilliStotinki,
+                    MoneyMath.lineTotalMilli(payablePrice(stoka, pricing), quantityMilli));
+            itemCountMilli += quantityMilli;
+            if (mostExpensive == null || stoka.getPriceStotinki() > mostExpensive.getPriceStotinki()) {
+                mostExpensive = stoka;
+            }
+        }
+
+        return new Totals(tracked.sources, tracked.versions, totalMilliStotinki, payableMilliStotinki,
+                itemCountMilli, mostExpensive);
+    }
+
+    private static long payablePrice(Stoka stoka, ExpiryPricing pricing) {
+        return pricing == null ? stoka.getPriceStotinki() : pricing.applyAsLong(stoka);
+    }
+
+    // Добавя версия на цените, ако сумите още не зависят от нея
+    private static Totals withSource(Totals totals, AtomicLong source) {
+        if (totals.indexOf(source) >= 0) {
+            return totals;
+        }
+
+        int length = totals.sources.length;
+        AtomicLong[] sources = Arrays.copyOf(totals.sources, length + 1);
+        long[] versions = Arrays.copyOf(totals.versions, length + 1);
+        sources[length] = source;
+        versions[length] = source.get();
+        return new Totals(sources, versions, totals.totalMilliStotinki, totals.payableMilliStotinki,
+                totals.itemCountMilli, totals.mostExpensive);
+    }
+
+//      Сумите след промяна на един ред от previous на next (null = няма ред), без да се обхожда количката.
+//      Ако премахнатият ред е бил най-скъпата стока, връща null - тогава сумите се изчисляват при четене.
+
+    static Totals applyLineChange(Totals totals, ExpiryPricing pricing, Stoka stoka, Double previous, Double next) {
+        if (totals == null) {
+            return null;
+        }
+        if (next != null) {
+            totals = withSource(totals, stoka.getPriceVersion());
+        }
+
+        long deltaMilli = QuantityLedger.toMilli(next == null ? 0 : next) - QuantityLedger.toMilli(previous == null ? 0 : previous);
+        long totalMilliStotinki = Math.addExact(totals.totalMilliStotinki,
+                MoneyMath.lineTotalMilli(stoka.getPriceStotinki(), deltaMilli));
+        long payableMilliStotinki = Math.addExact(totals.payableMilliStotinki,
+                MoneyMath.lineTotalMilli(payablePrice(stoka, pricing), deltaMilli));
+        long itemCountMilli = totals.itemCountMilli + deltaMilli;
+
+        Stoka mostExpensive = totals.mostExpensive;
+        if (next != null) {
+            if (mostExpensive == null || stoka.getPriceStotinki() > mostExpensive.getPriceStotinki()) {
+                mostExpensive = stoka;
+            }
+        } else if (stoka.equals(mostExpensive)) {
+            return null;
+        }
+
+        return new Totals(totals.sources, totals.versions, totalMilliStotinki, payableMilliStotinki,
+                itemCountMilli, mostExpensive);
+    }
+
+    @Override
+    public String toString() {
+        return items.toString();
+    }
+}
@@ -16,6 +16,13 @@ public class Cashier {
         this.monthlySalary = monthlySalary;
     }
 
+    // Възстановява вече съществуващ касиер (например прочетен от журнала) със същия id
+    public Cashier(String id, String name, BigDecimal monthlySalary) {
+        this.id = id;
+        this.name = name;
+        this.monthlySalary = monthlySalary;
+    }
+
     public String getId() {
 
         return id;
@@ -0,0 +1,158 @@
+package org.store.data;
+
+import org.store.enums.StokaCategory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Каталог на стоките на магазина с индекси, които се поддържат при всяка промяна:
+//  - по категория (EnumMap), като всяка категория е подредена по цена;
+//  - общ индекс по цена (skip list) за "най-евтините K" и търсене в ценови интервал;
+//  - префиксно дърво по име за търсене при въвеждане.
+// При смяна на цената (Stoka.setPrice) каталогът получава известие и премества само тази стока.
+// Стоките в каталога споделят една версия на цените - по нея количките разбират, че сумите им са остарели.
+public class Catalogue implements StokaPriceListener {
+    // Запис в ценовия индекс - цената е замразена в момента на вмъкване, за да не се развали подредбата
+    private static final class PriceEntry {
+        private final long priceStotinki;
+        private final int skuIndex;
+        private final Stoka stoka;
+
+        private PriceEntry(long priceStotinki, Stoka stoka) {
+            this(priceStotinki, stoka.getSkuIndex(), stoka);
+        }
+
+        private PriceEntry(long priceStotinki, int skuIndex, Stoka stoka) {
+            this.priceStotinki = priceStotinki;
+            this.skuIndex = skuIndex;
+            this.stoka = stoka;
+        }
+    }
+
+    private static final Comparator<PriceEntry> BY_PRICE = Comparator
+            .comparingLong((PriceEntry entry) -> entry.priceStotinki)
+            .thenComparingInt(entry -> entry.skuIndex);
+
+    private final Map<Stoka, PriceEntry> entries = new ConcurrentHashMap<>();
+    private final NavigableSet<PriceEntry> byPrice = new ConcurrentSkipListSet<>(BY_PRICE);
+    private final EnumMap<StokaCategory, NavigableSet<PriceEntry>> byCategory = new EnumMap<>(StokaCategory.class);
+    private final NameTrie byName = new NameTrie();
+    private final AtomicLong priceVersion = new AtomicLong();
+
+    public Catalogue() {
+        for (StokaCategory category : StokaCategory.values()) {
+            byCategory.put(category, new ConcurrentSkipListSet<>(BY_PRICE));
+        }
+    }
+
+    // Добавя стоката; повторното добавяне на вече известна стока не променя нищо
+    public synchronized boolean add(Stoka stoka) {
+        if (entries.containsKey(stoka)) {
+            return false;
+        }
+
+        PriceEntry entry = new PriceEntry(stoka.getPriceStotinki(), stoka);
+        entries.put(stoka, entry);
+        byPrice.add(entry);
+        byCategory.get(stoka.getStokaCategory()).add(entry);
+        byName.add(stoka);
+        stoka.addPriceListener(this);
+        stoka.bindPriceVersion(priceVersion);
+        return true;
+    }
+
+    public synchronized boolean remove(Stoka stoka) {
+        PriceEntry entry = entries.remove(stoka);
+        if (entry == null) {
+            return false;
+        }
+
+        byPrice.remove(entry);
+        byCategory.get(stoka.getStokaCategory()).remove(entry);
+        byName.remove(stoka);
+        stoka.removePriceListener(this);
+        return true;
+    }
+
+    @Override
+    public synchronized void priceChanged(Stoka stoka, long oldPriceStotinki, long newPriceStotinki) {
+        PriceEntry previous = entries.get(stoka);
+        if (previous == null || previous.priceStotinki == newPriceStotinki) {
+            return;
+        }
+
+        PriceEntry entry = new PriceEntry(newPriceStotinki, stoka);
+        NavigableSet<PriceEntry> category = byCategory.get(stoka.getStokaCategory());
+        byPrice.remove(previous);
+        category.remove(previous);
+        entries.put(stoka, entry);
+        byPrice.add(entry);
+        category.add(entry);
+    }
+
+    public boolean contains(Stoka stoka) {
+        return entries.containsKey(stoka);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // Всички стоки, подредени по цена
+    public List<Stoka> sortedByPrice() {
+        return take(byPrice, Integer.MAX_VALUE);
+    }
+
+    // Стоките от категорията, подредени по цена
+    public List<Stoka> byCategory(StokaCategory category) {
+        return take(byCategory.get(category), Integer.MAX_VALUE);
+    }
+
+    // Първите k най-евтини - O(log n + k)
+    public List<Stoka> cheapest(int k) {
+        return take(byPrice, k);
+    }
+
+    public List<Stoka> cheapest(StokaCategory category, int k) {
+        return take(byCategory.get(category), k);
+    }
+
+    // Стоките с цена между minStotinki и maxStotinki включително
+    public List<Stoka> priceBetween(long minStotinki, long maxStotinki) {
+        PriceEntry from = new PriceEntry(minStotinki, Integer.MIN_VALUE, null);
+        List<Stoka> result = new ArrayList<>();
+        for (PriceEntry entry : byPrice.tailSet(from, true)) {
+            if (entry.priceStotinki > maxStotinki) {
+                break;
+            }
+            result.add(entry.stoka);
+        }
+        return result;
+    }
+
+    public List<Stoka> findByNamePrefix(String prefix) {
+        return byName.withPrefix(prefix, Integer.MAX_VALUE);
+    }
+
+    public List<Stoka> findByNamePrefix(String prefix, int limit) {
+        return byName.withPrefix(prefix, limit);
+    }
+
+    private static List<Stoka> take(NavigableSet<PriceEntry> index, int limit) {
+        List<Stoka> result = new ArrayList<>(Math.min(limit, 16));
+        for (PriceEntry entry : index) {
+            if (result.size() == limit) {
+                break;
+            }
+            result.add(entry.stoka);
+        }
+        return result;
+    }
+}
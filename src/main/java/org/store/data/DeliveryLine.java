@@ -0,0 +1,44 @@
+package org.store.data;
+
+import java.math.BigDecimal;
+
+// Един ред от доставка - стока, доставено количество и цена на доставка за брой
+public class DeliveryLine {
+    private final Stoka stoka;
+    private final double quantity;
+    private final BigDecimal unitDeliveryCost;
+
+    public DeliveryLine(Stoka stoka, double quantity, BigDecimal unitDeliveryCost) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Доставеното количество трябва да е положително число");
+        }
+        if (unitDeliveryCost == null || unitDeliveryCost.compareTo(BigDecimal.ZERO) < 0) {
+            throw new IllegalArgumentException("Цената на доставка не може да бъде отрицателна");
+        }
+
+        this.stoka = stoka;
+        this.quantity = quantity;
+        this.unitDeliveryCost = unitDeliveryCost;
+    }
+
+    public Stoka getStoka() {
+        return stoka;
+    }
+
+    public double getQuantity() {
+        return quantity;
+    }
+
+    public BigDecimal getUnitDeliveryCost() {
+        return unitDeliveryCost;
+    }
+
+    @Override
+    public String toString() {
+        return "DeliveryLine{" +
+                "stoka=" + stoka.getName() +
+                ", quantity=" + quantity +
+                ", unitDeliveryCost=" + unitDeliveryCost +
+                '}';
+    }
+}
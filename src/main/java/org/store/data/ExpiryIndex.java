@@ -0,0 +1,94 @@
+package org.store.data;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// Индекс на наличните стоки по срок на годност - календар с по една кофа за всеки ден (epoch-day).
+// Въпросите "изтекли", "изтичат до N дни" обхождат само кофите в търсения интервал,
+// затова времето им зависи от броя на намерените стоки, а не от целия склад.
+// Нехранителните стоки (без срок) не се индексират.
+public class ExpiryIndex {
+    public static final long NO_EXPIRY = Long.MAX_VALUE;
+
+    private final ConcurrentSkipListMap<Long, Set<Stoka>> buckets = new ConcurrentSkipListMap<>();
+    private final Map<Stoka, Long> dayByStoka = new ConcurrentHashMap<>();
+
+//      Добавя стоката в кофата на текущия ѝ срок. Ако срокът е сменен след предишното
+//      добавяне, стоката се премества; стока без срок се премахва от индекса.
+
+    public synchronized void track(Stoka stoka) {
+        LocalDate expirationDate = stoka.getExpirationDate();
+        if (expirationDate == null) {
+            untrack(stoka);
+            return;
+        }
+
+        long day = expirationDate.toEpochDay();
+        Long previous = dayByStoka.put(stoka, day);
+        if (previous != null && previous == day) {
+            return;
+        }
+        if (previous != null) {
+            removeFromBucket(previous, stoka);
+        }
+        buckets.computeIfAbsent(day, key -> ConcurrentHashMap.newKeySet()).add(stoka);
+    }
+
+    public synchronized void untrack(Stoka stoka) {
+        Long previous = dayByStoka.remove(stoka);
+        if (previous != null) {
+            removeFromBucket(previous, stoka);
+        }
+    }
+
+    private void removeFromBucket(long day, Stoka stoka) {
+        buckets.computeIfPresent(day, (key, bucket) -> {
+            bucket.remove(stoka);
+            return bucket.isEmpty() ? null : bucket;
+        });
+    }
+
+    public boolean isTracked(Stoka stoka) {
+        return dayByStoka.containsKey(stoka);
+    }
+
+    public int size() {
+        return dayByStoka.size();
+    }
+
+    // Денят на изтичане на стоката като epoch-day или NO_EXPIRY, ако не е в индекса
+    public long expiryDayOf(Stoka stoka) {
+        Long day = dayByStoka.get(stoka);
+        return day == null ? NO_EXPIRY : day;
+    }
+
+    // Стоки с изтекъл срок - срокът е преди днешния ден
+    public List<Stoka> expired(LocalDate today) {
+        return collect(buckets.headMap(today.toEpochDay(), false));
+    }
+
+    // Стоки, които изтичат от днес до днес + days включително
+    public List<Stoka> expiringWithin(LocalDate today, int days) {
+        long from = today.toEpochDay();
+        return collect(buckets.subMap(from, true, from + days, true));
+    }
+
+    private static List<Stoka> collect(NavigableMap<Long, Set<Stoka>> range) {
+        if (range.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Stoka> result = new ArrayList<>();
+        for (Set<Stoka> bucket : range.values()) {
+            result.addAll(bucket);
+        }
+        return result;
+    }
+}
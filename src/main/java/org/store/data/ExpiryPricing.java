@@ -0,0 +1,36 @@
+package org.store.data;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+// Единична цена в стотинки за един ден продажби - с отстъпка за стоките, които скоро изтичат.
+// Създава се от PricingEngine.pricing; касата остойностява количката с него веднъж (PricedCart).
+// Самите цени са кеширани в PricingEngine по SKU.
+public class ExpiryPricing implements ToLongFunction<Stoka> {
+    private final PricingEngine engine;
+    private final long day;
+
+    ExpiryPricing(PricingEngine engine, long day) {
+        this.engine = engine;
+        this.day = day;
+    }
+
+    // Денят (epoch-day), за който е изчислено ценообразуването
+    public long getDay() {
+        return day;
+    }
+
+    // Версията на настройките на магазина - при смяна на надценката или отстъпката цените за деня се сменят
+    AtomicLong getSettingsVersion() {
+        return engine.getVersionSource();
+    }
+
+    public boolean isDiscounted(Stoka stoka) {
+        return engine.isDiscounted(stoka, day);
+    }
+
+    @Override
+    public long applyAsLong(Stoka stoka) {
+        return engine.effectivePrice(stoka, day);
+    }
+}
@@ -1,14 +1,29 @@
 package org.store.data;
 
+import org.store.service.ReceiptSerialSource;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
 public class Kasa {
+    private final int laneId;
+    private final ReceiptSerialSource receiptSerialSource;
+    private final AtomicBoolean closed = new AtomicBoolean();
     private Cashier cashier;
     private Store store;
 
     public Kasa(Cashier cashier, Store store) {
+        this.receiptSerialSource = store.getReceiptSerialSource();
+        this.laneId = receiptSerialSource.registerLane();
         this.cashier = cashier;
         this.store = store;
     }
 
+    // Номер на касата в магазина - част от номера на всяка издадена бележка
+    public int getLaneId() {
+
+        return laneId;
+    }
+
     public Cashier getCashier() {
 
         return cashier;
@@ -28,4 +43,11 @@ public class Kasa {
 
         this.store = store;
     }
+
+    // Затваря касата и освобождава номера ѝ за следваща каса
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            receiptSerialSource.releaseLane(laneId);
+        }
+    }
 }
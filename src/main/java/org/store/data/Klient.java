@@ -1,21 +1,27 @@
 package org.store.data;
 
+import org.store.enums.LogEvent;
+import org.store.log.DiagnosticLog;
+
 import java.math.BigDecimal;
-import java.time.LocalDate;
-import java.util.HashMap;
 import java.util.Map;
 
 public class Klient {
-    private Map<Stoka, Double> cart;
-    private BigDecimal money;
+    private final KlientCart cart;
+    private volatile BigDecimal money;
 
     public Klient(BigDecimal money) {
-        this.cart = new HashMap<>();
+        this.cart = new KlientCart();
         this.money = money;
     }
 
+    // Изглед като Map върху количката - всяка промяна през него е атомарна
     public Map<Stoka, Double> getCart() {
 
+        return cart.asMap();
+    }
+
+    public KlientCart getKlientCart() {
         return cart;
     }
 
@@ -23,7 +29,7 @@ public class Klient {
         return money;
     }
 
-    public void subtractMoney(BigDecimal amount) {
+    public synchronized void subtractMoney(BigDecimal amount) {
 
 
         if (money.compareTo(amount) >= 0) {
@@ -33,14 +39,34 @@ public class Klient {
         }
     }
 
+    // Атомарна проверка и изваждане на сумата; return false ако парите не стигат - тогава нищо не се променя
+    public synchronized boolean tryDebit(BigDecimal amount) {
+        if (money.compareTo(amount) < 0) {
+            return false;
+        }
+        this.money = this.money.subtract(amount);
+        return true;
+    }
+
+    // Връща сума, взета при неуспешно плащане
+    public synchronized void refund(BigDecimal amount) {
+        this.money = this.money.add(amount);
+    }
+
     public void addToCart(Stoka stoka, double quantity) {
+        // Проверката на нивото е преди извикването - иначе количеството се опакова при всяко сканиране
+        DiagnosticLog log = DiagnosticLog.shared();
         if (quantity <= 0) {
-            System.out.println("Невалидно количество.");
+            if (log.isEnabled(LogEvent.CART_INVALID_QUANTITY)) {
+                log.log(LogEvent.CART_INVALID_QUANTITY, quantity, stoka.getName());
+            }
             return;
         }
 
-        cart.merge(stoka, quantity, Double::sum);
-        System.out.println("Добавени в количката: " + quantity + " бр. от " + stoka.getName());
+        cart.add(stoka, quantity);
+        if (log.isEnabled(LogEvent.CART_ITEM_ADDED)) {
+            log.log(LogEvent.CART_ITEM_ADDED, quantity, stoka.getName());
+        }
     }
 
     public void clearCart() {
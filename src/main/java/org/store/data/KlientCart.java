@@ -0,0 +1,230 @@
+package org.store.data;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+// Количка, която може да се променя от няколко устройства едновременно (скенер в ръка, терминал на касата).
+// Всяка промяна създава ново неизменимо състояние и го публикува с CAS, затова:
+//  - едновременните сканирания не губят стока - неуспелият CAS повтаря промяната върху новото състояние;
+//  - snapshot() връща цялата количка от един момент, без разкъсано четене на количества.
+// Количките са малки (десетки реда), така че копирането при промяна е евтино.
+public class KlientCart {
+    private final AtomicReference<CartSnapshot> state = new AtomicReference<>(CartSnapshot.EMPTY);
+
+    public CartSnapshot snapshot() {
+        return state.get();
+    }
+
+    public boolean isEmpty() {
+        return state.get().isEmpty();
+    }
+
+    // Добавя количество към реда на стоката; return новото количество
+    public double add(Stoka stoka, double quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Количеството трябва да е положително число");
+        }
+        Double previous = update(stoka, (key, current) -> current == null ? quantity : current + quantity);
+        return previous == null ? quantity : previous + quantity;
+    }
+
+    // Премахва реда на стоката; return true ако стоката е била в количката
+    public boolean remove(Stoka stoka) {
+        return update(stoka, (key, current) -> null) != null;
+    }
+
+//      Задава ново количество само ако стоката вече е в количката.
+//      Количество <= 0 премахва реда.
+//      return true ако стоката е била в количката
+
+    public boolean setQuantity(Stoka stoka, double quantity) {
+        return update(stoka, (key, current) -> current == null || quantity <= 0 ? null : quantity) != null;
+    }
+
+    public void addAll(Map<Stoka, Double> items) {
+        mutate(lines -> {
+            for (Map.Entry<Stoka, Double> entry : items.entrySet()) {
+                if (entry.getValue() != null && entry.getValue() > 0) {
+                    lines.merge(entry.getKey(), entry.getValue(), Double::sum);
+                }
+            }
+        });
+    }
+
+    public void clear() {
+        mutate(Map::clear);
+    }
+
+//      Цените за деня на магазина, в който пазарува клиентът (StoreService.expiryPricing).
+//      По тях количката поддържа сумата за плащане (CartSnapshot.getPayableTotalStotinki);
+//      сумите се преизчисляват веднъж при смяна на цените.
+
+    public void setPricing(ExpiryPricing pricing) {
+        while (true) {
+            CartSnapshot current = state.get();
+            if (current.getPricing() == pricing) {
+                return;
+            }
+
+            LinkedHashMap<Stoka, Double> lines = new LinkedHashMap<>(current.getItems());
+            if (state.compareAndSet(current, new CartSnapshot(lines, current.getVersion() + 1, pricing, null))) {
+                return;
+            }
+        }
+    }
+
+//      Взема цялата количка за плащане и атомарно я заменя с празна.
+//      Две едновременни плащания на един клиент не могат да вземат едно и също съдържание -
+//      второто получава само сканираното след първото. Сканираното след взимането остава за следващо плащане.
+//      return взетото съдържание (празно, ако количката е празна)
+
+    public CartSnapshot claim() {
+        while (true) {
+            CartSnapshot current = state.get();
+            if (current.isEmpty()) {
+                return current;
+            }
+
+            CartSnapshot empty = new CartSnapshot(new LinkedHashMap<>(), current.getVersion() + 1, current.getPricing(), null);
+            if (state.compareAndSet(current, empty)) {
+                return current;
+            }
+        }
+    }
+
+    // Връща взетото с claim съдържание при неуспешно плащане - пред сканираното междувременно
+    public void restore(CartSnapshot claimed) {
+        if (claimed.isEmpty()) {
+            return;
+        }
+
+        mutate(lines -> {
+            LinkedHashMap<Stoka, Double> scanned = new LinkedHashMap<>(lines);
+            lines.clear();
+            lines.putAll(claimed.getItems());
+            for (Map.Entry<Stoka, Double> entry : scanned.entrySet()) {
+                lines.merge(entry.getKey(), entry.getValue(), Double::sum);
+            }
+        });
+    }
+
+//      Атомарна промяна на един ред. remapping получава текущото количество (или null)
+//      и връща новото (или null за премахване).
+//      return предишното количество
+
+    public Double update(Stoka stoka, BiFunction<? super Stoka, ? super Double, ? extends Double> remapping) {
+        while (true) {
+            CartSnapshot current = state.get();
+            Double previous = current.getItems().get(stoka);
+            Double next = remapping.apply(stoka, previous);
+            if (next == null && previous == null) {
+                return null;
+            }
+
+            LinkedHashMap<Stoka, Double> lines = new LinkedHashMap<>(current.getItems());
+            if (next == null) {
+                lines.remove(stoka);
+            } else {
+                lines.put(stoka, next);
+            }
+
+            // Сумите се пренасят с разликата от реда, ако са изчислени при текущите цени
+            ExpiryPricing pricing = current.getPricing();
+            CartSnapshot.Totals totals = CartSnapshot.applyLineChange(current.currentTotalsOrNull(), pricing, stoka, previous, next);
+
+            if (state.compareAndSet(current, new CartSnapshot(lines, current.getVersion() + 1, pricing, totals))) {
+                return previous;
+            }
+        }
+    }
+
+    private void mutate(Consumer<LinkedHashMap<Stoka, Double>> change) {
+        while (true) {
+            CartSnapshot current = state.get();
+            LinkedHashMap<Stoka, Double> lines = new LinkedHashMap<>(current.getItems());
+            change.accept(lines);
+
+            if (state.compareAndSet(current, new CartSnapshot(lines, current.getVersion() + 1, current.getPricing(), null))) {
+                return;
+            }
+        }
+    }
+
+    // Изглед като Map за досегашния код - четенето е от текущата снимка, записът минава през атомарните операции
+    public Map<Stoka, Double> asMap() {
+        return new MapView();
+    }
+
+    private final class MapView extends AbstractMap<Stoka, Double> {
+        @Override
+        public Double get(Object key) {
+            return snapshot().getItems().get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return snapshot().getItems().containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return snapshot().size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return snapshot().isEmpty();
+        }
+
+        @Override
+        public Double put(Stoka key, Double value) {
+            return update(key, (stoka, current) -> value);
+        }
+
+        @Override
+        public Double remove(Object key) {
+            return key instanceof Stoka ? update((Stoka) key, (stoka, current) -> null) : null;
+        }
+
+        @Override
+        public Double merge(Stoka key, Double value, BiFunction<? super Double, ? super Double, ? extends Double> remapping) {
+            // При неуспешен CAS функцията се извиква отново - връщаме стойността от успешния опит
+            Double[] merged = new Double[1];
+            update(key, (stoka, current) -> merged[0] = current == null ? value : remapping.apply(current, value));
+            return merged[0];
+        }
+
+        @Override
+        public void clear() {
+            KlientCart.this.clear();
+        }
+
+        @Override
+        public Set<Entry<Stoka, Double>> entrySet() {
+            Map<Stoka, Double> items = snapshot().getItems();
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<Stoka, Double>> iterator() {
+                    return items.entrySet().iterator();
+                }
+
+                @Override
+                public int size() {
+                    return items.size();
+                }
+            };
+        }
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+}
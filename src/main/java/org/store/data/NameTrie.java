@@ -0,0 +1,83 @@
+package org.store.data;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Префиксно дърво по име на стоката (без значение от малки/главни букви).
+// Търсенето по префикс стига до възела за префикса и обхожда само поддървото под него.
+class NameTrie {
+    private final Node root = new Node();
+
+    private static final class Node {
+        private final Map<Character, Node> children = new HashMap<>();
+        private final Set<Stoka> stokas = new LinkedHashSet<>();
+    }
+
+    static String normalize(String name) {
+        return name == null ? "" : name.trim().toLowerCase();
+    }
+
+    synchronized void add(Stoka stoka) {
+        Node node = root;
+        String key = normalize(stoka.getName());
+        for (int i = 0; i < key.length(); i++) {
+            node = node.children.computeIfAbsent(key.charAt(i), c -> new Node());
+        }
+        node.stokas.add(stoka);
+    }
+
+    synchronized void remove(Stoka stoka) {
+        String key = normalize(stoka.getName());
+        Deque<Node> path = new ArrayDeque<>();
+        Node node = root;
+        path.push(node);
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.children.get(key.charAt(i));
+            path.push(node);
+        }
+        if (node == null || !node.stokas.remove(stoka)) {
+            return;
+        }
+
+        // Изрязваме празните възли от края към корена
+        for (int i = key.length() - 1; i >= 0; i--) {
+            Node child = path.pop();
+            if (!child.stokas.isEmpty() || !child.children.isEmpty()) {
+                break;
+            }
+            path.peek().children.remove(key.charAt(i));
+        }
+    }
+
+    synchronized List<Stoka> withPrefix(String prefix, int limit) {
+        List<Stoka> result = new ArrayList<>();
+        Node node = root;
+        String key = normalize(prefix);
+        for (int i = 0; i < key.length(); i++) {
+            node = node.children.get(key.charAt(i));
+            if (node == null) {
+                return result;
+            }
+        }
+
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(node);
+        while (!pending.isEmpty() && result.size() < limit) {
+            Node current = pending.pop();
+            for (Stoka stoka : current.stokas) {
+                if (result.size() == limit) {
+                    break;
+                }
+                result.add(stoka);
+            }
+            pending.addAll(current.children.values());
+        }
+        return result;
+    }
+}
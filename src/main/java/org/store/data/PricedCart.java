@@ -0,0 +1,123 @@
+package org.store.data;
+
+import org.store.money.MoneyMath;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+// Количка, остойностена веднъж в момента на плащането.
+// Единичните цени се четат само тук - смяна на цена след това не променя нито платеното, нито прихода.
+// Сумата се закръглява веднъж за цялата количка (както MoneyMath.totalStotinki) и се разпределя по редовете:
+// всеки ред получава своите цели стотинки, а останалите стотинки отиват при редовете с най-голям остатък.
+// Така сборът от приходите по редове е точно платената сума.
+public final class PricedCart {
+    private final Map<Stoka, Double> items;
+    private final Stoka[] stoki;
+    private final long[] quantitiesMilli;
+    private final long[] unitPrices;
+    private final long[] lineTotals;
+    private final long totalStotinki;
+
+    private PricedCart(Map<Stoka, Double> items, Stoka[] stoki, long[] quantitiesMilli, long[] unitPrices,
+                       long[] lineTotals, long totalStotinki) {
+        this.items = items;
+        this.stoki = stoki;
+        this.quantitiesMilli = quantitiesMilli;
+        this.unitPrices = unitPrices;
+        this.lineTotals = lineTotals;
+        this.totalStotinki = totalStotinki;
+    }
+
+    public static PricedCart price(Map<Stoka, Double> items, ToLongFunction<Stoka> unitPrice) {
+        int size = items.size();
+        Stoka[] stoki = new Stoka[size];
+        long[] quantitiesMilli = new long[size];
+        long[] unitPrices = new long[size];
+        long[] exactMilli = new long[size];
+
+        int line = 0;
+        long totalMilli = 0;
+        for (Map.Entry<Stoka, Double> entry : items.entrySet()) {
+            stoki[line] = entry.getKey();
+            quantitiesMilli[line] = QuantityLedger.toMilli(entry.getValue());
+            unitPrices[line] = unitPrice.applyAsLong(entry.getKey());
+            exactMilli[line] = MoneyMath.lineTotalMilli(unitPrices[line], quantitiesMilli[line]);
+            totalMilli = Math.addExact(totalMilli, exactMilli[line]);
+            line++;
+        }
+
+        long totalStotinki = MoneyMath.roundMilli(totalMilli);
+        return new PricedCart(Collections.unmodifiableMap(new LinkedHashMap<>(items)), stoki, quantitiesMilli,
+                unitPrices, allocate(exactMilli, totalStotinki), totalStotinki);
+    }
+
+//      Разпределя закръглената сума total по редовете с точни стойности exactMilli (хилядни от стотинката).
+//      Всеки ред е на по-малко от стотинка от точната си стойност; при равни остатъци предимство има по-ранният ред.
+
+    static long[] allocate(long[] exactMilli, long total) {
+        long scale = QuantityLedger.SCALE;
+        long[] lines = new long[exactMilli.length];
+        long allocated = 0;
+        for (int i = 0; i < exactMilli.length; i++) {
+            lines[i] = Math.floorDiv(exactMilli[i], scale);
+            allocated += lines[i];
+        }
+
+        // Закръгленото нагоре е по-малко от броя на редовете - по една стотинка на най-големите остатъци
+        for (long left = total - allocated; left > 0; left--) {
+            int best = -1;
+            long bestRemainder = -1;
+            for (int i = 0; i < exactMilli.length; i++) {
+                long remainder = Math.floorMod(exactMilli[i], scale);
+                if (lines[i] * scale < exactMilli[i] && remainder > bestRemainder) {
+                    best = i;
+                    bestRemainder = remainder;
+                }
+            }
+            lines[best]++;
+        }
+        return lines;
+    }
+
+    // Стоките и количествата - за ключалките и проверката на наличността
+    public Map<Stoka, Double> getItems() {
+        return items;
+    }
+
+    public int size() {
+        return stoki.length;
+    }
+
+    public Stoka getStoka(int line) {
+        return stoki[line];
+    }
+
+    public long getQuantityMilli(int line) {
+        return quantitiesMilli[line];
+    }
+
+    public double getQuantity(int line) {
+        return QuantityLedger.fromMilli(quantitiesMilli[line]);
+    }
+
+    // Единичната цена, по която е продаден редът, в стотинки
+    public long getUnitPriceStotinki(int line) {
+        return unitPrices[line];
+    }
+
+    // Делът на реда от платената сума в стотинки
+    public long getLineTotalStotinki(int line) {
+        return lineTotals[line];
+    }
+
+    public long getTotalStotinki() {
+        return totalStotinki;
+    }
+
+    public BigDecimal getTotal() {
+        return MoneyMath.toBigDecimal(totalStotinki);
+    }
+}
@@ -0,0 +1,213 @@
+package org.store.data;
+
+import org.store.enums.StokaCategory;
+import org.store.money.MoneyMath;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Цените на магазина: продажна цена = цена на доставка + надценката на категорията,
+// а ефективната цена за деня е продажната с отстъпка за стоките, които изтичат скоро.
+//
+// Продажната цена се изчислява винаги от цената на доставка (в стотинки, надценката в базисни точки),
+// а не от предишната продажна цена - повторните доставки не я променят.
+// Ефективната цена се пази по SKU индекс в страници като в QuantityLedger - страница се създава
+// едва когато магазинът остойности стока от нея. Записът е валиден, докато
+// версията на настройките, денят, продажната цена и срокът на стоката са същите - така касата я
+// чете с едно четене от масив и няколко сравнения, без BigDecimal и без хеширане.
+public class PricingEngine {
+    private static final int PAGE_SHIFT = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final long BASIS_POINTS_PER_PERCENT = 100;
+
+    private static final VarHandle QUOTES = MethodHandles.arrayElementVarHandle(Quote[].class);
+    private static final VarHandle PAGES = MethodHandles.arrayElementVarHandle(Quote[][].class);
+    private static final StokaCategory[] CATEGORIES = StokaCategory.values();
+
+    private final AtomicLong version = new AtomicLong();
+    private volatile long[] marginBasisPoints;
+    private volatile int discountDays;
+    private volatile long discountBasisPoints;
+    private volatile Quote[][] pages = new Quote[0][];
+
+    public PricingEngine(Map<StokaCategory, Double> marginPercentByCategory, int discountDays, double discountPercent) {
+        long[] margins = new long[CATEGORIES.length];
+        if (marginPercentByCategory != null) {
+            for (Map.Entry<StokaCategory, Double> entry : marginPercentByCategory.entrySet()) {
+                margins[entry.getKey().ordinal()] = toBasisPoints(entry.getValue());
+            }
+        }
+
+        this.marginBasisPoints = margins;
+        setExpiryDiscount(discountDays, discountPercent);
+    }
+
+    // Продажна цена в стотинки според цената на доставка и надценката на категорията
+    public long listPrice(Stoka stoka) {
+        long margin = this.marginBasisPoints[stoka.getStokaCategory().ordinal()];
+        return MoneyMath.markup(MoneyMath.toStotinki(stoka.getDeliveryPrice()), margin);
+    }
+
+//      Записва продажната цена в стоката (при доставка или смяна на надценката).
+//      Стоката не се пипа, ако цената не се променя - слушателите ѝ не се извикват напразно.
+
+    public void reprice(Stoka stoka) {
+        long price = listPrice(stoka);
+        if (price != stoka.getPriceStotinki()) {
+            stoka.setPrice(MoneyMath.toBigDecimal(price));
+        }
+    }
+
+//      Цена в стотинки, на която стоката се продава в деня day (epoch day).
+//      Изчислява се само при първото поискване за деня или след промяна на цената, срока или настройките.
+
+    public long effectivePrice(Stoka stoka, long day) {
+        return quote(stoka, day).effectivePrice;
+    }
+
+    public boolean isDiscounted(Stoka stoka, long day) {
+        return quote(stoka, day).discounted;
+    }
+
+    // Цените за един ден - това подава касата за сумата и магазинът за прихода
+    public ExpiryPricing pricing(LocalDate today) {
+        return new ExpiryPricing(this, today.toEpochDay());
+    }
+
+    // Нараства при всяка промяна на надценките или отстъпката - старите записи вече не важат
+    public long getVersion() {
+        return version.get();
+    }
+
+    AtomicLong getVersionSource() {
+        return version;
+    }
+
+    public long getMarginBasisPoints(StokaCategory category) {
+        return this.marginBasisPoints[category.ordinal()];
+    }
+
+    public int getDiscountDays() {
+        return discountDays;
+    }
+
+    public long getDiscountBasisPoints() {
+        return discountBasisPoints;
+    }
+
+    // Смяна на надценката на категория - продажните цени се преизчисляват от Store.setMarginPercent
+    void setMarginPercent(StokaCategory category, double marginPercent) {
+        long[] margins = this.marginBasisPoints.clone();
+        margins[category.ordinal()] = toBasisPoints(marginPercent);
+        this.marginBasisPoints = margins;
+        version.incrementAndGet();
+    }
+
+    void setExpiryDiscount(int days, double discountPercent) {
+        if (days < 0) {
+            throw new IllegalArgumentException("Броят дни за отстъпка не може да е отрицателен");
+        }
+        if (discountPercent < 0 || discountPercent > 100) {
+            throw new IllegalArgumentException("Отстъпката трябва да е между 0 и 100%");
+        }
+
+        this.discountDays = days;
+        this.discountBasisPoints = toBasisPoints(discountPercent);
+        version.incrementAndGet();
+    }
+
+    private Quote quote(Stoka stoka, long day) {
+        Quote[] page = pageFor(stoka.getSkuIndex());
+        int slot = stoka.getSkuIndex() & PAGE_MASK;
+        long currentVersion = version.get();
+
+        Quote quote = (Quote) QUOTES.getAcquire(page, slot);
+        if (quote != null && quote.isValidFor(stoka, day, currentVersion)) {
+            return quote;
+        }
+
+        // Две каси могат да изчислят едновременно един и същ запис - резултатът е еднакъв
+        quote = computeQuote(stoka, day, currentVersion);
+        QUOTES.setRelease(page, slot, quote);
+        return quote;
+    }
+
+    private Quote computeQuote(Stoka stoka, long day, long currentVersion) {
+        long listPrice = stoka.getPriceStotinki();
+        LocalDate expirationDate = stoka.getExpirationDate();
+
+        boolean discounted = false;
+        if (expirationDate != null) {
+            long expiryDay = expirationDate.toEpochDay();
+            discounted = expiryDay >= day && expiryDay <= day + discountDays;
+        }
+
+        long effectivePrice = discounted ? MoneyMath.discount(listPrice, discountBasisPoints) : listPrice;
+        return new Quote(currentVersion, day, listPrice, expirationDate, effectivePrice, discounted);
+    }
+
+    private Quote[] pageFor(int index) {
+        int page = index >>> PAGE_SHIFT;
+        Quote[][] current = this.pages;
+        if (page < current.length) {
+            Quote[] existing = (Quote[]) PAGES.getAcquire(current, page);
+            if (existing != null) {
+                return existing;
+            }
+        }
+
+        synchronized (this) {
+            current = this.pages;
+            if (page >= current.length) {
+                Quote[][] grown = new Quote[Math.max(page + 1, current.length * 2)][];
+                System.arraycopy(current, 0, grown, 0, current.length);
+                this.pages = grown;
+                current = grown;
+            }
+
+            Quote[] created = (Quote[]) PAGES.getAcquire(current, page);
+            if (created == null) {
+                created = new Quote[PAGE_SIZE];
+                PAGES.setRelease(current, page, created);
+            }
+            return created;
+        }
+    }
+
+    private static long toBasisPoints(double percent) {
+        return Math.round(percent * BASIS_POINTS_PER_PERCENT);
+    }
+
+    // Ефективната цена на една стока за един ден и условията, при които е изчислена
+    private static final class Quote {
+        private final long version;
+        private final long day;
+        private final long listPrice;
+        private final LocalDate expirationDate;
+        private final long effectivePrice;
+        private final boolean discounted;
+
+        private Quote(long version, long day, long listPrice, LocalDate expirationDate,
+                      long effectivePrice, boolean discounted) {
+            this.version = version;
+            this.day = day;
+            this.listPrice = listPrice;
+            this.expirationDate = expirationDate;
+            this.effectivePrice = effectivePrice;
+            this.discounted = discounted;
+        }
+
+        // Срокът се сравнява по референция - LocalDate е неизменим и смяната му подменя обекта
+        private boolean isValidFor(Stoka stoka, long day, long version) {
+            return this.version == version
+                    && this.day == day
+                    && this.listPrice == stoka.getPriceStotinki()
+                    && this.expirationDate == stoka.getExpirationDate();
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package org.store.data;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+// Плътен регистър на количества по SKU индекс на стоката.
+// Количествата се пазят в примитивни long масиви като хилядни части (милиединици),
+// без Double обекти и без хеширане на UUID при всяка операция.
+// Масивите са разделени на страници с фиксиран размер - при растеж се копира само
+// директорията, а самите страници не се местят, така атомарните операции върху
+// клетките са безопасни и докато регистърът расте.
+// Страница се създава едва при първия запис в нея. SKU индексите са общи за всички магазини,
+// затова директорията стига до най-големия индекс изобщо, но паметта за количества е само
+// за страниците със стоки на този регистър - празната страница струва една null препратка.
+// Клетка със стойност 0 се счита за липсваща стока (както премахването от картата досега).
+public class QuantityLedger {
+    public static final long SCALE = 1000;
+
+    private static final int PAGE_SHIFT = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private static final VarHandle QUANTITIES = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(Stoka[].class);
+    private static final VarHandle QUANTITY_PAGES = MethodHandles.arrayElementVarHandle(long[][].class);
+    private static final VarHandle KEY_PAGES = MethodHandles.arrayElementVarHandle(Stoka[][].class);
+
+    private volatile long[][] quantityPages;
+    private volatile Stoka[][] keyPages;
+    private final Map<Stoka, Double> view;
+
+    public QuantityLedger() {
+        this.quantityPages = new long[0][];
+        this.keyPages = new Stoka[0][];
+        this.view = new MapView();
+    }
+
+    public static long toMilli(double quantity) {
+        return Math.round(quantity * SCALE);
+    }
+
+    public static double fromMilli(long milli) {
+        return (double) milli / SCALE;
+    }
+
+    // Количество в милиединици, 0 ако стоката липсва
+    public long getMilli(Stoka stoka) {
+        return milliAt(stoka.getSkuIndex());
+    }
+
+    public double get(Stoka stoka) {
+        return fromMilli(getMilli(stoka));
+    }
+
+    // Атомарно добавя (или изважда при отрицателна стойност) и връща новото количество
+    public long addMilli(Stoka stoka, long deltaMilli) {
+        long[] page = pageFor(stoka);
+        long previous = (long) QUANTITIES.getAndAdd(page, stoka.getSkuIndex() & PAGE_MASK, deltaMilli);
+        return previous + deltaMilli;
+    }
+
+    public double add(Stoka stoka, double quantity) {
+        return fromMilli(addMilli(stoka, toMilli(quantity)));
+    }
+
+    public void setMilli(Stoka stoka, long milli) {
+        long[] page = pageFor(stoka);
+        QUANTITIES.setVolatile(page, stoka.getSkuIndex() & PAGE_MASK, milli);
+    }
+
+    public boolean compareAndSetMilli(Stoka stoka, long expectedMilli, long newMilli) {
+        long[] page = pageFor(stoka);
+        return QUANTITIES.compareAndSet(page, stoka.getSkuIndex() & PAGE_MASK, expectedMilli, newMilli);
+    }
+
+//      Достъп по SKU индекс - за обхождане на регистъра на части (например паралелно по интервали от индекси).
+//      capacity е горната граница на индексите, stokaAt връща null за празна клетка.
+
+    public int capacity() {
+        return quantityPages.length << PAGE_SHIFT;
+    }
+
+    public Stoka stokaAt(int index) {
+        Stoka[] keys = keyPage(this.keyPages, index >>> PAGE_SHIFT);
+        return keys != null ? (Stoka) KEYS.getVolatile(keys, index & PAGE_MASK) : null;
+    }
+
+    public long milliAt(int index) {
+        long[] page = quantityPage(this.quantityPages, index >>> PAGE_SHIFT);
+        return page != null ? (long) QUANTITIES.getVolatile(page, index & PAGE_MASK) : 0;
+    }
+
+    // Брой създадени страници - паметта, която регистърът реално заема
+    public int allocatedPages() {
+        long[][] pages = this.quantityPages;
+        int count = 0;
+        for (int i = 0; i < pages.length; i++) {
+            if (quantityPage(pages, i) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public void clear() {
+        long[][] pages = this.quantityPages;
+        for (int p = 0; p < pages.length; p++) {
+            long[] page = quantityPage(pages, p);
+            if (page == null) {
+                continue;
+            }
+            for (int i = 0; i < page.length; i++) {
+                QUANTITIES.setVolatile(page, i, 0L);
+            }
+        }
+    }
+
+    // Изглед като Map<Stoka, Double>, за да останат досегашните гетъри на Store
+    public Map<Stoka, Double> asMap() {
+        return view;
+    }
+
+    private static long[] quantityPage(long[][] pages, int page) {
+        return page < pages.length ? (long[]) QUANTITY_PAGES.getVolatile(pages, page) : null;
+    }
+
+    private static Stoka[] keyPage(Stoka[][] pages, int page) {
+        return page < pages.length ? (Stoka[]) KEY_PAGES.getVolatile(pages, page) : null;
+    }
+
+    private long[] pageFor(Stoka stoka) {
+        int index = stoka.getSkuIndex();
+        int page = index >>> PAGE_SHIFT;
+        int offset = index & PAGE_MASK;
+
+        long[] quantities = quantityPage(this.quantityPages, page);
+        if (quantities == null) {
+            quantities = allocate(page);
+        }
+
+        // Запомняме стоката, за да може регистърът да бъде обхождан
+        Stoka[] keys = keyPage(this.keyPages, page);
+        if (KEYS.getVolatile(keys, offset) == null) {
+            KEYS.compareAndSet(keys, offset, null, stoka);
+        }
+
+        return quantities;
+    }
+
+//      Създава страницата page, като при нужда удължава директорията.
+//      Директорията се копира само под ключалката, затова създадена страница не може да се загуби при растеж.
+
+    private synchronized long[] allocate(int page) {
+        long[][] quantities = this.quantityPages;
+        if (page >= quantities.length) {
+            int newLength = Math.max(page + 1, quantities.length * 2);
+            long[][] newQuantities = new long[newLength][];
+            Stoka[][] newKeys = new Stoka[newLength][];
+
+            System.arraycopy(quantities, 0, newQuantities, 0, quantities.length);
+            System.arraycopy(this.keyPages, 0, newKeys, 0, quantities.length);
+
+            this.keyPages = newKeys;
+            this.quantityPages = newQuantities;
+            quantities = newQuantities;
+        }
+
+        long[] existing = quantityPage(quantities, page);
+        if (existing != null) {
+            return existing;
+        }
+
+        // Ключовете се публикуват преди количествата - който види новата страница, вижда и ключовете
+        long[] created = new long[PAGE_SIZE];
+        KEY_PAGES.setVolatile(this.keyPages, page, new Stoka[PAGE_SIZE]);
+        QUANTITY_PAGES.setVolatile(quantities, page, created);
+        return created;
+    }
+
+    private class MapView extends AbstractMap<Stoka, Double> {
+
+        @Override
+        public Double get(Object key) {
+            if (!(key instanceof Stoka)) {
+                return null;
+            }
+
+            long milli = getMilli((Stoka) key);
+            return milli == 0 ? null : fromMilli(milli);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof Stoka && getMilli((Stoka) key) != 0;
+        }
+
+        // Нулата означава липсваща стока - ключ с 0 не може да се запази, затова се изисква remove
+        @Override
+        public Double put(Stoka key, Double value) {
+            long milli = toMilli(value);
+            if (milli == 0) {
+                throw new IllegalArgumentException("Количеството трябва да е различно от 0 - за премахване използвайте remove");
+            }
+
+            Double previous = get(key);
+            setMilli(key, milli);
+            return previous;
+        }
+
+        @Override
+        public Double remove(Object key) {
+            if (!(key instanceof Stoka)) {
+                return null;
+            }
+
+            Double previous = get(key);
+            setMilli((Stoka) key, 0);
+            return previous;
+        }
+
+        @Override
+        public Double merge(Stoka key, Double value, BiFunction<? super Double, ? super Double, ? extends Double> remapping) {
+            return compute(key, (k, oldValue) -> oldValue == null ? value : remapping.apply(oldValue, value));
+        }
+
+        // Атомарно чрез CAS върху клетката - функцията може да бъде извикана повече от веднъж.
+        // Резултат 0 премахва стоката както null - връща се null, защото ключът вече липсва.
+        @Override
+        public Double compute(Stoka key, BiFunction<? super Stoka, ? super Double, ? extends Double> remapping) {
+            while (true) {
+                long oldMilli = getMilli(key);
+                Double newValue = remapping.apply(key, oldMilli == 0 ? null : fromMilli(oldMilli));
+                long newMilli = newValue == null ? 0 : toMilli(newValue);
+
+                if (compareAndSetMilli(key, oldMilli, newMilli)) {
+                    return newMilli == 0 ? null : newValue;
+                }
+            }
+        }
+
+        @Override
+        public void clear() {
+            QuantityLedger.this.clear();
+        }
+
+        @Override
+        public Set<Entry<Stoka, Double>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<Stoka, Double>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    int count = 0;
+                    long[][] pages = quantityPages;
+                    for (int p = 0; p < pages.length; p++) {
+                        long[] page = quantityPage(pages, p);
+                        if (page == null) {
+                            continue;
+                        }
+                        for (int i = 0; i < page.length; i++) {
+                            if ((long) QUANTITIES.getVolatile(page, i) != 0) {
+                                count++;
+                            }
+                        }
+                    }
+                    return count;
+                }
+            };
+        }
+    }
+
+    private class EntryIterator implements Iterator<Map.Entry<Stoka, Double>> {
+        private final long[][] pages = quantityPages;
+        private final Stoka[][] keys = keyPages;
+        private int position = -1;
+        private Map.Entry<Stoka, Double> next;
+        private Stoka last;
+
+        EntryIterator() {
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            int capacity = pages.length << PAGE_SHIFT;
+
+            while (++position < capacity) {
+                long[] page = quantityPage(pages, position >>> PAGE_SHIFT);
+                if (page == null) {
+                    // Несъздадената страница се прескача цялата
+                    position |= PAGE_MASK;
+                    continue;
+                }
+
+                long milli = (long) QUANTITIES.getVolatile(page, position & PAGE_MASK);
+                if (milli != 0) {
+                    Stoka stoka = (Stoka) KEYS.getVolatile(keyPage(keys, position >>> PAGE_SHIFT), position & PAGE_MASK);
+                    if (stoka != null) {
+                        next = new AbstractMap.SimpleImmutableEntry<>(stoka, fromMilli(milli));
+                        return;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<Stoka, Double> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+
+            Map.Entry<Stoka, Double> current = next;
+            last = current.getKey();
+            advance();
+            return current;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+
+            setMilli(last, 0);
+            last = null;
+        }
+    }
+}
@@ -3,6 +3,8 @@ package org.store.data;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class Receipt {
@@ -10,6 +12,8 @@ public class Receipt {
     private Cashier cashier;
     private LocalDate issueDate;
     private Map<Stoka, Double> stoka;
+    private BigDecimal totalPrice;
+    private Map<Stoka, Long> unitPrices;
 
     public Receipt(String serialNumber, Cashier cashier, LocalDate issueDate, Map<Stoka, Double> stoka) {
         this.serialNumber = serialNumber;
@@ -18,6 +22,18 @@ public class Receipt {
         this.stoka = stoka;
     }
 
+    // Бележка от касата - цените и сумата са фиксираните при плащането, а не текущите цени на стоките
+    public Receipt(String serialNumber, Cashier cashier, LocalDate issueDate, PricedCart sale) {
+        this(serialNumber, cashier, issueDate, sale.getItems());
+
+        Map<Stoka, Long> prices = new LinkedHashMap<>();
+        for (int line = 0; line < sale.size(); line++) {
+            prices.put(sale.getStoka(line), sale.getUnitPriceStotinki(line));
+        }
+        this.unitPrices = Collections.unmodifiableMap(prices);
+        this.totalPrice = sale.getTotal();
+    }
+
     public Receipt(int i, Cashier cashier, Map<Stoka, Double> stoki, LocalDateTime now) {
     }
 
@@ -52,6 +68,30 @@ public class Receipt {
     public void setStoka(Map<Stoka, Double> stoka) {
         this.stoka = stoka;
     }
+
+    // Платената сума, ако касата я е записала (с отстъпките към момента на продажбата)
+    public BigDecimal getTotalPrice() {
+        return totalPrice;
+    }
+
+    public void setTotalPrice(BigDecimal totalPrice) {
+        this.totalPrice = totalPrice;
+    }
+
+    // Платените единични цени в стотинки по стока или null, ако бележката не ги носи
+    public Map<Stoka, Long> getUnitPrices() {
+        return unitPrices;
+    }
+
+    public void setUnitPrices(Map<Stoka, Long> unitPrices) {
+        this.unitPrices = unitPrices;
+    }
+
+    // Платената единична цена на реда, а за бележка без записани цени - текущата цена на стоката
+    public long getUnitPriceStotinki(Stoka stoka) {
+        Long price = unitPrices == null ? null : unitPrices.get(stoka);
+        return price != null ? price : stoka.getPriceStotinki();
+    }
 }
 
 
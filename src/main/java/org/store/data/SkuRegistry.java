@@ -0,0 +1,42 @@
+package org.store.data;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Раздава компактни поредни номера (SKU индекси) на стоките.
+// Индексът зависи само от id на стоката, така две копия на една и съща стока
+// (например прочетени отново от диска или копията в магазините на веригата) получават един и същ индекс.
+//
+// Регистърът е общ за JVM и не освобождава номера - един запис на всеки различен id.
+// Растежът е ограничен до броя различни стоки в каталога на веригата (MAX_SKUS), а не до продажбите.
+// Регистрите на магазините (QuantityLedger, PricingEngine) създават страница само за стоките, които
+// наистина пипат, затова паметта на магазин не расте с каталога на останалите магазини.
+public final class SkuRegistry {
+    public static final int MAX_SKUS = 1 << 24;
+
+    private static final Map<UUID, Integer> indexes = new ConcurrentHashMap<>();
+    private static final AtomicInteger nextIndex = new AtomicInteger(0);
+
+    private SkuRegistry() {
+    }
+
+    public static int indexFor(UUID id) {
+        Integer index = indexes.get(id);
+        if (index != null) {
+            return index;
+        }
+
+        return indexes.computeIfAbsent(id, key -> {
+            if (nextIndex.get() >= MAX_SKUS) {
+                throw new IllegalStateException("Достигнат е максималният брой различни стоки: " + MAX_SKUS);
+            }
+            return nextIndex.getAndIncrement();
+        });
+    }
+
+    public static int size() {
+        return nextIndex.get();
+    }
+}
@@ -1,28 +1,65 @@
 package org.store.data;
 
+import org.store.enums.LogEvent;
 import org.store.enums.StokaCategory;
+import org.store.log.DiagnosticLog;
+import org.store.money.MoneyMath;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Stoka {
+    private static final StokaPriceListener[] NO_LISTENERS = new StokaPriceListener[0];
+
     private UUID id;
     private String name;
+    private byte[] nameUtf8;
     private BigDecimal deliveryPrice;
     private BigDecimal price;
+    private volatile long priceStotinki;
     private LocalDate expirationDate;
     private StokaCategory stokaCategory;
+    private final int skuIndex;
+    private volatile StokaPriceListener[] priceListeners = NO_LISTENERS;
+
+    // Нараства при смяна на цената - кешираните суми на количките се сверяват с нея.
+    // Собствена за стоката, докато не влезе в каталога на магазин; после е общата за магазина,
+    // така смяна на цена в един магазин не обезсилва сумите на количките в другите.
+    private volatile AtomicLong priceVersion = new AtomicLong();
+    private boolean priceVersionBound;
 
     public Stoka(String id, String name, BigDecimal deliveryPrice, BigDecimal price,
                  LocalDate expirationDate, StokaCategory stokaCategory) {
-        this.id = UUID.randomUUID();
+        this(UUID.randomUUID(), name, deliveryPrice, price, expirationDate, stokaCategory);
+    }
+
+    // Възстановява вече съществуваща стока (например прочетена от журнала) със същия id
+    public Stoka(UUID id, String name, BigDecimal deliveryPrice, BigDecimal price,
+                 LocalDate expirationDate, StokaCategory stokaCategory) {
+        this.id = id;
         this.name = name;
         this.deliveryPrice = deliveryPrice;
         this.price = price;
+        this.priceStotinki = price == null ? 0 : MoneyMath.toStotinki(price);
         this.expirationDate = expirationDate;
         this.stokaCategory = stokaCategory;
+        this.skuIndex = SkuRegistry.indexFor(this.id);
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    // Компактен пореден номер на стоката - използва се като индекс в QuantityLedger
+    public int getSkuIndex() {
+        return skuIndex;
     }
 
     public BigDecimal getDeliveryPrice() {
@@ -33,10 +70,25 @@ public class Stoka {
         return price;
     }
 
+    // Цената в стотинки - пресмятанията на суми работят с нея, без да създават BigDecimal
+    public long getPriceStotinki() {
+        return priceStotinki;
+    }
+
     public String getName() {
         return name;
     }
 
+    // Името в UTF-8 за печат на бележки - кодира се веднъж; масивът не трябва да се променя
+    public byte[] getNameUtf8() {
+        byte[] bytes = this.nameUtf8;
+        if (bytes == null) {
+            bytes = this.name.getBytes(StandardCharsets.UTF_8);
+            this.nameUtf8 = bytes;
+        }
+        return bytes;
+    }
+
     public LocalDate getExpirationDate() {
         return expirationDate;
     }
@@ -46,7 +98,52 @@ public class Stoka {
     }
 
     public void setPrice(BigDecimal price) {
-        this.price = price;
+        long oldPriceStotinki;
+        long newPriceStotinki;
+        // Цената и версията се сменят заедно с bindPriceVersion - версията не може да се увеличи на старото място
+        synchronized (this) {
+            oldPriceStotinki = this.priceStotinki;
+            this.price = price;
+            this.priceStotinki = MoneyMath.toStotinki(price);
+            newPriceStotinki = this.priceStotinki;
+            this.priceVersion.incrementAndGet();
+        }
+
+        for (StokaPriceListener listener : this.priceListeners) {
+            listener.priceChanged(this, oldPriceStotinki, newPriceStotinki);
+        }
+    }
+
+    // Версията на цените, от която зависи тази стока - чете се преди цената
+    AtomicLong getPriceVersion() {
+        return priceVersion;
+    }
+
+//      Свързва стоката с версията на цените на магазина (при първото влизане в каталог).
+//      Собствената версия се увеличава, за да не важат сумите, изчислени спрямо нея.
+
+    synchronized void bindPriceVersion(AtomicLong storeVersion) {
+        if (priceVersionBound) {
+            return;
+        }
+
+        AtomicLong own = this.priceVersion;
+        this.priceVersion = storeVersion;
+        this.priceVersionBound = true;
+        own.incrementAndGet();
+    }
+
+    // Слушателите са малко (обикновено само каталогът), затова масивът се копира при промяна
+    public synchronized void addPriceListener(StokaPriceListener listener) {
+        StokaPriceListener[] listeners = Arrays.copyOf(this.priceListeners, this.priceListeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+        this.priceListeners = listeners;
+    }
+
+    public synchronized void removePriceListener(StokaPriceListener listener) {
+        List<StokaPriceListener> listeners = new ArrayList<>(Arrays.asList(this.priceListeners));
+        listeners.remove(listener);
+        this.priceListeners = listeners.toArray(NO_LISTENERS);
     }
 
     @Override
@@ -71,7 +168,7 @@ public class Stoka {
 
     @Override
     public int hashCode() {
-        return Objects.hash(id);
+        return id.hashCode();
     }
 
     public boolean isExpired() {
@@ -80,7 +177,7 @@ public class Stoka {
         boolean isBeforeToday = expDate.isBefore(today);
 
         if (isBeforeToday == true) {
-            System.out.println("ВНИМАНИЕ: Продуктът " + this.name + " е с изтекъл срок на годност!");
+            DiagnosticLog.shared().log(LogEvent.STOKA_EXPIRED, this.name);
             return true;
         }
 
@@ -91,8 +188,12 @@ public class Stoka {
         return !this.isExpired();
     }
 
+    // Срокът определя отстъпката за изтичащ срок - затова сменя и версията на цените
     public void setExpirationDate(LocalDate newExpirationDate) {
-        this.expirationDate = newExpirationDate;
+        synchronized (this) {
+            this.expirationDate = newExpirationDate;
+            this.priceVersion.incrementAndGet();
+        }
     }
 
     public void setDeliveryPrice(BigDecimal deliveryPrice) {
@@ -0,0 +1,6 @@
+package org.store.data;
+
+// Извиква се след всяка смяна на продажната цена на стоката (например от каталога, за да пренареди индекса си)
+public interface StokaPriceListener {
+    void priceChanged(Stoka stoka, long oldPriceStotinki, long newPriceStotinki);
+}
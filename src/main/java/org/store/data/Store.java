@@ -1,35 +1,78 @@
 package org.store.data;
 
+import org.store.concurrent.MoneyAccumulator;
+import org.store.concurrent.StokaLocks;
 import org.store.enums.StokaCategory;
+import org.store.journal.ReceiptPersister;
+import org.store.journal.StoreEventLog;
+import org.store.metrics.StoreMetrics;
+import org.store.service.ExpirySweeper;
+import org.store.service.ReceiptSerialSource;
 
+import java.math.BigDecimal;
 import java.util.EnumMap;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class Store {
     private HashSet<Cashier> cashiers;
-    private Map<Stoka, Double> deliveredStoka;
-    private Map<Stoka, Double> inventory;
-    private Map<Stoka, Double> soldStoka;
+    private final QuantityLedger deliveredStoka;
+    private final QuantityLedger inventory;
+    private final QuantityLedger soldStoka;
+    private final QuantityLedger writtenOffStoka;
+    private final QuantityLedger reservedStoka;
+    private final Map<Stoka, BigDecimal> deliveryCosts;
+    private final Map<Stoka, BigDecimal> soldRevenue;
+    private final Map<Stoka, BigDecimal> writeOffCosts;
+    private final MoneyAccumulator deliveryExpensesTotal;
+    private final MoneyAccumulator soldRevenueTotal;
+    private final MoneyAccumulator salaryExpensesTotal;
+    private final MoneyAccumulator writeOffTotal;
     private HashSet<Receipt> issuedReceipts;
     private int countDaysForExpiryDateDiscount;
     private double expiryDateDiscount;
     private EnumMap<StokaCategory, Double> marginPercentByCategory;
+    private final StokaLocks stokaLocks;
+    private final ExpiryIndex expiryIndex;
+    private final Catalogue catalogue;
+    private final PricingEngine pricingEngine;
+    private final StoreMetrics metrics;
+    private ReceiptSerialSource receiptSerialSource;
+    private volatile StoreEventLog eventLog;
+    private volatile ReceiptPersister receiptPersister;
+    private final AtomicReference<ExpirySweeper> expirySweeper = new AtomicReference<>();
 
     public Store(int countDaysForExpiryDateDiscount, double expiryDateDiscount, EnumMap<StokaCategory, Double> marginPercentByCategory) {
         this.cashiers = new HashSet<>();
-        this.deliveredStoka = new HashMap<>();
-        this.inventory = new HashMap<>();
-        this.soldStoka = new HashMap<>();
+        this.deliveredStoka = new QuantityLedger();
+        this.inventory = new QuantityLedger();
+        this.soldStoka = new QuantityLedger();
+        this.writtenOffStoka = new QuantityLedger();
+        this.reservedStoka = new QuantityLedger();
+        this.deliveryCosts = new ConcurrentHashMap<>();
+        this.soldRevenue = new ConcurrentHashMap<>();
+        this.writeOffCosts = new ConcurrentHashMap<>();
+        this.deliveryExpensesTotal = new MoneyAccumulator();
+        this.soldRevenueTotal = new MoneyAccumulator();
+        this.salaryExpensesTotal = new MoneyAccumulator();
+        this.writeOffTotal = new MoneyAccumulator();
         this.issuedReceipts = new HashSet<>();
         this.countDaysForExpiryDateDiscount = countDaysForExpiryDateDiscount;
         this.expiryDateDiscount = expiryDateDiscount;
         this.marginPercentByCategory = marginPercentByCategory;
+        this.stokaLocks = new StokaLocks(64);
+        this.expiryIndex = new ExpiryIndex();
+        this.catalogue = new Catalogue();
+        this.pricingEngine = new PricingEngine(marginPercentByCategory, countDaysForExpiryDateDiscount, expiryDateDiscount);
+        this.receiptSerialSource = ReceiptSerialSource.shared();
+        this.metrics = new StoreMetrics(this);
     }
 
+    // Гетърите връщат изглед като Map върху регистрите с количества
     public Map<Stoka, Double> getDeliveredStoka() {
-        return deliveredStoka;
+        return deliveredStoka.asMap();
     }
 
     public HashSet<Cashier> getCashiers() {
@@ -37,13 +80,71 @@ public class Store {
     }
 
     public Map<Stoka, Double> getSoldStoka() {
-        return soldStoka;
+        return soldStoka.asMap();
     }
 
     public Map<Stoka, Double> getInventory() {
+        return inventory.asMap();
+    }
+
+    // Бракувани количества - стоки с изтекъл срок, извадени от наличността
+    public Map<Stoka, Double> getWrittenOffStoka() {
+        return writtenOffStoka.asMap();
+    }
+
+    // Общ разход за доставка по стока (цена на доставка x доставено количество)
+    public Map<Stoka, BigDecimal> getDeliveryCosts() {
+        return deliveryCosts;
+    }
+
+    // Приход от продажби по стока - по цената в момента на продажбата
+    public Map<Stoka, BigDecimal> getSoldRevenue() {
+        return soldRevenue;
+    }
+
+    // Стойност на бракуваните стоки по стока - по цена на доставка
+    public Map<Stoka, BigDecimal> getWriteOffCosts() {
+        return writeOffCosts;
+    }
+
+    // Текущи суми, които се обновяват при всяка доставка, продажба и назначаване на касиер
+    public BigDecimal getDeliveryExpensesTotal() {
+        return deliveryExpensesTotal.get();
+    }
+
+    public BigDecimal getSoldRevenueTotal() {
+        return soldRevenueTotal.get();
+    }
+
+    public BigDecimal getSalaryExpensesTotal() {
+        return salaryExpensesTotal.get();
+    }
+
+    public BigDecimal getWriteOffTotal() {
+        return writeOffTotal.get();
+    }
+
+    public QuantityLedger getDeliveredLedger() {
+        return deliveredStoka;
+    }
+
+    public QuantityLedger getInventoryLedger() {
         return inventory;
     }
 
+    public QuantityLedger getSoldLedger() {
+        return soldStoka;
+    }
+
+    public QuantityLedger getWrittenOffLedger() {
+        return writtenOffStoka;
+    }
+
+    // Запазено за прехвърляне към друг магазин - извън наличността, но още в магазина
+    public QuantityLedger getReservedLedger() {
+        return reservedStoka;
+    }
+
     public int getCountDaysForExpiryDateDiscount() {
         return countDaysForExpiryDateDiscount;
     }
@@ -56,40 +157,178 @@ public class Store {
         return marginPercentByCategory;
     }
 
+//      Нова надценка за категорията - продажните цени на всички стоки от нея в каталога
+//      се преизчисляват от цената им на доставка, а кешираните цени в касите стават невалидни.
+
+    public void setMarginPercent(StokaCategory category, double marginPercent) {
+        this.pricingEngine.setMarginPercent(category, marginPercent);
+        this.marginPercentByCategory.put(category, marginPercent);
+
+        for (Stoka stoka : this.catalogue.byCategory(category)) {
+            this.pricingEngine.reprice(stoka);
+        }
+    }
+
+    // Нова отстъпка за изтичащ срок - важи от следващото поискване на цена
+    public void setExpiryDiscount(int countDays, double discountPercent) {
+        this.pricingEngine.setExpiryDiscount(countDays, discountPercent);
+        this.countDaysForExpiryDateDiscount = countDays;
+        this.expiryDateDiscount = discountPercent;
+    }
+
+    // Продажните и ефективните цени на стоките според надценките и отстъпката
+    public PricingEngine getPricingEngine() {
+        return pricingEngine;
+    }
+
+    // Времената на плащане, доставка и справки - за снимка или експорт към Prometheus
+    public StoreMetrics getMetrics() {
+        return metrics;
+    }
+
+    public StokaLocks getStokaLocks() {
+        return stokaLocks;
+    }
+
+    // Наличните стоки със срок на годност, подредени по ден на изтичане
+    public ExpiryIndex getExpiryIndex() {
+        return expiryIndex;
+    }
+
+    // Всички стоки, доставяни някога в магазина, с индекси по категория, цена и име
+    public Catalogue getCatalogue() {
+        return catalogue;
+    }
+
+    public ReceiptSerialSource getReceiptSerialSource() {
+        return receiptSerialSource;
+    }
+
+    // По подразбиране е общият източник, който пази номерата във файл между рестартите
+    public void setReceiptSerialSource(ReceiptSerialSource receiptSerialSource) {
+        this.receiptSerialSource = receiptSerialSource;
+    }
+
+    // Журнал на промените или null, ако магазинът не се пази между рестартите
+    public StoreEventLog getEventLog() {
+        return eventLog;
+    }
+
+    public void setEventLog(StoreEventLog eventLog) {
+        this.eventLog = eventLog;
+    }
+
+    // Опашка за запис на бележките или null, ако бележките не се пазят
+    public ReceiptPersister getReceiptPersister() {
+        return receiptPersister;
+    }
+
+    public void setReceiptPersister(ReceiptPersister receiptPersister) {
+        this.receiptPersister = receiptPersister;
+    }
+
+    // Фоновото почистване на изтеклите стоки или null, ако не е пуснато - за метриките
+    public ExpirySweeper getExpirySweeper() {
+        return expirySweeper.get();
+    }
+
+    public void setExpirySweeper(ExpirySweeper expirySweeper) {
+        this.expirySweeper.set(expirySweeper);
+    }
+
+    // Маха почистващия само ако още е той - по-нов, вече регистриран, остава
+    public void clearExpirySweeper(ExpirySweeper expirySweeper) {
+        this.expirySweeper.compareAndSet(expirySweeper, null);
+    }
+
+    // Сетърите презареждат съдържанието на регистъра от подадената карта
     public void setSoldStoka(Map<Stoka, Double> soldStoka) {
-        this.soldStoka = soldStoka;
+        replaceContents(this.soldStoka, soldStoka);
+
+        // Без информация за отделните продажби приемаме текущата продажна цена
+        this.soldRevenue.clear();
+        BigDecimal total = BigDecimal.ZERO;
+        for (Map.Entry<Stoka, Double> entry : soldStoka.entrySet()) {
+            Stoka stoka = entry.getKey();
+            BigDecimal revenue = stoka.getPrice().multiply(BigDecimal.valueOf(entry.getValue()));
+            this.soldRevenue.put(stoka, revenue);
+            total = total.add(revenue);
+        }
+        this.soldRevenueTotal.set(total);
     }
 
-    public void setCashiers(HashSet<Cashier> cashiers) {
+    public synchronized void setCashiers(HashSet<Cashier> cashiers) {
         this.cashiers = cashiers;
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (Cashier cashier : cashiers) {
+            total = total.add(cashier.getMonthlySalary());
+        }
+        this.salaryExpensesTotal.set(total);
     }
 
     public void setInventory(Map<Stoka, Double> inventory) {
-        this.inventory = inventory;
+        replaceContents(this.inventory, inventory);
     }
 
     public void setDeliveredStoka(Map<Stoka, Double> deliveredStoka) {
-        this.deliveredStoka = deliveredStoka;
+        replaceContents(this.deliveredStoka, deliveredStoka);
+
+        // Без информация за отделните доставки приемаме текущата цена на доставка
+        this.deliveryCosts.clear();
+        BigDecimal total = BigDecimal.ZERO;
+        for (Map.Entry<Stoka, Double> entry : deliveredStoka.entrySet()) {
+            Stoka stoka = entry.getKey();
+            BigDecimal cost = stoka.getDeliveryPrice().multiply(BigDecimal.valueOf(entry.getValue()));
+            this.deliveryCosts.put(stoka, cost);
+            total = total.add(cost);
+        }
+        this.deliveryExpensesTotal.set(total);
     }
 
-    public void addToInventory(Stoka stoka) {
-        if (this.inventory.containsKey(stoka)) {
-            double oldQuantity = this.inventory.get(stoka);
-            double newQuantity = oldQuantity + 1;
-            this.inventory.put(stoka, newQuantity);
-        } else {
-            this.inventory.put(stoka, 1.0);
+    private void replaceContents(QuantityLedger ledger, Map<Stoka, Double> quantities) {
+        if (quantities == ledger.asMap()) {
+            return;
         }
+
+        ledger.clear();
+        for (Map.Entry<Stoka, Double> entry : quantities.entrySet()) {
+            ledger.setMilli(entry.getKey(), QuantityLedger.toMilli(entry.getValue()));
+        }
+    }
+
+    // Добавянето е атомарно - не губим бройки при едновременни доставки
+    public void addToInventory(Stoka stoka) {
+        this.inventory.addMilli(stoka, QuantityLedger.SCALE);
+    }
+
+    public void addToInventory(Stoka stoka, double quantity) {
+        this.inventory.addMilli(stoka, QuantityLedger.toMilli(quantity));
     }
     
     public void addToDeliveredStoka(Stoka stoka) {
-        if (this.deliveredStoka.containsKey(stoka)) {
-            double oldQuantity = this.deliveredStoka.get(stoka);
-            double newQuantity = oldQuantity + 1;
-            this.deliveredStoka.put(stoka, newQuantity);
-        } else {
-            this.deliveredStoka.put(stoka, 1.0);
-        }
+        addToDeliveredStoka(stoka, 1.0, stoka.getDeliveryPrice());
+    }
+
+    // Записва доставеното количество заедно с общия разход за него
+    public void addToDeliveredStoka(Stoka stoka, double quantity, BigDecimal totalDeliveryCost) {
+        this.deliveredStoka.addMilli(stoka, QuantityLedger.toMilli(quantity));
+        this.deliveryCosts.merge(stoka, totalDeliveryCost, BigDecimal::add);
+        this.deliveryExpensesTotal.add(totalDeliveryCost);
+    }
+
+    // Записва продаденото количество заедно с прихода от него
+    public void addToSoldStoka(Stoka stoka, double quantity, BigDecimal totalRevenue) {
+        this.soldStoka.addMilli(stoka, QuantityLedger.toMilli(quantity));
+        this.soldRevenue.merge(stoka, totalRevenue, BigDecimal::add);
+        this.soldRevenueTotal.add(totalRevenue);
+    }
+
+    // Записва бракуваното количество заедно със стойността му
+    public void addToWrittenOff(Stoka stoka, double quantity, BigDecimal totalValue) {
+        this.writtenOffStoka.addMilli(stoka, QuantityLedger.toMilli(quantity));
+        this.writeOffCosts.merge(stoka, totalValue, BigDecimal::add);
+        this.writeOffTotal.add(totalValue);
     }
 
     @Override
@@ -106,7 +345,11 @@ public class Store {
                 '}';
     }
 
-    public void addCashier(Cashier cashier) {
-
+    public synchronized boolean addCashier(Cashier cashier) {
+        if (this.cashiers.add(cashier)) {
+            this.salaryExpensesTotal.add(cashier.getMonthlySalary());
+            return true;
+        }
+        return false;
     }
 }
\ No newline at end of file
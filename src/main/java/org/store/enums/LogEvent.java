@@ -0,0 +1,36 @@
+package org.store.enums;
+
+// Видовете диагностични събития - ниво и текст, в който {} се заменят с аргументите на събитието.
+// Текстът се сглобява в нишката на журнала, а не в тази, която записва събитието.
+public enum LogEvent {
+    CART_ITEM_ADDED(LogLevel.DEBUG, "Добавени в количката: {} бр. от {}"),
+    CART_INVALID_QUANTITY(LogLevel.WARN, "Невалидно количество {} за {}"),
+    STOKA_EXPIRED(LogLevel.WARN, "Продуктът {} е с изтекъл срок на годност!"),
+    EXPIRATION_DATE_CORRECTED(LogLevel.WARN, "Стоката {} е с невалиден срок на годност {} - коригиран на {}"),
+    DELIVERY_REJECTED_EXPIRED(LogLevel.ERROR, "Стоката {} е с изтекъл срок и не може да бъде доставена!"),
+    RECEIPT_EMPTY(LogLevel.WARN, "Празна касова бележка!"),
+    RECEIPT_WRITE_FAILED(LogLevel.ERROR, "{} касови бележки не са записани в журнала: {}"),
+    RECEIPT_INDEX_FAILED(LogLevel.WARN, "Индексът на бележките не е обновен: {}"),
+    EVENT_APPEND_FAILED(LogLevel.ERROR, "Събитие не е добавено в журнала на магазина: {}"),
+    EVENT_SYNC_FAILED(LogLevel.ERROR, "Грешка при запис на журнала на магазина на диска: {}"),
+    EXPIRY_WRITE_OFF_FAILED(LogLevel.ERROR, "Стоката {} не е бракувана при почистването: {}"),
+    EXPIRY_SWEEP_FAILED(LogLevel.ERROR, "Почистването на изтеклите стоки е прекъснато: {}"),
+    SNAPSHOT_FAILED(LogLevel.ERROR, "Грешка при запис на копие на магазина: {}"),
+    METRICS_EXPORT_FAILED(LogLevel.ERROR, "Грешка при запис на метриките: {}");
+
+    private final LogLevel level;
+    private final String message;
+
+    LogEvent(LogLevel level, String message) {
+        this.level = level;
+        this.message = message;
+    }
+
+    public LogLevel getLevel() {
+        return level;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
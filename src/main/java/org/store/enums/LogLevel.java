@@ -0,0 +1,10 @@
+package org.store.enums;
+
+// Нивата на диагностичния журнал - събитие се записва, ако нивото му е поне зададеното
+public enum LogLevel {
+    DEBUG,
+    INFO,
+    WARN,
+    ERROR,
+    OFF
+}
@@ -0,0 +1,8 @@
+package org.store.enums;
+
+// Видовете метрики - имената съвпадат с TYPE реда във формата на Prometheus
+public enum MetricType {
+    COUNTER,
+    GAUGE,
+    SUMMARY
+}
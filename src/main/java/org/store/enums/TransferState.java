@@ -0,0 +1,8 @@
+package org.store.enums;
+
+// Състоянието на запазено за прехвърляне количество - от RESERVED към едно от крайните
+public enum TransferState {
+    RESERVED,
+    COMMITTED,
+    CANCELLED
+}
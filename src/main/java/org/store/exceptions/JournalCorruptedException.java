@@ -0,0 +1,11 @@
+package org.store.exceptions;
+
+public class JournalCorruptedException extends RuntimeException {
+    public JournalCorruptedException(String message) {
+        super(message);
+    }
+
+    public JournalCorruptedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,54 @@
+package org.store.journal;
+
+// Място на един запис в журнала - номер на сегмент, отместване и размер на записа.
+// sequence е поредният номер на записа в текущата сесия на журнала и служи за изчакване на запис на диска.
+public class JournalPosition implements Comparable<JournalPosition> {
+    private final int segment;
+    private final long offset;
+    private final int size;
+    private final long sequence;
+
+    public JournalPosition(int segment, long offset, int size, long sequence) {
+        this.segment = segment;
+        this.offset = offset;
+        this.size = size;
+        this.sequence = sequence;
+    }
+
+    public int getSegment() {
+        return segment;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    // Отместването веднага след записа
+    public long getEndOffset() {
+        return offset + size;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public int compareTo(JournalPosition other) {
+        int bySegment = Integer.compare(this.segment, other.segment);
+        return bySegment != 0 ? bySegment : Long.compare(this.offset, other.offset);
+    }
+
+    @Override
+    public String toString() {
+        return "JournalPosition{" +
+                "segment=" + segment +
+                ", offset=" + offset +
+                ", size=" + size +
+                ", sequence=" + sequence +
+                '}';
+    }
+}
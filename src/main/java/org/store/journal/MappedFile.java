@@ -0,0 +1,73 @@
+package org.store.journal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Файл, достъпен чрез memory mapping на части (по 1 GiB) - отместванията са long,
+// затова размерът не е ограничен до 2 GiB, колкото побира един MappedByteBuffer.
+// Полетата (int и long) трябва да са подравнени на 8 байта, за да не попадат на границата между две части.
+final class MappedFile {
+    static final int DEFAULT_REGION_SHIFT = 30;
+
+    private final MappedByteBuffer[] regions;
+    private final int regionShift;
+    private final long regionMask;
+    private final long size;
+
+    private MappedFile(MappedByteBuffer[] regions, int regionShift, long size) {
+        this.regions = regions;
+        this.regionShift = regionShift;
+        this.regionMask = (1L << regionShift) - 1;
+        this.size = size;
+    }
+
+    // Файлът се създава или удължава до size байта
+    static MappedFile map(Path path, long size, int regionShift) throws IOException {
+        long regionSize = 1L << regionShift;
+        int count = (int) ((size + regionSize - 1) >>> regionShift);
+        MappedByteBuffer[] regions = new MappedByteBuffer[count];
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            for (int i = 0; i < count; i++) {
+                long start = (long) i << regionShift;
+                regions[i] = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(regionSize, size - start));
+            }
+        }
+
+        return new MappedFile(regions, regionShift, size);
+    }
+
+    long size() {
+        return size;
+    }
+
+    int getInt(long position) {
+        return region(position).getInt((int) (position & regionMask));
+    }
+
+    void putInt(long position, int value) {
+        region(position).putInt((int) (position & regionMask), value);
+    }
+
+    long getLong(long position) {
+        return region(position).getLong((int) (position & regionMask));
+    }
+
+    void putLong(long position, long value) {
+        region(position).putLong((int) (position & regionMask), value);
+    }
+
+    void force() {
+        for (MappedByteBuffer region : regions) {
+            region.force();
+        }
+    }
+
+    private MappedByteBuffer region(long position) {
+        return regions[(int) (position >>> regionShift)];
+    }
+}
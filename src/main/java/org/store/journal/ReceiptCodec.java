@@ -0,0 +1,166 @@
+package org.store.journal;
+
+import org.store.data.Cashier;
+import org.store.data.Receipt;
+import org.store.data.Stoka;
+import org.store.enums.StokaCategory;
+import org.store.money.MoneyMath;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+// Двоичен формат на една касова бележка в журнала.
+// Бележка: номер, касиер (id и име), дата като epoch day и редовете със стоки.
+// Всеки ред пази достатъчно от стоката, за да може тя да бъде възстановена със същия id;
+// цената на реда е платената единична цена (Receipt.getUnitPriceStotinki), а не цената при записа.
+// След редовете следва платената сума, ако касата я е записала. По-старите записи свършват след редовете -
+// за тях сумата липсва, а цената на реда е тази от момента на записа.
+public class ReceiptCodec {
+    static final long NO_DATE = Long.MIN_VALUE;
+    private static final StokaCategory[] CATEGORIES = StokaCategory.values();
+
+    private final Map<UUID, Stoka> knownStoki = new HashMap<>();
+    private final Map<String, Cashier> knownCashiers = new HashMap<>();
+    private final Function<UUID, Stoka> catalogue;
+
+    // catalogue връща вече заредена стока по id или null - тогава стоката се възстановява от записа
+    public ReceiptCodec(Function<UUID, Stoka> catalogue) {
+        this.catalogue = catalogue;
+    }
+
+    public ReceiptCodec() {
+        this(id -> null);
+    }
+
+    public static void encode(Receipt receipt, ByteBuffer buffer) {
+        putString(buffer, receipt.getSerialNumber());
+
+        Cashier cashier = receipt.getCashier();
+        putString(buffer, cashier == null ? "" : cashier.getId());
+        putString(buffer, cashier == null ? "" : cashier.getName());
+
+        LocalDate issueDate = receipt.getIssueDate();
+        buffer.putLong(issueDate == null ? NO_DATE : issueDate.toEpochDay());
+
+        Map<Stoka, Double> lines = receipt.getStoka();
+        buffer.putInt(lines == null ? 0 : lines.size());
+        if (lines != null) {
+            putLines(buffer, receipt, lines);
+        }
+
+        BigDecimal totalPrice = receipt.getTotalPrice();
+        buffer.put(totalPrice == null ? (byte) 0 : (byte) 1);
+        if (totalPrice != null) {
+            putDecimal(buffer, totalPrice);
+        }
+    }
+
+    private static void putLines(ByteBuffer buffer, Receipt receipt, Map<Stoka, Double> lines) {
+        for (Map.Entry<Stoka, Double> entry : lines.entrySet()) {
+            Stoka stoka = entry.getKey();
+            UUID id = stoka.getId();
+
+            buffer.putLong(id.getMostSignificantBits());
+            buffer.putLong(id.getLeastSignificantBits());
+            putString(buffer, stoka.getName());
+            putDecimal(buffer, stoka.getDeliveryPrice());
+            putDecimal(buffer, MoneyMath.toBigDecimal(receipt.getUnitPriceStotinki(stoka)));
+            buffer.putLong(stoka.getExpirationDate() == null ? NO_DATE : stoka.getExpirationDate().toEpochDay());
+            buffer.put((byte) stoka.getStokaCategory().ordinal());
+            buffer.putDouble(entry.getValue());
+        }
+    }
+
+    public Receipt decode(ByteBuffer buffer) {
+        String serialNumber = getString(buffer);
+        String cashierId = getString(buffer);
+        String cashierName = getString(buffer);
+        long issueDay = buffer.getLong();
+        int lineCount = buffer.getInt();
+
+        Map<Stoka, Double> lines = new LinkedHashMap<>();
+        Map<Stoka, Long> unitPrices = new LinkedHashMap<>();
+        for (int i = 0; i < lineCount; i++) {
+            UUID id = new UUID(buffer.getLong(), buffer.getLong());
+            String name = getString(buffer);
+            BigDecimal deliveryPrice = getDecimal(buffer);
+            BigDecimal price = getDecimal(buffer);
+            long expirationDay = buffer.getLong();
+            StokaCategory category = CATEGORIES[buffer.get()];
+            double quantity = buffer.getDouble();
+
+            Stoka stoka = resolveStoka(id, name, deliveryPrice, price,
+                    expirationDay == NO_DATE ? null : LocalDate.ofEpochDay(expirationDay), category);
+            lines.merge(stoka, quantity, Double::sum);
+            unitPrices.put(stoka, MoneyMath.toStotinki(price));
+        }
+
+        // Платената сума липсва в записите отпреди да бъде добавена
+        BigDecimal totalPrice = buffer.hasRemaining() && buffer.get() == 1 ? getDecimal(buffer) : null;
+
+        Cashier cashier = cashierId.isEmpty() ? null
+                : knownCashiers.computeIfAbsent(cashierId, id -> new Cashier(id, cashierName, BigDecimal.ZERO));
+        LocalDate issueDate = issueDay == NO_DATE ? null : LocalDate.ofEpochDay(issueDay);
+
+        Receipt receipt = new Receipt(serialNumber, cashier, issueDate, lines);
+        receipt.setUnitPrices(unitPrices);
+        receipt.setTotalPrice(totalPrice);
+        return receipt;
+    }
+
+    // Една и съща стока се възстановява веднъж, за да е един и същ обект във всички бележки
+    private Stoka resolveStoka(UUID id, String name, BigDecimal deliveryPrice, BigDecimal price,
+                               LocalDate expirationDate, StokaCategory category) {
+        Stoka stoka = knownStoki.get(id);
+        if (stoka != null) {
+            return stoka;
+        }
+
+        stoka = catalogue.apply(id);
+        if (stoka == null) {
+            stoka = new Stoka(id, name, deliveryPrice, price, expirationDate, category);
+        }
+
+        knownStoki.put(id, stoka);
+        return stoka;
+    }
+
+    static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Невалидна дължина на текст: " + length);
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void putDecimal(ByteBuffer buffer, BigDecimal value) {
+        byte[] unscaled = value.unscaledValue().toByteArray();
+        buffer.putInt(value.scale());
+        buffer.put((byte) unscaled.length);
+        buffer.put(unscaled);
+    }
+
+    static BigDecimal getDecimal(ByteBuffer buffer) {
+        int scale = buffer.getInt();
+        byte[] unscaled = new byte[buffer.get() & 0xFF];
+        buffer.get(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+}
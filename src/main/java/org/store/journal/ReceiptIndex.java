@@ -0,0 +1,459 @@
+package org.store.journal;
+
+import org.store.data.Receipt;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Постоянен индекс на журнала с бележки: номер на бележка -> позиция в журнала.
+//
+// Индексът е хеш таблица с отворено адресиране във файл, достъпен чрез memory mapping,
+// затова при рестарт не се зарежда в паметта - файлът просто се отваря отново.
+// Слотът пази 64-битов хеш на номера, позицията и датата на бележката; при съвпадение на хеша
+// номерът се сверява със самия запис в журнала, така колизиите са безопасни.
+//
+// До него се пази втори файл с позиции по реда на добавяне, за търсене по период. Всеки запис пази и
+// най-късната дата дотогава (расте монотонно), а заглавната част - най-голямото закъснение на бележка
+// спрямо нея. Търсенето започва с двоично търсене по най-късната дата и спира, щом тя мине края на
+// периода с повече от закъснението - една закъсняла бележка разширява прегледа само с толкова дни.
+//
+// В заглавната част се пази докъде в журнала е стигнал индексът - при отваряне се индексират
+// само новите записи след тази позиция. След това ReceiptPersister добавя всяка записана партида,
+// а търсене на номер, който липсва, първо индексира новите записи в журнала (добавени от друг код).
+//
+// Файловете се отварят на части (MappedFile), отместванията са long - таблицата побира до
+// MAX_CAPACITY слота (около 750 милиона бележки), а файлът с дати няма практическа граница.
+public class ReceiptIndex implements Closeable {
+    private static final String INDEX_FILE = "receipts.index";
+    private static final String DATES_FILE = "receipts.dates";
+
+    private static final int MAGIC = 0x52494458;
+    private static final int DATES_MAGIC = 0x52444154;
+    private static final int VERSION = 1;
+    private static final int DATES_VERSION = 2;
+
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 32;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final double MAX_LOAD = 0.7;
+    static final int MAX_CAPACITY = 1 << 30;
+
+    private static final int DATES_HEADER_SIZE = 32;
+    private static final int DATE_ENTRY_SIZE = 32;
+    private static final int INITIAL_DATE_ENTRIES = 1024;
+
+    private final Path journalDirectory;
+    private final Path indexPath;
+    private final Path datesPath;
+    private final int regionShift;
+    private final Map<Integer, MappedByteBuffer> segmentCache = new HashMap<>();
+
+    private MappedFile index;
+    private int capacity;
+    private int count;
+
+    private MappedFile dates;
+    private long dateEntries;
+    private long dateCapacity;
+    private long lastScanned;
+
+    public ReceiptIndex(Path journalDirectory) throws IOException {
+        this(journalDirectory, MappedFile.DEFAULT_REGION_SHIFT);
+    }
+
+    // regionShift задава размера на частите (2^regionShift байта) - по-малък само за тестове
+    ReceiptIndex(Path journalDirectory, int regionShift) throws IOException {
+        this.journalDirectory = journalDirectory;
+        this.regionShift = regionShift;
+        this.indexPath = journalDirectory.resolve(INDEX_FILE);
+        this.datesPath = journalDirectory.resolve(DATES_FILE);
+
+        Files.createDirectories(journalDirectory);
+
+        if (!openExisting()) {
+            Files.deleteIfExists(indexPath);
+            Files.deleteIfExists(datesPath);
+            createIndex(INITIAL_CAPACITY);
+            createDates(INITIAL_DATE_ENTRIES);
+        }
+
+        catchUp();
+    }
+
+    // Индексира записите в журнала, добавени след последното индексиране
+    public synchronized int catchUp() throws IOException {
+        int added = 0;
+        ReceiptJournalReader reader = new ReceiptJournalReader(journalDirectory, new ReceiptCodec(), getIndexedUpTo());
+
+        while (reader.hasNext()) {
+            Receipt receipt = reader.next();
+            add(receipt.getSerialNumber(), receipt.getIssueDate(), reader.getLastPosition());
+            added++;
+        }
+
+        return added;
+    }
+
+//      Добавя бележка към индекса. Повторното добавяне на вече индексирана позиция не прави нищо,
+//      така индексирането след рестарт може спокойно да мине отново през последните записи.
+
+    public synchronized void add(String serialNumber, LocalDate issueDate, JournalPosition position) {
+        if ((count + 1) > capacity * MAX_LOAD) {
+            grow();
+        }
+
+        long hash = hash(serialNumber);
+        long issueDay = issueDate == null ? Long.MIN_VALUE : issueDate.toEpochDay();
+        int slot = slotFor(hash);
+
+        while (true) {
+            long base = slotOffset(slot);
+            int segment = index.getInt(base + 8);
+
+            if (segment == 0) {
+                index.putLong(base, hash);
+                index.putLong(base + 16, position.getOffset());
+                index.putLong(base + 24, issueDay);
+                index.putInt(base + 8, segment(position));
+                index.putInt(12, ++count);
+                break;
+            }
+
+            if (index.getLong(base) == hash && segment == position.getSegment()
+                    && index.getLong(base + 16) == position.getOffset()) {
+                advanceIndexedUpTo(position);
+                return;
+            }
+
+            slot = (slot + 1) & (capacity - 1);
+        }
+
+        appendDate(issueDay, position);
+        advanceIndexedUpTo(position);
+    }
+
+//      Намира позицията на бележка по номер. Ако номерът липсва, първо се индексират записите,
+//      добавени в журнала след последното индексиране.
+//      return позицията или null, ако такава бележка няма
+
+    public synchronized JournalPosition lookup(String serialNumber) throws IOException {
+        JournalPosition position = lookupIndexed(serialNumber);
+        if (position == null && catchUp() > 0) {
+            position = lookupIndexed(serialNumber);
+        }
+        return position;
+    }
+
+    private JournalPosition lookupIndexed(String serialNumber) throws IOException {
+        long hash = hash(serialNumber);
+        int slot = slotFor(hash);
+
+        while (true) {
+            long base = slotOffset(slot);
+            int segment = index.getInt(base + 8);
+
+            if (segment == 0) {
+                return null;
+            }
+
+            if (index.getLong(base) == hash) {
+                JournalPosition position = new JournalPosition(segment, index.getLong(base + 16), 0, 0);
+                if (serialNumber.equals(ReceiptJournalReader.readSerialAt(segmentBuffer(position), position))) {
+                    return position;
+                }
+            }
+
+            slot = (slot + 1) & (capacity - 1);
+        }
+    }
+
+    // Бележката с подадения номер или null
+    public synchronized Receipt find(String serialNumber) throws IOException {
+        JournalPosition position = lookup(serialNumber);
+        if (position == null) {
+            return null;
+        }
+
+        return ReceiptJournalReader.readAt(segmentBuffer(position), position, new ReceiptCodec());
+    }
+
+    // Позициите на бележките, издадени в периода [from, to], по реда на датите - с новите записи в журнала
+    public synchronized List<JournalPosition> positionsBetween(LocalDate from, LocalDate to) throws IOException {
+        catchUp();
+
+        long fromDay = from.toEpochDay();
+        long toDay = to.toEpochDay();
+        List<JournalPosition> result = new ArrayList<>();
+
+        // Всяка следваща бележка е най-много с maxLateness дни преди най-късната дата дотогава
+        long maxLateness = dates.getLong(16);
+        long start = lowerBound(fromDay);
+        long i = start;
+
+        for (; i < dateEntries; i++) {
+            long base = DATES_HEADER_SIZE + i * DATE_ENTRY_SIZE;
+            if (dates.getLong(base + 24) - maxLateness > toDay) {
+                break;
+            }
+
+            long day = dates.getLong(base);
+            if (day >= fromDay && day <= toDay) {
+                result.add(new JournalPosition(dates.getInt(base + 8), dates.getLong(base + 16), 0, 0));
+            }
+        }
+
+        lastScanned = i - start;
+        return result;
+    }
+
+    public synchronized List<Receipt> findBetween(LocalDate from, LocalDate to) throws IOException {
+        ReceiptCodec codec = new ReceiptCodec();
+        List<Receipt> receipts = new ArrayList<>();
+
+        for (JournalPosition position : positionsBetween(from, to)) {
+            receipts.add(ReceiptJournalReader.readAt(segmentBuffer(position), position, codec));
+        }
+
+        return receipts;
+    }
+
+    // Колко записа от файла с дати е прегледало последното търсене по период
+    synchronized long getLastScanned() {
+        return lastScanned;
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    // Позицията в журнала, до която са индексирани записите
+    public synchronized JournalPosition getIndexedUpTo() {
+        int segment = index.getInt(16);
+        if (segment == 0) {
+            return null;
+        }
+        return new JournalPosition(segment, index.getLong(24), 0, 0);
+    }
+
+    @Override
+    public synchronized void close() {
+        index.force();
+        dates.force();
+        segmentCache.clear();
+    }
+
+    private boolean openExisting() throws IOException {
+        if (!Files.exists(indexPath) || !Files.exists(datesPath)) {
+            return false;
+        }
+
+        long indexSize = Files.size(indexPath);
+        long datesSize = Files.size(datesPath);
+        if (indexSize < HEADER_SIZE || datesSize < DATES_HEADER_SIZE) {
+            return false;
+        }
+
+        MappedFile existingIndex = mapFile(indexPath, indexSize);
+        MappedFile existingDates = mapFile(datesPath, datesSize);
+
+        if (existingIndex.getInt(0) != MAGIC || existingIndex.getInt(4) != VERSION
+                || existingDates.getInt(0) != DATES_MAGIC || existingDates.getInt(4) != DATES_VERSION) {
+            return false;
+        }
+
+        this.index = existingIndex;
+        this.capacity = existingIndex.getInt(8);
+        this.count = existingIndex.getInt(12);
+        this.dates = existingDates;
+        this.dateEntries = existingDates.getLong(8);
+        this.dateCapacity = (existingDates.size() - DATES_HEADER_SIZE) / DATE_ENTRY_SIZE;
+        return true;
+    }
+
+    private void createIndex(int newCapacity) throws IOException {
+        this.index = mapFile(indexPath, HEADER_SIZE + (long) newCapacity * SLOT_SIZE);
+        this.capacity = newCapacity;
+        this.count = 0;
+
+        index.putInt(0, MAGIC);
+        index.putInt(4, VERSION);
+        index.putInt(8, newCapacity);
+        index.putInt(12, 0);
+    }
+
+    private void createDates(long entries) throws IOException {
+        this.dates = mapFile(datesPath, DATES_HEADER_SIZE + entries * DATE_ENTRY_SIZE);
+        this.dateEntries = 0;
+        this.dateCapacity = entries;
+
+        dates.putInt(0, DATES_MAGIC);
+        dates.putInt(4, DATES_VERSION);
+        dates.putLong(8, 0);
+        dates.putLong(16, 0);
+        dates.putLong(24, Long.MIN_VALUE);
+    }
+
+//      Удвоява таблицата в нов файл и го подменя атомарно - за това не е нужно четене на журнала.
+//      throws IllegalStateException ако таблицата вече е с MAX_CAPACITY слота
+
+    private void grow() {
+        if (capacity >= MAX_CAPACITY) {
+            throw new IllegalStateException("Индексът на бележките е пълен: " + count + " бележки");
+        }
+
+        try {
+            Path tmp = journalDirectory.resolve(INDEX_FILE + ".tmp");
+            Files.deleteIfExists(tmp);
+
+            int newCapacity = capacity * 2;
+            MappedFile grown = mapFile(tmp, HEADER_SIZE + (long) newCapacity * SLOT_SIZE);
+            for (int offset = 0; offset < HEADER_SIZE; offset += Long.BYTES) {
+                grown.putLong(offset, index.getLong(offset));
+            }
+            grown.putInt(8, newCapacity);
+
+            for (int slot = 0; slot < capacity; slot++) {
+                long base = slotOffset(slot);
+                if (index.getInt(base + 8) == 0) {
+                    continue;
+                }
+
+                int target = (int) (mix(index.getLong(base)) & (newCapacity - 1));
+                while (grown.getInt(slotOffset(target) + 8) != 0) {
+                    target = (target + 1) & (newCapacity - 1);
+                }
+                copySlot(index, base, grown, slotOffset(target));
+            }
+
+            grown.force();
+            Files.move(tmp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            this.index = grown;
+            this.capacity = newCapacity;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void appendDate(long issueDay, JournalPosition position) {
+        if (dateEntries == dateCapacity) {
+            try {
+                dates.force();
+                dateCapacity *= 2;
+                dates = mapFile(datesPath, DATES_HEADER_SIZE + dateCapacity * DATE_ENTRY_SIZE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // Бележка без дата не влиза в нито един период и не променя закъснението
+        long latestDay = dates.getLong(24);
+        if (issueDay > latestDay) {
+            latestDay = issueDay;
+            dates.putLong(24, latestDay);
+        } else if (issueDay != Long.MIN_VALUE && latestDay - issueDay > dates.getLong(16)) {
+            dates.putLong(16, latestDay - issueDay);
+        }
+
+        long base = DATES_HEADER_SIZE + dateEntries * DATE_ENTRY_SIZE;
+        dates.putLong(base, issueDay);
+        dates.putInt(base + 8, position.getSegment());
+        dates.putLong(base + 16, position.getOffset());
+        dates.putLong(base + 24, latestDay);
+        dates.putLong(8, ++dateEntries);
+    }
+
+    // Първият запис, чиято най-късна дата дотогава е поне day - всички преди него са по-ранни
+    private long lowerBound(long day) {
+        long low = 0;
+        long high = dateEntries;
+
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (dates.getLong(DATES_HEADER_SIZE + middle * DATE_ENTRY_SIZE + 24) < day) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    private void advanceIndexedUpTo(JournalPosition position) {
+        JournalPosition current = getIndexedUpTo();
+        JournalPosition end = new JournalPosition(position.getSegment(), position.getEndOffset(), 0, 0);
+
+        if (current == null || end.compareTo(current) > 0) {
+            index.putLong(24, end.getOffset());
+            index.putInt(16, end.getSegment());
+        }
+    }
+
+    // Сегментите се кешират; текущият сегмент расте, затова се преотваря, ако позицията е след края му
+    private ByteBuffer segmentBuffer(JournalPosition position) throws IOException {
+        MappedByteBuffer buffer = segmentCache.get(position.getSegment());
+
+        if (buffer == null || position.getOffset() + ReceiptJournal.RECORD_HEADER_SIZE > buffer.limit()) {
+            buffer = ReceiptJournalReader.map(ReceiptJournal.segmentPath(journalDirectory, position.getSegment()));
+            segmentCache.put(position.getSegment(), buffer);
+        }
+
+        return buffer;
+    }
+
+    private int slotFor(long hash) {
+        return (int) (mix(hash) & (capacity - 1));
+    }
+
+    private static long slotOffset(int slot) {
+        return HEADER_SIZE + (long) slot * SLOT_SIZE;
+    }
+
+    // Слот: хеш (0), сегмент (8), отместване (16), ден (24)
+    private static void copySlot(MappedFile from, long fromBase, MappedFile to, long toBase) {
+        to.putLong(toBase, from.getLong(fromBase));
+        to.putInt(toBase + 8, from.getInt(fromBase + 8));
+        to.putLong(toBase + 16, from.getLong(fromBase + 16));
+        to.putLong(toBase + 24, from.getLong(fromBase + 24));
+    }
+
+    private static int segment(JournalPosition position) {
+        if (position.getSegment() <= 0) {
+            throw new IllegalArgumentException("Невалиден сегмент: " + position);
+        }
+        return position.getSegment();
+    }
+
+    // FNV-1a върху символите на номера - без създаване на масиви
+    static long hash(String serialNumber) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < serialNumber.length(); i++) {
+            hash ^= serialNumber.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private MappedFile mapFile(Path path, long size) throws IOException {
+        return MappedFile.map(path, size, regionShift);
+    }
+}
@@ -0,0 +1,299 @@
+package org.store.journal;
+
+import org.store.data.Receipt;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Журнал на касовите бележки - само добавяне, в двоичен формат, разделен на сегменти.
+// Вместо по един малък текстов файл на бележка, бележките се добавят една след друга
+// в сегментни файлове, а всеки запис носи CRC32 за проверка при четене.
+//
+// Формат на сегмент: [magic][version], следван от записи [дължина][crc32][данни].
+//
+// Записът на диска (fsync) е групов: append само добавя в буфер, а awaitDurable/sync
+// изпълнява един force за всички бележки, добавени дотогава. Нишките, които чакат
+// едновременно, се обслужват от един и същ force.
+public class ReceiptJournal implements Closeable {
+    public static final int MAGIC = 0x524A524E;
+    public static final int VERSION = 1;
+    public static final int SEGMENT_HEADER_SIZE = 8;
+    public static final int RECORD_HEADER_SIZE = 8;
+    public static final long DEFAULT_MAX_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    private static final String SEGMENT_PREFIX = "receipts-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+    private final long maxSegmentSize;
+    private final ByteBuffer writeBuffer;
+    private ByteBuffer recordBuffer;
+    private final CRC32 crc;
+
+    private FileChannel channel;
+    private int segmentNumber;
+    private long segmentSize;
+    private long appendedSequence;
+
+    private final Object syncLock = new Object();
+    private final AtomicLong durableSequence = new AtomicLong();
+
+    public ReceiptJournal(Path directory) throws IOException {
+        this(directory, DEFAULT_MAX_SEGMENT_SIZE);
+    }
+
+    public ReceiptJournal(Path directory, long maxSegmentSize) throws IOException {
+        if (maxSegmentSize <= SEGMENT_HEADER_SIZE + RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException("Твърде малък размер на сегмент: " + maxSegmentSize);
+        }
+        // Сегментът се чете с един MappedByteBuffer, а позициите в него са int
+        if (maxSegmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Твърде голям размер на сегмент: " + maxSegmentSize);
+        }
+
+        this.directory = directory;
+        this.maxSegmentSize = maxSegmentSize;
+        this.writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+        this.recordBuffer = ByteBuffer.allocate(4096);
+        this.crc = new CRC32();
+
+        Files.createDirectories(directory);
+
+        List<Path> segments = listSegments(directory);
+        if (segments.isEmpty()) {
+            openNewSegment(1);
+        } else {
+            Path last = segments.get(segments.size() - 1);
+            reopenSegment(segmentNumberOf(last), last);
+        }
+    }
+
+//      Добавя бележка в края на журнала.
+//      Бележката е прочетена от другите методи веднага, но е на диска едва след sync/awaitDurable.
+//      return позицията на записа
+
+    public synchronized JournalPosition append(Receipt receipt) throws IOException {
+        ensureOpen();
+
+        ByteBuffer payload = encode(receipt);
+        int length = payload.remaining();
+        int recordSize = RECORD_HEADER_SIZE + length;
+
+        // Нов сегмент, ако записът не се побира в текущия (освен ако сегментът е празен)
+        if (segmentSize + recordSize > maxSegmentSize && segmentSize > SEGMENT_HEADER_SIZE) {
+            rotate();
+        }
+
+        crc.reset();
+        crc.update(payload.duplicate());
+
+        JournalPosition position = new JournalPosition(segmentNumber, segmentSize, recordSize, ++appendedSequence);
+
+        if (writeBuffer.remaining() < RECORD_HEADER_SIZE) {
+            flushWriteBuffer();
+        }
+        writeBuffer.putInt(length);
+        writeBuffer.putInt((int) crc.getValue());
+
+        while (payload.hasRemaining()) {
+            if (!writeBuffer.hasRemaining()) {
+                flushWriteBuffer();
+            }
+            int chunk = Math.min(writeBuffer.remaining(), payload.remaining());
+            ByteBuffer slice = payload.slice();
+            slice.limit(chunk);
+            writeBuffer.put(slice);
+            payload.position(payload.position() + chunk);
+        }
+
+        segmentSize += recordSize;
+        return position;
+    }
+
+    // Записва на диска всички бележки, добавени досега
+    public void sync() throws IOException {
+        long target;
+        synchronized (this) {
+            target = appendedSequence;
+        }
+        awaitDurable(target);
+    }
+
+//      Изчаква, докато записът с подадения пореден номер е на диска.
+//      Ако друга нишка вече е направила force, който го покрива, методът се връща веднага.
+
+    public void awaitDurable(long sequence) throws IOException {
+        if (durableSequence.get() >= sequence) {
+            return;
+        }
+
+        synchronized (syncLock) {
+            if (durableSequence.get() >= sequence) {
+                return;
+            }
+
+            FileChannel target;
+            long covered;
+            synchronized (this) {
+                ensureOpen();
+                flushWriteBuffer();
+                target = channel;
+                covered = appendedSequence;
+            }
+
+            // force се изпълнява извън основната ключалка - касите продължават да добавят междувременно
+            try {
+                target.force(false);
+            } catch (ClosedChannelException e) {
+                // Сегментът е затворен при смяна на сегмент, а смяната прави force преди затваряне
+            }
+            markDurable(covered);
+        }
+    }
+
+    public long getDurableSequence() {
+        return durableSequence.get();
+    }
+
+    public synchronized long getAppendedSequence() {
+        return appendedSequence;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+
+        flushWriteBuffer();
+        channel.force(false);
+        channel.close();
+        channel = null;
+        markDurable(appendedSequence);
+    }
+
+    // Сегментите на журнала, подредени по номер
+    public static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(ReceiptJournal::isSegment)
+                    .sorted()
+                    .forEach(segments::add);
+        }
+
+        return segments;
+    }
+
+    public static int segmentNumberOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    public static Path segmentPath(Path directory, int segmentNumber) {
+        return directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, segmentNumber, SEGMENT_SUFFIX));
+    }
+
+    private static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private ByteBuffer encode(Receipt receipt) {
+        while (true) {
+            recordBuffer.clear();
+            try {
+                ReceiptCodec.encode(receipt, recordBuffer);
+                recordBuffer.flip();
+                return recordBuffer;
+            } catch (BufferOverflowException e) {
+                recordBuffer = ByteBuffer.allocate(recordBuffer.capacity() * 2);
+            }
+        }
+    }
+
+    private void flushWriteBuffer() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            channel.write(writeBuffer);
+        }
+        writeBuffer.clear();
+    }
+
+    private void rotate() throws IOException {
+        flushWriteBuffer();
+        channel.force(false);
+        channel.close();
+        markDurable(appendedSequence);
+
+        openNewSegment(segmentNumber + 1);
+    }
+
+    private void openNewSegment(int number) throws IOException {
+        Path path = segmentPath(directory, number);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        this.segmentNumber = number;
+
+        writeSegmentHeader();
+        this.segmentSize = SEGMENT_HEADER_SIZE;
+    }
+
+    private void writeSegmentHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+    }
+
+    // При повторно отваряне намираме края на последния валиден запис и отрязваме
+    // непълния запис, останал от прекъсване по време на писане
+    private void reopenSegment(int number, Path path) throws IOException {
+        long validEnd = ReceiptJournalReader.findValidEnd(path);
+
+        this.channel = FileChannel.open(path, StandardOpenOption.WRITE);
+        if (validEnd < SEGMENT_HEADER_SIZE) {
+            channel.truncate(0);
+            channel.position(0);
+            writeSegmentHeader();
+            validEnd = SEGMENT_HEADER_SIZE;
+        }
+
+        channel.truncate(validEnd);
+        channel.position(validEnd);
+        this.segmentNumber = number;
+        this.segmentSize = validEnd;
+    }
+
+    private void markDurable(long sequence) {
+        durableSequence.accumulateAndGet(sequence, Math::max);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (channel == null) {
+            throw new ClosedChannelException();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package org.store.journal;
+
+import org.store.data.Receipt;
+import org.store.exceptions.JournalCorruptedException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32;
+
+// Чете журнала на касовите бележки последователно, сегмент по сегмент.
+// Сегментите се четат чрез memory mapping, така бележките не се зареждат всички в паметта наведнъж.
+// Непълен или повреден запис в края на последния сегмент (прекъснат запис) просто приключва четенето,
+// а повреда в по-стар сегмент хвърля JournalCorruptedException.
+public class ReceiptJournalReader implements Iterator<Receipt> {
+    private final List<Path> segments;
+    private final ReceiptCodec codec;
+    private final CRC32 crc = new CRC32();
+
+    private int segmentIndex = -1;
+    private int segmentNumber;
+    private ByteBuffer current;
+    private Receipt next;
+    private JournalPosition nextPosition;
+    private JournalPosition lastPosition;
+
+    public ReceiptJournalReader(Path directory) throws IOException {
+        this(directory, new ReceiptCodec());
+    }
+
+    public ReceiptJournalReader(Path directory, ReceiptCodec codec) throws IOException {
+        this(directory, codec, null);
+    }
+
+    // Започва четенето от подадената позиция (например края, до който е стигнал индексът)
+    public ReceiptJournalReader(Path directory, ReceiptCodec codec, JournalPosition from) throws IOException {
+        this.segments = ReceiptJournal.listSegments(directory);
+        this.codec = codec;
+
+        if (from != null) {
+            skipTo(from);
+        }
+        advance();
+    }
+
+//      Чете една бележка по позицията ѝ в журнала.
+//      throws JournalCorruptedException ако на позицията няма валиден запис
+
+    public static Receipt readAt(ByteBuffer segment, JournalPosition position, ReceiptCodec codec) {
+        return codec.decode(payloadAt(segment, position));
+    }
+
+    // Само номерът на бележката - без да се възстановяват стоките
+    public static String readSerialAt(ByteBuffer segment, JournalPosition position) {
+        return ReceiptCodec.getString(payloadAt(segment, position));
+    }
+
+    private static ByteBuffer payloadAt(ByteBuffer segment, JournalPosition position) {
+        ByteBuffer view = segment.duplicate();
+        view.position((int) position.getOffset());
+
+        ByteBuffer payload = readRecord(view, new CRC32());
+        if (payload == null) {
+            throw new JournalCorruptedException("Няма валиден запис на позиция " + position);
+        }
+        return payload;
+    }
+
+    // Всички бележки от журнала като поток
+    public static Stream<Receipt> stream(Path directory, ReceiptCodec codec) throws IOException {
+        ReceiptJournalReader reader = new ReceiptJournalReader(directory, codec);
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(reader, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    public static Stream<Receipt> stream(Path directory) throws IOException {
+        return stream(directory, new ReceiptCodec());
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public Receipt next() {
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+
+        Receipt receipt = next;
+        lastPosition = nextPosition;
+        try {
+            advance();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return receipt;
+    }
+
+    // Позицията на последната върната бележка
+    public JournalPosition getLastPosition() {
+        return lastPosition;
+    }
+
+    private void advance() throws IOException {
+        next = null;
+
+        while (true) {
+            if (current == null && !openNextSegment()) {
+                return;
+            }
+
+            int offset = current.position();
+            ByteBuffer payload = readRecord(current, crc);
+
+            if (payload != null) {
+                next = codec.decode(payload);
+                nextPosition = new JournalPosition(segmentNumber, offset, current.position() - offset, 0);
+                return;
+            }
+
+            if (current.hasRemaining() && segmentIndex < segments.size() - 1) {
+                throw new JournalCorruptedException("Повреден запис в сегмент " + segments.get(segmentIndex)
+                        + " на позиция " + offset);
+            }
+
+            current = null;
+        }
+    }
+
+    private void skipTo(JournalPosition from) throws IOException {
+        while (segmentIndex + 1 < segments.size()
+                && ReceiptJournal.segmentNumberOf(segments.get(segmentIndex + 1)) < from.getSegment()) {
+            segmentIndex++;
+        }
+
+        if (segmentIndex + 1 < segments.size()
+                && ReceiptJournal.segmentNumberOf(segments.get(segmentIndex + 1)) == from.getSegment()
+                && openNextSegment()) {
+            current.position((int) Math.min(Math.max(from.getEndOffset(), current.position()), current.limit()));
+        }
+    }
+
+    private boolean openNextSegment() throws IOException {
+        if (++segmentIndex >= segments.size()) {
+            return false;
+        }
+
+        Path path = segments.get(segmentIndex);
+        current = map(path);
+        segmentNumber = ReceiptJournal.segmentNumberOf(path);
+
+        if (!hasValidHeader(current)) {
+            if (segmentIndex < segments.size() - 1) {
+                throw new JournalCorruptedException("Невалидна заглавна част на сегмент " + path);
+            }
+            current = null;
+            return false;
+        }
+
+        return true;
+    }
+
+//      Намира края на последния валиден запис в сегмента - всичко след него е прекъснат запис.
+//      return отместване в байтове или 0, ако сегментът няма валидна заглавна част
+
+    static long findValidEnd(Path segment) throws IOException {
+        return findValidEnd(segment, ReceiptJournal.MAGIC, ReceiptJournal.VERSION);
+    }
+
+    // Същото за сегменти с друга заглавна част (например журнала на събитията)
+    static long findValidEnd(Path segment, int magic, int version) throws IOException {
+        ByteBuffer buffer = map(segment);
+        if (!hasValidHeader(buffer, magic, version)) {
+            return 0;
+        }
+
+        CRC32 crc = new CRC32();
+        long validEnd = buffer.position();
+        while (readRecord(buffer, crc) != null) {
+            validEnd = buffer.position();
+        }
+
+        return validEnd;
+    }
+
+//      Чете един запис от текущата позиция и проверява CRC.
+//      return данните на записа или null, ако записът е непълен или повреден (позицията не се мести)
+
+    static ByteBuffer readRecord(ByteBuffer buffer, CRC32 crc) {
+        int start = buffer.position();
+        if (buffer.remaining() < ReceiptJournal.RECORD_HEADER_SIZE) {
+            return null;
+        }
+
+        int length = buffer.getInt(start);
+        int expectedCrc = buffer.getInt(start + 4);
+        if (length < 0 || length > buffer.remaining() - ReceiptJournal.RECORD_HEADER_SIZE) {
+            return null;
+        }
+
+        ByteBuffer payload = buffer.slice(start + ReceiptJournal.RECORD_HEADER_SIZE, length);
+        crc.reset();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != expectedCrc) {
+            return null;
+        }
+
+        buffer.position(start + ReceiptJournal.RECORD_HEADER_SIZE + length);
+        return payload;
+    }
+
+    public static MappedByteBuffer map(Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static boolean hasValidHeader(ByteBuffer buffer) {
+        return hasValidHeader(buffer, ReceiptJournal.MAGIC, ReceiptJournal.VERSION);
+    }
+
+    static boolean hasValidHeader(ByteBuffer buffer, int magic, int version) {
+        if (buffer.remaining() < ReceiptJournal.SEGMENT_HEADER_SIZE) {
+            return false;
+        }
+
+        return buffer.getInt() == magic && buffer.getInt() == version;
+    }
+}
@@ -0,0 +1,313 @@
+package org.store.journal;
+
+import org.store.data.Receipt;
+import org.store.enums.LogEvent;
+import org.store.log.DiagnosticLog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Записва касовите бележки в ReceiptJournal от отделна нишка, за да не чака касата диска.
+// Касите (много производители) поставят бележките в ограничена опашка, а една нишка ги взема
+// на партиди, добавя ги в журнала и прави един sync за цялата партида.
+// Когато опашката е пълна, касата чака (backpressure) - бележки не се губят.
+// Каса, която трябва да е сигурна, че бележката е на диска преди печат, извиква awaitDurable(номер).
+// Грешка при запис се връща само на бележките от неуспешната партида (през future-а им) - следващите
+// партиди се записват нормално, а неуспешните бележки се броят в getFailed и се записват в DiagnosticLog.
+// Ако е подаден ReceiptIndex, след всяка записана партида той индексира новите записи в журнала.
+public class ReceiptPersister implements Closeable {
+    public static final int DEFAULT_CAPACITY = 4096;
+    public static final int DEFAULT_MAX_BATCH = 256;
+
+    private static final long OFFER_WAIT_MILLIS = 50;
+
+    private final ReceiptJournal journal;
+    private final ReceiptIndex index;
+    private final BlockingQueue<PendingReceipt> queue;
+    private final int maxBatch;
+    private final Map<String, PendingReceipt> pending = new ConcurrentHashMap<>();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong backpressureWaits = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    public ReceiptPersister(ReceiptJournal journal) {
+        this(journal, null);
+    }
+
+    public ReceiptPersister(ReceiptJournal journal, ReceiptIndex index) {
+        this(journal, index, DEFAULT_CAPACITY, DEFAULT_MAX_BATCH);
+    }
+
+    public ReceiptPersister(ReceiptJournal journal, int capacity, int maxBatch) {
+        this(journal, null, capacity, maxBatch);
+    }
+
+    // index може да е null - тогава бележките само се записват в журнала
+    public ReceiptPersister(ReceiptJournal journal, ReceiptIndex index, int capacity, int maxBatch) {
+        if (capacity <= 0 || maxBatch <= 0) {
+            throw new IllegalArgumentException("Размерът на опашката и на партидата трябва да са положителни числа");
+        }
+
+        this.journal = journal;
+        this.index = index;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatch = maxBatch;
+        this.writer = new Thread(this::run, "receipt-persister");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+//      Поставя бележката в опашката за запис. Ако опашката е пълна, чака да се освободи място.
+//      Прекъсване по време на чакането не губи бележката - флагът се възстановява след поставянето.
+//      Поредният номер се взема преди поставянето - flush, извикан след връщането, винаги я изчаква.
+//      Методът не хвърля: продажбата вече е приключила, затова неуспешен запис не я отменя.
+//      return future, което завършва, когато бележката е на диска, или с IllegalStateException,
+//      ако записът е спрян (и докато касата е чакала място в опашката) - тогава бележката се брои в getFailed
+
+    public CompletableFuture<Void> submit(Receipt receipt) {
+        PendingReceipt entry = new PendingReceipt(receipt, submitted.incrementAndGet());
+        pending.put(receipt.getSerialNumber(), entry);
+        if (!running) {
+            reject(entry);
+            return entry.durable;
+        }
+
+        if (!queue.offer(entry)) {
+            backpressureWaits.incrementAndGet();
+            if (!enqueueWaiting(entry)) {
+                return entry.durable;
+            }
+        }
+
+        // close() може да е приключил между проверката и поставянето - тогава никой няма да вземе бележката
+        if (!running && queue.remove(entry)) {
+            reject(entry);
+        }
+        return entry.durable;
+    }
+
+    // return false ако записът е спрян, докато касата е чакала - бележката вече е отхвърлена
+    private boolean enqueueWaiting(PendingReceipt entry) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    if (queue.offer(entry, OFFER_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                    if (!running) {
+                        // Нишката за запис може вече да е спряла - мястото в опашката няма да се освободи
+                        reject(entry);
+                        return false;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void reject(PendingReceipt entry) {
+        IllegalStateException stopped = new IllegalStateException("Записът на бележки е спрян");
+        failed.incrementAndGet();
+        DiagnosticLog.shared().log(LogEvent.RECEIPT_WRITE_FAILED, 1, stopped.getMessage());
+        finish(entry, stopped);
+    }
+
+//      Изчаква бележката с този номер да бъде записана на диска.
+//      Ако бележката вече е записана, не е подавана или записът ѝ вече е завършил с грешка,
+//      методът се връща веднага - грешката получава future-ът от submit.
+//      throws IOException ако записът ѝ не успее, докато методът чака
+
+    public void awaitDurable(String serialNumber) throws IOException, InterruptedException {
+        PendingReceipt entry = pending.get(serialNumber);
+        if (entry != null) {
+            await(entry.durable);
+        }
+    }
+
+//      Изчаква всички бележки, подадени до момента, да бъдат записани на диска.
+//      throws IOException ако записът на някоя от тях не успее - по-старите грешки не се повтарят
+
+    public void flush() throws IOException, InterruptedException {
+        long target = submitted.get();
+        IOException error = null;
+
+        for (PendingReceipt entry : new ArrayList<>(pending.values())) {
+            if (entry.sequence > target) {
+                continue;
+            }
+            try {
+                await(entry.durable);
+            } catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private static void await(CompletableFuture<Void> durable) throws IOException, InterruptedException {
+        try {
+            durable.get();
+        } catch (ExecutionException e) {
+            throw asIOException(e.getCause());
+        }
+    }
+
+    private void run() {
+        List<PendingReceipt> batch = new ArrayList<>(maxBatch);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingReceipt first = queue.poll(OFFER_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+            } catch (InterruptedException e) {
+                // Спиране само през close - продължаваме, докато опашката се изпразни
+                continue;
+            }
+
+            // Индексът се обновява преди future-ите - след awaitDurable бележката вече се намира по номер
+            IOException error = write(batch);
+            if (error != null) {
+                failed.addAndGet(batch.size());
+                DiagnosticLog.shared().log(LogEvent.RECEIPT_WRITE_FAILED, batch.size(), error.getMessage());
+            } else {
+                updateIndex();
+            }
+            for (PendingReceipt entry : batch) {
+                finish(entry, error);
+            }
+
+            batches.incrementAndGet();
+            batch.clear();
+        }
+    }
+
+    // Завършва future-а на бележката и я маха от чакащите - и при успех, и при грешка
+    private void finish(PendingReceipt entry, Throwable error) {
+        if (error == null) {
+            entry.durable.complete(null);
+        } else {
+            entry.durable.completeExceptionally(error);
+        }
+        pending.remove(entry.receipt.getSerialNumber(), entry);
+    }
+
+    // Бележките вече са на диска - грешка в индекса не ги отменя, а липсващите се индексират при търсене
+    private void updateIndex() {
+        if (index == null) {
+            return;
+        }
+
+        try {
+            index.catchUp();
+        } catch (IOException | RuntimeException e) {
+            DiagnosticLog.shared().log(LogEvent.RECEIPT_INDEX_FAILED, e.getMessage());
+        }
+    }
+
+//      Една партида - добавяне в журнала и един sync за всички бележки в нея.
+//      Всяка грешка (и RuntimeException) проваля само партидата - нишката за запис продължава,
+//      иначе касите биха чакали безкрайно място в опашката.
+
+    private IOException write(List<PendingReceipt> batch) {
+        try {
+            for (PendingReceipt entry : batch) {
+                journal.append(entry.receipt);
+            }
+            journal.sync();
+            return null;
+        } catch (IOException | RuntimeException e) {
+            return asIOException(e);
+        }
+    }
+
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    // Колко пъти каса е чакала, защото опашката е била пълна
+    public long getBackpressureWaits() {
+        return backpressureWaits.get();
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    // Бележки, чийто запис не е успял
+    public long getFailed() {
+        return failed.get();
+    }
+
+//      Спира приемането на нови бележки и изчаква вече подадените да бъдат записани.
+//      Бележка, поставена в опашката след спирането на нишката, завършва с грешка, вместо да чака безкрайно.
+//      Журналът не се затваря - той е на този, който го е отворил.
+
+    @Override
+    public void close() {
+        running = false;
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        PendingReceipt entry;
+        while ((entry = queue.poll()) != null) {
+            reject(entry);
+        }
+    }
+
+    private static IOException asIOException(Throwable cause) {
+        return cause instanceof IOException ? (IOException) cause : new IOException(cause);
+    }
+
+    private static class PendingReceipt {
+        private final Receipt receipt;
+        private final long sequence;
+        private final CompletableFuture<Void> durable = new CompletableFuture<>();
+
+        private PendingReceipt(Receipt receipt, long sequence) {
+            this.receipt = receipt;
+            this.sequence = sequence;
+        }
+    }
+}
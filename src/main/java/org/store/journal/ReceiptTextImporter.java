@@ -0,0 +1,110 @@
+package org.store.journal;
+
+import org.store.data.Cashier;
+import org.store.data.Receipt;
+import org.store.data.Stoka;
+import org.store.enums.StokaCategory;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Еднократно прехвърляне на старите текстови бележки (по един .txt файл на бележка) в журнала.
+// Текстовият формат е този, който се записваше досега:
+//
+//   Receipt {
+//     serialNumber = '...'
+//     cashier = Cashier { id = '...', name = '...', monthlySalary = ... }
+//     issueDate = 2025-05-22
+//     stoka = {Stoka{id='...', name='...', deliveryPrice=..., price=..., expirationDate=..., stokaCategory=FOOD}=2.0, ...}
+//   }
+//
+// Празните файлове се пропускат.
+public class ReceiptTextImporter {
+    private static final Pattern SERIAL = Pattern.compile("serialNumber\\s*=\\s*'([^']*)'");
+    private static final Pattern CASHIER = Pattern.compile(
+            "cashier\\s*=\\s*Cashier\\s*\\{\\s*id\\s*=\\s*'([^']*)',\\s*name\\s*=\\s*'([^']*)',\\s*monthlySalary\\s*=\\s*([-\\d.]+)");
+    private static final Pattern ISSUE_DATE = Pattern.compile("issueDate\\s*=\\s*(\\d{4}-\\d{2}-\\d{2})");
+    private static final Pattern STOKA = Pattern.compile(
+            "Stoka\\{id='([^']*)', name='([^']*)', deliveryPrice=([-\\d.]+), price=([-\\d.]+), "
+                    + "expirationDate=([\\d-]+|null), stokaCategory=(\\w+)}=([-\\d.Ee]+)");
+
+    private final Map<String, Stoka> stoki = new HashMap<>();
+    private final Map<String, Cashier> cashiers = new HashMap<>();
+
+//      Добавя в журнала всички текстови бележки от директорията, подредени по име на файл.
+//      return броя на прехвърлените бележки
+
+    public int importDirectory(Path textDirectory, ReceiptJournal journal) throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(textDirectory)) {
+            files = list.filter(path -> path.getFileName().toString().endsWith(".txt"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        int imported = 0;
+        for (Path file : files) {
+            String text = Files.readString(file, StandardCharsets.UTF_8);
+            if (text.isBlank()) {
+                continue;
+            }
+
+            journal.append(parse(text));
+            imported++;
+        }
+
+        journal.sync();
+        return imported;
+    }
+
+    public Receipt parse(String text) {
+        Matcher serial = SERIAL.matcher(text);
+        if (!serial.find()) {
+            throw new IllegalArgumentException("Липсва номер на бележка: " + text);
+        }
+
+        Cashier cashier = null;
+        Matcher cashierMatcher = CASHIER.matcher(text);
+        if (cashierMatcher.find()) {
+            String id = cashierMatcher.group(1);
+            String name = cashierMatcher.group(2);
+            BigDecimal salary = new BigDecimal(cashierMatcher.group(3));
+            cashier = cashiers.computeIfAbsent(id, key -> new Cashier(key, name, salary));
+        }
+
+        LocalDate issueDate = null;
+        Matcher dateMatcher = ISSUE_DATE.matcher(text);
+        if (dateMatcher.find()) {
+            issueDate = LocalDate.parse(dateMatcher.group(1));
+        }
+
+        Map<Stoka, Double> lines = new LinkedHashMap<>();
+        Matcher stokaMatcher = STOKA.matcher(text);
+        while (stokaMatcher.find()) {
+            Stoka stoka = stoki.computeIfAbsent(stokaMatcher.group(1), id -> new Stoka(
+                    UUID.fromString(id),
+                    stokaMatcher.group(2),
+                    new BigDecimal(stokaMatcher.group(3)),
+                    new BigDecimal(stokaMatcher.group(4)),
+                    "null".equals(stokaMatcher.group(5)) ? null : LocalDate.parse(stokaMatcher.group(5)),
+                    StokaCategory.valueOf(stokaMatcher.group(6))));
+
+            lines.merge(stoka, Double.parseDouble(stokaMatcher.group(7)), Double::sum);
+        }
+
+        return new Receipt(serial.group(1), cashier, issueDate, lines);
+    }
+}
@@ -0,0 +1,239 @@
+package org.store.journal;
+
+import org.store.data.Cashier;
+import org.store.data.PricedCart;
+import org.store.data.QuantityLedger;
+import org.store.data.Stoka;
+import org.store.data.Store;
+import org.store.enums.StokaCategory;
+import org.store.exceptions.JournalCorruptedException;
+import org.store.money.MoneyMath;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+// Двоичен формат на събитията в журнала на магазина и прилагането им при възстановяване.
+// Всяко събитие започва с байт за вида си. Количествата са в хилядни (като в QuantityLedger),
+// а продажбата пази единичната цена и дела от платената сума на всеки ред в стотинки - при възстановяване
+// приходът е точно записаният, без ново закръгляне.
+// Доставката носи цялото описание на стоката, така по-късните събития за нея са само id.
+public class StoreEventCodec {
+    public static final byte DELIVERY = 1;
+    public static final byte PRICE_CHANGE = 3;
+    public static final byte WRITE_OFF = 4;
+    public static final byte CASHIER_HIRED = 5;
+    public static final byte TRANSFER_OUT = 6;
+    public static final byte PRICED_SALE = 7;
+
+    private static final StokaCategory[] CATEGORIES = StokaCategory.values();
+
+    private final Store store;
+    private final Map<UUID, Stoka> knownStoki = new HashMap<>();
+    private final Map<String, Cashier> knownCashiers = new HashMap<>();
+
+    // Събитията се прилагат върху store - стоките и касиерите, които вече са в него, се използват повторно
+    public StoreEventCodec(Store store) {
+        this.store = store;
+
+        for (Stoka stoka : StoreSnapshot.allStoki(store)) {
+            knownStoki.put(stoka.getId(), stoka);
+        }
+        for (Cashier cashier : store.getCashiers()) {
+            knownCashiers.put(cashier.getId(), cashier);
+        }
+    }
+
+    public static void encodeDelivery(ByteBuffer buffer, Stoka stoka, double quantity, BigDecimal cost) {
+        buffer.put(DELIVERY);
+        putStoka(buffer, stoka);
+        buffer.putLong(QuantityLedger.toMilli(quantity));
+        ReceiptCodec.putDecimal(buffer, cost);
+    }
+
+    public static void encodeSale(ByteBuffer buffer, PricedCart sale) {
+        buffer.put(PRICED_SALE);
+        buffer.putInt(sale.size());
+        for (int line = 0; line < sale.size(); line++) {
+            putId(buffer, sale.getStoka(line).getId());
+            buffer.putLong(sale.getQuantityMilli(line));
+            buffer.putLong(sale.getUnitPriceStotinki(line));
+            buffer.putLong(sale.getLineTotalStotinki(line));
+        }
+    }
+
+    public static void encodePriceChange(ByteBuffer buffer, Stoka stoka) {
+        buffer.put(PRICE_CHANGE);
+        putId(buffer, stoka.getId());
+        ReceiptCodec.putDecimal(buffer, stoka.getPrice());
+    }
+
+    public static void encodeWriteOff(ByteBuffer buffer, Stoka stoka, double quantity, BigDecimal value) {
+        buffer.put(WRITE_OFF);
+        putId(buffer, stoka.getId());
+        buffer.putLong(QuantityLedger.toMilli(quantity));
+        ReceiptCodec.putDecimal(buffer, value);
+    }
+
+    public static void encodeTransferOut(ByteBuffer buffer, Stoka stoka, double quantity, BigDecimal cost) {
+        buffer.put(TRANSFER_OUT);
+        putId(buffer, stoka.getId());
+        buffer.putLong(QuantityLedger.toMilli(quantity));
+        ReceiptCodec.putDecimal(buffer, cost);
+    }
+
+    public static void encodeCashierHired(ByteBuffer buffer, Cashier cashier) {
+        buffer.put(CASHIER_HIRED);
+        putCashier(buffer, cashier);
+    }
+
+//      Прилага едно събитие върху магазина - същите промени, които StoreService прави при операцията,
+//      но без проверки за наличност и без ново записване в журнала.
+//      throws JournalCorruptedException при непознат вид събитие или стока, която не е доставяна
+
+    public void apply(ByteBuffer buffer) {
+        byte type = buffer.get();
+
+        switch (type) {
+            case DELIVERY -> applyDelivery(buffer);
+            case PRICED_SALE -> applySale(buffer);
+            case PRICE_CHANGE -> requireStoka(getId(buffer)).setPrice(ReceiptCodec.getDecimal(buffer));
+            case WRITE_OFF -> applyWriteOff(buffer);
+            case CASHIER_HIRED -> applyCashierHired(buffer);
+            case TRANSFER_OUT -> applyTransferOut(buffer);
+            default -> throw new JournalCorruptedException("Непознат вид събитие: " + type);
+        }
+    }
+
+    private void applyDelivery(ByteBuffer buffer) {
+        Stoka stoka = getStoka(buffer);
+        double quantity = QuantityLedger.fromMilli(buffer.getLong());
+        BigDecimal cost = ReceiptCodec.getDecimal(buffer);
+
+        store.getCatalogue().add(stoka);
+        store.addToDeliveredStoka(stoka, quantity, cost);
+        store.addToInventory(stoka, quantity);
+        store.getExpiryIndex().track(stoka);
+    }
+
+    // Единичната цена е само за справка - приходът е записаният дял на реда
+    private void applySale(ByteBuffer buffer) {
+        int lines = buffer.getInt();
+        for (int i = 0; i < lines; i++) {
+            Stoka stoka = requireStoka(getId(buffer));
+            long milli = buffer.getLong();
+            buffer.getLong();
+            long revenue = buffer.getLong();
+
+            double quantity = QuantityLedger.fromMilli(milli);
+            removeFromInventory(stoka, milli);
+            store.addToSoldStoka(stoka, quantity, MoneyMath.toBigDecimal(revenue));
+        }
+    }
+
+    private void applyWriteOff(ByteBuffer buffer) {
+        Stoka stoka = requireStoka(getId(buffer));
+        long milli = buffer.getLong();
+        BigDecimal value = ReceiptCodec.getDecimal(buffer);
+
+        removeFromInventory(stoka, milli);
+        store.addToWrittenOff(stoka, QuantityLedger.fromMilli(milli), value);
+    }
+
+    // Прехвърлената стока напуска магазина заедно с разхода за доставката ѝ
+    private void applyTransferOut(ByteBuffer buffer) {
+        Stoka stoka = requireStoka(getId(buffer));
+        long milli = buffer.getLong();
+        BigDecimal cost = ReceiptCodec.getDecimal(buffer);
+
+        removeFromInventory(stoka, milli);
+        store.addToDeliveredStoka(stoka, -QuantityLedger.fromMilli(milli), cost.negate());
+    }
+
+    private void applyCashierHired(ByteBuffer buffer) {
+        Cashier cashier = getCashier(buffer);
+
+        // Касиер, който вече е в копието на магазина, не се добавя втори път
+        if (knownCashiers.putIfAbsent(cashier.getId(), cashier) == null) {
+            store.addCashier(cashier);
+        }
+    }
+
+    private void removeFromInventory(Stoka stoka, long milli) {
+        if (store.getInventoryLedger().addMilli(stoka, -milli) <= 0) {
+            store.getExpiryIndex().untrack(stoka);
+        }
+    }
+
+    // Стоката от доставка - вече позната стока получава цените и срока от събитието
+    private Stoka getStoka(ByteBuffer buffer) {
+        UUID id = getId(buffer);
+        String name = ReceiptCodec.getString(buffer);
+        BigDecimal deliveryPrice = ReceiptCodec.getDecimal(buffer);
+        BigDecimal price = ReceiptCodec.getDecimal(buffer);
+        LocalDate expirationDate = getDate(buffer);
+        StokaCategory category = CATEGORIES[buffer.get()];
+
+        Stoka stoka = knownStoki.get(id);
+        if (stoka == null) {
+            stoka = new Stoka(id, name, deliveryPrice, price, expirationDate, category);
+            knownStoki.put(id, stoka);
+            return stoka;
+        }
+
+        stoka.setDeliveryPrice(deliveryPrice);
+        stoka.setExpirationDate(expirationDate);
+        if (stoka.getPrice().compareTo(price) != 0) {
+            stoka.setPrice(price);
+        }
+        return stoka;
+    }
+
+    private Stoka requireStoka(UUID id) {
+        Stoka stoka = knownStoki.get(id);
+        if (stoka == null) {
+            throw new JournalCorruptedException("Събитие за стока, която не е доставяна: " + id);
+        }
+        return stoka;
+    }
+
+    static void putStoka(ByteBuffer buffer, Stoka stoka) {
+        putId(buffer, stoka.getId());
+        ReceiptCodec.putString(buffer, stoka.getName());
+        ReceiptCodec.putDecimal(buffer, stoka.getDeliveryPrice());
+        ReceiptCodec.putDecimal(buffer, stoka.getPrice());
+        putDate(buffer, stoka.getExpirationDate());
+        buffer.put((byte) stoka.getStokaCategory().ordinal());
+    }
+
+    static void putCashier(ByteBuffer buffer, Cashier cashier) {
+        ReceiptCodec.putString(buffer, cashier.getId());
+        ReceiptCodec.putString(buffer, cashier.getName());
+        ReceiptCodec.putDecimal(buffer, cashier.getMonthlySalary());
+    }
+
+    static Cashier getCashier(ByteBuffer buffer) {
+        return new Cashier(ReceiptCodec.getString(buffer), ReceiptCodec.getString(buffer), ReceiptCodec.getDecimal(buffer));
+    }
+
+    static void putId(ByteBuffer buffer, UUID id) {
+        buffer.putLong(id.getMostSignificantBits());
+        buffer.putLong(id.getLeastSignificantBits());
+    }
+
+    static UUID getId(ByteBuffer buffer) {
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    static void putDate(ByteBuffer buffer, LocalDate date) {
+        buffer.putLong(date == null ? ReceiptCodec.NO_DATE : date.toEpochDay());
+    }
+
+    static LocalDate getDate(ByteBuffer buffer) {
+        long day = buffer.getLong();
+        return day == ReceiptCodec.NO_DATE ? null : LocalDate.ofEpochDay(day);
+    }
+}
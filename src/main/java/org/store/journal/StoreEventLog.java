@@ -0,0 +1,479 @@
+package org.store.journal;
+
+import org.store.concurrent.StokaLocks;
+import org.store.data.Cashier;
+import org.store.data.PricedCart;
+import org.store.data.Stoka;
+import org.store.data.StokaPriceListener;
+import org.store.data.Store;
+import org.store.enums.LogEvent;
+import org.store.log.DiagnosticLog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Журнал на промените в магазина - само добавяне, като журнала на бележките.
+// Всяка промяна на състоянието (доставка, продажба, смяна на цена, брак, назначен касиер) се записва
+// като събитие (StoreEventCodec) в сегменти events-NNNNNNNN.log с формат на записите [дължина][crc32][данни].
+//
+// StoreService записва събитието под ключалката на стоката, докато прави самата промяна.
+// Промяната в паметта вече е направена, затова грешка при запис (затворен журнал, грешка на диска)
+// не се хвърля към StoreService - събитието се брои в getFailedEvents и се записва в диагностичния лог.
+// Събитието се кодира в буфер на текущата нишка, а под общата ключалка на журнала само се копира
+// в буфера за запис - касите, които продават различни стоки, не се чакат за кодирането.
+//
+// Записът на диска е групов: отделна нишка на всеки syncInterval записва буфера и прави един force
+// за всички събития дотогава. При срив се губят най-много събитията от последния syncInterval
+// (по подразбиране 100 ms); който трябва да е сигурен веднага, извиква sync.
+//
+// snapshot взема всички ключалки, започва нов сегмент и записва копие на магазина (StoreSnapshot) -
+// по-старите сегменти вече не са нужни и се изтриват. Така StoreRecovery при старт чете
+// последното копие и само събитията след него, а не цялата история. Копията се правят едно по едно.
+public class StoreEventLog implements Closeable, StokaPriceListener {
+    public static final int MAGIC = 0x5345564C;
+    public static final int VERSION = 1;
+
+    private static final String SEGMENT_PREFIX = "events-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    public static final Duration DEFAULT_SYNC_INTERVAL = Duration.ofMillis(100);
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final ThreadLocal<RecordEncoder> ENCODER = ThreadLocal.withInitial(RecordEncoder::new);
+
+    private final Path directory;
+    private final ByteBuffer writeBuffer;
+    private final Set<Stoka> listening = ConcurrentHashMap.newKeySet();
+    private final Object syncLock = new Object();
+    private final Object snapshotLock = new Object();
+    private final AtomicLong durableEvents = new AtomicLong();
+    private final ScheduledExecutorService syncer;
+
+    private FileChannel channel;
+    private int segmentNumber;
+    private long appendedEvents;
+    private long failedEvents;
+    private volatile Store store;
+    private ScheduledExecutorService snapshots;
+
+    public StoreEventLog(Path directory) throws IOException {
+        this(directory, DEFAULT_SYNC_INTERVAL);
+    }
+
+    // syncInterval е най-дългото време, за което добавено събитие може да остане само в паметта
+    public StoreEventLog(Path directory, Duration syncInterval) throws IOException {
+        if (syncInterval.isNegative() || syncInterval.isZero()) {
+            throw new IllegalArgumentException("Интервалът за запис на диска трябва да е положителен");
+        }
+
+        this.directory = directory;
+        this.writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+
+        Files.createDirectories(directory);
+
+        List<Path> segments = listSegments(directory);
+        if (segments.isEmpty()) {
+            // Започваме от сегмента, след който продължава последното копие
+            openNewSegment(Math.max(1, latestSnapshotSegment(directory)));
+        } else {
+            Path last = segments.get(segments.size() - 1);
+            reopenSegment(segmentNumberOf(last), last);
+        }
+
+        this.syncer = daemonScheduler("store-event-sync");
+        long millis = Math.max(1, syncInterval.toMillis());
+        this.syncer.scheduleWithFixedDelay(this::syncQuietly, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+//      Свързва журнала с магазина - от тук нататък StoreService записва промените му тук.
+//      Извиква се след StoreRecovery, за да не се запишат повторно възстановените събития.
+
+    public void attach(Store store) {
+        this.store = store;
+        for (Stoka stoka : StoreSnapshot.allStoki(store)) {
+            listenTo(stoka);
+        }
+        store.setEventLog(this);
+    }
+
+    public void delivery(Stoka stoka, double quantity, BigDecimal cost) {
+        append(buffer -> StoreEventCodec.encodeDelivery(buffer, stoka, quantity, cost));
+        listenTo(stoka);
+    }
+
+    public void sale(PricedCart sale) {
+        append(buffer -> StoreEventCodec.encodeSale(buffer, sale));
+    }
+
+    public void writeOff(Stoka stoka, double quantity, BigDecimal value) {
+        append(buffer -> StoreEventCodec.encodeWriteOff(buffer, stoka, quantity, value));
+    }
+
+    // Записва се само потвърденото прехвърляне - запазеното количество е само в паметта
+    public void transferOut(Stoka stoka, double quantity, BigDecimal cost) {
+        append(buffer -> StoreEventCodec.encodeTransferOut(buffer, stoka, quantity, cost));
+    }
+
+    public void cashierHired(Cashier cashier) {
+        append(buffer -> StoreEventCodec.encodeCashierHired(buffer, cashier));
+    }
+
+    // Цената е абсолютна стойност - повторно прилагане след копието не променя резултата
+    @Override
+    public void priceChanged(Stoka stoka, long oldPriceStotinki, long newPriceStotinki) {
+        append(buffer -> StoreEventCodec.encodePriceChange(buffer, stoka));
+    }
+
+//      Записва копие на магазина и изтрива сегментите, които то покрива.
+//      Докато се прави копието в паметта, всички ключалки на стоките и магазинът са заети -
+//      така нито една промяна не попада наполовина в копието и наполовина в новия сегмент.
+//      Самият запис на файла е след освобождаване на ключалките. Едновременните извиквания
+//      (периодичното и ръчно) се изпълняват едно след друго, така по-старо копие никога не изтрива по-ново.
+
+    public void snapshot() throws IOException {
+        Store store = this.store;
+        if (store == null) {
+            throw new IllegalStateException("Журналът не е свързан с магазин");
+        }
+
+        synchronized (snapshotLock) {
+            StokaLocks locks = store.getStokaLocks();
+            int segment;
+            ByteBuffer snapshot;
+
+            int[] locked = locks.lockEverything();
+            try {
+                synchronized (store) {
+                    synchronized (this) {
+                        ensureOpen();
+                        rotate();
+                        segment = segmentNumber;
+                    }
+                    snapshot = StoreSnapshot.encode(store, segment);
+                }
+            } finally {
+                locks.unlockAll(locked);
+            }
+
+            StoreSnapshot.write(directory, segment, snapshot);
+            deleteCoveredFiles(segment);
+        }
+    }
+
+    // Периодично копие на магазина от отделна нишка
+    public synchronized void startSnapshots(Duration interval) {
+        if (snapshots != null) {
+            throw new IllegalStateException("Периодичните копия вече са пуснати");
+        }
+
+        snapshots = daemonScheduler("store-snapshots");
+        long millis = interval.toMillis();
+        snapshots.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot();
+            } catch (IOException e) {
+                DiagnosticLog.shared().log(LogEvent.SNAPSHOT_FAILED, e.getMessage());
+            }
+        }, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+//      Записва на диска всички събития, добавени досега.
+//      Буферът се изпразва под ключалката на журнала, а force е извън нея - касите продължават
+//      да добавят междувременно. Нишките, които чакат едновременно, се обслужват от един force.
+
+    public void sync() throws IOException {
+        long target;
+        synchronized (this) {
+            target = appendedEvents;
+        }
+        if (durableEvents.get() >= target) {
+            return;
+        }
+
+        synchronized (syncLock) {
+            if (durableEvents.get() >= target) {
+                return;
+            }
+
+            FileChannel segment;
+            long covered;
+            synchronized (this) {
+                ensureOpen();
+                flushWriteBuffer();
+                segment = channel;
+                covered = appendedEvents;
+            }
+
+            try {
+                segment.force(false);
+            } catch (ClosedChannelException e) {
+                // Сегментът е затворен при смяна на сегмент или close - и двете правят force преди затваряне
+            }
+            markDurable(covered);
+        }
+    }
+
+    // Груповият запис от фоновата нишка - грешката се записва, а следващият опит е след syncInterval
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (ClosedChannelException e) {
+            // Журналът е затворен
+        } catch (IOException e) {
+            DiagnosticLog.shared().log(LogEvent.EVENT_SYNC_FAILED, e.getMessage());
+        }
+    }
+
+    // Събития, които със сигурност са на диска
+    public long getDurableEvents() {
+        return durableEvents.get();
+    }
+
+    public synchronized long getAppendedEvents() {
+        return appendedEvents;
+    }
+
+    // Събития, които не са записани в журнала - магазинът в паметта е пред журнала с толкова промени
+    public synchronized long getFailedEvents() {
+        return failedEvents;
+    }
+
+    public synchronized int getSegmentNumber() {
+        return segmentNumber;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public void close() throws IOException {
+        ScheduledExecutorService scheduler;
+        synchronized (this) {
+            scheduler = snapshots;
+            snapshots = null;
+        }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        // Без прекъсване - прекъснат force затваря канала, преди буферът да е записан
+        syncer.shutdown();
+
+        synchronized (this) {
+            if (channel == null) {
+                return;
+            }
+
+            flushWriteBuffer();
+            channel.force(false);
+            channel.close();
+            channel = null;
+            markDurable(appendedEvents);
+        }
+    }
+
+    // Сегментите на журнала, подредени по номер
+    public static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(path -> {
+                String name = path.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).sorted().forEach(segments::add);
+        }
+
+        return segments;
+    }
+
+    public static int segmentNumberOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    public static Path segmentPath(Path directory, int segmentNumber) {
+        return directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, segmentNumber, SEGMENT_SUFFIX));
+    }
+
+    // Кодирането е извън ключалката на журнала; под нея записът само се копира в буфера.
+    // Не хвърля - промяната, която събитието описва, вече е в паметта и не бива да се отменя.
+    private void append(Consumer<ByteBuffer> event) {
+        ByteBuffer record = ENCODER.get().encode(event);
+
+        synchronized (this) {
+            try {
+                ensureOpen();
+
+                if (writeBuffer.remaining() < record.remaining()) {
+                    flushWriteBuffer();
+                }
+                if (writeBuffer.remaining() < record.remaining()) {
+                    // Събитието е по-голямо от буфера - пишем го директно
+                    writeFully(record);
+                } else {
+                    writeBuffer.put(record);
+                }
+
+                appendedEvents++;
+            } catch (IOException e) {
+                failedEvents++;
+                DiagnosticLog.shared().log(LogEvent.EVENT_APPEND_FAILED, describe(e));
+            }
+        }
+    }
+
+    private static String describe(IOException e) {
+        return e instanceof ClosedChannelException ? "журналът е затворен" : e.getMessage();
+    }
+
+    private void listenTo(Stoka stoka) {
+        if (listening.add(stoka)) {
+            stoka.addPriceListener(this);
+        }
+    }
+
+    private void deleteCoveredFiles(int segment) throws IOException {
+        for (Path path : listSegments(directory)) {
+            if (segmentNumberOf(path) < segment) {
+                Files.deleteIfExists(path);
+            }
+        }
+
+        // Само по-старите копия - по-ново копие не се трие, дори ако е записано преди това
+        for (Path path : StoreSnapshot.list(directory)) {
+            if (StoreSnapshot.segmentNumberOf(path) < segment) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    static int latestSnapshotSegment(Path directory) throws IOException {
+        List<Path> snapshots = StoreSnapshot.list(directory);
+        if (snapshots.isEmpty()) {
+            return 0;
+        }
+
+        return StoreSnapshot.segmentNumberOf(snapshots.get(snapshots.size() - 1));
+    }
+
+    private void flushWriteBuffer() throws IOException {
+        writeBuffer.flip();
+        writeFully(writeBuffer);
+        writeBuffer.clear();
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void rotate() throws IOException {
+        flushWriteBuffer();
+        channel.force(false);
+        channel.close();
+        markDurable(appendedEvents);
+
+        openNewSegment(segmentNumber + 1);
+    }
+
+    private void openNewSegment(int number) throws IOException {
+        this.channel = FileChannel.open(segmentPath(directory, number), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        this.segmentNumber = number;
+        writeSegmentHeader();
+    }
+
+    private void writeSegmentHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(ReceiptJournal.SEGMENT_HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.flip();
+        writeFully(header);
+    }
+
+    // Отрязваме непълното събитие, останало от прекъсване по време на писане
+    private void reopenSegment(int number, Path path) throws IOException {
+        long validEnd = ReceiptJournalReader.findValidEnd(path, MAGIC, VERSION);
+
+        this.channel = FileChannel.open(path, StandardOpenOption.WRITE);
+        if (validEnd < ReceiptJournal.SEGMENT_HEADER_SIZE) {
+            channel.truncate(0);
+            channel.position(0);
+            writeSegmentHeader();
+            validEnd = ReceiptJournal.SEGMENT_HEADER_SIZE;
+        }
+
+        channel.truncate(validEnd);
+        channel.position(validEnd);
+        this.segmentNumber = number;
+    }
+
+    private void markDurable(long events) {
+        durableEvents.accumulateAndGet(events, Math::max);
+    }
+
+    private static ScheduledExecutorService daemonScheduler(String name) {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private void ensureOpen() throws IOException {
+        if (channel == null) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    // Буфер и CRC за кодиране на едно събитие - по един на нишка, за да не се кодира под общата ключалка
+    private static final class RecordEncoder {
+        private final CRC32 crc = new CRC32();
+        private ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+        // return записът [дължина][crc32][данни], готов за копиране
+        ByteBuffer encode(Consumer<ByteBuffer> event) {
+            while (true) {
+                buffer.clear();
+                buffer.position(ReceiptJournal.RECORD_HEADER_SIZE);
+                try {
+                    event.accept(buffer);
+                    break;
+                } catch (BufferOverflowException e) {
+                    buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+                }
+            }
+
+            int length = buffer.position() - ReceiptJournal.RECORD_HEADER_SIZE;
+            crc.reset();
+            crc.update(buffer.array(), ReceiptJournal.RECORD_HEADER_SIZE, length);
+            buffer.putInt(0, length);
+            buffer.putInt(4, (int) crc.getValue());
+            buffer.flip();
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.store.journal;
+
+import org.store.data.Store;
+import org.store.exceptions.JournalCorruptedException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+// Възстановява магазина при старт от директорията на StoreEventLog:
+// зарежда последното копие (ако има) и прилага само събитията от сегментите след него.
+// Непълно събитие в края на последния сегмент (прекъснат запис) приключва възстановяването,
+// а повреда в по-стар сегмент хвърля JournalCorruptedException.
+public class StoreRecovery {
+    private final Path directory;
+    private int snapshotSegment;
+    private long replayedEvents;
+
+    public StoreRecovery(Path directory) {
+        this.directory = directory;
+    }
+
+//      emptyStore дава празен магазин с настройките по подразбиране, ако още няма копие.
+//      return възстановеният магазин - след това се свързва с журнала чрез StoreEventLog.attach
+
+    public Store recover(Supplier<Store> emptyStore) throws IOException {
+        int firstSegment = StoreEventLog.latestSnapshotSegment(directory);
+
+        Store store;
+        if (firstSegment > 0) {
+            store = StoreSnapshot.decode(ReceiptJournalReader.map(StoreSnapshot.path(directory, firstSegment)));
+            snapshotSegment = firstSegment;
+        } else {
+            store = emptyStore.get();
+        }
+
+        StoreEventCodec codec = new StoreEventCodec(store);
+        CRC32 crc = new CRC32();
+        List<Path> segments = StoreEventLog.listSegments(directory);
+
+        for (int i = 0; i < segments.size(); i++) {
+            Path segment = segments.get(i);
+            if (StoreEventLog.segmentNumberOf(segment) < firstSegment) {
+                continue;
+            }
+
+            boolean last = i == segments.size() - 1;
+            ByteBuffer buffer = ReceiptJournalReader.map(segment);
+            if (!ReceiptJournalReader.hasValidHeader(buffer, StoreEventLog.MAGIC, StoreEventLog.VERSION)) {
+                if (last) {
+                    break;
+                }
+                throw new JournalCorruptedException("Невалидна заглавна част на сегмент " + segment);
+            }
+
+            ByteBuffer payload;
+            while ((payload = ReceiptJournalReader.readRecord(buffer, crc)) != null) {
+                codec.apply(payload);
+                replayedEvents++;
+            }
+
+            if (buffer.hasRemaining() && !last) {
+                throw new JournalCorruptedException("Повреден запис в сегмент " + segment
+                        + " на позиция " + buffer.position());
+            }
+        }
+
+        return store;
+    }
+
+    // Сегментът, от който започват събитията след копието (0, ако магазинът е възстановен без копие)
+    public int getSnapshotSegment() {
+        return snapshotSegment;
+    }
+
+    // Колко събития са приложени върху копието
+    public long getReplayedEvents() {
+        return replayedEvents;
+    }
+}
@@ -0,0 +1,222 @@
+package org.store.journal;
+
+import org.store.data.Cashier;
+import org.store.data.QuantityLedger;
+import org.store.data.Stoka;
+import org.store.data.Store;
+import org.store.enums.StokaCategory;
+import org.store.exceptions.JournalCorruptedException;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Компактно двоично копие на целия магазин - настройки, стоки с количествата и сумите им и касиерите.
+// Копието покрива всички събития от журнала преди сегмент segment; при старт се прилагат само
+// събитията от този сегмент нататък.
+//
+// Формат: [magic][version][segment], настройки, стоки, касиери и накрая crc32 на всичко преди него.
+public class StoreSnapshot {
+    public static final int MAGIC = 0x53534E50;
+    public static final int VERSION = 1;
+
+    private static final String FILE_PREFIX = "snapshot-";
+    private static final String FILE_SUFFIX = ".bin";
+    private static final StokaCategory[] CATEGORIES = StokaCategory.values();
+
+    private StoreSnapshot() {
+    }
+
+//      Записва състоянието на магазина в паметта.
+//      Извиква се, докато промените по магазина са спрени (виж StoreEventLog.snapshot).
+
+    public static ByteBuffer encode(Store store, int segment) {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        while (true) {
+            try {
+                encode(store, segment, buffer);
+                buffer.flip();
+                return buffer;
+            } catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+    }
+
+    private static void encode(Store store, int segment, ByteBuffer buffer) {
+        buffer.clear();
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(segment);
+
+        buffer.putInt(store.getCountDaysForExpiryDateDiscount());
+        buffer.putDouble(store.getExpiryDateDiscount());
+        Map<StokaCategory, Double> margins = store.getMarginPercentByCategory();
+        buffer.putInt(margins.size());
+        for (Map.Entry<StokaCategory, Double> entry : margins.entrySet()) {
+            buffer.put((byte) entry.getKey().ordinal());
+            buffer.putDouble(entry.getValue());
+        }
+
+        Set<Stoka> stoki = allStoki(store);
+        buffer.putInt(stoki.size());
+        for (Stoka stoka : stoki) {
+            StoreEventCodec.putStoka(buffer, stoka);
+            buffer.putLong(store.getDeliveredLedger().getMilli(stoka));
+            // Незавършените прехвърляния не са в журнала - в копието запазеното е още наличност
+            buffer.putLong(store.getInventoryLedger().getMilli(stoka) + store.getReservedLedger().getMilli(stoka));
+            buffer.putLong(store.getSoldLedger().getMilli(stoka));
+            buffer.putLong(store.getWrittenOffLedger().getMilli(stoka));
+            ReceiptCodec.putDecimal(buffer, store.getDeliveryCosts().getOrDefault(stoka, BigDecimal.ZERO));
+            ReceiptCodec.putDecimal(buffer, store.getSoldRevenue().getOrDefault(stoka, BigDecimal.ZERO));
+            ReceiptCodec.putDecimal(buffer, store.getWriteOffCosts().getOrDefault(stoka, BigDecimal.ZERO));
+        }
+
+        buffer.putInt(store.getCashiers().size());
+        for (Cashier cashier : store.getCashiers()) {
+            StoreEventCodec.putCashier(buffer, cashier);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().flip());
+        buffer.putInt((int) crc.getValue());
+    }
+
+//      Възстановява магазина от копие.
+//      throws JournalCorruptedException ако файлът е непълен или CRC не съвпада
+
+    public static Store decode(ByteBuffer buffer) {
+        int end = buffer.limit() - 4;
+        if (end < 12) {
+            throw new JournalCorruptedException("Непълно копие на магазина");
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(0, end));
+        if ((int) crc.getValue() != buffer.getInt(end) || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new JournalCorruptedException("Повредено копие на магазина");
+        }
+
+        buffer.position(12);
+        int days = buffer.getInt();
+        double discount = buffer.getDouble();
+        EnumMap<StokaCategory, Double> margins = new EnumMap<>(StokaCategory.class);
+        int marginCount = buffer.getInt();
+        for (int i = 0; i < marginCount; i++) {
+            margins.put(CATEGORIES[buffer.get()], buffer.getDouble());
+        }
+
+        Store store = new Store(days, discount, margins);
+
+        int stokaCount = buffer.getInt();
+        for (int i = 0; i < stokaCount; i++) {
+            Stoka stoka = new Stoka(StoreEventCodec.getId(buffer), ReceiptCodec.getString(buffer),
+                    ReceiptCodec.getDecimal(buffer), ReceiptCodec.getDecimal(buffer),
+                    StoreEventCodec.getDate(buffer), CATEGORIES[buffer.get()]);
+            long delivered = buffer.getLong();
+            long inventory = buffer.getLong();
+            long sold = buffer.getLong();
+            long writtenOff = buffer.getLong();
+            BigDecimal deliveryCost = ReceiptCodec.getDecimal(buffer);
+            BigDecimal revenue = ReceiptCodec.getDecimal(buffer);
+            BigDecimal writeOffCost = ReceiptCodec.getDecimal(buffer);
+
+            store.getCatalogue().add(stoka);
+            if (delivered != 0 || deliveryCost.signum() != 0) {
+                store.addToDeliveredStoka(stoka, QuantityLedger.fromMilli(delivered), deliveryCost);
+            }
+            if (sold != 0 || revenue.signum() != 0) {
+                store.addToSoldStoka(stoka, QuantityLedger.fromMilli(sold), revenue);
+            }
+            if (writtenOff != 0 || writeOffCost.signum() != 0) {
+                store.addToWrittenOff(stoka, QuantityLedger.fromMilli(writtenOff), writeOffCost);
+            }
+            if (inventory > 0) {
+                store.getInventoryLedger().setMilli(stoka, inventory);
+                store.getExpiryIndex().track(stoka);
+            }
+        }
+
+        int cashierCount = buffer.getInt();
+        for (int i = 0; i < cashierCount; i++) {
+            store.addCashier(StoreEventCodec.getCashier(buffer));
+        }
+
+        return store;
+    }
+
+    // Сегментът на журнала, от който продължават събитията след копието
+    public static int segmentOf(ByteBuffer buffer) {
+        return buffer.getInt(8);
+    }
+
+//      Записва копието във файл snapshot-<segment>.bin.
+//      Записът е през временен файл, който се преименува след force - при прекъсване остава старото копие.
+
+    public static Path write(Path directory, int segment, ByteBuffer snapshot) throws IOException {
+        Path target = path(directory, segment);
+        Path temporary = directory.resolve(target.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer data = snapshot.duplicate();
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            channel.force(true);
+        }
+
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return target;
+    }
+
+    // Копията в директорията, подредени от най-старото към най-новото
+    public static List<Path> list(Path directory) throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return snapshots;
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(path -> {
+                String name = path.getFileName().toString();
+                return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+            }).sorted().forEach(snapshots::add);
+        }
+
+        return snapshots;
+    }
+
+    public static int segmentNumberOf(Path snapshot) {
+        String name = snapshot.getFileName().toString();
+        return Integer.parseInt(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+    }
+
+    public static Path path(Path directory, int segment) {
+        return directory.resolve(String.format("%s%08d%s", FILE_PREFIX, segment, FILE_SUFFIX));
+    }
+
+    // Всички стоки, които магазинът познава - от каталога и от регистрите с количества
+    static Set<Stoka> allStoki(Store store) {
+        Set<Stoka> stoki = new LinkedHashSet<>(store.getCatalogue().sortedByPrice());
+        stoki.addAll(store.getDeliveredStoka().keySet());
+        stoki.addAll(store.getInventory().keySet());
+        stoki.addAll(store.getSoldStoka().keySet());
+        stoki.addAll(store.getWrittenOffStoka().keySet());
+        return stoki;
+    }
+}
@@ -0,0 +1,202 @@
+package org.store.load;
+
+import org.store.data.Cashier;
+import org.store.data.DeliveryLine;
+import org.store.data.Kasa;
+import org.store.data.Klient;
+import org.store.data.Stoka;
+import org.store.data.Store;
+import org.store.enums.StokaCategory;
+import org.store.exceptions.NotEnoughMoneyException;
+import org.store.exceptions.NotEnoughStokaAvailableException;
+import org.store.metrics.LatencyHistogram;
+import org.store.service.CheckoutCommitter;
+import org.store.service.KasaService;
+import org.store.service.ReceiptSerialSource;
+import org.store.service.StoreService;
+
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+// Натоварване без интерактивен вход: N каси и M клиенти пазаруват едновременно от един магазин.
+// Всеки клиент е отделна задача - избира продукти и размер на количката по зададените разпределения,
+// плаща на касата си и времето на всяко успешно плащане се записва в хистограма.
+// Пуска се с: java org.store.load.LoadGenerator lanes=16 shoppers=5000 products=zipf:1.1
+public class LoadGenerator {
+    private final LoadProfile profile;
+
+    public LoadGenerator(LoadProfile profile) {
+        this.profile = profile;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        System.setOut(new PrintStream(System.out, true, StandardCharsets.UTF_8));
+
+        LoadProfile profile = new LoadProfile();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Очаква се параметър във вида ключ=стойност: " + arg);
+            }
+            profile.set(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+
+        System.out.println("Натоварване: " + profile);
+        System.out.println(new LoadGenerator(profile).run());
+    }
+
+    public LoadReport run() throws InterruptedException {
+        Store store = createStore();
+        StoreService storeService = new StoreService(store);
+        List<Stoka> catalogue = createCatalogue(profile.getCatalogueSize(), profile.getSeed());
+        stock(storeService, catalogue);
+
+        CheckoutCommitter committer = profile.getCommitBatch() > 0
+                ? new CheckoutCommitter(storeService, profile.getCommitBatch())
+                : null;
+
+        List<Kasa> kasi = new ArrayList<>(profile.getLanes());
+        List<KasaService> lanes = new ArrayList<>(profile.getLanes());
+        for (int i = 0; i < profile.getLanes(); i++) {
+            Kasa kasa = new Kasa(new Cashier(String.valueOf(i), "Касиер " + i, new BigDecimal("1500")), store);
+            kasi.add(kasa);
+            lanes.add(new KasaService(kasa, storeService, committer));
+        }
+
+        PopularityDistribution products = PopularityDistribution.parse(profile.getProductDistribution(), catalogue.size());
+        PopularityDistribution cartSizes = PopularityDistribution.parse(profile.getCartSizeDistribution(),
+                profile.getMaxCartSize() - profile.getMinCartSize() + 1);
+
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder successful = new LongAdder();
+        Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = newShopperExecutor();
+        List<Future<?>> shoppers = new ArrayList<>(profile.getShoppers());
+        for (int s = 0; s < profile.getShoppers(); s++) {
+            int shopper = s;
+            KasaService lane = lanes.get(s % lanes.size());
+            shoppers.add(executor.submit(() -> {
+                // Всеки клиент има собствен генератор, получен от общия seed и номера му
+                SplittableRandom random = new SplittableRandom(profile.getSeed() ^ (shopper * 0x9E3779B97F4A7C15L));
+                start.await();
+
+                for (int i = 0; i < profile.getCheckoutsPerShopper(); i++) {
+                    Klient klient = new Klient(profile.getShopperMoney());
+                    fillCart(klient, catalogue, products, profile.getMinCartSize() + cartSizes.next(random), random);
+
+                    long begin = System.nanoTime();
+                    try {
+                        lane.checkout(klient);
+                        latency.record(System.nanoTime() - begin);
+                        successful.increment();
+                    } catch (NotEnoughMoneyException | NotEnoughStokaAvailableException e) {
+                        failures.computeIfAbsent(e.getClass().getSimpleName(), key -> new LongAdder()).increment();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        try {
+            for (Future<?> future : shoppers) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Клиент спря с неочаквана грешка", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            if (committer != null) {
+                committer.close();
+            }
+            for (Kasa kasa : kasi) {
+                kasa.close();
+            }
+        }
+        long elapsed = System.nanoTime() - begin;
+
+        Map<String, Long> failureCounts = new HashMap<>();
+        for (Map.Entry<String, LongAdder> entry : failures.entrySet()) {
+            failureCounts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return new LoadReport(successful.sum(), failureCounts, elapsed, latency, describeExecutor(executor));
+    }
+
+    // Количката се пълни директно, за да не се печата ред за всеки добавен продукт
+    private static void fillCart(Klient klient, List<Stoka> catalogue, PopularityDistribution products,
+                                 int cartSize, SplittableRandom random) {
+        for (int line = 0; line < cartSize; line++) {
+            Stoka stoka = catalogue.get(products.next(random));
+            klient.getCart().merge(stoka, (double) (1 + random.nextInt(3)), Double::sum);
+        }
+    }
+
+    private Store createStore() {
+        EnumMap<StokaCategory, Double> marginByCategory = new EnumMap<>(StokaCategory.class);
+        marginByCategory.put(StokaCategory.FOOD, 10.0);
+        marginByCategory.put(StokaCategory.NONFOOD, 15.0);
+        // Натоварването е синтетично - номерата на бележките му не се пазят във файла на истинските каси
+        Store store = new Store(5, 20.0, marginByCategory);
+        store.setReceiptSerialSource(new ReceiptSerialSource());
+        return store;
+    }
+
+    private void stock(StoreService storeService, List<Stoka> catalogue) {
+        List<DeliveryLine> delivery = new ArrayList<>(catalogue.size());
+        for (Stoka stoka : catalogue) {
+            delivery.add(new DeliveryLine(stoka, profile.getStockPerStoka(), stoka.getDeliveryPrice()));
+        }
+        storeService.deliverBatch(delivery);
+    }
+
+    // Каталог с цени между 0.50 и 50.00, генериран от seed - две пускания с еднакъв профил продават едно и също
+    static List<Stoka> createCatalogue(int size, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        LocalDate today = LocalDate.now();
+        List<Stoka> catalogue = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            StokaCategory category = random.nextBoolean() ? StokaCategory.FOOD : StokaCategory.NONFOOD;
+            long deliveryCents = 50 + random.nextInt(4950);
+            LocalDate expirationDate = category == StokaCategory.FOOD ? today.plusDays(30 + random.nextInt(60)) : null;
+
+            catalogue.add(new Stoka(new UUID(seed, i), "Стока " + i, BigDecimal.valueOf(deliveryCents, 2),
+                    BigDecimal.valueOf(deliveryCents, 2), expirationDate, category));
+        }
+        return catalogue;
+    }
+
+    // Виртуални нишки, когато JVM ги поддържа (Java 21+); иначе ограничен пул от обикновени нишки
+    static ExecutorService newShopperExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors() * 4));
+        }
+    }
+
+    private static String describeExecutor(ExecutorService executor) {
+        return executor.getClass().getSimpleName().contains("ThreadPerTask")
+                ? "виртуални нишки"
+                : "пул от обикновени нишки (виртуалните нишки изискват Java 21)";
+    }
+}
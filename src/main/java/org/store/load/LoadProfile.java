@@ -0,0 +1,156 @@
+package org.store.load;
+
+import java.math.BigDecimal;
+
+// Параметри на едно натоварване - колко каси и клиенти, какви колички и колко стока има в магазина.
+// Стойностите по подразбиране дават кратко пускане, което приключва за няколко секунди.
+public class LoadProfile {
+    private int lanes = 8;
+    private int shoppers = 1000;
+    private int checkoutsPerShopper = 20;
+    private int catalogueSize = 1000;
+    private int minCartSize = 1;
+    private int maxCartSize = 20;
+    private String productDistribution = "zipf:1.0";
+    private String cartSizeDistribution = "uniform";
+    private double stockPerStoka = 10_000;
+    private BigDecimal shopperMoney = new BigDecimal("500");
+    private long seed = 42L;
+    // 0 - всяка каса записва продажбата сама; иначе общ CheckoutCommitter с партиди до този размер
+    private int commitBatch = 0;
+
+    public int getLanes() {
+        return lanes;
+    }
+
+    public void setLanes(int lanes) {
+        this.lanes = positive(lanes, "lanes");
+    }
+
+    public int getShoppers() {
+        return shoppers;
+    }
+
+    public void setShoppers(int shoppers) {
+        this.shoppers = positive(shoppers, "shoppers");
+    }
+
+    public int getCheckoutsPerShopper() {
+        return checkoutsPerShopper;
+    }
+
+    public void setCheckoutsPerShopper(int checkoutsPerShopper) {
+        this.checkoutsPerShopper = positive(checkoutsPerShopper, "checkoutsPerShopper");
+    }
+
+    public int getCatalogueSize() {
+        return catalogueSize;
+    }
+
+    public void setCatalogueSize(int catalogueSize) {
+        this.catalogueSize = positive(catalogueSize, "catalogueSize");
+    }
+
+    public int getMinCartSize() {
+        return minCartSize;
+    }
+
+    public int getMaxCartSize() {
+        return maxCartSize;
+    }
+
+    public void setCartSize(int minCartSize, int maxCartSize) {
+        if (minCartSize <= 0 || maxCartSize < minCartSize) {
+            throw new IllegalArgumentException("Невалиден размер на количката: " + minCartSize + ".." + maxCartSize);
+        }
+        this.minCartSize = minCartSize;
+        this.maxCartSize = maxCartSize;
+    }
+
+    public String getProductDistribution() {
+        return productDistribution;
+    }
+
+    public void setProductDistribution(String productDistribution) {
+        this.productDistribution = productDistribution;
+    }
+
+    public String getCartSizeDistribution() {
+        return cartSizeDistribution;
+    }
+
+    public void setCartSizeDistribution(String cartSizeDistribution) {
+        this.cartSizeDistribution = cartSizeDistribution;
+    }
+
+    public double getStockPerStoka() {
+        return stockPerStoka;
+    }
+
+    public void setStockPerStoka(double stockPerStoka) {
+        this.stockPerStoka = stockPerStoka;
+    }
+
+    public BigDecimal getShopperMoney() {
+        return shopperMoney;
+    }
+
+    public void setShopperMoney(BigDecimal shopperMoney) {
+        this.shopperMoney = shopperMoney;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public int getCommitBatch() {
+        return commitBatch;
+    }
+
+    public void setCommitBatch(int commitBatch) {
+        if (commitBatch < 0) {
+            throw new IllegalArgumentException("commitBatch не може да е отрицателно число");
+        }
+        this.commitBatch = commitBatch;
+    }
+
+//      Задава параметър по име от командния ред, например "lanes=16" или "products=uniform".
+
+    public void set(String key, String value) {
+        switch (key) {
+            case "lanes" -> setLanes(Integer.parseInt(value));
+            case "shoppers" -> setShoppers(Integer.parseInt(value));
+            case "checkouts" -> setCheckoutsPerShopper(Integer.parseInt(value));
+            case "catalogue" -> setCatalogueSize(Integer.parseInt(value));
+            case "minCart" -> setCartSize(Integer.parseInt(value), Math.max(Integer.parseInt(value), maxCartSize));
+            case "maxCart" -> setCartSize(minCartSize, Integer.parseInt(value));
+            case "products" -> setProductDistribution(value);
+            case "cartSizes" -> setCartSizeDistribution(value);
+            case "stock" -> setStockPerStoka(Double.parseDouble(value));
+            case "money" -> setShopperMoney(new BigDecimal(value));
+            case "seed" -> setSeed(Long.parseLong(value));
+            case "commitBatch" -> setCommitBatch(Integer.parseInt(value));
+            default -> throw new IllegalArgumentException("Непознат параметър: " + key);
+        }
+    }
+
+    private static int positive(int value, String name) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(name + " трябва да е положително число");
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "lanes=" + lanes + ", shoppers=" + shoppers + ", checkouts=" + checkoutsPerShopper
+                + ", catalogue=" + catalogueSize + ", cart=" + minCartSize + ".." + maxCartSize
+                + ", products=" + productDistribution + ", cartSizes=" + cartSizeDistribution
+                + ", stock=" + stockPerStoka + ", money=" + shopperMoney + ", seed=" + seed
+                + ", commitBatch=" + commitBatch;
+    }
+}
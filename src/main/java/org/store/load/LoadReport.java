@@ -0,0 +1,77 @@
+package org.store.load;
+
+import org.store.metrics.LatencyHistogram;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+// Резултат от едно натоварване - пропускателна способност, времена на плащане и неуспехи по тип.
+public class LoadReport {
+    private final long successful;
+    private final Map<String, Long> failures;
+    private final long elapsedNanos;
+    private final LatencyHistogram latency;
+    private final String executor;
+
+    public LoadReport(long successful, Map<String, Long> failures, long elapsedNanos, LatencyHistogram latency, String executor) {
+        this.successful = successful;
+        this.failures = Collections.unmodifiableMap(new TreeMap<>(failures));
+        this.elapsedNanos = elapsedNanos;
+        this.latency = latency;
+        this.executor = executor;
+    }
+
+    public long getSuccessful() {
+        return successful;
+    }
+
+    public Map<String, Long> getFailures() {
+        return failures;
+    }
+
+    public long getFailed() {
+        long total = 0;
+        for (long count : failures.values()) {
+            total += count;
+        }
+        return total;
+    }
+
+    public long getAttempted() {
+        return successful + getFailed();
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public String getExecutor() {
+        return executor;
+    }
+
+    // Успешни плащания в секунда
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : successful * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Нишки: %s%n", executor));
+        sb.append(String.format("Плащания: %d успешни, %d неуспешни за %.2f с%n",
+                successful, getFailed(), elapsedNanos / 1e9));
+        sb.append(String.format("Пропускателна способност: %.1f плащания/с%n", getThroughput()));
+        sb.append(String.format("Време за плащане: p50=%.1f µs, p99=%.1f µs, p999=%.1f µs%n",
+                latency.percentile(0.50) / 1e3, latency.percentile(0.99) / 1e3, latency.percentile(0.999) / 1e3));
+        for (Map.Entry<String, Long> entry : failures.entrySet()) {
+            sb.append(String.format("  %s: %d%n", entry.getKey(), entry.getValue()));
+        }
+        return sb.toString();
+    }
+}
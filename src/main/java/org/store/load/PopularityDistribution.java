@@ -0,0 +1,100 @@
+package org.store.load;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// Разпределение върху рангове 0..size-1 - кой продукт ще вземе клиентът или колко голяма е количката.
+// При равномерното всички рангове са еднакво вероятни, при Zipf ранг k има тегло 1/(k+1)^s,
+// т.е. малко популярни продукти събират по-голямата част от покупките.
+public abstract class PopularityDistribution {
+    private final int size;
+
+    protected PopularityDistribution(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Разпределението трябва да има поне един елемент");
+        }
+        this.size = size;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public abstract int next(SplittableRandom random);
+
+    public static PopularityDistribution uniform(int size) {
+        return new Uniform(size);
+    }
+
+    public static PopularityDistribution zipf(int size, double exponent) {
+        return new Zipf(size, exponent);
+    }
+
+//      Разпознава "uniform" и "zipf" / "zipf:1.2" (по подразбиране експонента 1.0).
+
+    public static PopularityDistribution parse(String spec, int size) {
+        String value = spec.trim().toLowerCase();
+        if (value.equals("uniform")) {
+            return uniform(size);
+        }
+        if (value.equals("zipf")) {
+            return zipf(size, 1.0);
+        }
+        if (value.startsWith("zipf:")) {
+            return zipf(size, Double.parseDouble(value.substring("zipf:".length())));
+        }
+        throw new IllegalArgumentException("Непознато разпределение: " + spec);
+    }
+
+    private static final class Uniform extends PopularityDistribution {
+        Uniform(int size) {
+            super(size);
+        }
+
+        @Override
+        public int next(SplittableRandom random) {
+            return random.nextInt(getSize());
+        }
+
+        @Override
+        public String toString() {
+            return "uniform";
+        }
+    }
+
+    // Натрупаната функция се изчислява веднъж, всяко теглене е двоично търсене в нея
+    private static final class Zipf extends PopularityDistribution {
+        private final double exponent;
+        private final double[] cumulative;
+
+        Zipf(int size, double exponent) {
+            super(size);
+            if (exponent <= 0) {
+                throw new IllegalArgumentException("Експонентата на Zipf трябва да е положителна");
+            }
+
+            this.exponent = exponent;
+            this.cumulative = new double[size];
+            double sum = 0;
+            for (int k = 0; k < size; k++) {
+                sum += 1.0 / Math.pow(k + 1, exponent);
+                cumulative[k] = sum;
+            }
+            for (int k = 0; k < size; k++) {
+                cumulative[k] /= sum;
+            }
+        }
+
+        @Override
+        public int next(SplittableRandom random) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            int rank = index >= 0 ? index : -index - 1;
+            return Math.min(rank, getSize() - 1);
+        }
+
+        @Override
+        public String toString() {
+            return "zipf:" + exponent;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package org.store.log;
+
+import org.store.enums.LogEvent;
+import org.store.enums.LogLevel;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Диагностичен журнал със събития от LogEvent и асинхронен запис.
+//
+// Изключено ниво струва едно volatile четене и сравнение - нищо не се сглобява и не се заема.
+// Включените събития се слагат в пръстен с фиксиран размер (събитие + до три аргумента + час),
+// а отделна нишка ги форматира и пише на изхода. Касите никога не чакат PrintStream - при пълен
+// пръстен събитието се изхвърля и се брои в getDropped.
+public class DiagnosticLog {
+    private static final int DEFAULT_CAPACITY = 8192;
+    private static final DiagnosticLog SHARED = new DiagnosticLog(DEFAULT_CAPACITY);
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    private volatile boolean writerParked;
+    private volatile int threshold = LogLevel.INFO.ordinal();
+    private volatile PrintStream output;
+
+    // Записите в нишката на журнала - пише само тя
+    private final StringBuilder line = new StringBuilder(256);
+
+    public DiagnosticLog(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Размерът на журнала трябва да е степен на двойката");
+        }
+
+        this.slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            this.slots[i] = new Slot(i);
+        }
+        this.mask = capacity - 1;
+
+        this.writer = new Thread(this::run, "diagnostic-log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    // Общият журнал на процеса - в него пишат стоките, количките и услугите
+    public static DiagnosticLog shared() {
+        return SHARED;
+    }
+
+    public boolean isEnabled(LogEvent event) {
+        return event.getLevel().ordinal() >= threshold;
+    }
+
+    public void log(LogEvent event) {
+        if (isEnabled(event)) {
+            publish(event, null, null, null);
+        }
+    }
+
+    public void log(LogEvent event, Object first) {
+        if (isEnabled(event)) {
+            publish(event, first, null, null);
+        }
+    }
+
+    public void log(LogEvent event, Object first, Object second) {
+        if (isEnabled(event)) {
+            publish(event, first, second, null);
+        }
+    }
+
+    public void log(LogEvent event, Object first, Object second, Object third) {
+        if (isEnabled(event)) {
+            publish(event, first, second, third);
+        }
+    }
+
+    public LogLevel getLevel() {
+        return LogLevel.values()[threshold];
+    }
+
+    public void setLevel(LogLevel level) {
+        this.threshold = level.ordinal();
+    }
+
+    // Изходът на журнала; null означава текущия System.out
+    public void setOutput(PrintStream output) {
+        this.output = output;
+    }
+
+//      Чака, докато всички събития, записани досега, излязат на изхода.
+//      return false, ако това не е станало за timeoutMillis
+
+    public boolean flush(long timeoutMillis) {
+        long target = tail.get();
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+
+        while (head < target) {
+            if (System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(100_000L);
+        }
+        return true;
+    }
+
+    // Събития, изхвърлени заради пълен пръстен
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    // Събития, излезли на изхода
+    public long getWritten() {
+        return head;
+    }
+
+//      Пръстенът е ограничена опашка с много писачи и един четец: всяко място пази пореден номер,
+//      по който писачът разбира дали мястото е свободно, а четецът - дали събитието е готово.
+
+    private void publish(LogEvent event, Object first, Object second, Object third) {
+        long position = tail.get();
+        Slot slot;
+
+        while (true) {
+            slot = slots[(int) (position & mask)];
+            long difference = slot.sequence - position;
+
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                dropped.increment();
+                return;
+            } else {
+                position = tail.get();
+            }
+        }
+
+        slot.event = event;
+        slot.first = first;
+        slot.second = second;
+        slot.third = third;
+        slot.timeMillis = System.currentTimeMillis();
+        slot.sequence = position + 1;
+
+        if (writerParked) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private void run() {
+        long position = 0;
+
+        while (true) {
+            Slot slot = slots[(int) (position & mask)];
+            if (slot.sequence != position + 1) {
+                flushOutput();
+                writerParked = true;
+                // Повторна проверка след обявяването - писачът може да е публикувал точно преди това
+                if (slot.sequence != position + 1) {
+                    LockSupport.park(this);
+                }
+                writerParked = false;
+                continue;
+            }
+
+            write(slot);
+            slot.event = null;
+            slot.first = null;
+            slot.second = null;
+            slot.third = null;
+            slot.sequence = position + slots.length;
+            position++;
+            head = position;
+        }
+    }
+
+    private void write(Slot slot) {
+        line.setLength(0);
+        line.append(LocalDateTime.ofInstant(Instant.ofEpochMilli(slot.timeMillis), ZoneId.systemDefault()))
+                .append(' ').append(slot.event.getLevel())
+                .append(' ').append(slot.event.name())
+                .append(' ');
+
+        String message = slot.event.getMessage();
+        int argument = 0;
+        int from = 0;
+        int placeholder;
+        while ((placeholder = message.indexOf("{}", from)) >= 0) {
+            line.append(message, from, placeholder).append(slot.argument(argument++));
+            from = placeholder + 2;
+        }
+        line.append(message, from, message.length());
+
+        try {
+            currentOutput().println(line);
+        } catch (RuntimeException e) {
+            // Журналът не бива да спира заради счупен изход - събитието се губи
+            dropped.increment();
+        }
+    }
+
+    private void flushOutput() {
+        currentOutput().flush();
+    }
+
+    private PrintStream currentOutput() {
+        PrintStream current = this.output;
+        return current != null ? current : System.out;
+    }
+
+    // Място в пръстена; полетата без volatile се публикуват със записа в sequence
+    private static final class Slot {
+        private volatile long sequence;
+        private LogEvent event;
+        private Object first;
+        private Object second;
+        private Object third;
+        private long timeMillis;
+
+        private Slot(long sequence) {
+            this.sequence = sequence;
+        }
+
+        private Object argument(int index) {
+            switch (index) {
+                case 0:
+                    return first;
+                case 1:
+                    return second;
+                case 2:
+                    return third;
+                default:
+                    return "{}";
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package org.store.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Брояч, който само расте. Увеличението е през LongAdder - касите не се състезават за една клетка.
+public class Counter {
+    private final LongAdder value = new LongAdder();
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
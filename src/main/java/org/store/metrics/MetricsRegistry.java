@@ -0,0 +1,149 @@
+package org.store.metrics;
+
+import org.store.enums.MetricType;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+import java.util.regex.Pattern;
+
+// Регистър на метриките на процеса - броячи, времена и стойности, изчислявани при четене.
+// Метриките се регистрират веднъж и се пазят в полета на този, който ги записва - записът не търси
+// нищо в регистъра. Регистрацията и снимката са синхронизирани, записът в метриките не е.
+public class MetricsRegistry {
+    private static final Pattern NAME = Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+    private static final Pattern LABEL = Pattern.compile("[a-zA-Z_][a-zA-Z0-9_]*");
+
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    public Counter counter(String name, String help, String... labels) {
+        return register(name, help, MetricType.COUNTER, labels, Counter.class, new Counter());
+    }
+
+    public Timer timer(String name, String help, String... labels) {
+        return register(name, help, MetricType.SUMMARY, labels, Timer.class, new Timer());
+    }
+
+//      Стойност, която се изчислява при всяка снимка (размер на опашка, брой чакания и т.н.).
+//      Повторната регистрация със същото име и етикети заменя функцията.
+
+    public synchronized void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        Family family = family(name, help, MetricType.GAUGE);
+        family.series.put(formatLabels(labels), value);
+    }
+
+    // Моментна снимка на всички метрики в реда на регистрацията им
+    public synchronized MetricsSnapshot snapshot() {
+        List<MetricsSnapshot.Sample> samples = new ArrayList<>();
+
+        for (Family family : families.values()) {
+            for (Map.Entry<String, Object> series : family.series.entrySet()) {
+                samples.add(sample(family, series.getKey(), series.getValue()));
+            }
+        }
+        return new MetricsSnapshot(System.currentTimeMillis(), samples);
+    }
+
+//      Записва снимката в текстовия формат на Prometheus във файл (например за textfile колектора на node_exporter).
+//      Записът е през временен файл и преименуване - четящият никога не вижда половин файл.
+
+    public Path exportPrometheus(Path file) throws IOException {
+        byte[] text = snapshot().toPrometheus().getBytes(StandardCharsets.UTF_8);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+
+        Files.write(temporary, text);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return file;
+    }
+
+    private synchronized <T> T register(String name, String help, MetricType type, String[] labels,
+                                        Class<T> metricClass, T created) {
+        Family family = family(name, help, type);
+        Object existing = family.series.putIfAbsent(formatLabels(labels), created);
+        return existing == null ? created : metricClass.cast(existing);
+    }
+
+    private Family family(String name, String help, MetricType type) {
+        if (!NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Невалидно име на метрика: " + name);
+        }
+
+        Family family = families.computeIfAbsent(name, key -> new Family(name, help, type));
+        if (family.type != type) {
+            throw new IllegalArgumentException("Метриката " + name + " вече е регистрирана като " + family.type);
+        }
+        return family;
+    }
+
+    private static MetricsSnapshot.Sample sample(Family family, String labels, Object metric) {
+        switch (family.type) {
+            case COUNTER:
+                return MetricsSnapshot.Sample.value(family.name, family.help, family.type, labels, ((Counter) metric).get());
+            case GAUGE:
+                return MetricsSnapshot.Sample.value(family.name, family.help, family.type, labels,
+                        ((DoubleSupplier) metric).getAsDouble());
+            default:
+                Timer timer = (Timer) metric;
+                long[] quantiles = new long[MetricsSnapshot.QUANTILES.length];
+                for (int i = 0; i < quantiles.length; i++) {
+                    quantiles[i] = timer.percentile(MetricsSnapshot.QUANTILES[i]);
+                }
+                return MetricsSnapshot.Sample.timer(family.name, family.help, labels,
+                        timer.getCount(), timer.getTotalNanos(), quantiles);
+        }
+    }
+
+    // Етикетите се подават по двойки име, стойност и се пазят вече форматирани: phase="commit",lane="2"
+    static String formatLabels(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Етикетите се подават по двойки име, стойност");
+        }
+
+        StringBuilder formatted = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (!LABEL.matcher(labels[i]).matches()) {
+                throw new IllegalArgumentException("Невалидно име на етикет: " + labels[i]);
+            }
+            if (formatted.length() > 0) {
+                formatted.append(',');
+            }
+            formatted.append(labels[i]).append("=\"");
+            appendEscaped(formatted, labels[i + 1]);
+            formatted.append('"');
+        }
+        return formatted.toString();
+    }
+
+    private static void appendEscaped(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                out.append('\\').append(c);
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else {
+                out.append(c);
+            }
+        }
+    }
+
+    private static final class Family {
+        private final String name;
+        private final String help;
+        private final MetricType type;
+        private final Map<String, Object> series = new LinkedHashMap<>();
+
+        private Family(String name, String help, MetricType type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package org.store.metrics;
+
+import org.store.enums.MetricType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.List;
+
+// Неизменима снимка на метриките в един момент - за четене от кода и за експорт към Prometheus.
+// Времената се пазят в наносекунди, а в Prometheus се изписват в секунди.
+public class MetricsSnapshot {
+    // Перцентилите на времената в снимката и в quantile етикета на Prometheus
+    public static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    private final long takenAtMillis;
+    private final List<Sample> samples;
+
+    MetricsSnapshot(long takenAtMillis, List<Sample> samples) {
+        this.takenAtMillis = takenAtMillis;
+        this.samples = Collections.unmodifiableList(samples);
+    }
+
+    public long getTakenAtMillis() {
+        return takenAtMillis;
+    }
+
+    public List<Sample> getSamples() {
+        return samples;
+    }
+
+    // Метриката с това име и етикети (по двойки име, стойност) или null
+    public Sample get(String name, String... labels) {
+        String formatted = MetricsRegistry.formatLabels(labels);
+        for (Sample sample : samples) {
+            if (sample.name.equals(name) && sample.labels.equals(formatted)) {
+                return sample;
+            }
+        }
+        return null;
+    }
+
+    // Стойността на брояч или gauge, 0 ако няма такава метрика
+    public double value(String name, String... labels) {
+        Sample sample = get(name, labels);
+        return sample == null ? 0 : sample.value;
+    }
+
+    public String toPrometheus() {
+        StringBuilder text = new StringBuilder(samples.size() * 128);
+        try {
+            writePrometheus(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return text.toString();
+    }
+
+//      Текстовият формат на Prometheus (версия 0.0.4): HELP и TYPE веднъж на метрика,
+//      после по един ред на серия. Времената са summary - перцентили, _sum и _count.
+
+    public void writePrometheus(Appendable out) throws IOException {
+        String previousName = null;
+
+        for (Sample sample : samples) {
+            if (!sample.name.equals(previousName)) {
+                out.append("# HELP ").append(sample.name).append(' ').append(escapeHelp(sample.help)).append('\n');
+                out.append("# TYPE ").append(sample.name).append(' ')
+                        .append(sample.type.name().toLowerCase()).append('\n');
+                previousName = sample.name;
+            }
+
+            if (sample.type != MetricType.SUMMARY) {
+                appendSeries(out, sample.name, sample.labels, null);
+                out.append(formatNumber(sample.value)).append('\n');
+                continue;
+            }
+
+            for (int i = 0; i < QUANTILES.length; i++) {
+                appendSeries(out, sample.name, sample.labels, "quantile=\"" + QUANTILES[i] + "\"");
+                out.append(formatNumber(sample.quantileNanos[i] / NANOS_PER_SECOND)).append('\n');
+            }
+            appendSeries(out, sample.name + "_sum", sample.labels, null);
+            out.append(formatNumber(sample.totalNanos / NANOS_PER_SECOND)).append('\n');
+            appendSeries(out, sample.name + "_count", sample.labels, null);
+            out.append(Long.toString(sample.count)).append('\n');
+        }
+    }
+
+    private static void appendSeries(Appendable out, String name, String labels, String extraLabel) throws IOException {
+        out.append(name);
+        if (!labels.isEmpty() || extraLabel != null) {
+            out.append('{').append(labels);
+            if (extraLabel != null) {
+                out.append(labels.isEmpty() ? "" : ",").append(extraLabel);
+            }
+            out.append('}');
+        }
+        out.append(' ');
+    }
+
+    // Цели стойности без ".0" - броячите изглеждат като броячи
+    private static String formatNumber(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static String escapeHelp(String help) {
+        return help.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    // Една серия - име, етикети и стойност (за броячи и gauge) или брой, сума и перцентили (за времена)
+    public static final class Sample {
+        private final String name;
+        private final String help;
+        private final MetricType type;
+        private final String labels;
+        private final double value;
+        private final long count;
+        private final long totalNanos;
+        private final long[] quantileNanos;
+
+        private Sample(String name, String help, MetricType type, String labels, double value,
+                       long count, long totalNanos, long[] quantileNanos) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.labels = labels;
+            this.value = value;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.quantileNanos = quantileNanos;
+        }
+
+        static Sample value(String name, String help, MetricType type, String labels, double value) {
+            return new Sample(name, help, type, labels, value, 0, 0, new long[0]);
+        }
+
+        static Sample timer(String name, String help, String labels, long count, long totalNanos, long[] quantileNanos) {
+            return new Sample(name, help, MetricType.SUMMARY, labels, count, count, totalNanos, quantileNanos);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public MetricType getType() {
+            return type;
+        }
+
+        // Етикетите във вида на Prometheus: phase="commit"
+        public String getLabels() {
+            return labels;
+        }
+
+        public double getValue() {
+            return value;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        // Перцентилът QUANTILES[index] в наносекунди
+        public long getQuantileNanos(int index) {
+            return quantileNanos[index];
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.store.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.store.enums.LogEvent;
+import org.store.log.DiagnosticLog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Изнася метриките на регистъра към Prometheus - периодично във файл или през HTTP на /metrics.
+// Снимката се прави при всеки запис или заявка, касите не чакат експорта.
+public class PrometheusExporter implements Closeable {
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final ScheduledExecutorService scheduler;
+    private final HttpServer server;
+
+    private PrometheusExporter(ScheduledExecutorService scheduler, HttpServer server) {
+        this.scheduler = scheduler;
+        this.server = server;
+    }
+
+    // Записва метриките във file на всеки interval (първият запис е веднага)
+    public static PrometheusExporter toFile(MetricsRegistry registry, Path file, Duration interval) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-export");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long millis = interval.toMillis();
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                registry.exportPrometheus(file);
+            } catch (IOException e) {
+                DiagnosticLog.shared().log(LogEvent.METRICS_EXPORT_FAILED, e.getMessage());
+            }
+        }, 0, millis, TimeUnit.MILLISECONDS);
+        return new PrometheusExporter(scheduler, null);
+    }
+
+//      Пуска HTTP сървър, който връща метриките на GET /metrics.
+//      С порт 0 се избира свободен порт - истинският се чете от getPort.
+
+    public static PrometheusExporter serve(MetricsRegistry registry, InetSocketAddress address) throws IOException {
+        HttpServer server = HttpServer.create(address, 0);
+        server.createContext("/metrics", exchange -> respond(exchange, registry));
+        server.start();
+        return new PrometheusExporter(null, server);
+    }
+
+    public int getPort() {
+        if (server == null) {
+            throw new IllegalStateException("Експортът не е през HTTP");
+        }
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, MetricsRegistry registry) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            byte[] body = registry.snapshot().toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.store.metrics;
+
+import org.store.data.Store;
+import org.store.journal.ReceiptPersister;
+import org.store.journal.StoreEventLog;
+import org.store.service.ExpirySweeper;
+
+// Метриките на един магазин, регистрирани предварително - касата и услугите ги записват през
+// полетата тук, без търсене по име. Фазите на плащането са серии на една метрика с етикет phase.
+public class StoreMetrics {
+    private final MetricsRegistry registry;
+
+    private final Timer checkout;
+    private final Timer checkoutValidate;
+    private final Timer checkoutPrice;
+    private final Timer checkoutCommit;
+    private final Counter checkoutsRejectedStock;
+    private final Counter checkoutsRejectedMoney;
+
+    private final Timer delivery;
+    private final Counter deliveredLines;
+
+    private final Timer reportDeliveryExpenses;
+    private final Timer reportSalaryExpenses;
+    private final Timer reportSoldRevenue;
+    private final Timer reportWriteOffExpenses;
+    private final Timer reportProfit;
+    private final Timer reportEndOfDay;
+
+    public StoreMetrics(Store store) {
+        this(new MetricsRegistry(), store);
+    }
+
+    public StoreMetrics(MetricsRegistry registry, Store store) {
+        this.registry = registry;
+
+        this.checkout = registry.timer("store_checkout_seconds", "Време за едно успешно плащане на каса");
+        String phases = "Време за една фаза на плащането";
+        this.checkoutValidate = registry.timer("store_checkout_phase_seconds", phases, "phase", "validate");
+        this.checkoutPrice = registry.timer("store_checkout_phase_seconds", phases, "phase", "price");
+        this.checkoutCommit = registry.timer("store_checkout_phase_seconds", phases, "phase", "commit");
+        String rejected = "Отказани плащания по причина";
+        this.checkoutsRejectedStock = registry.counter("store_checkout_rejected_total", rejected, "reason", "stock");
+        this.checkoutsRejectedMoney = registry.counter("store_checkout_rejected_total", rejected, "reason", "money");
+
+        this.delivery = registry.timer("store_delivery_seconds", "Време за една доставка");
+        this.deliveredLines = registry.counter("store_delivered_lines_total", "Доставени редове след обединяване по стока");
+
+        String reports = "Време за изчисляване на справка";
+        this.reportDeliveryExpenses = registry.timer("store_report_seconds", reports, "report", "delivery_expenses");
+        this.reportSalaryExpenses = registry.timer("store_report_seconds", reports, "report", "salary_expenses");
+        this.reportSoldRevenue = registry.timer("store_report_seconds", reports, "report", "sold_revenue");
+        this.reportWriteOffExpenses = registry.timer("store_report_seconds", reports, "report", "write_off_expenses");
+        this.reportProfit = registry.timer("store_report_seconds", reports, "report", "profit");
+        this.reportEndOfDay = registry.timer("store_report_seconds", reports, "report", "end_of_day");
+
+        // Състоянието на фоновите записи се чете при снимката - те могат да се сменят по време на работа
+        registry.gauge("store_receipt_queue_size", "Касови бележки, чакащи запис на диска", () -> {
+            ReceiptPersister persister = store.getReceiptPersister();
+            return persister == null ? 0 : persister.getQueueSize();
+        });
+        registry.gauge("store_receipt_backpressure_waits", "Плащания, чакали място в опашката за запис", () -> {
+            ReceiptPersister persister = store.getReceiptPersister();
+            return persister == null ? 0 : persister.getBackpressureWaits();
+        });
+        registry.gauge("store_receipt_write_failures", "Касови бележки, чийто запис на диска не е успял", () -> {
+            ReceiptPersister persister = store.getReceiptPersister();
+            return persister == null ? 0 : persister.getFailed();
+        });
+        registry.gauge("store_event_log_events", "Събития, записани в журнала на магазина", () -> {
+            StoreEventLog eventLog = store.getEventLog();
+            return eventLog == null ? 0 : eventLog.getAppendedEvents();
+        });
+        registry.gauge("store_event_log_failures", "Промени, които не са записани в журнала на магазина", () -> {
+            StoreEventLog eventLog = store.getEventLog();
+            return eventLog == null ? 0 : eventLog.getFailedEvents();
+        });
+        registry.gauge("store_catalogue_size", "Стоки в каталога", () -> store.getCatalogue().size());
+
+        registry.gauge("store_expiry_sweeps", "Завършени почиствания на изтеклите стоки", () -> {
+            ExpirySweeper sweeper = store.getExpirySweeper();
+            return sweeper == null ? 0 : sweeper.getSweeps();
+        });
+        registry.gauge("store_expiry_last_sweep_seconds", "Продължителност на последното почистване", () -> {
+            ExpirySweeper sweeper = store.getExpirySweeper();
+            return sweeper == null ? 0 : sweeper.getLastSweepNanos() / 1_000_000_000.0;
+        });
+        registry.gauge("store_expiry_items_evicted", "Стоки, бракувани при почистванията", () -> {
+            ExpirySweeper sweeper = store.getExpirySweeper();
+            return sweeper == null ? 0 : sweeper.getItemsEvicted();
+        });
+        registry.gauge("store_expiry_units_evicted", "Количество, бракувано при почистванията", () -> {
+            ExpirySweeper sweeper = store.getExpirySweeper();
+            return sweeper == null ? 0 : sweeper.getUnitsEvicted();
+        });
+        registry.gauge("store_expiry_failed_items", "Стоки, които почистването не е успяло да бракува", () -> {
+            ExpirySweeper sweeper = store.getExpirySweeper();
+            return sweeper == null ? 0 : sweeper.getFailedItems();
+        });
+    }
+
+    public MetricsRegistry getRegistry() {
+        return registry;
+    }
+
+    public MetricsSnapshot snapshot() {
+        return registry.snapshot();
+    }
+
+    public Timer getCheckout() {
+        return checkout;
+    }
+
+    public Timer getCheckoutValidate() {
+        return checkoutValidate;
+    }
+
+    public Timer getCheckoutPrice() {
+        return checkoutPrice;
+    }
+
+    public Timer getCheckoutCommit() {
+        return checkoutCommit;
+    }
+
+    public Counter getCheckoutsRejectedStock() {
+        return checkoutsRejectedStock;
+    }
+
+    public Counter getCheckoutsRejectedMoney() {
+        return checkoutsRejectedMoney;
+    }
+
+    public Timer getDelivery() {
+        return delivery;
+    }
+
+    public Counter getDeliveredLines() {
+        return deliveredLines;
+    }
+
+    public Timer getReportDeliveryExpenses() {
+        return reportDeliveryExpenses;
+    }
+
+    public Timer getReportSalaryExpenses() {
+        return reportSalaryExpenses;
+    }
+
+    public Timer getReportSoldRevenue() {
+        return reportSoldRevenue;
+    }
+
+    public Timer getReportWriteOffExpenses() {
+        return reportWriteOffExpenses;
+    }
+
+    public Timer getReportProfit() {
+        return reportProfit;
+    }
+
+    public Timer getReportEndOfDay() {
+        return reportEndOfDay;
+    }
+}
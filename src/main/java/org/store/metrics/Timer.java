@@ -0,0 +1,36 @@
+package org.store.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Времена на една операция - хистограма за перцентилите и обща сума за средното.
+// Записът е едно атомарно увеличение в хистограмата и едно в сумата, без заемане на памет.
+public class Timer {
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final LongAdder totalNanos = new LongAdder();
+
+    public void record(long nanos) {
+        histogram.record(nanos);
+        totalNanos.add(Math.max(0, nanos));
+    }
+
+//      Записва времето от startNanos (System.nanoTime) до сега и връща сегашното време -
+//      така последователните фази на една операция се мерят с по едно извикване на nanoTime.
+
+    public long recordSince(long startNanos) {
+        long now = System.nanoTime();
+        record(now - startNanos);
+        return now;
+    }
+
+    public long getCount() {
+        return histogram.getCount();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long percentile(double quantile) {
+        return histogram.percentile(quantile);
+    }
+}
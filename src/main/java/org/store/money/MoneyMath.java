@@ -0,0 +1,96 @@
+package org.store.money;
+
+import org.store.data.QuantityLedger;
+import org.store.data.Stoka;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+// Пресмятане на суми в стотинки (long) вместо с BigDecimal.
+// Цената е в стотинки, количеството - в хилядни (като в QuantityLedger), затова произведението е точно
+// в хилядни от стотинката. Закръглянето е едно - HALF_UP до стотинка, веднъж за цялата сума.
+// BigDecimal се създава само на границата, когато сумата се връща навън.
+public final class MoneyMath {
+    public static final int SCALE = 2;
+    public static final RoundingMode ROUNDING = RoundingMode.HALF_UP;
+
+    private static final long MILLI = QuantityLedger.SCALE;
+    private static final long BASIS_POINTS = 10_000;
+    private static final ToLongFunction<Stoka> LIST_PRICE = Stoka::getPriceStotinki;
+
+    private MoneyMath() {
+    }
+
+    public static long toStotinki(BigDecimal amount) {
+        return amount.setScale(SCALE, ROUNDING).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toBigDecimal(long stotinki) {
+        return BigDecimal.valueOf(stotinki, SCALE);
+    }
+
+    // Стойност на един ред в хилядни от стотинката - без закръгляне
+    public static long lineTotalMilli(long priceStotinki, long quantityMilli) {
+        return Math.multiplyExact(priceStotinki, quantityMilli);
+    }
+
+    // Закръгля хилядни от стотинката до стотинки, HALF_UP (симетрично за отрицателни суми)
+    public static long roundMilli(long milliStotinki) {
+        long half = MILLI / 2;
+        return milliStotinki >= 0
+                ? (milliStotinki + half) / MILLI
+                : -((-milliStotinki + half) / MILLI);
+    }
+
+    // Цена след отстъпка, зададена в базисни точки (1% = 100), закръглена HALF_UP до стотинка
+    public static long discount(long priceStotinki, long discountBasisPoints) {
+        long discount = (Math.multiplyExact(priceStotinki, discountBasisPoints) + BASIS_POINTS / 2) / BASIS_POINTS;
+        return priceStotinki - discount;
+    }
+
+    // Цена с надценка в базисни точки (10% = 1000), закръглена HALF_UP до стотинка
+    public static long markup(long priceStotinki, long markupBasisPoints) {
+        return (Math.multiplyExact(priceStotinki, BASIS_POINTS + markupBasisPoints) + BASIS_POINTS / 2) / BASIS_POINTS;
+    }
+
+    public static long lineTotalStotinki(Stoka stoka, double quantity) {
+        return lineTotalStotinki(stoka.getPriceStotinki(), quantity);
+    }
+
+    public static long lineTotalStotinki(long priceStotinki, double quantity) {
+        return roundMilli(lineTotalMilli(priceStotinki, QuantityLedger.toMilli(quantity)));
+    }
+
+//      Обща стойност на стоките по текущата им цена в стотинки.
+//      Редове без стока или с липсващо/неположително количество се пропускат.
+
+    public static long totalStotinki(Map<Stoka, Double> items) {
+        return totalStotinki(items, LIST_PRICE);
+    }
+
+    // Същото, но единичната цена на всяка стока идва от unitPrice (например с отстъпка за срок)
+    public static long totalStotinki(Map<Stoka, Double> items, ToLongFunction<Stoka> unitPrice) {
+        if (items == null) {
+            return 0;
+        }
+
+        long totalMilli = 0;
+        for (Map.Entry<Stoka, Double> entry : items.entrySet()) {
+            Stoka stoka = entry.getKey();
+            Double quantity = entry.getValue();
+
+            if (stoka != null && quantity != null && quantity > 0) {
+                long line = lineTotalMilli(unitPrice.applyAsLong(stoka), QuantityLedger.toMilli(quantity));
+                totalMilli = Math.addExact(totalMilli, line);
+            }
+        }
+
+        return roundMilli(totalMilli);
+    }
+
+    public static BigDecimal total(Map<Stoka, Double> items) {
+        return toBigDecimal(totalStotinki(items));
+    }
+}
@@ -0,0 +1,118 @@
+package org.store.service;
+
+import org.store.data.PricedCart;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Общ етап за записване на продажбите от всички каси.
+// Касите поставят остойностените колички в опашка, а една нишка ги взема на партиди
+// и ги прилага към склада наведнъж (StoreService.commitSales) - ключалките се вземат веднъж на партида,
+// вместо всяка каса да се състезава за тях поотделно. Всяка количка се проверява отделно:
+// ако за една няма достатъчно стока, само нейното future завършва с грешка.
+public class CheckoutCommitter implements AutoCloseable {
+    public static final int DEFAULT_MAX_BATCH = 64;
+
+    private final StoreService storeService;
+    private final int maxBatch;
+    private final BlockingQueue<PendingSale> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong sales = new AtomicLong();
+
+    public CheckoutCommitter(StoreService storeService) {
+        this(storeService, DEFAULT_MAX_BATCH);
+    }
+
+    public CheckoutCommitter(StoreService storeService, int maxBatch) {
+        if (maxBatch <= 0) {
+            throw new IllegalArgumentException("Размерът на партидата трябва да е положително число");
+        }
+
+        this.storeService = storeService;
+        this.maxBatch = maxBatch;
+        this.thread = new Thread(this::run, "checkout-committer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public CompletableFuture<Void> submit(PricedCart pricedCart) {
+        PendingSale sale = new PendingSale(pricedCart);
+        if (!running) {
+            sale.getResult().completeExceptionally(new IllegalStateException("Записването на продажби е спряно"));
+            return sale.getResult();
+        }
+
+        queue.add(sale);
+
+        // close() може да е приключил между проверката и добавянето - тогава никой няма да вземе продажбата
+        if (!running && queue.remove(sale)) {
+            sale.getResult().completeExceptionally(new IllegalStateException("Записването на продажби е спряно"));
+        }
+        return sale.getResult();
+    }
+
+    private void run() {
+        List<PendingSale> batch = new ArrayList<>(maxBatch);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingSale first = queue.poll(50, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+
+                batches.incrementAndGet();
+                sales.addAndGet(batch.size());
+                storeService.commitSales(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                // Неочаквана грешка - касите от тази партида я получават, вместо да чакат безкрайно
+                for (PendingSale sale : batch) {
+                    sale.getResult().completeExceptionally(e);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // Брой изпълнени партиди и средният им размер - показват колко се е събирало в опашката
+    public long getBatches() {
+        return batches.get();
+    }
+
+    public long getSales() {
+        return sales.get();
+    }
+
+    public double getAverageBatchSize() {
+        long count = batches.get();
+        return count == 0 ? 0 : (double) sales.get() / count;
+    }
+
+//      Спира приемането на нови продажби, изчаква вече поставените в опашката да бъдат записани
+//      и спира нишката.
+
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        thread.join();
+
+        PendingSale sale;
+        while ((sale = queue.poll()) != null) {
+            sale.getResult().completeExceptionally(new IllegalStateException("Записването на продажби е спряно"));
+        }
+    }
+}
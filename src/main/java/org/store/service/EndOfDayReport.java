@@ -0,0 +1,215 @@
+package org.store.service;
+
+import org.store.enums.StokaCategory;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+
+// Отчет за края на деня - приходи, разходи и марж по категория и приходи по касиер.
+// Сумите са точни (BigDecimal без закръгляне), затова паралелното и последователното изчисляване
+// дават равни отчети - equals сравнява всички суми.
+public class EndOfDayReport {
+    // Ключ в getByCashier за бележките без касиер (например внесени отвън) - празен id, както в журнала
+    public static final String NO_CASHIER = "";
+    public static final String NO_CASHIER_NAME = "Без касиер";
+
+    private final Map<StokaCategory, CategoryTotals> byCategory;
+    private final Map<String, CashierTotals> byCashier;
+    private final BigDecimal salaryExpenses;
+
+    EndOfDayReport(Map<StokaCategory, CategoryTotals> byCategory, Map<String, CashierTotals> byCashier,
+                   BigDecimal salaryExpenses) {
+        this.byCategory = Collections.unmodifiableMap(byCategory);
+        this.byCashier = Collections.unmodifiableMap(byCashier);
+        this.salaryExpenses = salaryExpenses;
+    }
+
+    public Map<StokaCategory, CategoryTotals> getByCategory() {
+        return byCategory;
+    }
+
+    // Касиерите по id; бележките без касиер са под NO_CASHIER
+    public Map<String, CashierTotals> getByCashier() {
+        return byCashier;
+    }
+
+    public BigDecimal getSoldRevenue() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (CategoryTotals category : byCategory.values()) {
+            total = total.add(category.soldRevenue);
+        }
+        return total;
+    }
+
+    public BigDecimal getDeliveryExpenses() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (CategoryTotals category : byCategory.values()) {
+            total = total.add(category.deliveryExpenses);
+        }
+        return total;
+    }
+
+    public BigDecimal getWriteOffExpenses() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (CategoryTotals category : byCategory.values()) {
+            total = total.add(category.writeOffExpenses);
+        }
+        return total;
+    }
+
+    public BigDecimal getSalaryExpenses() {
+        return salaryExpenses;
+    }
+
+    // Печалбата както в StoreService.calculateStoreProfit: приходи - заплати - разходи за доставка
+    public BigDecimal getProfit() {
+        return getProfitBreakdown().getProfit();
+    }
+
+    // Същите редове като StoreService.calculateProfitBreakdown, с брака отделно
+    public ProfitBreakdown getProfitBreakdown() {
+        return new ProfitBreakdown(getSoldRevenue(), salaryExpenses, getDeliveryExpenses(), getWriteOffExpenses());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        EndOfDayReport that = (EndOfDayReport) o;
+        return byCategory.equals(that.byCategory) && byCashier.equals(that.byCashier)
+                && salaryExpenses.equals(that.salaryExpenses);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(byCategory, byCashier, salaryExpenses);
+    }
+
+    @Override
+    public String toString() {
+        return "EndOfDayReport{" +
+                "byCategory=" + byCategory +
+                ", byCashier=" + byCashier +
+                ", salaryExpenses=" + salaryExpenses +
+                '}';
+    }
+
+    // Сумите за една категория; себестойността на продаденото е по цена на доставка
+    public static class CategoryTotals {
+        private final BigDecimal soldRevenue;
+        private final BigDecimal deliveryExpenses;
+        private final BigDecimal costOfSold;
+        private final BigDecimal writeOffExpenses;
+        private final long soldMilli;
+
+        CategoryTotals(BigDecimal soldRevenue, BigDecimal deliveryExpenses, BigDecimal costOfSold,
+                       BigDecimal writeOffExpenses, long soldMilli) {
+            this.soldRevenue = soldRevenue;
+            this.deliveryExpenses = deliveryExpenses;
+            this.costOfSold = costOfSold;
+            this.writeOffExpenses = writeOffExpenses;
+            this.soldMilli = soldMilli;
+        }
+
+        public BigDecimal getSoldRevenue() {
+            return soldRevenue;
+        }
+
+        public BigDecimal getDeliveryExpenses() {
+            return deliveryExpenses;
+        }
+
+        public BigDecimal getCostOfSold() {
+            return costOfSold;
+        }
+
+        public BigDecimal getWriteOffExpenses() {
+            return writeOffExpenses;
+        }
+
+        public long getSoldMilli() {
+            return soldMilli;
+        }
+
+        // Марж = приходи - цена на доставка на продаденото
+        public BigDecimal getMargin() {
+            return soldRevenue.subtract(costOfSold);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            CategoryTotals that = (CategoryTotals) o;
+            return soldMilli == that.soldMilli && soldRevenue.equals(that.soldRevenue)
+                    && deliveryExpenses.equals(that.deliveryExpenses) && costOfSold.equals(that.costOfSold)
+                    && writeOffExpenses.equals(that.writeOffExpenses);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(soldRevenue, deliveryExpenses, costOfSold, writeOffExpenses, soldMilli);
+        }
+
+        @Override
+        public String toString() {
+            return "CategoryTotals{" +
+                    "soldRevenue=" + soldRevenue +
+                    ", deliveryExpenses=" + deliveryExpenses +
+                    ", costOfSold=" + costOfSold +
+                    ", writeOffExpenses=" + writeOffExpenses +
+                    ", soldMilli=" + soldMilli +
+                    '}';
+        }
+    }
+
+    // Издадените бележки и сумата им за един касиер
+    public static class CashierTotals {
+        private final String cashierName;
+        private final long receipts;
+        private final BigDecimal revenue;
+
+        CashierTotals(String cashierName, long receipts, BigDecimal revenue) {
+            this.cashierName = cashierName;
+            this.receipts = receipts;
+            this.revenue = revenue;
+        }
+
+        public String getCashierName() {
+            return cashierName;
+        }
+
+        public long getReceipts() {
+            return receipts;
+        }
+
+        public BigDecimal getRevenue() {
+            return revenue;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            CashierTotals that = (CashierTotals) o;
+            return receipts == that.receipts && Objects.equals(cashierName, that.cashierName)
+                    && revenue.equals(that.revenue);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(cashierName, receipts, revenue);
+        }
+
+        @Override
+        public String toString() {
+            return "CashierTotals{" +
+                    "cashierName='" + cashierName + '\'' +
+                    ", receipts=" + receipts +
+                    ", revenue=" + revenue +
+                    '}';
+        }
+    }
+}
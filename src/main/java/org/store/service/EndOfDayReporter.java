@@ -0,0 +1,181 @@
+package org.store.service;
+
+import org.store.data.Cashier;
+import org.store.data.QuantityLedger;
+import org.store.data.Receipt;
+import org.store.data.Stoka;
+import org.store.data.Store;
+import org.store.enums.StokaCategory;
+import org.store.money.MoneyMath;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// Отчетът за края на деня с едно обхождане на стоките и едно на бележките.
+//
+// Стоките се обхождат по SKU индекс - регистрите с количества са плътни масиви, затова интервалът
+// от индекси се дели на равни части без копиране. Всяка част събира свои суми по категория,
+// а частите се сливат със събиране. Сумите са BigDecimal без закръгляне - събирането е точно и
+// асоциативно, затова редът на сливане не влияе на резултата и паралелният отчет е равен на последователния.
+public class EndOfDayReporter {
+    private static final StokaCategory[] CATEGORIES = StokaCategory.values();
+
+    private final Store store;
+    private final ForkJoinPool pool;
+
+    public EndOfDayReporter(Store store) {
+        this(store, ForkJoinPool.commonPool());
+    }
+
+    // Паралелният отчет се изпълнява в pool - така натоварването не спира другите задачи в commonPool
+    public EndOfDayReporter(Store store, ForkJoinPool pool) {
+        this.store = store;
+        this.pool = pool;
+    }
+
+//      Отчет за магазина и бележките от деня (например ReceiptIndex.findBetween за днешната дата).
+//      Продажби, които текат по време на отчета, могат да попаднат частично - за окончателен отчет касите са затворени.
+
+    public EndOfDayReport report(Collection<Receipt> receipts) {
+        long start = System.nanoTime();
+        EndOfDayReport report = pool.submit(() -> compute(receipts, true)).join();
+        this.store.getMetrics().getReportEndOfDay().recordSince(start);
+        return report;
+    }
+
+    // Същият отчет в текущата нишка - за малки магазини и за сверяване с паралелния
+    public EndOfDayReport reportSequential(Collection<Receipt> receipts) {
+        return compute(receipts, false);
+    }
+
+    private EndOfDayReport compute(Collection<Receipt> receipts, boolean parallel) {
+        QuantityLedger delivered = this.store.getDeliveredLedger();
+        QuantityLedger sold = this.store.getSoldLedger();
+        int skus = Math.max(delivered.capacity(), sold.capacity());
+
+        IntStream indexes = IntStream.range(0, skus);
+        if (parallel) {
+            indexes = indexes.parallel();
+        }
+        StockTotals stock = indexes.collect(StockTotals::new,
+                (totals, index) -> totals.add(delivered, sold, index), StockTotals::merge);
+
+        Stream<Receipt> receiptStream = parallel ? receipts.parallelStream() : receipts.stream();
+        Map<String, CashierTotals> cashiers = receiptStream.collect(HashMap::new,
+                EndOfDayReporter::addReceipt, EndOfDayReporter::mergeCashiers);
+
+        Map<StokaCategory, EndOfDayReport.CategoryTotals> byCategory = new EnumMap<>(StokaCategory.class);
+        for (StokaCategory category : CATEGORIES) {
+            byCategory.put(category, stock.toCategoryTotals(category.ordinal()));
+        }
+
+        Map<String, EndOfDayReport.CashierTotals> byCashier = new TreeMap<>();
+        for (Map.Entry<String, CashierTotals> entry : cashiers.entrySet()) {
+            CashierTotals totals = entry.getValue();
+            byCashier.put(entry.getKey(), new EndOfDayReport.CashierTotals(totals.name, totals.receipts, totals.revenue));
+        }
+
+        return new EndOfDayReport(byCategory, byCashier, this.store.getSalaryExpensesTotal());
+    }
+
+    private static void addReceipt(Map<String, CashierTotals> cashiers, Receipt receipt) {
+        Cashier cashier = receipt.getCashier();
+        BigDecimal total = receipt.getTotalPrice() != null ? receipt.getTotalPrice() : MoneyMath.total(receipt.getStoka());
+
+        CashierTotals totals = cashier == null
+                ? cashiers.computeIfAbsent(EndOfDayReport.NO_CASHIER, id -> new CashierTotals(EndOfDayReport.NO_CASHIER_NAME))
+                : cashiers.computeIfAbsent(cashier.getId(), id -> new CashierTotals(cashier.getName()));
+        totals.receipts++;
+        totals.revenue = totals.revenue.add(total);
+    }
+
+    private static void mergeCashiers(Map<String, CashierTotals> target, Map<String, CashierTotals> other) {
+        for (Map.Entry<String, CashierTotals> entry : other.entrySet()) {
+            CashierTotals totals = target.putIfAbsent(entry.getKey(), entry.getValue());
+            if (totals != null) {
+                totals.receipts += entry.getValue().receipts;
+                totals.revenue = totals.revenue.add(entry.getValue().revenue);
+            }
+        }
+    }
+
+    // Междинните суми на една част от стоките, по категория (индексът е ordinal на категорията)
+    private final class StockTotals {
+        private final BigDecimal[] soldRevenue = zeros();
+        private final BigDecimal[] deliveryExpenses = zeros();
+        private final BigDecimal[] costOfSold = zeros();
+        private final BigDecimal[] writeOffExpenses = zeros();
+        private final long[] soldMilli = new long[CATEGORIES.length];
+
+        private void add(QuantityLedger delivered, QuantityLedger sold, int index) {
+            // Стока, продадена без доставка (например при зареждане от стар отчет), е само в продадените
+            Stoka stoka = delivered.stokaAt(index);
+            if (stoka == null) {
+                stoka = sold.stokaAt(index);
+                if (stoka == null) {
+                    return;
+                }
+            }
+
+            int category = stoka.getStokaCategory().ordinal();
+            long milli = sold.milliAt(index);
+
+            BigDecimal revenue = store.getSoldRevenue().get(stoka);
+            if (revenue != null) {
+                soldRevenue[category] = soldRevenue[category].add(revenue);
+            }
+            BigDecimal delivery = store.getDeliveryCosts().get(stoka);
+            if (delivery != null) {
+                deliveryExpenses[category] = deliveryExpenses[category].add(delivery);
+            }
+            BigDecimal writeOff = store.getWriteOffCosts().get(stoka);
+            if (writeOff != null) {
+                writeOffExpenses[category] = writeOffExpenses[category].add(writeOff);
+            }
+            if (milli != 0) {
+                BigDecimal cost = stoka.getDeliveryPrice().multiply(BigDecimal.valueOf(milli, 3));
+                costOfSold[category] = costOfSold[category].add(cost);
+                soldMilli[category] += milli;
+            }
+        }
+
+        private void merge(StockTotals other) {
+            for (int i = 0; i < CATEGORIES.length; i++) {
+                soldRevenue[i] = soldRevenue[i].add(other.soldRevenue[i]);
+                deliveryExpenses[i] = deliveryExpenses[i].add(other.deliveryExpenses[i]);
+                costOfSold[i] = costOfSold[i].add(other.costOfSold[i]);
+                writeOffExpenses[i] = writeOffExpenses[i].add(other.writeOffExpenses[i]);
+                soldMilli[i] += other.soldMilli[i];
+            }
+        }
+
+        private EndOfDayReport.CategoryTotals toCategoryTotals(int category) {
+            return new EndOfDayReport.CategoryTotals(soldRevenue[category], deliveryExpenses[category],
+                    costOfSold[category], writeOffExpenses[category], soldMilli[category]);
+        }
+    }
+
+    private static final class CashierTotals {
+        private final String name;
+        private long receipts;
+        private BigDecimal revenue = BigDecimal.ZERO;
+
+        private CashierTotals(String name) {
+            this.name = name;
+        }
+    }
+
+    private static BigDecimal[] zeros() {
+        BigDecimal[] values = new BigDecimal[CATEGORIES.length];
+        Arrays.fill(values, BigDecimal.ZERO);
+        return values;
+    }
+}
@@ -0,0 +1,204 @@
+package org.store.service;
+
+import org.store.data.QuantityLedger;
+import org.store.data.Stoka;
+import org.store.enums.LogEvent;
+import org.store.log.DiagnosticLog;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Фонова поддръжка: при смяна на деня изважда стоките с изтекъл срок от наличността и ги бракува.
+// Списъкът с изтекли стоки идва от ExpiryIndex и се обработва на малки порции - след всяка порция
+// задачата се връща в опашката, така касите никога не чакат дълго за ключалката на стока.
+// Грешка при една стока се записва и почистването продължава; грешка извън стоките прекратява само
+// текущото почистване - периодичната проверка остава пусната и опитва отново при следващия интервал.
+// Броячите се виждат в метриките на магазина (StoreMetrics), докато почистващият не е затворен.
+public class ExpirySweeper implements AutoCloseable {
+    public static final int DEFAULT_SLICE_SIZE = 64;
+
+    private final StoreService storeService;
+    private final Clock clock;
+    private final int sliceSize;
+    private final ScheduledExecutorService scheduler;
+
+    private LocalDate lastSweptDay;
+    private boolean sweeping;
+
+    private final AtomicLong sweeps = new AtomicLong();
+    private final AtomicLong lastSweepNanos = new AtomicLong();
+    private final LongAdder totalSweepNanos = new LongAdder();
+    private final LongAdder itemsEvicted = new LongAdder();
+    private final LongAdder unitsEvictedMilli = new LongAdder();
+    private final LongAdder failedItems = new LongAdder();
+
+    public ExpirySweeper(StoreService storeService) {
+        this(storeService, Clock.systemDefaultZone(), DEFAULT_SLICE_SIZE);
+    }
+
+    public ExpirySweeper(StoreService storeService, Clock clock, int sliceSize) {
+        if (sliceSize <= 0) {
+            throw new IllegalArgumentException("Размерът на порцията трябва да е положително число");
+        }
+
+        this.storeService = storeService;
+        this.clock = clock;
+        this.sliceSize = sliceSize;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "expiry-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        storeService.getStore().setExpirySweeper(this);
+    }
+
+//      Стартира периодична проверка за смяна на деня. Първото почистване е веднага,
+//      следващите - при първата проверка след полунощ.
+
+    public void start(Duration checkInterval) {
+        long period = Math.max(1, checkInterval.toMillis());
+        scheduler.scheduleWithFixedDelay(this::checkRollover, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    // Хвърлено изключение би спряло периодичната задача без следа - затова тук всичко се хваща
+    private void checkRollover() {
+        LocalDate today = LocalDate.now(clock);
+        synchronized (this) {
+            if (sweeping || today.equals(lastSweptDay)) {
+                return;
+            }
+            sweeping = true;
+        }
+
+        boolean scheduled = false;
+        try {
+            List<Stoka> expired = storeService.getExpiredStoka(today);
+            scheduler.execute(() -> sweepSlice(today, expired, 0, System.nanoTime()));
+            scheduled = true;
+        } catch (RuntimeException e) {
+            DiagnosticLog.shared().log(LogEvent.EXPIRY_SWEEP_FAILED, e.toString());
+        } finally {
+            if (!scheduled) {
+                endSweep();
+            }
+        }
+    }
+
+    // Една порция - след нея следващата се поставя отново в опашката на планировчика
+    private void sweepSlice(LocalDate today, List<Stoka> expired, int from, long startedAt) {
+        boolean continued = false;
+        try {
+            int to = Math.min(expired.size(), from + sliceSize);
+            writeOff(today, expired, from, to);
+
+            if (to < expired.size()) {
+                scheduler.execute(() -> sweepSlice(today, expired, to, startedAt));
+                continued = true;
+            } else {
+                finish(today, startedAt);
+            }
+        } catch (RuntimeException e) {
+            DiagnosticLog.shared().log(LogEvent.EXPIRY_SWEEP_FAILED, e.toString());
+        } finally {
+            // Без lastSweptDay - денят се почиства отново при следващата проверка
+            if (!continued) {
+                endSweep();
+            }
+        }
+    }
+
+//      Почиства синхронно в текущата нишка (пак порция по порция).
+//      return броя бракувани стоки
+
+    public long sweepNow(LocalDate today) {
+        long before = itemsEvicted.sum();
+        long startedAt = System.nanoTime();
+        List<Stoka> expired = storeService.getExpiredStoka(today);
+
+        for (int from = 0; from < expired.size(); from += sliceSize) {
+            writeOff(today, expired, from, Math.min(expired.size(), from + sliceSize));
+        }
+        finish(today, startedAt);
+
+        return itemsEvicted.sum() - before;
+    }
+
+    private void writeOff(LocalDate today, List<Stoka> expired, int from, int to) {
+        for (int i = from; i < to; i++) {
+            Stoka stoka = expired.get(i);
+            double quantity;
+            try {
+                quantity = storeService.writeOffIfExpired(stoka, today);
+            } catch (RuntimeException e) {
+                failedItems.increment();
+                DiagnosticLog.shared().log(LogEvent.EXPIRY_WRITE_OFF_FAILED, stoka.getName(), e.toString());
+                continue;
+            }
+
+            if (quantity > 0) {
+                itemsEvicted.increment();
+                unitsEvictedMilli.add(QuantityLedger.toMilli(quantity));
+            }
+        }
+    }
+
+    private void finish(LocalDate today, long startedAt) {
+        long elapsed = System.nanoTime() - startedAt;
+        lastSweepNanos.set(elapsed);
+        totalSweepNanos.add(elapsed);
+        sweeps.incrementAndGet();
+
+        synchronized (this) {
+            lastSweptDay = today;
+            sweeping = false;
+        }
+    }
+
+    private synchronized void endSweep() {
+        sweeping = false;
+    }
+
+    public synchronized LocalDate getLastSweptDay() {
+        return lastSweptDay;
+    }
+
+    public long getSweeps() {
+        return sweeps.get();
+    }
+
+    // Продължителност на последното почистване в наносекунди (от началото до последната порция)
+    public long getLastSweepNanos() {
+        return lastSweepNanos.get();
+    }
+
+    public long getTotalSweepNanos() {
+        return totalSweepNanos.sum();
+    }
+
+    // Брой различни стоки, бракувани от всички почиствания
+    public long getItemsEvicted() {
+        return itemsEvicted.sum();
+    }
+
+    public double getUnitsEvicted() {
+        return QuantityLedger.fromMilli(unitsEvictedMilli.sum());
+    }
+
+    // Стоки, които не са бракувани заради грешка - остават в наличността до следващото почистване
+    public long getFailedItems() {
+        return failedItems.sum();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        storeService.getStore().clearExpirySweeper(this);
+    }
+}
@@ -3,90 +3,156 @@ package org.store.service;
 import org.store.data.*;
 import org.store.exceptions.NotEnoughMoneyException;
 import org.store.exceptions.NotEnoughStokaAvailableException;
+import org.store.journal.ReceiptPersister;
+import org.store.metrics.StoreMetrics;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.CompletionException;
 
 public class KasaService {
     private Kasa kasa;
     private StoreService storeService;
+    private ReceiptNumberAllocator receiptNumbers;
+    private ExpiryPricing expiryPricing;
+    private final CheckoutCommitter committer;
 
     public KasaService(Kasa kasa, StoreService storeService) {
+        this(kasa, storeService, null);
+    }
+
+    // С общ CheckoutCommitter продажбите от всички каси се записват на партиди
+    public KasaService(Kasa kasa, StoreService storeService, CheckoutCommitter committer) {
         this.kasa = kasa;
         this.storeService = storeService;
+        this.committer = committer;
+        this.receiptNumbers = kasa.getStore().getReceiptSerialSource().forLane(kasa.getLaneId());
     }
 
+//      Плащане на количката на клиента. Времето на всяка фаза (проверка, цена, продажба) и на цялото
+//      плащане се записва в метриките на магазина, отказите се броят по причина.
+
     public Receipt checkout(Klient klient) {
-        // Проверка за наличности
-        validateStokaAvailability(klient.getCart());
+        StoreMetrics metrics = this.kasa.getStore().getMetrics();
+        long start = System.nanoTime();
+
+        try {
+            Receipt receipt = checkout(klient, metrics, start);
+            metrics.getCheckout().recordSince(start);
+            return receipt;
+        } catch (NotEnoughStokaAvailableException e) {
+            metrics.getCheckoutsRejectedStock().increment();
+            throw e;
+        } catch (NotEnoughMoneyException e) {
+            metrics.getCheckoutsRejectedMoney().increment();
+            throw e;
+        }
+    }
 
-        // Изчисляване на общата цена
-        BigDecimal totalPrice = calculateTotalPrice(klient.getCart());
+//      Количката се взема цялата (claim) и парите се вземат преди продажбата - две едновременни плащания
+//      на един клиент не продават едно и също и не харчат едни и същи пари. При отказ взетото се връща:
+//      съдържанието в количката, а парите - на клиента. След записа на продажбата нищо не се връща -
+//      бележката се издава за вече платена продажба, а грешка при записа ѝ на диска не отменя продажбата.
 
-        // Проверка за достатъчно пари
-        if (klient.getMoney().compareTo(totalPrice) < 0) {
-            throw new NotEnoughMoneyException("Недостатъчно средства. Необходими: " + totalPrice + " лв., Налични: " + klient.getMoney() + " лв.");
+    private Receipt checkout(Klient klient, StoreMetrics metrics, long start) {
+        KlientCart klientCart = klient.getKlientCart();
+        LocalDate issueDate = LocalDate.now();
+        CartSnapshot snapshot = klientCart.claim();
+
+        PricedCart sale;
+        try {
+            sale = pay(klient, snapshot, issueDate, metrics, start);
+        } catch (RuntimeException e) {
+            klientCart.restore(snapshot);
+            throw e;
         }
 
         // Генериране на касов номер и бележка
-        String serialNumber = generateReceiptNumber();
+        String serialNumber = this.receiptNumbers.nextSerial(issueDate);
         Cashier cashier = this.kasa.getCashier();
-        LocalDate issueDate = LocalDate.now();
-        Receipt receipt = new Receipt(serialNumber, cashier, issueDate, new HashMap<>(klient.getCart()));
-
-        // Актуализация на склада и продадените артикули
-        this.storeService.removeFromInventory(klient.getCart());
-        this.storeService.addSoldStoka(klient.getCart());
+        Receipt receipt = new Receipt(serialNumber, cashier, issueDate, sale);
 
-        // Касата приема парите
-        klient.subtractMoney(totalPrice);
-
-        // Изчистване на количката след покупка
-        klient.clearCart();
+        // Записът на диска е в отделна нишка - касата чака само ако опашката е пълна.
+        // submit не хвърля - неуспешният запис се брои и записва в дневника от ReceiptPersister
+        ReceiptPersister persister = this.kasa.getStore().getReceiptPersister();
+        if (persister != null) {
+            persister.submit(receipt);
+        }
 
         return receipt;
     }
 
-    private void validateStokaAvailability(Map<Stoka, Double> cart) {
-        Map<Stoka, Double> inventory = this.kasa.getStore().getInventory();
+    // Проверка, цена, плащане и запис на продажбата; return остойностената количка след успешния запис
+    private PricedCart pay(Klient klient, CartSnapshot snapshot, LocalDate issueDate, StoreMetrics metrics, long start) {
+        Map<Stoka, Double> cart = snapshot.getItems();
 
-        for (Map.Entry<Stoka, Double> entry : cart.entrySet()) {
-            Stoka stoka = entry.getKey();
-            Double requestedQuantity = entry.getValue();
+        // Бърза проверка за наличности (окончателната е при продажбата)
+        validateStokaAvailability(cart);
+        long validated = metrics.getCheckoutValidate().recordSince(start);
 
-            if (!inventory.containsKey(stoka)) {
-                throw new NotEnoughStokaAvailableException(stoka.getName(), requestedQuantity);
-            }
+        // Изчисляване на общата цена - с отстъпка за стоките, които скоро изтичат
+        ExpiryPricing pricing = pricingFor(issueDate);
+        PricedCart sale = PricedCart.price(cart, pricing);
+        BigDecimal totalPrice = sale.getTotal();
+        long priced = metrics.getCheckoutPrice().recordSince(validated);
 
-            Double availableQuantity = inventory.get(stoka);
-            if (availableQuantity < requestedQuantity) {
-                throw new NotEnoughStokaAvailableException(stoka.getName(), requestedQuantity - availableQuantity);
+        // Касата взема парите преди продажбата - проверката и изваждането са една операция
+        if (!klient.tryDebit(totalPrice)) {
+            throw new NotEnoughMoneyException("Недостатъчно средства. Необходими: " + totalPrice + " лв., Налични: " + klient.getMoney() + " лв.");
+        }
+
+        // Атомарна проверка и актуализация на склада и продадените артикули
+        try {
+            commitSale(sale);
+        } catch (RuntimeException e) {
+            klient.refund(totalPrice);
+            throw e;
+        }
+        metrics.getCheckoutCommit().recordSince(priced);
+        return sale;
+    }
+
+    private void commitSale(PricedCart sale) {
+        if (this.committer == null) {
+            this.storeService.commitSale(sale);
+            return;
+        }
+
+        try {
+            this.committer.submit(sale).join();
+        } catch (CompletionException e) {
+            // Грешката на тази количка (например липсваща стока) се хвърля както при директната продажба
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
+            throw e;
         }
     }
 
-    private BigDecimal calculateTotalPrice(Map<Stoka, Double> cart) {
-        BigDecimal total = BigDecimal.ZERO;
+    private void validateStokaAvailability(Map<Stoka, Double> cart) {
+        QuantityLedger inventory = this.kasa.getStore().getInventoryLedger();
 
+        // Всяко количество се чете веднъж - друга каса може да продаде последната бройка междувременно
         for (Map.Entry<Stoka, Double> entry : cart.entrySet()) {
             Stoka stoka = entry.getKey();
-            Double quantity = entry.getValue();
-
-            BigDecimal price = stoka.getPrice();
-            BigDecimal quantityAsBigDecimal = new BigDecimal(quantity.toString());
-            BigDecimal itemTotal = price.multiply(quantityAsBigDecimal);
+            Double requestedQuantity = entry.getValue();
+            double availableQuantity = inventory.get(stoka);
 
-            total = total.add(itemTotal);
+            if (availableQuantity < requestedQuantity) {
+                throw new NotEnoughStokaAvailableException(stoka.getName(), requestedQuantity - availableQuantity);
+            }
         }
-
-        return total;
     }
 
-    private String generateReceiptNumber() {
-        return UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+    // Цените за деня се изчисляват веднъж и се използват до смяната на датата
+    private ExpiryPricing pricingFor(LocalDate today) {
+        ExpiryPricing pricing = this.expiryPricing;
+        if (pricing == null || pricing.getDay() != today.toEpochDay()) {
+            pricing = this.storeService.expiryPricing(today);
+            this.expiryPricing = pricing;
+        }
+        return pricing;
     }
 
     public String getCashierName() {
@@ -2,12 +2,12 @@ package org.store.service;
 
 import org.store.data.Klient;
 import org.store.data.Stoka;
+import org.store.money.MoneyMath;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class KlientService {
     
@@ -32,29 +32,19 @@ public class KlientService {
 //      @return общата стойност
 //
     public BigDecimal calculateCartTotal(Klient klient) {
-        Map<Stoka, Double> cart = klient.getCart();
-        BigDecimal total = BigDecimal.ZERO;
-        
-        for (Map.Entry<Stoka, Double> entry : cart.entrySet()) {
-            Stoka stoka = entry.getKey();
-            Double quantity = entry.getValue();
-            
-            BigDecimal price = stoka.getPrice();
-            BigDecimal itemTotal = price.multiply(BigDecimal.valueOf(quantity));
-            
-            total = total.add(itemTotal);
-        }
-        
-        return total;
+        // Сумата се поддържа в количката и се преизчислява само след смяна на цена
+        return klient.getKlientCart().snapshot().getTotal();
     }
     
 
-//      Проверява дали клиентът има достатъчно средства за покупка
+//      Проверява дали клиентът има достатъчно средства за покупка по цените, които касата ще вземе -
+//      с отстъпката за изтичащ срок по цените за деня на количката (KlientCart.setPricing).
+//      Сумата се поддържа в количката, затова проверката е O(1); окончателната сметка е при плащането.
 //      return true ако има достатъчно средства, false в противен случай
 
     public boolean hasEnoughFunds(Klient klient) {
-        BigDecimal cartTotal = calculateCartTotal(klient);
-        return klient.getMoney().compareTo(cartTotal) >= 0;
+        long cartTotal = klient.getKlientCart().snapshot().getPayableTotalStotinki();
+        return MoneyMath.toStotinki(klient.getMoney()) >= cartTotal;
     }
     
 //
@@ -63,14 +53,8 @@ public class KlientService {
 //      return true ако стоката е премахната успешно, false в противен случай
 //
     public boolean removeFromCart(Klient klient, Stoka stoka) {
-        Map<Stoka, Double> cart = klient.getCart();
-        
-        if (cart.containsKey(stoka)) {
-            cart.remove(stoka);
-            return true;
-        }
-        
-        return false;
+        // Проверката и премахването са една атомарна операция
+        return klient.getKlientCart().remove(stoka);
     }
     
 //
@@ -83,14 +67,7 @@ public class KlientService {
             return removeFromCart(klient, stoka);
         }
         
-        Map<Stoka, Double> cart = klient.getCart();
-        
-        if (cart.containsKey(stoka)) {
-            cart.put(stoka, newQuantity);
-            return true;
-        }
-        
-        return false;
+        return klient.getKlientCart().setQuantity(stoka, newQuantity);
     }
     
 //
@@ -117,24 +94,15 @@ public class KlientService {
 //      return общо количество стоки
 //
     public double getTotalItemCount(Klient klient) {
-        double total = 0;
-        
-        for (Double quantity : klient.getCart().values()) {
-            total += quantity;
-        }
-        
-        return total;
+        return klient.getKlientCart().snapshot().getItemCount();
     }
     
 
       // Копира количката на един клиент в друг клиент
 
     public void copyCart(Klient source, Klient target) {
-        Map<Stoka, Double> sourceCart = source.getCart();
-        
-        for (Map.Entry<Stoka, Double> entry : sourceCart.entrySet()) {
-            target.addToCart(entry.getKey(), entry.getValue());
-        }
+        // Копира се една снимка на количката, добавена наведнъж
+        target.getKlientCart().addAll(source.getKlientCart().snapshot().getItems());
     }
     
 //
@@ -144,22 +112,6 @@ public class KlientService {
 //
 
     public Stoka getMostExpensiveItem(Klient klient) {
-        Map<Stoka, Double> cart = klient.getCart();
-        
-        if (cart.isEmpty()) {
-            return null;
-        }
-        
-        Stoka mostExpensive = null;
-        BigDecimal highestPrice = BigDecimal.ZERO;
-        
-        for (Stoka stoka : cart.keySet()) {
-            if (mostExpensive == null || stoka.getPrice().compareTo(highestPrice) > 0) {
-                mostExpensive = stoka;
-                highestPrice = stoka.getPrice();
-            }
-        }
-        
-        return mostExpensive;
+        return klient.getKlientCart().snapshot().getMostExpensive();
     }
 }
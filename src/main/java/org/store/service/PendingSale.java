@@ -0,0 +1,26 @@
+package org.store.service;
+
+import org.store.data.PricedCart;
+
+import java.util.concurrent.CompletableFuture;
+
+// Остойностена количка, чакаща да бъде продадена от CheckoutCommitter.
+// Касата получава future, което се изпълнява, когато продажбата е записана, или завършва
+// с NotEnoughStokaAvailableException, ако тази количка не може да бъде изпълнена.
+public class PendingSale {
+    private final PricedCart sale;
+    private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+    public PendingSale(PricedCart sale) {
+        this.sale = sale;
+    }
+
+    // Количката с цените, фиксирани при плащането
+    public PricedCart getSale() {
+        return sale;
+    }
+
+    public CompletableFuture<Void> getResult() {
+        return result;
+    }
+}
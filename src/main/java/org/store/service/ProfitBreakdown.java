@@ -0,0 +1,84 @@
+package org.store.service;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+// Разбивка на печалбата на магазин (или на веригата) по редове.
+// Бракът е отделен ред: той е част от разходите за доставка (стоката е платена при доставката),
+// затова не се изважда втори път от печалбата, а показва каква част от тези разходи е окончателна загуба.
+public class ProfitBreakdown {
+    public static final ProfitBreakdown ZERO =
+            new ProfitBreakdown(BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO);
+
+    private final BigDecimal soldRevenue;
+    private final BigDecimal salaryExpenses;
+    private final BigDecimal deliveryExpenses;
+    private final BigDecimal writeOffExpenses;
+
+    ProfitBreakdown(BigDecimal soldRevenue, BigDecimal salaryExpenses, BigDecimal deliveryExpenses,
+                    BigDecimal writeOffExpenses) {
+        this.soldRevenue = soldRevenue;
+        this.salaryExpenses = salaryExpenses;
+        this.deliveryExpenses = deliveryExpenses;
+        this.writeOffExpenses = writeOffExpenses;
+    }
+
+    public BigDecimal getSoldRevenue() {
+        return soldRevenue;
+    }
+
+    public BigDecimal getSalaryExpenses() {
+        return salaryExpenses;
+    }
+
+    // Всички разходи за доставка, включително за бракуваното
+    public BigDecimal getDeliveryExpenses() {
+        return deliveryExpenses;
+    }
+
+    // Стойност на бракуваното по цена на доставка - вече включена в разходите за доставка
+    public BigDecimal getWriteOffExpenses() {
+        return writeOffExpenses;
+    }
+
+    // Печалба = приходи - заплати - разходи за доставка
+    public BigDecimal getProfit() {
+        return soldRevenue.subtract(salaryExpenses.add(deliveryExpenses));
+    }
+
+    // Печалбата, ако нищо не беше бракувано - разликата с getProfit е загубата от брака
+    public BigDecimal getProfitBeforeWriteOffs() {
+        return getProfit().add(writeOffExpenses);
+    }
+
+    // Сборът на два магазина - за печалбата на веригата
+    public ProfitBreakdown add(ProfitBreakdown other) {
+        return new ProfitBreakdown(soldRevenue.add(other.soldRevenue), salaryExpenses.add(other.salaryExpenses),
+                deliveryExpenses.add(other.deliveryExpenses), writeOffExpenses.add(other.writeOffExpenses));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ProfitBreakdown that = (ProfitBreakdown) o;
+        return soldRevenue.equals(that.soldRevenue) && salaryExpenses.equals(that.salaryExpenses)
+                && deliveryExpenses.equals(that.deliveryExpenses) && writeOffExpenses.equals(that.writeOffExpenses);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(soldRevenue, salaryExpenses, deliveryExpenses, writeOffExpenses);
+    }
+
+    @Override
+    public String toString() {
+        return "ProfitBreakdown{" +
+                "soldRevenue=" + soldRevenue +
+                ", salaryExpenses=" + salaryExpenses +
+                ", deliveryExpenses=" + deliveryExpenses +
+                ", writeOffExpenses=" + writeOffExpenses +
+                ", profit=" + getProfit() +
+                '}';
+    }
+}
@@ -0,0 +1,65 @@
+package org.store.service;
+
+import java.time.LocalDate;
+
+// Раздава номера на касови бележки за една каса.
+// Формат: ГГГГММДД-КККК-ПППППППППП - дата на издаване, номер на касата и пореден номер в касата.
+// Поредният номер никога не се повтаря за касата, затова номерата са уникални и без случайност.
+public class ReceiptNumberAllocator {
+    private static final int LANE_DIGITS = 4;
+    private static final int SEQUENCE_DIGITS = 10;
+    private static final int LENGTH = 8 + 1 + LANE_DIGITS + 1 + SEQUENCE_DIGITS;
+
+    private final int laneId;
+    private final ReceiptSerialSource source;
+    private final char[] buffer = new char[LENGTH];
+
+    private long next;
+    private long limit;
+    private long cachedDay = Long.MIN_VALUE;
+
+    ReceiptNumberAllocator(int laneId, ReceiptSerialSource source) {
+        if (laneId < 0 || laneId >= ReceiptSerialSource.MAX_LANES) {
+            throw new IllegalArgumentException("Невалиден номер на каса: " + laneId);
+        }
+
+        this.laneId = laneId;
+        this.source = source;
+    }
+
+    public synchronized String nextSerial(LocalDate issueDate) {
+        if (next == limit) {
+            next = source.reserveBlock(laneId);
+            limit = next + source.getBlockSize();
+        }
+
+        long sequence = next++;
+        source.recordIssued();
+
+        // Датата се форматира само при смяна на деня
+        long day = issueDate.toEpochDay();
+        if (day != cachedDay) {
+            writeDigits(issueDate.getYear(), 0, 4);
+            writeDigits(issueDate.getMonthValue(), 4, 2);
+            writeDigits(issueDate.getDayOfMonth(), 6, 2);
+            buffer[8] = '-';
+            writeDigits(laneId, 9, LANE_DIGITS);
+            buffer[9 + LANE_DIGITS] = '-';
+            cachedDay = day;
+        }
+
+        writeDigits(sequence, LENGTH - SEQUENCE_DIGITS, SEQUENCE_DIGITS);
+        return new String(buffer);
+    }
+
+    public int getLaneId() {
+        return laneId;
+    }
+
+    private void writeDigits(long value, int offset, int digits) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + (value % 10));
+            value /= 10;
+        }
+    }
+}
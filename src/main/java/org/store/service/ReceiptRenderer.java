@@ -0,0 +1,330 @@
+package org.store.service;
+
+import org.store.data.Cashier;
+import org.store.data.QuantityLedger;
+import org.store.data.Receipt;
+import org.store.data.Stoka;
+import org.store.money.MoneyMath;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Map;
+
+// Печат на касова бележка направо в байтове - като текст за клиента или в кратък машинен формат.
+// Постоянните части на бележката са кодирани в UTF-8 веднъж, имената на стоките също (Stoka.getNameUtf8),
+// а числата (количества, цени, дата) се изписват цифра по цифра. Общата сума се изчислява в същия
+// проход по редовете. Буферът се преизползва между бележките, затова един renderer е за една нишка
+// (например по един на каса).
+//
+// Машинен формат - по един ред на запис, полетата са разделени с табулация, сумите са в стотинки,
+// а количествата в хилядни:
+//   R  номер  касиер  дата
+//   L  име  количество  единична цена  стойност
+//   T  обща сума
+public class ReceiptRenderer {
+    private static final byte[] HEADER = bytes("===== КАСОВА БЕЛЕЖКА =====\nНомер на бележка: ");
+    private static final byte[] CASHIER = bytes("\nКасиер: ");
+    private static final byte[] DATE = bytes("\nДата: ");
+    private static final byte[] ITEMS = bytes("\n----------------------\nАртикули:\n");
+    private static final byte[] LINE_START = bytes("  ");
+    private static final byte[] LINE_QUANTITY = bytes(" - ");
+    private static final byte[] LINE_PRICE = bytes(" бр. x ");
+    private static final byte[] LINE_TOTAL = bytes(" лв. = ");
+    private static final byte[] LINE_END = bytes(" лв.\n");
+    private static final byte[] TOTAL = bytes("----------------------\nОбщо: ");
+    private static final byte[] FOOTER = bytes(" лв.\n==========================\n");
+    private static final byte[] NULL = bytes("null");
+
+    private static final int DEFAULT_CAPACITY = 4096;
+    // Най-дългото число, което се изписва наведнъж (long със знак и десетична точка)
+    private static final int MAX_NUMBER_BYTES = 24;
+
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private ByteBuffer buffer;
+    private OutputStream out;
+
+    public ReceiptRenderer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ReceiptRenderer(int capacity) {
+        this.buffer = ByteBuffer.allocate(Math.max(capacity, 64));
+    }
+
+//      Печата бележката като текст в out. Буферът се изпразва в потока, когато се напълни,
+//      така дългите бележки не се събират изцяло в паметта.
+//      return общата сума в стотинки
+
+    public long renderText(Receipt receipt, OutputStream out) throws IOException {
+        return stream(out, () -> writeText(receipt));
+    }
+
+    public long renderMachine(Receipt receipt, OutputStream out) throws IOException {
+        return stream(out, () -> writeMachine(receipt));
+    }
+
+    // Текстът на бележката като низ (за досегашния ReceiptService.getFormattedReceipt)
+    public String formatText(Receipt receipt) {
+        this.out = null;
+        buffer.clear();
+        writeText(receipt);
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+    }
+
+//      Бележката в машинен формат във вътрешния буфер - валиден до следващото извикване.
+//      return буфер, готов за четене
+
+    public ByteBuffer renderMachine(Receipt receipt) {
+        this.out = null;
+        buffer.clear();
+        writeMachine(receipt);
+        return buffer.flip();
+    }
+
+    private long stream(OutputStream out, Render render) throws IOException {
+        this.out = out;
+        buffer.clear();
+        try {
+            long total = render.write();
+            drain();
+            return total;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            this.out = null;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Render {
+        long write();
+    }
+
+    private long writeText(Receipt receipt) {
+        Cashier cashier = receipt.getCashier();
+
+        put(HEADER);
+        putString(receipt.getSerialNumber());
+        put(CASHIER);
+        putString(cashier == null ? null : cashier.getName());
+        put(DATE);
+        putDate(receipt.getIssueDate());
+        put(ITEMS);
+
+        long totalMilli = 0;
+        for (Map.Entry<Stoka, Double> entry : receipt.getStoka().entrySet()) {
+            Stoka stoka = entry.getKey();
+            long quantityMilli = QuantityLedger.toMilli(entry.getValue());
+            long price = receipt.getUnitPriceStotinki(stoka);
+            long lineMilli = MoneyMath.lineTotalMilli(price, quantityMilli);
+            totalMilli = Math.addExact(totalMilli, lineMilli);
+
+            put(LINE_START);
+            put(stoka.getNameUtf8());
+            put(LINE_QUANTITY);
+            putQuantity(quantityMilli);
+            put(LINE_PRICE);
+            putMoney(price);
+            put(LINE_TOTAL);
+            putMoney(MoneyMath.roundMilli(lineMilli));
+            put(LINE_END);
+        }
+
+        long total = total(receipt, totalMilli);
+        put(TOTAL);
+        putMoney(total);
+        put(FOOTER);
+        return total;
+    }
+
+    private long writeMachine(Receipt receipt) {
+        Cashier cashier = receipt.getCashier();
+
+        putByte((byte) 'R');
+        putByte((byte) '\t');
+        putString(receipt.getSerialNumber());
+        putByte((byte) '\t');
+        putString(cashier == null ? null : cashier.getName());
+        putByte((byte) '\t');
+        putDate(receipt.getIssueDate());
+        putByte((byte) '\n');
+
+        long totalMilli = 0;
+        for (Map.Entry<Stoka, Double> entry : receipt.getStoka().entrySet()) {
+            Stoka stoka = entry.getKey();
+            long quantityMilli = QuantityLedger.toMilli(entry.getValue());
+            long price = receipt.getUnitPriceStotinki(stoka);
+            long lineMilli = MoneyMath.lineTotalMilli(price, quantityMilli);
+            totalMilli = Math.addExact(totalMilli, lineMilli);
+
+            putByte((byte) 'L');
+            putByte((byte) '\t');
+            put(stoka.getNameUtf8());
+            putByte((byte) '\t');
+            putLong(quantityMilli);
+            putByte((byte) '\t');
+            putLong(price);
+            putByte((byte) '\t');
+            putLong(MoneyMath.roundMilli(lineMilli));
+            putByte((byte) '\n');
+        }
+
+        long total = total(receipt, totalMilli);
+        putByte((byte) 'T');
+        putByte((byte) '\t');
+        putLong(total);
+        putByte((byte) '\n');
+        return total;
+    }
+
+    // Записаната от касата сума е с отстъпките към момента на продажбата - тя е с предимство
+    private static long total(Receipt receipt, long totalMilli) {
+        BigDecimal paid = receipt.getTotalPrice();
+        return paid != null ? MoneyMath.toStotinki(paid) : MoneyMath.roundMilli(totalMilli);
+    }
+
+    private void put(byte[] bytes) {
+        ensure(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private void putByte(byte value) {
+        ensure(1);
+        buffer.put(value);
+    }
+
+    private void putString(String value) {
+        if (value == null) {
+            put(NULL);
+            return;
+        }
+
+        CharBuffer chars = CharBuffer.wrap(value);
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (result.isOverflow()) {
+                ensure(buffer.capacity());
+                continue;
+            }
+            if (result.isError()) {
+                // Невалиден UTF-16 (самотен surrogate) - прескачаме символа
+                chars.position(chars.position() + result.length());
+                putByte((byte) '?');
+                continue;
+            }
+            break;
+        }
+    }
+
+    // Количество като Double.toString за хилядни: "2.0", "1.5", "0.125"
+    private void putQuantity(long milli) {
+        ensure(MAX_NUMBER_BYTES);
+        if (milli < 0) {
+            buffer.put((byte) '-');
+            milli = -milli;
+        }
+
+        putDigits(milli / QuantityLedger.SCALE, 1);
+        buffer.put((byte) '.');
+
+        long fraction = milli % QuantityLedger.SCALE;
+        int digits = 3;
+        while (digits > 1 && fraction % 10 == 0) {
+            fraction /= 10;
+            digits--;
+        }
+        putDigits(fraction, digits);
+    }
+
+    private void putMoney(long stotinki) {
+        ensure(MAX_NUMBER_BYTES);
+        if (stotinki < 0) {
+            buffer.put((byte) '-');
+            stotinki = -stotinki;
+        }
+
+        putDigits(stotinki / 100, 1);
+        buffer.put((byte) '.');
+        putDigits(stotinki % 100, 2);
+    }
+
+    private void putLong(long value) {
+        ensure(MAX_NUMBER_BYTES);
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        putDigits(value, 1);
+    }
+
+    private void putDate(LocalDate date) {
+        if (date == null) {
+            put(NULL);
+            return;
+        }
+
+        ensure(MAX_NUMBER_BYTES);
+        putDigits(date.getYear(), 4);
+        buffer.put((byte) '-');
+        putDigits(date.getMonthValue(), 2);
+        buffer.put((byte) '-');
+        putDigits(date.getDayOfMonth(), 2);
+    }
+
+    // Неотрицателно число с поне minDigits цифри (водещи нули), мястото е осигурено от извикващия
+    private void putDigits(long value, int minDigits) {
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        digits = Math.max(digits, minDigits);
+
+        int end = buffer.position() + digits;
+        for (int i = end - 1; i >= buffer.position(); i--) {
+            buffer.put(i, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        buffer.position(end);
+    }
+
+    // При поток буферът се изпразва в него; иначе расте
+    private void ensure(int bytes) {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+
+        if (out != null) {
+            drain();
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+        }
+
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+        buffer.flip();
+        larger.put(buffer);
+        buffer = larger;
+    }
+
+    private void drain() {
+        try {
+            out.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
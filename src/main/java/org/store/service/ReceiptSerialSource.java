@@ -0,0 +1,174 @@
+package org.store.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.LongAdder;
+
+// Източник на номера на касови бележки за всички каси на един магазин.
+// Всяка каса получава собствен номер (lane) и резервира поредни номера на блокове.
+// В рамките на блока касата раздава номера сама, без да се съгласува с другите каси,
+// а източникът се използва само при резервиране на нов блок.
+// Когато е подаден файл, най-големият резервиран номер за всяка каса се записва в него -
+// след рестарт касата продължава след него и не може да повтори номер.
+//
+// Номерата на касите се преизползват: затворената каса освобождава номера си и следващата нова каса го получава.
+// Преизползваният номер продължава след последния резервиран блок, затова и тогава номер не се повтаря.
+public class ReceiptSerialSource {
+    public static final int DEFAULT_BLOCK_SIZE = 1000;
+    public static final int MAX_LANES = 10_000;
+
+    // Файлът на общия източник; по подразбиране е receipt-serials.properties в работната директория
+    public static final String FILE_PROPERTY = "store.receipt.serials";
+    public static final String DEFAULT_FILE = "receipt-serials.properties";
+
+    private final Path file;
+    private final int blockSize;
+    private final Map<Integer, Long> reservedUpTo;
+    private final BitSet lanesInUse;
+    private final LongAdder issued;
+
+    // Общият източник се създава при първото използване - файлът се чете едва тогава
+    private static final class Shared {
+        static final ReceiptSerialSource INSTANCE =
+                new ReceiptSerialSource(Path.of(System.getProperty(FILE_PROPERTY, DEFAULT_FILE)));
+    }
+
+    // Източник само в паметта - номерата не се пазят след рестарт
+    public ReceiptSerialSource() {
+        this.file = null;
+        this.blockSize = DEFAULT_BLOCK_SIZE;
+        this.reservedUpTo = new HashMap<>();
+        this.lanesInUse = new BitSet();
+        this.issued = new LongAdder();
+    }
+
+    public ReceiptSerialSource(Path file) {
+        this(file, DEFAULT_BLOCK_SIZE);
+    }
+
+    public ReceiptSerialSource(Path file, int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Размерът на блока трябва да е положително число");
+        }
+
+        this.file = file;
+        this.blockSize = blockSize;
+        this.reservedUpTo = load(file);
+        this.lanesInUse = new BitSet();
+        this.issued = new LongAdder();
+    }
+
+    // Общият източник по подразбиране за магазините и ReceiptService - пази номерата във файла от FILE_PROPERTY
+    public static ReceiptSerialSource shared() {
+        return Shared.INSTANCE;
+    }
+
+    // Най-малкият свободен номер на каса (от 1)
+    public synchronized int registerLane() {
+        int laneId = lanesInUse.nextClearBit(1);
+        if (laneId >= MAX_LANES) {
+            throw new IllegalStateException("Няма свободен номер на каса - отворени са " + (MAX_LANES - 1) + " каси");
+        }
+
+        lanesInUse.set(laneId);
+        return laneId;
+    }
+
+    // Освобождава номера на затворена каса за следващата нова каса
+    public synchronized void releaseLane(int laneId) {
+        lanesInUse.clear(laneId);
+    }
+
+    public synchronized int countLanesInUse() {
+        return lanesInUse.cardinality();
+    }
+
+    // Файлът с резервираните номера или null за източник само в паметта
+    public Path getFile() {
+        return file;
+    }
+
+    public ReceiptNumberAllocator forLane(int laneId) {
+        return new ReceiptNumberAllocator(laneId, this);
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public long countIssued() {
+        return issued.sum();
+    }
+
+    void recordIssued() {
+        issued.increment();
+    }
+
+//      Резервира следващия блок номера за касата и го записва, преди да бъде използван.
+//      return първия номер от блока; блокът е [return, return + blockSize)
+
+    synchronized long reserveBlock(int laneId) {
+        long start = reservedUpTo.getOrDefault(laneId, 0L);
+        long end = start + blockSize;
+
+        reservedUpTo.put(laneId, end);
+        if (file != null) {
+            store();
+        }
+
+        return start;
+    }
+
+    public synchronized long getReservedUpTo(int laneId) {
+        return reservedUpTo.getOrDefault(laneId, 0L);
+    }
+
+    private static Map<Integer, Long> load(Path file) {
+        Map<Integer, Long> result = new HashMap<>();
+        if (file == null || !Files.exists(file)) {
+            return result;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Неуспешно четене на " + file, e);
+        }
+
+        for (String lane : properties.stringPropertyNames()) {
+            result.put(Integer.parseInt(lane), Long.parseLong(properties.getProperty(lane)));
+        }
+        return result;
+    }
+
+    // Записваме в нов файл и го подменяме атомарно - при срив остава или старата, или новата стойност
+    private void store() {
+        Properties properties = new Properties();
+        for (Map.Entry<Integer, Long> entry : reservedUpTo.entrySet()) {
+            properties.setProperty(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
+        }
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                properties.store(out, "Reserved receipt numbers per lane");
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Неуспешен запис на " + file, e);
+        }
+    }
+}
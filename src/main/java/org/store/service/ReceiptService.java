@@ -1,90 +1,79 @@
 package org.store.service;
 
-import org.store.data.Stoka;
 import org.store.data.Receipt;
+import org.store.enums.LogEvent;
+import org.store.log.DiagnosticLog;
+import org.store.money.MoneyMath;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.nio.charset.StandardCharsets;
 
 public class ReceiptService {
+    private static final String EMPTY_RECEIPT_ERROR = " ГРЕШКА: Опит за печат на празна или невалидна касова бележка!";
+    // Буферът на renderer-а се преизползва - по един на нишка
+    private static final ThreadLocal<ReceiptRenderer> RENDERER = ThreadLocal.withInitial(ReceiptRenderer::new);
+
     private Receipt receipt;
-    private static final AtomicInteger receiptCounter = new AtomicInteger(0);
+    private ReceiptSerialSource receiptSerialSource;
 
     public ReceiptService(Receipt receipt) {
+        this(receipt, ReceiptSerialSource.shared());
+    }
+
+    // Броят издадени бележки идва от същия източник, който раздава номерата им
+    public ReceiptService(Receipt receipt, ReceiptSerialSource receiptSerialSource) {
         this.receipt = receipt;
+        this.receiptSerialSource = receiptSerialSource;
 
         // Проверка дали бележката има поне една стока
-
-
-        if (receipt != null && receipt.getStoka() != null && !receipt.getStoka().isEmpty()) {
-            receiptCounter.incrementAndGet();
-        } else {
-            System.out.println("⚠️ ПРЕДУПРЕЖДЕНИЕ: Празна касова бележка - не е отчетена в броя.");
+        if (receipt == null || receipt.getStoka() == null || receipt.getStoka().isEmpty()) {
+            DiagnosticLog.shared().log(LogEvent.RECEIPT_EMPTY);
         }
     }
 
     public BigDecimal calculateTotalPrice() {
-        Map<Stoka, Double> items = this.receipt.getStoka();
-
-        if (items == null || items.isEmpty()) {
-            return BigDecimal.ZERO.setScale(2, RoundingMode.UP);
-        }
-
-        BigDecimal total = BigDecimal.ZERO;
-
-        for (Map.Entry<Stoka, Double> entry : items.entrySet()) {
-            Stoka stoka = entry.getKey();
-            Double quantity = entry.getValue();
-
-            if (stoka != null && quantity != null && quantity > 0) {
-                BigDecimal price = stoka.getPrice();
-                BigDecimal qty = BigDecimal.valueOf(quantity);
-                BigDecimal itemTotal = price.multiply(qty);
-                total = total.add(itemTotal);
-            }
+        if (this.receipt != null && this.receipt.getTotalPrice() != null) {
+            return this.receipt.getTotalPrice();
         }
-
-        return total.setScale(2, RoundingMode.UP);
+        return MoneyMath.total(this.receipt.getStoka());
     }
 
     public int countReceiptsIssued() {
-        return receiptCounter.get();
+        return (int) receiptSerialSource.countIssued();
     }
 
     public String getFormattedReceipt() {
-        StringBuilder sb = new StringBuilder();
-
-        if (receipt == null || receipt.getStoka() == null || receipt.getStoka().isEmpty()) {
-            return " ГРЕШКА: Опит за печат на празна или невалидна касова бележка!";
+        if (isEmpty()) {
+            return EMPTY_RECEIPT_ERROR;
         }
 
-        sb.append("===== КАСОВА БЕЛЕЖКА =====\n");
-        sb.append("Номер на бележка: ").append(receipt.getSerialNumber()).append("\n");
-        sb.append("Касиер: ").append(receipt.getCashier().getName()).append("\n");
-        sb.append("Дата: ").append(receipt.getIssueDate()).append("\n");
-        sb.append("----------------------\n");
-        sb.append("Артикули:\n");
-
-        for (Map.Entry<Stoka, Double> entry : receipt.getStoka().entrySet()) {
-            Stoka stoka = entry.getKey();
-            Double quantity = entry.getValue();
-            BigDecimal price = stoka.getPrice();
-            BigDecimal qty = BigDecimal.valueOf(quantity);
-            BigDecimal itemTotal = price.multiply(qty);
-
-            sb.append("  ").append(stoka.getName())
-                    .append(" - ").append(quantity).append(" бр. x ")
-                    .append(price).append(" лв. = ")
-                    .append(itemTotal.setScale(2, RoundingMode.UP)).append(" лв.\n");
+        return RENDERER.get().formatText(receipt);
+    }
+
+//      Печата бележката направо в потока (например System.out) без междинен низ.
+//      return общата сума в стотинки
+
+    public long printReceipt(OutputStream out) throws IOException {
+        if (isEmpty()) {
+            out.write(EMPTY_RECEIPT_ERROR.getBytes(StandardCharsets.UTF_8));
+            return 0;
         }
 
-        sb.append("----------------------\n");
-        sb.append("Общо: ").append(calculateTotalPrice()).append(" лв.\n");
-        sb.append("==========================\n");
+        return RENDERER.get().renderText(receipt, out);
+    }
 
-        return sb.toString();
+    // Бележката в машинен формат (виж ReceiptRenderer)
+    public long writeMachineReceipt(OutputStream out) throws IOException {
+        if (isEmpty()) {
+            return 0;
+        }
+
+        return RENDERER.get().renderMachine(receipt, out);
     }
 
+    private boolean isEmpty() {
+        return receipt == null || receipt.getStoka() == null || receipt.getStoka().isEmpty();
+    }
 }
@@ -0,0 +1,46 @@
+package org.store.service;
+
+import org.store.data.Stoka;
+import org.store.enums.TransferState;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Количество, запазено в магазина източник за прехвърляне към друг магазин (първата фаза).
+// Завършва се точно веднъж - с потвърждение или отказ от StoreService, който го е създал.
+public class StockReservation {
+    private final Stoka stoka;
+    private final long milli;
+    private final BigDecimal cost;
+    private final AtomicReference<TransferState> state = new AtomicReference<>(TransferState.RESERVED);
+
+    StockReservation(Stoka stoka, long milli, BigDecimal cost) {
+        this.stoka = stoka;
+        this.milli = milli;
+        this.cost = cost;
+    }
+
+    public Stoka getStoka() {
+        return stoka;
+    }
+
+    public long getMilli() {
+        return milli;
+    }
+
+    // Разходът за доставка, който преминава заедно със стоката - по цена на доставка
+    public BigDecimal getCost() {
+        return cost;
+    }
+
+    public TransferState getState() {
+        return state.get();
+    }
+
+    // Преминава от RESERVED към крайното състояние; второ завършване е грешка
+    void finish(TransferState target) {
+        if (!state.compareAndSet(TransferState.RESERVED, target)) {
+            throw new IllegalStateException("Прехвърлянето на " + stoka.getName() + " вече е " + state.get());
+        }
+    }
+}
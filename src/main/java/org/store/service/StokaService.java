@@ -1,7 +1,9 @@
 package org.store.service;
 
+import org.store.data.Catalogue;
 import org.store.data.Stoka;
 import org.store.enums.StokaCategory;
+import org.store.money.MoneyMath;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
@@ -12,7 +14,20 @@ import java.util.Map;
 import java.util.stream.Collectors;
 
 public class StokaService {
-    
+    private final Catalogue catalogue;
+
+    public StokaService() {
+        this(new Catalogue());
+    }
+
+    // Заявките без списък (findByCategory, findSortedByPrice, ...) работят върху индексите на каталога
+    public StokaService(Catalogue catalogue) {
+        this.catalogue = catalogue;
+    }
+
+    public Catalogue getCatalogue() {
+        return catalogue;
+    }
 
 //      Проверява дали стоката е близо до изтичане на срока на годност
 //      stoka стоката за проверка
@@ -20,11 +35,15 @@ public class StokaService {
 //      return true ако стоката е близо до изтичане, false в противен случай
 
     public boolean isNearExpiration(Stoka stoka, int daysThreshold) {
+        return isNearExpiration(stoka, daysThreshold, LocalDate.now());
+    }
+
+    // Същото, но с подадена дата - за проверка на много стоки наведнъж
+    public boolean isNearExpiration(Stoka stoka, int daysThreshold, LocalDate today) {
         if (stoka.getExpirationDate() == null) {
             return false; // Non-food items don't expire
         }
         
-        LocalDate today = LocalDate.now();
         LocalDate expirationDate = stoka.getExpirationDate();
         
         long daysUntilExpiration = ChronoUnit.DAYS.between(today, expirationDate);
@@ -59,13 +78,47 @@ public class StokaService {
     }
     
 
+//      Стоките от каталога в категорията, подредени по цена - без обхождане на целия каталог
+
+    public List<Stoka> findByCategory(StokaCategory category) {
+        return catalogue.byCategory(category);
+    }
+
+
+//      Всички стоки от каталога, подредени по цена (индексът вече е подреден)
+
+    public List<Stoka> findSortedByPrice() {
+        return catalogue.sortedByPrice();
+    }
+
+
+//      Първите k най-евтини стоки от каталога - O(log n + k)
+
+    public List<Stoka> findCheapest(int k) {
+        return catalogue.cheapest(k);
+    }
+
+    public List<Stoka> findCheapest(StokaCategory category, int k) {
+        return catalogue.cheapest(category, k);
+    }
+
+
+//      Стоките, чието име започва с prefix (без значение от малки/главни букви)
+
+    public List<Stoka> findByNamePrefix(String prefix) {
+        return catalogue.findByNamePrefix(prefix);
+    }
+
+
 //       Филтрира списък от стоки, които са изтекли
 //       stokaList списък от стоки
 //       return списък от изтекли стоки
 
     public List<Stoka> filterExpiredItems(List<Stoka> stokaList) {
+        // Датата се взима веднъж за целия списък; за наличностите в магазин виж ExpiryIndex
+        LocalDate today = LocalDate.now();
         return stokaList.stream()
-                .filter(Stoka::isExpired)
+                .filter(stoka -> stoka.getExpirationDate() != null && stoka.getExpirationDate().isBefore(today))
                 .collect(Collectors.toList());
     }
     
@@ -87,17 +140,7 @@ public class StokaService {
 //      return общата стойност на стоките
 //
     public BigDecimal calculateTotalValue(Map<Stoka, Double> stokaQuantityMap) {
-        BigDecimal total = BigDecimal.ZERO;
-        
-        for (Map.Entry<Stoka, Double> entry : stokaQuantityMap.entrySet()) {
-            Stoka stoka = entry.getKey();
-            Double quantity = entry.getValue();
-            
-            BigDecimal itemPrice = stoka.getPrice().multiply(BigDecimal.valueOf(quantity));
-            total = total.add(itemPrice);
-        }
-        
-        return total;
+        return MoneyMath.total(stokaQuantityMap);
     }
     
 
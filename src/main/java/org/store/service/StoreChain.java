@@ -0,0 +1,190 @@
+package org.store.service;
+
+import org.store.data.Cashier;
+import org.store.data.Kasa;
+import org.store.data.QuantityLedger;
+import org.store.data.Stoka;
+import org.store.data.Store;
+
+import java.math.BigDecimal;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+// Верига от магазини. Всеки магазин е отделен дял - свой Store със свои ключалки, регистри, суми
+// и журнали, и свой StoreService. Касите работят само със своя магазин, затова нов магазин не
+// добавя съперничество в съществуващите; веригата се пипа само при добавяне на магазин и при заявки.
+//
+// Заявките за цялата верига се пускат паралелно по магазините (scatter) и резултатите се сливат (gather).
+// Всеки магазин пази свои копия на стоките (продажната цена зависи от надценките му) - копията
+// с един и същ id са една стока за веригата и имат един SKU индекс.
+// Номерата на бележките идват от общия ReceiptSerialSource - касите са номерирани в цялата верига
+// и номерата не се повтарят между магазините; той се пипа веднъж на блок от номера.
+public class StoreChain {
+    private final Map<String, StoreService> stores = new ConcurrentHashMap<>();
+    private final ForkJoinPool pool;
+
+    public StoreChain() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public StoreChain(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public StoreService addStore(String storeId, Store store) {
+        StoreService storeService = new StoreService(store);
+        if (stores.putIfAbsent(storeId, storeService) != null) {
+            throw new IllegalArgumentException("Магазин с id " + storeId + " вече е във веригата");
+        }
+        return storeService;
+    }
+
+    public StoreService getStoreService(String storeId) {
+        StoreService storeService = stores.get(storeId);
+        if (storeService == null) {
+            throw new IllegalArgumentException("Няма магазин с id " + storeId);
+        }
+        return storeService;
+    }
+
+    public Store getStore(String storeId) {
+        return getStoreService(storeId).getStore();
+    }
+
+    public Set<String> getStoreIds() {
+        return Collections.unmodifiableSet(new TreeSet<>(stores.keySet()));
+    }
+
+    public int size() {
+        return stores.size();
+    }
+
+    // Нова каса в магазина storeId - продажбите ѝ засягат само неговия дял
+    public KasaService openLane(String storeId, Cashier cashier) {
+        StoreService storeService = getStoreService(storeId);
+        return new KasaService(new Kasa(cashier, storeService.getStore()), storeService);
+    }
+
+    // Прехвърля стока между два магазина на веригата - виж StoreService.transferTo
+    public Stoka transfer(String fromStoreId, String toStoreId, Stoka stoka, double quantity) {
+        return getStoreService(fromStoreId).transferTo(getStoreService(toStoreId), stoka, quantity);
+    }
+
+    public BigDecimal calculateChainProfit() {
+        return gather(StoreService::calculateStoreProfit, BigDecimal::add, BigDecimal.ZERO);
+    }
+
+    // Разбивката на печалбата, сумирана по всички магазини - бракът на веригата е отделен ред
+    public ProfitBreakdown calculateChainProfitBreakdown() {
+        return gather(StoreService::calculateProfitBreakdown, ProfitBreakdown::add, ProfitBreakdown.ZERO);
+    }
+
+    // Наличност на стоката (по id) във всички магазини
+    public double inventoryOf(Stoka stoka) {
+        long milli = gather(storeService -> storeService.getStore().getInventoryLedger().getMilli(stoka), Long::sum, 0L);
+        return QuantityLedger.fromMilli(milli);
+    }
+
+    // Наличност на стоката по магазин - само магазините, в които я има
+    public Map<String, Double> inventoryByStore(Stoka stoka) {
+        Map<String, Double> result = new TreeMap<>();
+        for (Map.Entry<String, StoreService> entry : stores.entrySet()) {
+            long milli = entry.getValue().getStore().getInventoryLedger().getMilli(stoka);
+            if (milli != 0) {
+                result.put(entry.getKey(), QuantityLedger.fromMilli(milli));
+            }
+        }
+        return result;
+    }
+
+//      Най-продаваните k стоки във веригата по продадено количество, от най-продаваната.
+//      Продаденото се сумира по SKU индекс от всички магазини и едва тогава се избират първите k -
+//      стока, която е втора навсякъде, може да е първа за веригата.
+
+    public List<Map.Entry<Stoka, Double>> topSellers(int k) {
+        if (k <= 0) {
+            return List.of();
+        }
+
+        SoldTotals totals = gather(storeService -> SoldTotals.of(storeService.getStore().getSoldLedger()),
+                SoldTotals::merge, new SoldTotals(new HashMap<>(), new HashMap<>()));
+
+        // Купчина с най-малкия от текущите k най-големи отгоре; при равни количества печели по-малкият индекс
+        Comparator<Integer> order = Comparator.<Integer>comparingLong(totals.milli::get)
+                .thenComparing(Comparator.<Integer>reverseOrder());
+        PriorityQueue<Integer> top = new PriorityQueue<>(k + 1, order);
+        for (Map.Entry<Integer, Long> entry : totals.milli.entrySet()) {
+            if (entry.getValue() > 0) {
+                top.add(entry.getKey());
+                if (top.size() > k) {
+                    top.poll();
+                }
+            }
+        }
+
+        List<Map.Entry<Stoka, Double>> result = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            int index = top.poll();
+            result.add(new AbstractMap.SimpleImmutableEntry<>(totals.keys.get(index), QuantityLedger.fromMilli(totals.milli.get(index))));
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    private <T> T gather(Function<StoreService, T> query, BinaryOperator<T> combine, T identity) {
+        List<StoreService> shards = new ArrayList<>(stores.values());
+        return pool.submit(() -> shards.parallelStream().map(query).reduce(identity, combine)).join();
+    }
+
+    // Продадено по SKU индекс в милиединици и стоката за всеки индекс - за сливане между магазините.
+    // Пазят се само продадените стоки, затова размерът не зависи от най-големия SKU индекс във веригата.
+    private static final class SoldTotals {
+        private final Map<Integer, Long> milli;
+        private final Map<Integer, Stoka> keys;
+
+        private SoldTotals(Map<Integer, Long> milli, Map<Integer, Stoka> keys) {
+            this.milli = milli;
+            this.keys = keys;
+        }
+
+        private static SoldTotals of(QuantityLedger sold) {
+            Map<Integer, Long> milli = new HashMap<>();
+            Map<Integer, Stoka> keys = new HashMap<>();
+
+            for (Stoka stoka : sold.asMap().keySet()) {
+                long quantity = sold.getMilli(stoka);
+                if (quantity != 0) {
+                    milli.merge(stoka.getSkuIndex(), quantity, Long::sum);
+                    keys.putIfAbsent(stoka.getSkuIndex(), stoka);
+                }
+            }
+            return new SoldTotals(milli, keys);
+        }
+
+        private static SoldTotals merge(SoldTotals first, SoldTotals second) {
+            SoldTotals larger = first.milli.size() >= second.milli.size() ? first : second;
+            SoldTotals smaller = larger == first ? second : first;
+
+            Map<Integer, Long> milli = new HashMap<>(larger.milli);
+            Map<Integer, Stoka> keys = new HashMap<>(larger.keys);
+            for (Map.Entry<Integer, Long> entry : smaller.milli.entrySet()) {
+                milli.merge(entry.getKey(), entry.getValue(), Long::sum);
+                keys.putIfAbsent(entry.getKey(), smaller.keys.get(entry.getKey()));
+            }
+            return new SoldTotals(milli, keys);
+        }
+    }
+}
@@ -1,70 +1,164 @@
 package org.store.service;
 
+import org.store.concurrent.StokaLocks;
 import org.store.data.Cashier;
+import org.store.data.DeliveryLine;
+import org.store.data.ExpiryPricing;
+import org.store.data.PricedCart;
+import org.store.data.PricingEngine;
+import org.store.data.QuantityLedger;
 import org.store.data.Stoka;
 import org.store.data.Store;
-import org.store.enums.StokaCategory;
+import org.store.enums.LogEvent;
+import org.store.enums.TransferState;
+import org.store.exceptions.NotEnoughStokaAvailableException;
+import org.store.journal.StoreEventLog;
+import org.store.log.DiagnosticLog;
+import org.store.metrics.StoreMetrics;
+import org.store.money.MoneyMath;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
 
 public class StoreService {
+    private static final int VERIFY_ATTEMPTS = 5;
+
     private Store store;
+    private volatile boolean verifyAggregates;
 
     public StoreService(Store store) {
         this.store = store;
     }
 
+    public Store getStore() {
+        return store;
+    }
+
     public void addSoldStoka(Map<Stoka, Double> sold) {
-        Map<Stoka, Double> tmpSoldStoka = this.store.getSoldStoka();
+        addSoldStoka(PricedCart.price(sold, Stoka::getPriceStotinki));
+    }
 
-        for (Map.Entry<Stoka, Double> entry : sold.entrySet()) {
-            Stoka stoka = entry.getKey();
-            Double quantity = entry.getValue();
+    // Приходът на всеки ред е делът му от платената сума - сборът е точно сумата, взета от касата
+    private void addSoldStoka(PricedCart sale) {
+        for (int line = 0; line < sale.size(); line++) {
+            this.store.addToSoldStoka(sale.getStoka(line), sale.getQuantity(line),
+                    MoneyMath.toBigDecimal(sale.getLineTotalStotinki(line)));
+        }
+    }
 
-            Double currentQuantity = tmpSoldStoka.getOrDefault(stoka, 0.0);
-            Double updatedQuantity = currentQuantity + quantity;
+//      Атомарно проверява наличността и продава цялата количка.
+//      Ключалките на всички стоки от количката се държат едновременно, така проверката
+//      и премахването от склада не могат да се разминат с друга каса.
+//      Каси, които продават различни стоки, не се чакат една друга.
+//      throws NotEnoughStokaAvailableException ако някоя стока не достига - тогава складът не се променя
 
-            tmpSoldStoka.put(stoka, updatedQuantity);
-        }
+    public void commitSale(Map<Stoka, Double> cart) {
+        commitSale(PricedCart.price(cart, Stoka::getPriceStotinki));
+    }
 
-        this.store.setSoldStoka(tmpSoldStoka);
+    // Продава по цените, фиксирани в sale - приходът е точно сумата, която касата е взела
+    public void commitSale(PricedCart sale) {
+        StokaLocks locks = this.store.getStokaLocks();
+        int[] locked = locks.lockAll(sale.getItems().keySet());
+
+        try {
+            checkAvailability(sale.getItems());
+            sell(sale);
+        } finally {
+            locks.unlockAll(locked);
+        }
     }
 
-    private BigDecimal calculatePriceWithMargin(Stoka stoka) {
-        BigDecimal currentPrice = stoka.getPrice();
-        StokaCategory category = stoka.getStokaCategory();
+//      Продава няколко колички под едно заключване на всички засегнати стоки.
+//      Количките се проверяват и прилагат една по една в реда на списъка - количка, за която
+//      няма достатъчно стока, се отказва, без да спира останалите.
+//      Резултатите (future на всяка продажба) се попълват след освобождаване на ключалките.
+
+    public void commitSales(List<PendingSale> sales) {
+        Set<Stoka> stokas = new HashSet<>();
+        for (PendingSale sale : sales) {
+            stokas.addAll(sale.getSale().getItems().keySet());
+        }
+
+        RuntimeException[] failures = new RuntimeException[sales.size()];
+        StokaLocks locks = this.store.getStokaLocks();
+        int[] locked = locks.lockAll(stokas);
+
+        try {
+            for (int i = 0; i < sales.size(); i++) {
+                PendingSale sale = sales.get(i);
+                try {
+                    checkAvailability(sale.getSale().getItems());
+                    sell(sale.getSale());
+                } catch (NotEnoughStokaAvailableException e) {
+                    failures[i] = e;
+                }
+            }
+        } finally {
+            locks.unlockAll(locked);
+        }
 
-        double margin = this.store.getMarginPercentByCategory().get(category);
+        for (int i = 0; i < sales.size(); i++) {
+            if (failures[i] == null) {
+                sales.get(i).getResult().complete(null);
+            } else {
+                sales.get(i).getResult().completeExceptionally(failures[i]);
+            }
+        }
+    }
 
-        BigDecimal increase = currentPrice.multiply(new BigDecimal(margin / 100));
-        BigDecimal updatedPrice = currentPrice.add(increase);
+    // Извиква се под ключалките на стоките от количката - събитието в журнала е в същия ред като промяната
+    private void sell(PricedCart sale) {
+        removeFromInventory(sale.getItems());
+        addSoldStoka(sale);
 
-        return updatedPrice.setScale(2, BigDecimal.ROUND_UP);
+        StoreEventLog events = this.store.getEventLog();
+        if (events != null) {
+            events.sale(sale);
+        }
     }
 
+    // Извиква се под ключалките на стоките от количката
+    private void checkAvailability(Map<Stoka, Double> cart) {
+        QuantityLedger inventory = this.store.getInventoryLedger();
+
+        for (Map.Entry<Stoka, Double> entry : cart.entrySet()) {
+            Stoka stoka = entry.getKey();
+            long requestedMilli = QuantityLedger.toMilli(entry.getValue());
+            long availableMilli = inventory.getMilli(stoka);
+
+            if (availableMilli < requestedMilli) {
+                throw new NotEnoughStokaAvailableException(stoka.getName(),
+                        QuantityLedger.fromMilli(requestedMilli - availableMilli));
+            }
+        }
+    }
 
 //      Проверява и коригира срока на годност на стоката преди доставка
 //      stoka стоката за проверка
 //      return true ако срокът е валиден, false ако не е
 
     public boolean validateAndFixExpirationDate(Stoka stoka) {
-        LocalDate today = LocalDate.now();
+        return validateAndFixExpirationDate(stoka, LocalDate.now());
+    }
 
+    private boolean validateAndFixExpirationDate(Stoka stoka, LocalDate today) {
         LocalDate expirationDate = stoka.getExpirationDate();
 
         if (expirationDate.isBefore(today) || expirationDate.isEqual(today)) {
-            System.out.println("ГРЕШКА: Стоката " + stoka.getName() + " е с невалиден срок на годност!");
-            System.out.println("Срок на годност: " + expirationDate);
-            System.out.println("Днешна дата: " + today);
-
             // Задаваме нов срок на годност - 30 дни напред
 
             LocalDate newExpirationDate = today.plusDays(30);
             stoka.setExpirationDate(newExpirationDate);
 
-            System.out.println("Автоматично коригиран срок на годност: " + newExpirationDate);
+            DiagnosticLog.shared().log(LogEvent.EXPIRATION_DATE_CORRECTED, stoka.getName(), expirationDate, newExpirationDate);
             return false;
         }
 
@@ -73,132 +167,462 @@ public class StoreService {
     }
 
     public void deliverStoka(Stoka stoka) {
-        // Първо проверяваме и коригираме срока на годност
-        boolean isExpirationDateValid = validateAndFixExpirationDate(stoka);
+        deliverBatch(List.of(new DeliveryLine(stoka, 1.0, stoka.getDeliveryPrice())));
+    }
 
-        if (!isExpirationDateValid) {
-            System.out.println("Внимание: Срокът на годност на стоката беше автоматично коригиран!");
-        }
+//      Доставя наведнъж всички редове от една доставка.
+//      Редовете за една и съща стока се обединяват - срокът на годност се проверява
+//      и продажната цена се преизчислява само веднъж на стока, а не за всеки доставен брой.
+//      Разходът за доставка се записва по количество, за да се претегли правилно в разходите.
+
+    public void deliverBatch(Collection<DeliveryLine> lines) {
+        long start = System.nanoTime();
+
+        // Първо обединяваме редовете по стока
+        Map<Stoka, DeliveryTotal> totals = new LinkedHashMap<>(Math.max(16, lines.size() * 4 / 3 + 1));
 
-        // Проверяваме дали стоката е валидна след корекцията
-        if (stoka.isExpired()) {
-            System.out.println("КРИТИЧНА ГРЕШКА: Стоката е с изтекъл срок и не може да бъде доставена!");
-            return;
+        for (DeliveryLine line : lines) {
+            DeliveryTotal total = totals.computeIfAbsent(line.getStoka(), key -> new DeliveryTotal());
+            BigDecimal lineCost = line.getUnitDeliveryCost().multiply(BigDecimal.valueOf(line.getQuantity()));
+
+            total.quantity += line.getQuantity();
+            total.cost = total.cost.add(lineCost);
         }
 
-        // First we need to calculate the new price with margin
-        BigDecimal priceWithMargin = this.calculatePriceWithMargin(stoka);
+        LocalDate today = LocalDate.now();
+        StoreEventLog events = this.store.getEventLog();
+        PricingEngine pricingEngine = this.store.getPricingEngine();
 
-        // Now we update the price of the item
-        stoka.setPrice(priceWithMargin);
+        for (Map.Entry<Stoka, DeliveryTotal> entry : totals.entrySet()) {
+            Stoka stoka = entry.getKey();
+            DeliveryTotal total = entry.getValue();
 
-        // Now we need to add the item to the store's delivered items list
-        this.store.addToDeliveredStoka(stoka);
+            // Проверяваме и коригираме срока на годност (нехранителните стоки нямат срок)
+            if (stoka.getExpirationDate() != null) {
+                // Невалидният срок се коригира и записва в диагностичния журнал
+                validateAndFixExpirationDate(stoka, today);
 
-        // And also add it to the store's inventory
-        this.store.addToInventory(stoka);
+                if (stoka.getExpirationDate().isBefore(today)) {
+                    DiagnosticLog.shared().log(LogEvent.DELIVERY_REJECTED_EXPIRED, stoka.getName());
+                    continue;
+                }
+            }
 
-//        // Let's print something so we know it worked!
-//        System.out.println("!!! DELIVERED NEW ITEM !!!");
-//        System.out.println("Item name: " + stoka.getName());
-//        System.out.println("Item price: " + stoka.getPrice() + " lv");
-//        System.out.println("Expiration date: " + stoka.getExpirationDate());
-//        System.out.println("Is expired: " + (stoka.isExpired() ? "YES" : "NO"));
-//        System.out.println("Current inventory count: " + this.store.getInventory().getOrDefault(stoka, 0.0));
-//        System.out.println("------------------------");
+            // Продажната цена е цената на доставка плюс надценката - повторната доставка не я вдига
+            this.store.getCatalogue().add(stoka);
+            pricingEngine.reprice(stoka);
+
+            // Доставено, наличност и разход за доставка - под ключалката на стоката, за да не се размине
+            // с продажба, която я изчерпва, и да попадне цялата в копието на магазина или в журнала след него
+            StokaLocks locks = this.store.getStokaLocks();
+            locks.lock(stoka);
+            try {
+                this.store.addToDeliveredStoka(stoka, total.quantity, total.cost);
+                this.store.addToInventory(stoka, total.quantity);
+                this.store.getExpiryIndex().track(stoka);
+
+                if (events != null) {
+                    events.delivery(stoka, total.quantity, total.cost);
+                }
+            } finally {
+                locks.unlock(stoka);
+            }
+        }
+
+        StoreMetrics metrics = this.store.getMetrics();
+        metrics.getDeliveredLines().add(totals.size());
+        metrics.getDelivery().recordSince(start);
+    }
+
+    // Натрупано количество и разход за една стока в рамките на една доставка
+    private static class DeliveryTotal {
+        private double quantity;
+        private BigDecimal cost = BigDecimal.ZERO;
     }
 
     public void removeFromInventory(Map<Stoka, Double> sold) {
-        Map<Stoka, Double> tmpInventory = this.store.getInventory();
+        QuantityLedger inventory = this.store.getInventoryLedger();
 
+        // Изваждането е атомарно, а количество 0 означава, че стоката вече я няма в склада
         for (Map.Entry<Stoka, Double> entry : sold.entrySet()) {
-            Stoka stoka = entry.getKey();
-            Double quantity = entry.getValue();
+            long remaining = inventory.addMilli(entry.getKey(), -QuantityLedger.toMilli(entry.getValue()));
+            if (remaining <= 0) {
+                this.store.getExpiryIndex().untrack(entry.getKey());
+            }
+        }
+    }
 
-            Double currentQuantity = tmpInventory.getOrDefault(stoka, 0.0);
-            Double updatedQuantity = currentQuantity - quantity;
+    // Наличните стоки с изтекъл срок към днешна дата
+    public List<Stoka> getExpiredStoka() {
+        return getExpiredStoka(LocalDate.now());
+    }
 
-            if (updatedQuantity == 0) {
-                tmpInventory.remove(stoka);
-            } else {
-                tmpInventory.put(stoka, updatedQuantity);
+    public List<Stoka> getExpiredStoka(LocalDate today) {
+        return this.store.getExpiryIndex().expired(today);
+    }
+
+//      Изважда цялата наличност на стоката от продажба, ако срокът ѝ е изтекъл към today,
+//      и я записва като брак по цена на доставка. Държи само ключалката на тази стока.
+//      return бракуваното количество (0, ако стоката не е изтекла или вече я няма)
+
+    public double writeOffIfExpired(Stoka stoka, LocalDate today) {
+        StokaLocks locks = this.store.getStokaLocks();
+        locks.lock(stoka);
+
+        try {
+            // Срокът може да е сменен след като стоката е попаднала в списъка
+            LocalDate expirationDate = stoka.getExpirationDate();
+            if (expirationDate == null || !expirationDate.isBefore(today)) {
+                this.store.getExpiryIndex().track(stoka);
+                return 0;
+            }
+
+            QuantityLedger inventory = this.store.getInventoryLedger();
+            long milli = inventory.getMilli(stoka);
+            this.store.getExpiryIndex().untrack(stoka);
+            if (milli <= 0) {
+                return 0;
             }
+
+            inventory.addMilli(stoka, -milli);
+            double quantity = QuantityLedger.fromMilli(milli);
+            BigDecimal value = stoka.getDeliveryPrice().multiply(BigDecimal.valueOf(quantity));
+            this.store.addToWrittenOff(stoka, quantity, value);
+
+            StoreEventLog events = this.store.getEventLog();
+            if (events != null) {
+                events.writeOff(stoka, quantity, value);
+            }
+            return quantity;
+        } finally {
+            locks.unlock(stoka);
         }
+    }
 
-        this.store.setInventory(tmpInventory);
+//      Прехвърля quantity от стоката към магазина destination на две фази:
+//      1. запазване тук - количеството излиза от наличността и касите вече не могат да го продадат;
+//      2. приемане в destination - там то се записва като доставка с разхода за доставката му;
+//      3. потвърждение тук - запазеното напуска магазина заедно с разхода; при грешка във 2 се връща в наличността.
+//      Всяка фаза държи ключалката на стоката само в един магазин, затова прехвърлянията не спират
+//      касите и прехвърлянията в други магазини и две срещуположни прехвърляния не се блокират взаимно.
+//      return копието на стоката в destination
+
+    public Stoka transferTo(StoreService destination, Stoka stoka, double quantity) {
+        if (destination == this || destination.store == this.store) {
+            throw new IllegalArgumentException("Стоката не може да се прехвърли в същия магазин");
+        }
+
+        StockReservation reservation = reserveForTransfer(stoka, quantity);
+        Stoka received;
+        try {
+            received = destination.receiveTransfer(reservation.getStoka(), QuantityLedger.fromMilli(reservation.getMilli()),
+                    reservation.getCost());
+        } catch (RuntimeException e) {
+            cancelReservation(reservation);
+            throw e;
+        }
+
+        commitReservation(reservation);
+        return received;
     }
 
-    public BigDecimal calculateStokaDeliveryExpenses() {
-        BigDecimal result = BigDecimal.ZERO;
-        for (Map.Entry<Stoka, Double> entry : this.store.getDeliveredStoka().entrySet()) {
-            result = result.add(entry.getKey().getDeliveryPrice());
+//      Първа фаза: запазва quantity от наличността за прехвърляне.
+//      throws NotEnoughStokaAvailableException ако наличността не стига - нищо не се променя
+
+    public StockReservation reserveForTransfer(Stoka stoka, double quantity) {
+        long milli = QuantityLedger.toMilli(quantity);
+        if (milli <= 0) {
+            throw new IllegalArgumentException("Количеството за прехвърляне трябва да е положително");
         }
 
-        // Return the final result
-        return result;
+        StokaLocks locks = this.store.getStokaLocks();
+        locks.lock(stoka);
+        try {
+            QuantityLedger inventory = this.store.getInventoryLedger();
+            long availableMilli = inventory.getMilli(stoka);
+            if (availableMilli < milli) {
+                throw new NotEnoughStokaAvailableException(stoka.getName(), QuantityLedger.fromMilli(milli - availableMilli));
+            }
+
+            if (inventory.addMilli(stoka, -milli) <= 0) {
+                this.store.getExpiryIndex().untrack(stoka);
+            }
+            this.store.getReservedLedger().addMilli(stoka, milli);
+
+            return new StockReservation(stoka, milli, transferCost(stoka, milli));
+        } finally {
+            locks.unlock(stoka);
+        }
     }
 
-    public BigDecimal calculateCashierSalaryExpenses() {
-        BigDecimal salaries = BigDecimal.ZERO;
+//      Разходът за прехвърляните milli - по средната записана цена на доставка (разход / доставено количество),
+//      а не по текущата цена на доставка на стоката, която може да е различна от платената.
+//      Извиква се под ключалката на стоката, за да не се промени доставеното междувременно.
 
-        for (Cashier cashier : this.store.getCashiers()) {
-            salaries = salaries.add(cashier.getMonthlySalary());
+    private BigDecimal transferCost(Stoka stoka, long milli) {
+        BigDecimal recorded = this.store.getDeliveryCosts().get(stoka);
+        long deliveredMilli = this.store.getDeliveredLedger().getMilli(stoka);
+        if (recorded == null || deliveredMilli <= 0) {
+            return stoka.getDeliveryPrice().multiply(BigDecimal.valueOf(milli, 3));
         }
 
-        return salaries;
+        return recorded.multiply(BigDecimal.valueOf(milli))
+                .divide(BigDecimal.valueOf(deliveredMilli), MoneyMath.SCALE, MoneyMath.ROUNDING);
     }
 
-    public BigDecimal calculateStokaSoldRevenue() {
-        // Initialize the result with zero
-        BigDecimal result = new BigDecimal("0");
+    // Последна фаза при успех: запазеното напуска магазина заедно с разхода за доставката си
+    public void commitReservation(StockReservation reservation) {
+        Stoka stoka = reservation.getStoka();
+        StokaLocks locks = this.store.getStokaLocks();
+        locks.lock(stoka);
+        try {
+            reservation.finish(TransferState.COMMITTED);
+            double quantity = QuantityLedger.fromMilli(reservation.getMilli());
+
+            this.store.getReservedLedger().addMilli(stoka, -reservation.getMilli());
+            this.store.addToDeliveredStoka(stoka, -quantity, reservation.getCost().negate());
+
+            StoreEventLog events = this.store.getEventLog();
+            if (events != null) {
+                events.transferOut(stoka, quantity, reservation.getCost());
+            }
+        } finally {
+            locks.unlock(stoka);
+        }
+    }
+
+    // Отказ: запазеното се връща в наличността
+    public void cancelReservation(StockReservation reservation) {
+        Stoka stoka = reservation.getStoka();
+        StokaLocks locks = this.store.getStokaLocks();
+        locks.lock(stoka);
+        try {
+            reservation.finish(TransferState.CANCELLED);
+
+            this.store.getReservedLedger().addMilli(stoka, -reservation.getMilli());
+            this.store.getInventoryLedger().addMilli(stoka, reservation.getMilli());
+            this.store.getExpiryIndex().track(stoka);
+        } finally {
+            locks.unlock(stoka);
+        }
+    }
+
+//      Втора фаза: приема прехвърлена стока като доставка с разход cost.
+//      Използва копието на стоката в този магазин, а ако магазинът не я е имал - създава копие
+//      със същия id и продажна цена по неговите надценки.
+//      throws IllegalStateException ако срокът на стоката е изтекъл - източникът връща запазеното
 
-        // Get all sold items
-        Map<Stoka, Double> allSoldItems = this.store.getSoldStoka();
+    public Stoka receiveTransfer(Stoka stoka, double quantity, BigDecimal cost) {
+        LocalDate expirationDate = stoka.getExpirationDate();
+        if (expirationDate != null && expirationDate.isBefore(LocalDate.now())) {
+            throw new IllegalStateException("Стоката " + stoka.getName() + " е с изтекъл срок и не може да бъде прехвърлена");
+        }
+
+        Stoka local = this.store.getDeliveredLedger().stokaAt(stoka.getSkuIndex());
+        if (local == null) {
+            local = new Stoka(stoka.getId(), stoka.getName(), stoka.getDeliveryPrice(), stoka.getPrice(),
+                    expirationDate, stoka.getStokaCategory());
+        }
+        this.store.getCatalogue().add(local);
+        this.store.getPricingEngine().reprice(local);
+
+        StoreEventLog events = this.store.getEventLog();
+        StokaLocks locks = this.store.getStokaLocks();
+        locks.lock(local);
+        try {
+            this.store.addToDeliveredStoka(local, quantity, cost);
+            this.store.addToInventory(local, quantity);
+            this.store.getExpiryIndex().track(local);
+
+            if (events != null) {
+                events.delivery(local, quantity, cost);
+            }
+        } finally {
+            locks.unlock(local);
+        }
+        return local;
+    }
 
-        // Loop through each item one by one
-        for (Map.Entry<Stoka, Double> entry : allSoldItems.entrySet()) {
-            // Get the current item
-            Stoka currentItem = entry.getKey();
+    // Наличните стоки, за които днес важи отстъпката за изтичащ срок
+    public List<Stoka> getStokaForExpiryDiscount() {
+        return this.store.getExpiryIndex().expiringWithin(LocalDate.now(), this.store.getCountDaysForExpiryDateDiscount());
+    }
 
-            // Get how many of this item were sold
-            Double howManySold = entry.getValue();
+//      Цените за деня според настройките на магазина - отстъпка expiryDateDiscount %
+//      за стоките, които изтичат до countDaysForExpiryDateDiscount дни.
 
-            // Convert the quantity to BigDecimal so we can do math
-            BigDecimal quantityAsBigDecimal = new BigDecimal(howManySold.toString());
+    public ExpiryPricing expiryPricing(LocalDate today) {
+        return this.store.getPricingEngine().pricing(today);
+    }
 
-            // Get the price of the current item
-            BigDecimal priceOfCurrentItem = currentItem.getPrice();
+//      Сумите по-долу се поддържат текущо при всяка доставка, продажба и назначаване,
+//      затова заявките са O(1). В режим на проверка (setVerifyAggregates) всяка заявка
+//      се сверява с пълно преизчисляване и при разлика се хвърля IllegalStateException.
 
-            // Calculate the total for this item by multiplying price and quantity
-            BigDecimal totalForThisItem = priceOfCurrentItem.multiply(quantityAsBigDecimal);
+    public BigDecimal calculateStokaDeliveryExpenses() {
+        long start = System.nanoTime();
+        if (this.verifyAggregates) {
+            verifyAggregate("разходи за доставка", this.store::getDeliveryExpensesTotal, this::recalculateStokaDeliveryExpenses);
+        }
 
-            // Add this item's total to our running total
-            result = result.add(totalForThisItem);
+        BigDecimal total = this.store.getDeliveryExpensesTotal();
+        this.store.getMetrics().getReportDeliveryExpenses().recordSince(start);
+        return total;
+    }
 
-            // Print for debugging
-            System.out.println("Item: " + currentItem.getName() +
-                    ", Quantity: " + howManySold +
-                    ", Price: " + priceOfCurrentItem +
-                    ", Total: " + totalForThisItem);
+    public BigDecimal calculateCashierSalaryExpenses() {
+        long start = System.nanoTime();
+        if (this.verifyAggregates) {
+            verifyAggregate("заплати", this.store::getSalaryExpensesTotal, this::recalculateCashierSalaryExpenses);
         }
 
-        // Return the final result
-        return result;
+        BigDecimal total = this.store.getSalaryExpensesTotal();
+        this.store.getMetrics().getReportSalaryExpenses().recordSince(start);
+        return total;
     }
 
+    public BigDecimal calculateStokaSoldRevenue() {
+        long start = System.nanoTime();
+        if (this.verifyAggregates) {
+            verifyAggregate("приходи", this.store::getSoldRevenueTotal, this::recalculateStokaSoldRevenue);
+        }
+
+        BigDecimal total = this.store.getSoldRevenueTotal();
+        this.store.getMetrics().getReportSoldRevenue().recordSince(start);
+        return total;
+    }
+
+    // Стойност на бракуваните стоки - по цена на доставка
+    public BigDecimal calculateWriteOffExpenses() {
+        long start = System.nanoTime();
+        if (this.verifyAggregates) {
+            verifyAggregate("брак", this.store::getWriteOffTotal, this::recalculateWriteOffExpenses);
+        }
+
+        BigDecimal total = this.store.getWriteOffTotal();
+        this.store.getMetrics().getReportWriteOffExpenses().recordSince(start);
+        return total;
+    }
+
+//      Печалба = приходи - заплати - разходи за доставка.
+//      Бракуваните стоки са платени при доставката и вече са в разходите за доставка,
+//      затова не се изваждат втори път - в calculateProfitBreakdown бракът е отделен ред.
+
     public BigDecimal calculateStoreProfit() {
+        return calculateProfitBreakdown().getProfit();
+    }
+
+    // Печалбата по редове: приходи, заплати, разходи за доставка и брак
+    public ProfitBreakdown calculateProfitBreakdown() {
+        long start = System.nanoTime();
         BigDecimal salaries = this.calculateCashierSalaryExpenses();
         BigDecimal deliveries = this.calculateStokaDeliveryExpenses();
         BigDecimal revenue = this.calculateStokaSoldRevenue();
+        BigDecimal writeOffs = this.calculateWriteOffExpenses();
+
+        ProfitBreakdown result = new ProfitBreakdown(revenue, salaries, deliveries, writeOffs);
+
+        this.store.getMetrics().getReportProfit().recordSince(start);
+        return result;
+    }
+
+    // Пълно преизчисляване на разходите за доставка - разходът по всяка стока вече е умножен по количеството
+    public BigDecimal recalculateStokaDeliveryExpenses() {
+        BigDecimal result = BigDecimal.ZERO;
+
+        for (BigDecimal deliveryCost : this.store.getDeliveryCosts().values()) {
+            result = result.add(deliveryCost);
+        }
 
-        BigDecimal result = revenue.subtract(salaries.add(deliveries));
+        return result;
+    }
+
+    // Назначава касиер; при журнал назначаването се записва заедно с добавянето
+    public void hireCashier(Cashier cashier) {
+        synchronized (this.store) {
+            StoreEventLog events = this.store.getEventLog();
+            if (this.store.addCashier(cashier) && events != null) {
+                events.cashierHired(cashier);
+            }
+        }
+    }
+
+    public BigDecimal recalculateCashierSalaryExpenses() {
+        BigDecimal salaries = BigDecimal.ZERO;
+
+        synchronized (this.store) {
+            for (Cashier cashier : this.store.getCashiers()) {
+                salaries = salaries.add(cashier.getMonthlySalary());
+            }
+        }
+
+        return salaries;
+    }
+
+    public BigDecimal recalculateWriteOffExpenses() {
+        BigDecimal result = BigDecimal.ZERO;
+
+        for (BigDecimal writeOff : this.store.getWriteOffCosts().values()) {
+            result = result.add(writeOff);
+        }
 
         return result;
     }
 
-    public BigDecimal deliverStokaReturnPriceWithMargin(Stoka stokaFood) {
+    // Пълно преизчисляване на приходите - по цената, на която всяка стока е продадена
+    public BigDecimal recalculateStokaSoldRevenue() {
+        BigDecimal result = BigDecimal.ZERO;
+
+        for (BigDecimal revenue : this.store.getSoldRevenue().values()) {
+            result = result.add(revenue);
+        }
+
+        return result;
+    }
+
+    public boolean isVerifyAggregates() {
+        return verifyAggregates;
+    }
+
+    public void setVerifyAggregates(boolean verifyAggregates) {
+        this.verifyAggregates = verifyAggregates;
+    }
+
+//      Сверява всички текущи суми с пълно преизчисляване.
+//      throws IllegalStateException ако някоя сума се разминава
+
+    public void verifyAggregates() {
+        verifyAggregate("разходи за доставка", this.store::getDeliveryExpensesTotal, this::recalculateStokaDeliveryExpenses);
+        verifyAggregate("заплати", this.store::getSalaryExpensesTotal, this::recalculateCashierSalaryExpenses);
+        verifyAggregate("приходи", this.store::getSoldRevenueTotal, this::recalculateStokaSoldRevenue);
+        verifyAggregate("брак", this.store::getWriteOffTotal, this::recalculateWriteOffExpenses);
+    }
+
+    // Продажба, която е по средата на записа, може временно да е отразена само в едната сума,
+    // затова при разлика опитваме отново, преди да сигнализираме за грешка
+    private void verifyAggregate(String name, Supplier<BigDecimal> running, Supplier<BigDecimal> recalculated) {
+        BigDecimal runningTotal = null;
+        BigDecimal fullTotal = null;
+
+        for (int attempt = 0; attempt < VERIFY_ATTEMPTS; attempt++) {
+            runningTotal = running.get();
+            fullTotal = recalculated.get();
+
+            if (runningTotal.compareTo(fullTotal) == 0) {
+                return;
+            }
+
+            Thread.yield();
+        }
+
+        throw new IllegalStateException("Разминаване в " + name + ": текуща сума " + runningTotal
+                + ", пълно преизчисляване " + fullTotal);
+    }
 
-        return null;
+    // Доставя една бройка от стоката и връща продажната ѝ цена с надценката
+    public BigDecimal deliverStokaReturnPriceWithMargin(Stoka stoka) {
+        deliverStoka(stoka);
+        return stoka.getPrice();
     }
 
 
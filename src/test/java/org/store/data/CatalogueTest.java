@@ -0,0 +1,77 @@
+package org.store.data;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.store.enums.StokaCategory;
+import org.store.service.StokaService;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogueTest {
+    private Catalogue catalogue;
+    private Stoka bread;
+    private Stoka butter;
+    private Stoka soap;
+    private Stoka brush;
+
+    @BeforeEach
+    void setUp() {
+        catalogue = new Catalogue();
+        bread = stoka("Хляб", "1.20", StokaCategory.FOOD);
+        butter = stoka("Масло", "4.50", StokaCategory.FOOD);
+        soap = stoka("Сапун", "2.00", StokaCategory.NONFOOD);
+        brush = stoka("Четка за зъби", "3.10", StokaCategory.NONFOOD);
+
+        for (Stoka stoka : List.of(bread, butter, soap, brush)) {
+            catalogue.add(stoka);
+        }
+    }
+
+    private static Stoka stoka(String name, String price, StokaCategory category) {
+        return new Stoka("1", name, BigDecimal.ONE, new BigDecimal(price), null, category);
+    }
+
+    //Индексите по цена и категория връщат стоките подредени по цена.
+    @Test
+    void testPriceIndexes_AreSorted() {
+        assertEquals(List.of(bread, soap, brush, butter), catalogue.sortedByPrice());
+        assertEquals(List.of(bread, soap), catalogue.cheapest(2));
+        assertEquals(List.of(soap, brush), catalogue.byCategory(StokaCategory.NONFOOD));
+        assertEquals(List.of(bread), catalogue.cheapest(StokaCategory.FOOD, 1));
+        assertEquals(List.of(soap, brush), catalogue.priceBetween(200, 310));
+    }
+
+    //Смяна на цената през StokaService.updatePrice пренарежда индексите без повторно добавяне.
+    @Test
+    void testUpdatePrice_ReordersIndexes() {
+        StokaService stokaService = new StokaService(catalogue);
+        stokaService.updatePrice(butter, new BigDecimal("0.99"));
+
+        assertEquals(List.of(butter, bread), stokaService.findCheapest(StokaCategory.FOOD, 2));
+        assertEquals(butter, stokaService.findSortedByPrice().get(0));
+        assertEquals(4, catalogue.size());
+
+        catalogue.remove(butter);
+        butter.setPrice(new BigDecimal("0.50"));
+        assertEquals(bread, catalogue.cheapest(1).get(0));
+    }
+
+    //Търсенето по префикс на името не зависи от малки/главни букви и не връща премахнати стоки.
+    @Test
+    void testFindByNamePrefix() {
+        Stoka bagel = stoka("Хлебче", "0.80", StokaCategory.FOOD);
+        catalogue.add(bagel);
+
+        List<Stoka> found = catalogue.findByNamePrefix("хл");
+        assertEquals(2, found.size());
+        assertTrue(found.contains(bread) && found.contains(bagel));
+        assertEquals(List.of(brush), catalogue.findByNamePrefix("ЧЕТ"));
+
+        catalogue.remove(bread);
+        assertEquals(List.of(bagel), catalogue.findByNamePrefix("Хл"));
+        assertTrue(catalogue.findByNamePrefix("Мля").isEmpty());
+    }
+}
@@ -0,0 +1,76 @@
+package org.store.data;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.store.enums.StokaCategory;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpiryIndexTest {
+    private ExpiryIndex index;
+    private LocalDate today;
+
+    @BeforeEach
+    void setUp() {
+        index = new ExpiryIndex();
+        today = LocalDate.of(2024, 3, 5);
+    }
+
+    private Stoka stoka(String name, LocalDate expirationDate) {
+        return new Stoka("1", name, new BigDecimal("1.00"), new BigDecimal("10.00"), expirationDate, StokaCategory.FOOD);
+    }
+
+    //Въпросите връщат само стоките в съответния интервал от дни; стоки без срок не се индексират.
+    @Test
+    void testQueries_ReturnOnlyStokaInRange() {
+        Stoka expired = stoka("Изтекла", today.minusDays(1));
+        Stoka expiresToday = stoka("Днес", today);
+        Stoka inThreeDays = stoka("След 3 дни", today.plusDays(3));
+        Stoka fresh = stoka("Прясна", today.plusDays(30));
+        Stoka nonFood = new Stoka("2", "Сапун", BigDecimal.ONE, BigDecimal.TEN, null, StokaCategory.NONFOOD);
+
+        for (Stoka stoka : List.of(expired, expiresToday, inThreeDays, fresh, nonFood)) {
+            index.track(stoka);
+        }
+
+        assertEquals(4, index.size());
+        assertEquals(List.of(expired), index.expired(today));
+        List<Stoka> soon = index.expiringWithin(today, 3);
+        assertEquals(2, soon.size());
+        assertTrue(soon.contains(expiresToday) && soon.contains(inThreeDays));
+        assertEquals(ExpiryIndex.NO_EXPIRY, index.expiryDayOf(nonFood));
+    }
+
+    //При смяна на срока стоката се премества в новата кофа, а премахнатата стока изчезва от въпросите.
+    @Test
+    void testTrack_MovesStokaWhenDateChanges() {
+        Stoka stoka = stoka("Мляко", today.plusDays(2));
+        index.track(stoka);
+
+        stoka.setExpirationDate(today.plusDays(20));
+        index.track(stoka);
+        assertTrue(index.expiringWithin(today, 5).isEmpty());
+        assertEquals(List.of(stoka), index.expiringWithin(today, 20));
+
+        index.untrack(stoka);
+        assertTrue(index.expiringWithin(today, 30).isEmpty());
+        assertFalse(index.isTracked(stoka));
+    }
+
+    //Отстъпката се прилага само в прозореца от дни и се закръгля до стотинка.
+    @Test
+    void testPricing_DiscountsOnlyNearExpiry() {
+        Stoka soon = stoka("Скоро", today.plusDays(2));
+        Stoka later = stoka("По-късно", today.plusDays(10));
+
+        ExpiryPricing pricing = new PricingEngine(null, 5, 12.5).pricing(today);
+
+        assertTrue(pricing.isDiscounted(soon));
+        assertEquals(875, pricing.applyAsLong(soon));
+        assertEquals(1000, pricing.applyAsLong(later));
+    }
+}
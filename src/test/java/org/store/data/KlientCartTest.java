@@ -0,0 +1,165 @@
+package org.store.data;
+
+import org.junit.jupiter.api.Test;
+import org.store.enums.StokaCategory;
+import org.store.money.MoneyMath;
+import org.store.service.KlientService;
+import org.store.service.StokaService;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KlientCartTest {
+
+    private static Stoka stoka(int i) {
+        return new Stoka(String.valueOf(i), "Стока " + i, BigDecimal.ONE, new BigDecimal("2.00"), null, StokaCategory.NONFOOD);
+    }
+
+    //Няколко устройства сканират едновременно в една количка - нито една бройка не се губи.
+    @Test
+    void testConcurrentAdds_LoseNothing() throws Exception {
+        KlientCart cart = new KlientCart();
+        List<Stoka> stokas = List.of(stoka(0), stoka(1), stoka(2));
+        int devices = 8;
+        int scans = 2000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(devices);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int d = 0; d < devices; d++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < scans; i++) {
+                    cart.add(stokas.get(i % stokas.size()), 1);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        CartSnapshot snapshot = cart.snapshot();
+        double total = 0;
+        for (double quantity : snapshot.getItems().values()) {
+            total += quantity;
+        }
+        assertEquals(devices * scans, total);
+        assertEquals(devices * scans, snapshot.getVersion());
+    }
+
+    //Обновяване на количество важи само за стока, която вече е в количката; изгледът като Map остава съвместим.
+    @Test
+    void testSetQuantityAndMapView() {
+        KlientCart cart = new KlientCart();
+        Stoka bread = stoka(1);
+        Stoka milk = stoka(2);
+
+        assertFalse(cart.setQuantity(bread, 3));
+        cart.asMap().merge(bread, 1.0, Double::sum);
+        assertEquals(4.0, cart.asMap().merge(bread, 3.0, Double::sum));
+        assertTrue(cart.setQuantity(bread, 5));
+        assertEquals(5.0, cart.asMap().get(bread));
+
+        cart.asMap().put(milk, 2.0);
+        assertTrue(cart.setQuantity(milk, 0));
+        assertFalse(cart.asMap().containsKey(milk));
+        assertTrue(cart.remove(bread));
+        assertTrue(cart.asMap().isEmpty());
+    }
+
+    //Сумата, броят и най-скъпата стока следват промените по редовете и се преизчисляват след смяна на цена.
+    @Test
+    void testTotals_FollowLineChangesAndPriceUpdates() {
+        KlientService klientService = new KlientService();
+        StokaService stokaService = new StokaService();
+        Klient klient = new Klient(new BigDecimal("10.00"));
+        Stoka bread = stoka(1);
+        Stoka cheese = new Stoka("c", "Сирене", BigDecimal.ONE, new BigDecimal("3.50"), null, StokaCategory.FOOD);
+
+        klient.getKlientCart().add(bread, 2);
+        klient.getKlientCart().add(cheese, 0.5);
+        assertEquals(new BigDecimal("5.75"), klientService.calculateCartTotal(klient));
+        assertEquals(2.5, klientService.getTotalItemCount(klient));
+        assertEquals(cheese, klientService.getMostExpensiveItem(klient));
+
+        klientService.updateCartItemQuantity(klient, bread, 3);
+        assertEquals(new BigDecimal("7.75"), klientService.calculateCartTotal(klient));
+
+        stokaService.updatePrice(bread, new BigDecimal("4.00"));
+        assertEquals(new BigDecimal("13.75"), klientService.calculateCartTotal(klient));
+        assertEquals(bread, klientService.getMostExpensiveItem(klient));
+        assertFalse(klientService.hasEnoughFunds(klient));
+
+        klientService.removeFromCart(klient, bread);
+        assertEquals(cheese, klientService.getMostExpensiveItem(klient));
+        assertEquals(0.5, klientService.getTotalItemCount(klient));
+        assertTrue(klientService.hasEnoughFunds(klient));
+        assertEquals(MoneyMath.total(klient.getCart()), klientService.calculateCartTotal(klient));
+    }
+
+    //Смяна на цена в друг магазин не обезсилва сумите на количката - само смяна на цена на стока в нея.
+    @Test
+    void testTotals_KeptWhenPriceChangesInAnotherStore() {
+        Catalogue ours = new Catalogue();
+        Catalogue theirs = new Catalogue();
+        Stoka bread = stoka(1);
+        Stoka soap = new Stoka("s", "Сапун", BigDecimal.ONE, new BigDecimal("2.00"), null, StokaCategory.NONFOOD);
+        ours.add(bread);
+        theirs.add(soap);
+
+        KlientCart cart = new KlientCart();
+        cart.add(bread, 2);
+        CartSnapshot snapshot = cart.snapshot();
+        BigDecimal total = snapshot.getTotal();
+
+        soap.setPrice(new BigDecimal("3.00"));
+        assertNotNull(snapshot.currentTotalsOrNull());
+        assertEquals(total, snapshot.getTotal());
+
+        bread.setPrice(new BigDecimal("4.00"));
+        assertNull(snapshot.currentTotalsOrNull());
+        assertEquals(new BigDecimal("8.00"), snapshot.getTotal());
+    }
+
+    //Проверката за пари е по цената, която касата взема - с отстъпката за изтичащ срок от цените на количката,
+    //а сумата за плащане следи промените по редовете, без да остойностява количката наново.
+    @Test
+    void testHasEnoughFunds_UsesDiscountedCheckoutPrice() {
+        KlientService klientService = new KlientService();
+        PricingEngine engine = new PricingEngine(null, 5, 20.0);
+        Stoka yogurt = new Stoka("y", "Кисело мляко", BigDecimal.ONE, new BigDecimal("10.00"),
+                LocalDate.now().plusDays(2), StokaCategory.FOOD);
+        Stoka soap = new Stoka("s", "Сапун", BigDecimal.ONE, new BigDecimal("1.00"), null, StokaCategory.NONFOOD);
+        Klient klient = new Klient(new BigDecimal("9.00"));
+        klient.addToCart(yogurt, 1);
+
+        assertFalse(klientService.hasEnoughFunds(klient));
+
+        ExpiryPricing pricing = engine.pricing(LocalDate.now());
+        klient.getKlientCart().setPricing(pricing);
+        assertTrue(klientService.hasEnoughFunds(klient));
+
+        klient.addToCart(soap, 1);
+        CartSnapshot snapshot = klient.getKlientCart().snapshot();
+        assertNotNull(snapshot.currentTotalsOrNull());
+        assertEquals(PricedCart.price(snapshot.getItems(), pricing).getTotalStotinki(), snapshot.getPayableTotalStotinki());
+        assertEquals(900, snapshot.getPayableTotalStotinki());
+        assertEquals(1100, snapshot.getTotalStotinki());
+        assertTrue(klientService.hasEnoughFunds(klient));
+
+        // Смяна на отстъпката в магазина обезсилва сумата за плащане
+        engine.setExpiryDiscount(5, 0);
+        assertFalse(klientService.hasEnoughFunds(klient));
+    }
+}
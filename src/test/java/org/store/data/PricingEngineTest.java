@@ -0,0 +1,94 @@
+package org.store.data;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.store.enums.StokaCategory;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.EnumMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PricingEngineTest {
+    private Store store;
+    private PricingEngine engine;
+    private Stoka bread;
+    private Stoka soap;
+    private LocalDate today;
+
+    @BeforeEach
+    void setUp() {
+        EnumMap<StokaCategory, Double> marginByCategory = new EnumMap<>(StokaCategory.class);
+        marginByCategory.put(StokaCategory.FOOD, 10.0);
+        marginByCategory.put(StokaCategory.NONFOOD, 15.0);
+
+        store = new Store(5, 20.0, marginByCategory);
+        engine = store.getPricingEngine();
+        today = LocalDate.now();
+        bread = new Stoka("001", "Хляб", new BigDecimal("1.00"), new BigDecimal("1.00"),
+                today.plusDays(2), StokaCategory.FOOD);
+        soap = new Stoka("002", "Сапун", new BigDecimal("0.99"), new BigDecimal("0.99"),
+                null, StokaCategory.NONFOOD);
+        store.getCatalogue().add(bread);
+        store.getCatalogue().add(soap);
+    }
+
+    //Продажната цена се изчислява точно от цената на доставка, а многократното преизчисляване не я променя.
+    @Test
+    void testReprice_IsExactAndDoesNotCompound() {
+        for (int i = 0; i < 10; i++) {
+            engine.reprice(bread);
+            engine.reprice(soap);
+        }
+
+        assertEquals(110, bread.getPriceStotinki());
+        assertEquals(114, soap.getPriceStotinki()); // 0.99 + 15% = 1.1385
+    }
+
+    //Стоката, която изтича в периода за отстъпка, получава отстъпката, а стоката без срок - не.
+    @Test
+    void testEffectivePrice_AppliesExpiryDiscount() {
+        engine.reprice(bread);
+        engine.reprice(soap);
+        ExpiryPricing pricing = engine.pricing(today);
+
+        assertTrue(pricing.isDiscounted(bread));
+        assertEquals(88, pricing.applyAsLong(bread));
+        assertFalse(pricing.isDiscounted(soap));
+        assertEquals(114, pricing.applyAsLong(soap));
+
+        // Три дни по-късно хлябът е изтекъл и вече не е в периода за отстъпка
+        assertEquals(110, engine.effectivePrice(bread, today.plusDays(3).toEpochDay()));
+    }
+
+    //Кешираната цена трябва да се обнови при смяна на надценката, на отстъпката, на цената или на срока.
+    @Test
+    void testEffectivePrice_InvalidatedOnChanges() {
+        engine.reprice(bread);
+        long day = today.toEpochDay();
+        assertEquals(88, engine.effectivePrice(bread, day));
+
+        long version = engine.getVersion();
+        store.setMarginPercent(StokaCategory.FOOD, 20.0);
+        assertTrue(engine.getVersion() > version);
+        assertEquals(120, bread.getPriceStotinki());
+        assertEquals(96, engine.effectivePrice(bread, day));
+
+        store.setExpiryDiscount(5, 50.0);
+        assertEquals(60, engine.effectivePrice(bread, day));
+
+        bread.setPrice(new BigDecimal("2.00"));
+        assertEquals(100, engine.effectivePrice(bread, day));
+
+        bread.setExpirationDate(today.plusDays(30));
+        assertEquals(200, engine.effectivePrice(bread, day));
+    }
+
+    //Отрицателен брой дни или отстъпка извън 0-100% са грешни настройки.
+    @Test
+    void testSetExpiryDiscount_RejectsInvalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> store.setExpiryDiscount(-1, 10.0));
+        assertThrows(IllegalArgumentException.class, () -> store.setExpiryDiscount(5, 120.0));
+    }
+}
@@ -0,0 +1,106 @@
+package org.store.data;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.store.enums.StokaCategory;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuantityLedgerTest {
+    private QuantityLedger ledger;
+    private Stoka stoka1;
+    private Stoka stoka2;
+
+    @BeforeEach
+    void setUp() {
+        ledger = new QuantityLedger();
+        stoka1 = new Stoka("001", "Хляб", new BigDecimal("1.00"), new BigDecimal("1.50"),
+                LocalDate.now().plusDays(3), StokaCategory.FOOD);
+        stoka2 = new Stoka("002", "Сапун", new BigDecimal("1.50"), new BigDecimal("2.00"),
+                null, StokaCategory.NONFOOD);
+    }
+
+    //Проверява, че дробните количества се пазят точно като хилядни части и се събират без загуба.
+    @Test
+    void testAdd_KeepsFractionalQuantitiesExact() {
+        ledger.add(stoka1, 0.1);
+        ledger.add(stoka1, 0.2);
+
+        assertEquals(300, ledger.getMilli(stoka1));
+        assertEquals(0.3, ledger.get(stoka1));
+    }
+
+    //Изгледът като Map трябва да се държи като досегашната карта - липсваща стока връща null, а нулево количество я премахва.
+    @Test
+    void testMapView_BehavesLikeQuantityMap() {
+        Map<Stoka, Double> view = ledger.asMap();
+        assertNull(view.get(stoka1));
+
+        view.put(stoka1, 2.0);
+        view.merge(stoka1, 3.0, Double::sum);
+        view.put(stoka2, 1.0);
+
+        assertEquals(5.0, view.get(stoka1));
+        assertEquals(2, view.size());
+
+        ledger.add(stoka2, -1.0);
+        assertFalse(view.containsKey(stoka2));
+        assertEquals(1, view.size());
+
+        Map<Stoka, Double> copy = new HashMap<>(view);
+        assertEquals(5.0, copy.get(stoka1));
+    }
+
+    //Регистърът расте на страници - стойностите от старите страници не трябва да се губят при растеж.
+    @Test
+    void testGrowth_KeepsExistingQuantities() {
+        ledger.add(stoka1, 7.0);
+
+        Stoka last = null;
+        for (int i = 0; i < 3000; i++) {
+            last = new Stoka(String.valueOf(i), "Стока " + i, BigDecimal.ONE, BigDecimal.TEN, null, StokaCategory.NONFOOD);
+            ledger.add(last, 1.0);
+        }
+
+        assertEquals(7.0, ledger.get(stoka1));
+        assertEquals(1.0, ledger.get(last));
+        assertEquals(3001, ledger.asMap().size());
+    }
+
+    //Нулево количество не може да се запише с put - ключът би изчезнал веднага, затова се изисква remove.
+    @Test
+    void testMapView_PutZero_IsRejected() {
+        Map<Stoka, Double> view = ledger.asMap();
+        view.put(stoka1, 2.0);
+
+        assertThrows(IllegalArgumentException.class, () -> view.put(stoka1, 0.0));
+        assertEquals(2.0, view.get(stoka1));
+
+        view.remove(stoka1);
+        assertFalse(view.containsKey(stoka1));
+    }
+
+    //Регистърът заема страници само за своите стоки, колкото и стоки да има в другите регистри.
+    @Test
+    void testPages_AreAllocatedOnlyForStokaInThisLedger() {
+        QuantityLedger other = new QuantityLedger();
+        Stoka last = null;
+        for (int i = 0; i < 5000; i++) {
+            last = new Stoka(String.valueOf(i), "Стока " + i, BigDecimal.ONE, BigDecimal.TEN, null, StokaCategory.NONFOOD);
+            other.add(last, 1.0);
+        }
+
+        ledger.add(last, 2.0);
+
+        assertEquals(1, ledger.allocatedPages());
+        assertEquals(2.0, ledger.get(last));
+        assertEquals(0.0, ledger.get(stoka1));
+        assertEquals(1, ledger.asMap().size());
+        assertTrue(other.allocatedPages() >= 4);
+    }
+}
@@ -0,0 +1,181 @@
+package org.store.journal;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.store.data.Cashier;
+import org.store.data.Receipt;
+import org.store.data.Stoka;
+import org.store.enums.StokaCategory;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReceiptIndexTest {
+    @TempDir
+    Path directory;
+
+    private Cashier cashier;
+    private Stoka stoka;
+
+    @BeforeEach
+    void setUp() {
+        cashier = new Cashier("Иван", new BigDecimal("1000"));
+        stoka = new Stoka("001", "Хляб", new BigDecimal("2.00"), new BigDecimal("2.50"),
+                LocalDate.now().plusDays(3), StokaCategory.FOOD);
+    }
+
+    private Receipt receipt(String serial, LocalDate issueDate) {
+        Map<Stoka, Double> lines = new HashMap<>();
+        lines.put(stoka, 1.0);
+        return new Receipt(serial, cashier, issueDate, lines);
+    }
+
+    //Индексът трябва да намира бележка по номер и след растеж на хеш таблицата.
+    @Test
+    void testLookup_FindsReceiptsAfterGrowth() throws IOException {
+        LocalDate day = LocalDate.of(2025, 1, 1);
+
+        try (ReceiptJournal journal = new ReceiptJournal(directory);
+             ReceiptIndex index = new ReceiptIndex(directory)) {
+            for (int i = 0; i < 3000; i++) {
+                Receipt receipt = receipt("S-" + i, day.plusDays(i / 100));
+                index.add(receipt.getSerialNumber(), receipt.getIssueDate(), journal.append(receipt));
+            }
+            journal.sync();
+
+            assertEquals(3000, index.size());
+            assertEquals("S-1234", index.find("S-1234").getSerialNumber());
+            assertEquals(day.plusDays(12), index.find("S-1234").getIssueDate());
+            assertNull(index.lookup("НЯМА"));
+        }
+    }
+
+    //Бележка, записана след отваряне на индекса, се намира по номер - през ReceiptPersister или директно в журнала.
+    @Test
+    void testLookup_FindsReceiptsWrittenAfterOpen() throws Exception {
+        try (ReceiptJournal journal = new ReceiptJournal(directory);
+             ReceiptIndex index = new ReceiptIndex(directory)) {
+            ReceiptPersister persister = new ReceiptPersister(journal, index);
+            persister.submit(receipt("P-1", LocalDate.of(2025, 2, 1)));
+            persister.awaitDurable("P-1");
+            persister.close();
+
+            // Индексиран от записващата нишка, без catchUp
+            assertEquals(1, index.size());
+            assertEquals("P-1", index.find("P-1").getSerialNumber());
+
+            journal.append(receipt("J-1", LocalDate.of(2025, 2, 2)));
+            journal.sync();
+            assertEquals("J-1", index.find("J-1").getSerialNumber());
+            assertEquals(2, index.findBetween(LocalDate.of(2025, 2, 1), LocalDate.of(2025, 2, 2)).size());
+        }
+    }
+
+    //Файловете на индекса се отварят на части - отместванията след границата на частта трябва да се четат вярно.
+    @Test
+    void testSmallRegions_KeepLookupsAcrossRegionBoundaries() throws IOException {
+        LocalDate day = LocalDate.of(2025, 1, 1);
+
+        try (ReceiptJournal journal = new ReceiptJournal(directory);
+             ReceiptIndex index = new ReceiptIndex(directory, 12)) {
+            for (int i = 0; i < 3000; i++) {
+                Receipt receipt = receipt("R-" + i, day.plusDays(i / 100));
+                index.add(receipt.getSerialNumber(), receipt.getIssueDate(), journal.append(receipt));
+            }
+            journal.sync();
+        }
+
+        try (ReceiptIndex index = new ReceiptIndex(directory)) {
+            assertEquals(3000, index.size());
+            assertEquals("R-2999", index.find("R-2999").getSerialNumber());
+            assertEquals(100, index.positionsBetween(day.plusDays(29), day.plusDays(29)).size());
+        }
+    }
+
+    //След повторно отваряне индексът трябва да е наличен веднага и да индексира само новите записи в журнала.
+    @Test
+    void testReopen_CatchesUpOnlyNewRecords() throws IOException {
+        try (ReceiptJournal journal = new ReceiptJournal(directory)) {
+            journal.append(receipt("A", LocalDate.of(2025, 3, 1)));
+            journal.append(receipt("B", LocalDate.of(2025, 3, 2)));
+        }
+
+        try (ReceiptIndex index = new ReceiptIndex(directory)) {
+            assertEquals(2, index.size());
+        }
+
+        try (ReceiptJournal journal = new ReceiptJournal(directory)) {
+            journal.append(receipt("C", LocalDate.of(2025, 3, 3)));
+        }
+
+        try (ReceiptIndex index = new ReceiptIndex(directory)) {
+            assertEquals(3, index.size());
+            assertEquals(0, index.catchUp());
+            assertEquals("A", index.find("A").getSerialNumber());
+            assertEquals("C", index.find("C").getSerialNumber());
+        }
+    }
+
+    //Търсенето по период трябва да връща само бележките с дата в периода, включително при неподредени дати.
+    @Test
+    void testFindBetween_ReturnsReceiptsInDateRange() throws IOException {
+        try (ReceiptJournal journal = new ReceiptJournal(directory)) {
+            journal.append(receipt("D1", LocalDate.of(2025, 4, 1)));
+            journal.append(receipt("D2", LocalDate.of(2025, 4, 5)));
+            journal.append(receipt("D3", LocalDate.of(2025, 4, 10)));
+        }
+
+        try (ReceiptIndex index = new ReceiptIndex(directory)) {
+            List<String> serials = index.findBetween(LocalDate.of(2025, 4, 2), LocalDate.of(2025, 4, 10)).stream()
+                    .map(Receipt::getSerialNumber)
+                    .collect(Collectors.toList());
+            assertEquals(List.of("D2", "D3"), serials);
+        }
+
+        // Бележка с по-ранна дата (например внос на стари бележки)
+        try (ReceiptJournal journal = new ReceiptJournal(directory)) {
+            journal.append(receipt("D0", LocalDate.of(2025, 4, 3)));
+        }
+
+        try (ReceiptIndex index = new ReceiptIndex(directory)) {
+            List<String> serials = index.findBetween(LocalDate.of(2025, 4, 2), LocalDate.of(2025, 4, 5)).stream()
+                    .map(Receipt::getSerialNumber)
+                    .collect(Collectors.toList());
+            assertEquals(List.of("D2", "D0"), serials);
+        }
+    }
+
+    //Една закъсняла бележка разширява търсенето по период само с толкова дни, колкото е закъсняла - не до всички записи.
+    @Test
+    void testFindBetween_LateReceiptDoesNotForceFullScan() throws IOException {
+        LocalDate day = LocalDate.of(2025, 1, 1);
+
+        try (ReceiptJournal journal = new ReceiptJournal(directory);
+             ReceiptIndex index = new ReceiptIndex(directory)) {
+            for (int i = 0; i < 3000; i++) {
+                Receipt receipt = receipt("S-" + i, day.plusDays(i / 100));
+                index.add(receipt.getSerialNumber(), receipt.getIssueDate(), journal.append(receipt));
+            }
+            // Два дни преди последната дата
+            Receipt late = receipt("LATE", day.plusDays(27));
+            index.add(late.getSerialNumber(), late.getIssueDate(), journal.append(late));
+            journal.sync();
+
+            assertEquals(100, index.positionsBetween(day.plusDays(5), day.plusDays(5)).size());
+            // Денят на периода и двата дни закъснение след него
+            assertEquals(300, index.getLastScanned());
+
+            assertEquals(101, index.positionsBetween(day.plusDays(27), day.plusDays(27)).size());
+            assertEquals(200, index.positionsBetween(day.plusDays(28), day.plusDays(29)).size());
+        }
+    }
+}
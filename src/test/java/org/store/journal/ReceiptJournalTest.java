@@ -0,0 +1,141 @@
+package org.store.journal;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.store.data.Cashier;
+import org.store.data.Receipt;
+import org.store.data.Stoka;
+import org.store.enums.StokaCategory;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReceiptJournalTest {
+    @TempDir
+    Path directory;
+
+    private Cashier cashier;
+    private Stoka stoka1;
+    private Stoka stoka2;
+
+    @BeforeEach
+    void setUp() {
+        cashier = new Cashier("Иван", new BigDecimal("1000"));
+        stoka1 = new Stoka("001", "Хляб", new BigDecimal("2.00"), new BigDecimal("2.50"),
+                LocalDate.now().plusDays(3), StokaCategory.FOOD);
+        stoka2 = new Stoka("002", "Сапун", new BigDecimal("1.50"), new BigDecimal("2.00"),
+                null, StokaCategory.NONFOOD);
+    }
+
+    private Receipt receipt(String serial) {
+        Map<Stoka, Double> lines = new HashMap<>();
+        lines.put(stoka1, 2.0);
+        lines.put(stoka2, 1.5);
+        return new Receipt(serial, cashier, LocalDate.of(2025, 5, 22), lines);
+    }
+
+    //Записаните бележки трябва да се прочетат обратно със същия номер, касиер, дата, стоки и количества.
+    @Test
+    void testAppendAndRead_RoundTrip() throws IOException {
+        try (ReceiptJournal journal = new ReceiptJournal(directory)) {
+            journal.append(receipt("A-1"));
+            journal.append(receipt("A-2"));
+            journal.sync();
+            assertEquals(2, journal.getDurableSequence());
+        }
+
+        List<Receipt> receipts = ReceiptJournalReader.stream(directory).collect(Collectors.toList());
+
+        assertEquals(2, receipts.size());
+        Receipt first = receipts.get(0);
+        assertEquals("A-1", first.getSerialNumber());
+        assertEquals(cashier.getId(), first.getCashier().getId());
+        assertEquals("Иван", first.getCashier().getName());
+        assertEquals(LocalDate.of(2025, 5, 22), first.getIssueDate());
+        assertEquals(2.0, first.getStoka().get(stoka1));
+        assertEquals(1.5, first.getStoka().get(stoka2));
+
+        Stoka restored = first.getStoka().keySet().stream().filter(stoka1::equals).findFirst().orElseThrow();
+        assertEquals(stoka1.getPrice(), restored.getPrice());
+        assertEquals(stoka1.getSkuIndex(), restored.getSkuIndex());
+    }
+
+    //При малък размер на сегмента журналът трябва да премине към нови сегменти, а четенето да продължи през тях.
+    @Test
+    void testRotation_ReadsAcrossSegments() throws IOException {
+        try (ReceiptJournal journal = new ReceiptJournal(directory, 512)) {
+            for (int i = 0; i < 20; i++) {
+                journal.append(receipt("R-" + i));
+            }
+        }
+
+        assertTrue(ReceiptJournal.listSegments(directory).size() > 1);
+        List<String> serials = ReceiptJournalReader.stream(directory)
+                .map(Receipt::getSerialNumber)
+                .collect(Collectors.toList());
+        assertEquals(20, serials.size());
+        assertEquals("R-19", serials.get(19));
+    }
+
+    //Прекъснат запис в края на журнала трябва да бъде пренебрегнат при четене и отрязан при повторно отваряне.
+    @Test
+    void testTornTail_IsIgnoredAndTruncatedOnReopen() throws IOException {
+        try (ReceiptJournal journal = new ReceiptJournal(directory)) {
+            journal.append(receipt("T-1"));
+        }
+
+        Path segment = ReceiptJournal.listSegments(directory).get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 50, 1, 2, 3}));
+        }
+
+        assertEquals(1, ReceiptJournalReader.stream(directory).count());
+
+        try (ReceiptJournal journal = new ReceiptJournal(directory)) {
+            journal.append(receipt("T-2"));
+        }
+
+        List<String> serials = ReceiptJournalReader.stream(directory)
+                .map(Receipt::getSerialNumber)
+                .collect(Collectors.toList());
+        assertEquals(List.of("T-1", "T-2"), serials);
+    }
+
+    //Старият текстов формат трябва да се прехвърли в журнала, включително редовете със стоки.
+    @Test
+    void testImporter_ParsesTextReceipts() throws IOException {
+        Path textDirectory = Files.createDirectory(directory.resolve("text"));
+        Files.writeString(textDirectory.resolve("a.txt"), "Receipt {\n"
+                + "  serialNumber = '4a545f09'\n"
+                + "  cashier = Cashier { id = '77b6b48b', name = 'Ben', monthlySalary = 2000 }\n"
+                + "  issueDate = 2025-05-22\n"
+                + "  stoka = {" + stoka1 + "=2.0, " + stoka2 + "=1.0}\n"
+                + "}\n", StandardCharsets.UTF_8);
+        Files.writeString(textDirectory.resolve("b.txt"), "", StandardCharsets.UTF_8);
+
+        Path journalDirectory = directory.resolve("journal");
+        try (ReceiptJournal journal = new ReceiptJournal(journalDirectory)) {
+            assertEquals(1, new ReceiptTextImporter().importDirectory(textDirectory, journal));
+        }
+
+        Receipt imported = ReceiptJournalReader.stream(journalDirectory).findFirst().orElseThrow();
+        assertEquals("4a545f09", imported.getSerialNumber());
+        assertEquals("Ben", imported.getCashier().getName());
+        assertEquals(2.0, imported.getStoka().get(stoka1));
+        assertEquals(1.0, imported.getStoka().get(stoka2));
+    }
+}
@@ -0,0 +1,228 @@
+package org.store.journal;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.store.data.Cashier;
+import org.store.data.DeliveryLine;
+import org.store.data.Kasa;
+import org.store.data.Klient;
+import org.store.data.Receipt;
+import org.store.data.Stoka;
+import org.store.data.Store;
+import org.store.enums.StokaCategory;
+import org.store.service.KasaService;
+import org.store.service.StoreService;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReceiptPersisterTest {
+    @TempDir
+    Path directory;
+
+    private Cashier cashier;
+    private Stoka stoka;
+
+    @BeforeEach
+    void setUp() {
+        cashier = new Cashier("Иван", new BigDecimal("1000"));
+        stoka = new Stoka("001", "Хляб", new BigDecimal("1.00"), new BigDecimal("1.50"),
+                LocalDate.now().plusDays(30), StokaCategory.FOOD);
+    }
+
+    private Receipt receipt(String serial) {
+        return new Receipt(serial, cashier, LocalDate.of(2025, 5, 22), Map.of(stoka, 1.0));
+    }
+
+    //Бележки от няколко каси през малка опашка се записват всички, на партиди, и flush чака последната.
+    @Test
+    void testSubmit_FromManyLanes_AllReceiptsReachTheJournal() throws Exception {
+        try (ReceiptJournal journal = new ReceiptJournal(directory)) {
+            ReceiptPersister persister = new ReceiptPersister(journal, 8, 32);
+
+            List<Thread> lanes = new ArrayList<>();
+            for (int lane = 0; lane < 4; lane++) {
+                int id = lane;
+                Thread thread = new Thread(() -> {
+                    for (int i = 0; i < 250; i++) {
+                        persister.submit(receipt(id + "-" + i));
+                    }
+                });
+                lanes.add(thread);
+                thread.start();
+            }
+            for (Thread thread : lanes) {
+                thread.join();
+            }
+
+            persister.flush();
+            assertEquals(1000, journal.getDurableSequence());
+            assertTrue(persister.getBatches() <= 1000);
+            persister.close();
+        }
+
+        Set<String> serials = ReceiptJournalReader.stream(directory)
+                .map(Receipt::getSerialNumber)
+                .collect(Collectors.toCollection(HashSet::new));
+        assertEquals(1000, serials.size());
+        assertTrue(serials.contains("3-249"));
+    }
+
+    //Касата подава бележката за запис след плащането, а awaitDurable чака точно нея да е на диска.
+    @Test
+    void testCheckout_HandsReceiptToPersister() throws Exception {
+        EnumMap<StokaCategory, Double> marginByCategory = new EnumMap<>(StokaCategory.class);
+        marginByCategory.put(StokaCategory.FOOD, 10.0);
+        marginByCategory.put(StokaCategory.NONFOOD, 15.0);
+        Store store = new Store(3, 10.0, marginByCategory);
+        StoreService storeService = new StoreService(store);
+        storeService.deliverBatch(List.of(new DeliveryLine(stoka, 5, stoka.getDeliveryPrice())));
+
+        try (ReceiptJournal journal = new ReceiptJournal(directory);
+             ReceiptPersister persister = new ReceiptPersister(journal)) {
+            store.setReceiptPersister(persister);
+
+            Klient klient = new Klient(new BigDecimal("100"));
+            klient.addToCart(stoka, 2);
+            Receipt receipt = new KasaService(new Kasa(cashier, store), storeService).checkout(klient);
+
+            persister.awaitDurable(receipt.getSerialNumber());
+            assertEquals(1, journal.getDurableSequence());
+        }
+
+        List<Receipt> stored = ReceiptJournalReader.stream(directory).collect(Collectors.toList());
+        assertEquals(1, stored.size());
+        assertEquals(2.0, stored.get(0).getStoka().values().iterator().next());
+    }
+
+    //Записаната бележка носи платените цени и сума, дори цената на стоката да се смени преди записа на диска.
+    @Test
+    void testCheckout_PersistsPricesPaidAtCheckout() throws Exception {
+        EnumMap<StokaCategory, Double> marginByCategory = new EnumMap<>(StokaCategory.class);
+        marginByCategory.put(StokaCategory.FOOD, 10.0);
+        marginByCategory.put(StokaCategory.NONFOOD, 15.0);
+        Store store = new Store(3, 10.0, marginByCategory);
+        StoreService storeService = new StoreService(store);
+        Stoka expiring = new Stoka("002", "Кисело мляко", new BigDecimal("1.00"), new BigDecimal("1.00"),
+                LocalDate.now().plusDays(2), StokaCategory.FOOD);
+        storeService.deliverBatch(List.of(new DeliveryLine(expiring, 5, expiring.getDeliveryPrice())));
+
+        Receipt receipt;
+        try (ReceiptJournal journal = new ReceiptJournal(directory);
+             ReceiptPersister persister = new ReceiptPersister(journal)) {
+            store.setReceiptPersister(persister);
+
+            Klient klient = new Klient(new BigDecimal("100"));
+            klient.addToCart(expiring, 3);
+            receipt = new KasaService(new Kasa(cashier, store), storeService).checkout(klient);
+            expiring.setPrice(new BigDecimal("9.99"));
+
+            persister.awaitDurable(receipt.getSerialNumber());
+        }
+
+        // 1.10 с 10% отстъпка е 0.99, три бройки - 2.97
+        Receipt stored = ReceiptJournalReader.stream(directory).findFirst().orElseThrow();
+        Stoka storedStoka = stored.getStoka().keySet().iterator().next();
+        assertEquals(new BigDecimal("2.97"), receipt.getTotalPrice());
+        assertEquals(receipt.getTotalPrice(), stored.getTotalPrice());
+        assertEquals(99, stored.getUnitPriceStotinki(storedStoka));
+    }
+
+    //Ако записът на диска не успее, грешката стига до future-а на бележката, вместо касата да чака безкрайно.
+    //Грешката не остава за следващите flush и close, а неуспешната бележка не остава в паметта.
+    @Test
+    void testWriteFailure_IsReportedOnlyForFailedReceipts() throws Exception {
+        ReceiptJournal journal = new ReceiptJournal(directory);
+        journal.close();
+
+        ReceiptPersister persister = new ReceiptPersister(journal);
+        CompletableFuture<Void> durable = persister.submit(receipt("X-1"));
+
+        ExecutionException error = assertThrows(ExecutionException.class, durable::get);
+        assertInstanceOf(IOException.class, error.getCause());
+        assertEquals(1, persister.getFailed());
+
+        persister.flush();
+        persister.awaitDurable("X-1");
+        persister.close();
+    }
+
+    //След спиране нова бележка се отказва веднага: future-ът ѝ е неуспешен и тя се брои, без submit да хвърля.
+    @Test
+    void testSubmit_AfterClose_IsRejected() throws Exception {
+        try (ReceiptJournal journal = new ReceiptJournal(directory)) {
+            ReceiptPersister persister = new ReceiptPersister(journal, 1, 1);
+            persister.submit(receipt("A-1"));
+            persister.close();
+
+            CompletableFuture<Void> rejected = persister.submit(receipt("A-2"));
+            ExecutionException error = assertThrows(ExecutionException.class, rejected::get);
+            assertInstanceOf(IllegalStateException.class, error.getCause());
+            assertEquals(1, persister.getFailed());
+            persister.flush();
+            assertEquals(1, journal.getDurableSequence());
+        }
+    }
+
+    //Неочаквана грешка при кодирането проваля само партидата си - нишката за запис остава жива за следващите бележки.
+    @Test
+    void testRuntimeFailure_KeepsWriterAlive() throws Exception {
+        Receipt broken = new Receipt("B-1", cashier, LocalDate.of(2025, 5, 22), Map.of(stoka, 1.0)) {
+            @Override
+            public Map<Stoka, Double> getStoka() {
+                throw new IllegalStateException("повредена бележка");
+            }
+        };
+
+        try (ReceiptJournal journal = new ReceiptJournal(directory);
+             ReceiptPersister persister = new ReceiptPersister(journal, 1, 1)) {
+            ExecutionException error = assertThrows(ExecutionException.class, persister.submit(broken)::get);
+            assertInstanceOf(IOException.class, error.getCause());
+            assertEquals(1, persister.getFailed());
+
+            persister.submit(receipt("B-2")).get();
+            assertEquals(1, journal.getDurableSequence());
+        }
+    }
+
+    //Продажбата е окончателна, щом е платена: ако бележката не може да се запише, количката не се възстановява.
+    @Test
+    void testCheckout_PersistenceFailureKeepsSale() throws Exception {
+        EnumMap<StokaCategory, Double> marginByCategory = new EnumMap<>(StokaCategory.class);
+        marginByCategory.put(StokaCategory.FOOD, 10.0);
+        marginByCategory.put(StokaCategory.NONFOOD, 15.0);
+        Store store = new Store(3, 10.0, marginByCategory);
+        StoreService storeService = new StoreService(store);
+        storeService.deliverBatch(List.of(new DeliveryLine(stoka, 5, stoka.getDeliveryPrice())));
+
+        try (ReceiptJournal journal = new ReceiptJournal(directory)) {
+            ReceiptPersister persister = new ReceiptPersister(journal);
+            persister.close();
+            store.setReceiptPersister(persister);
+
+            Klient klient = new Klient(new BigDecimal("100"));
+            klient.addToCart(stoka, 2);
+            Receipt receipt = new KasaService(new Kasa(cashier, store), storeService).checkout(klient);
+
+            // 1.10 за бройка, две бройки
+            assertEquals(new BigDecimal("2.20"), receipt.getTotalPrice());
+            assertEquals(0, new BigDecimal("97.80").compareTo(klient.getMoney()));
+            assertTrue(klient.getCart().isEmpty());
+            assertEquals(1, persister.getFailed());
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package org.store.journal;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.store.data.Cashier;
+import org.store.data.DeliveryLine;
+import org.store.data.Kasa;
+import org.store.data.Klient;
+import org.store.data.Receipt;
+import org.store.data.Stoka;
+import org.store.data.Store;
+import org.store.enums.StokaCategory;
+import org.store.service.KasaService;
+import org.store.service.StoreService;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StoreEventLogTest {
+    @TempDir
+    Path directory;
+
+    private Store store;
+    private StoreService storeService;
+    private Stoka milk;
+    private Stoka soap;
+
+    @BeforeEach
+    void setUp() {
+        store = newStore();
+        storeService = new StoreService(store);
+        milk = new Stoka("001", "Мляко", new BigDecimal("2.00"), new BigDecimal("3.00"),
+                LocalDate.now().plusDays(5), StokaCategory.FOOD);
+        soap = new Stoka("002", "Сапун", new BigDecimal("1.50"), new BigDecimal("2.00"),
+                null, StokaCategory.NONFOOD);
+    }
+
+    private static Store newStore() {
+        EnumMap<StokaCategory, Double> marginByCategory = new EnumMap<>(StokaCategory.class);
+        marginByCategory.put(StokaCategory.FOOD, 10.0);
+        marginByCategory.put(StokaCategory.NONFOOD, 15.0);
+        return new Store(3, 10.0, marginByCategory);
+    }
+
+    private static <V> Map<UUID, V> byId(Map<Stoka, V> values) {
+        Map<UUID, V> result = new HashMap<>();
+        for (Map.Entry<Stoka, V> entry : values.entrySet()) {
+            result.put(entry.getKey().getId(), entry.getValue());
+        }
+        return result;
+    }
+
+    private void assertSameState(Store expected, Store actual) {
+        assertEquals(byId(expected.getDeliveredStoka()), byId(actual.getDeliveredStoka()));
+        assertEquals(byId(expected.getInventory()), byId(actual.getInventory()));
+        assertEquals(byId(expected.getSoldStoka()), byId(actual.getSoldStoka()));
+        assertEquals(byId(expected.getWrittenOffStoka()), byId(actual.getWrittenOffStoka()));
+        assertEquals(byId(expected.getSoldRevenue()), byId(actual.getSoldRevenue()));
+        assertEquals(0, expected.getDeliveryExpensesTotal().compareTo(actual.getDeliveryExpensesTotal()));
+        assertEquals(0, expected.getSoldRevenueTotal().compareTo(actual.getSoldRevenueTotal()));
+        assertEquals(0, expected.getWriteOffTotal().compareTo(actual.getWriteOffTotal()));
+        assertEquals(0, expected.getSalaryExpensesTotal().compareTo(actual.getSalaryExpensesTotal()));
+        assertEquals(expected.getCashiers().size(), actual.getCashiers().size());
+
+        Map<UUID, BigDecimal> prices = new HashMap<>();
+        for (Stoka stoka : actual.getCatalogue().sortedByPrice()) {
+            prices.put(stoka.getId(), stoka.getPrice());
+        }
+        for (Stoka stoka : expected.getCatalogue().sortedByPrice()) {
+            assertEquals(stoka.getPrice(), prices.get(stoka.getId()));
+        }
+    }
+
+    private Store recover(StoreRecovery recovery) throws IOException {
+        return recovery.recover(StoreEventLogTest::newStore);
+    }
+
+    //Доставка, продажба, смяна на цена, брак и назначен касиер трябва да се възстановят от журнала след рестарт.
+    @Test
+    void testRecover_ReplaysEveryKindOfEvent() throws IOException {
+        try (StoreEventLog log = new StoreEventLog(directory)) {
+            log.attach(store);
+
+            storeService.hireCashier(new Cashier("Иван", new BigDecimal("1200")));
+            storeService.deliverBatch(List.of(new DeliveryLine(milk, 10, milk.getDeliveryPrice()),
+                    new DeliveryLine(soap, 4.5, soap.getDeliveryPrice())));
+            storeService.commitSale(Map.of(milk, 3.0, soap, 1.5));
+            soap.setPrice(new BigDecimal("1.99"));
+            storeService.commitSale(Map.of(soap, 1.0));
+            storeService.writeOffIfExpired(milk, LocalDate.now().plusDays(30));
+
+            // Доставката е по едно събитие на стока
+            assertEquals(7, log.getAppendedEvents());
+        }
+
+        StoreRecovery recovery = new StoreRecovery(directory);
+        Store recovered = recover(recovery);
+
+        assertEquals(0, recovery.getSnapshotSegment());
+        assertEquals(7, recovery.getReplayedEvents());
+        assertSameState(store, recovered);
+        assertEquals(2.0, byId(recovered.getInventory()).get(soap.getId()));
+        assertEquals(7.0, byId(recovered.getWrittenOffStoka()).get(milk.getId()));
+        new StoreService(recovered).verifyAggregates();
+    }
+
+    //Затворен журнал не отменя промените: продажбата на касата минава, парите остават взети,
+    //а незаписаните събития се броят вместо да връщат количката на клиента.
+    @Test
+    void testClosedLog_DoesNotUndoChanges() throws IOException {
+        StoreEventLog log = new StoreEventLog(directory);
+        log.attach(store);
+        storeService.deliverBatch(List.of(new DeliveryLine(milk, 10, milk.getDeliveryPrice())));
+        log.close();
+
+        Cashier cashier = new Cashier("Иван", new BigDecimal("1200"));
+        Klient klient = new Klient(new BigDecimal("100"));
+        klient.addToCart(milk, 2);
+        Receipt receipt = new KasaService(new Kasa(cashier, store), storeService).checkout(klient);
+        storeService.writeOffIfExpired(milk, LocalDate.now().plusDays(30));
+
+        // 2.20 за бройка (доставна цена и 10% надценка), две бройки
+        assertEquals(new BigDecimal("4.40"), receipt.getTotalPrice());
+        assertEquals(0, new BigDecimal("95.60").compareTo(klient.getMoney()));
+        assertTrue(klient.getCart().isEmpty());
+        assertEquals(8.0, byId(store.getWrittenOffStoka()).get(milk.getId()));
+        assertEquals(1, log.getAppendedEvents());
+        assertEquals(2, log.getFailedEvents());
+        storeService.verifyAggregates();
+    }
+
+    //Прехвърлянето се журналира и в двата магазина - източникът губи количеството и разхода, а приемащият ги получава.
+    @Test
+    void testRecover_ReplaysTransferInBothStores() throws IOException {
+        Path destinationDirectory = directory.resolve("destination");
+        Store destination = newStore();
+        StoreService destinationService = new StoreService(destination);
+
+        try (StoreEventLog log = new StoreEventLog(directory);
+             StoreEventLog destinationLog = new StoreEventLog(destinationDirectory)) {
+            log.attach(store);
+            destinationLog.attach(destination);
+
+            storeService.deliverBatch(List.of(new DeliveryLine(milk, 10, milk.getDeliveryPrice())));
+            storeService.transferTo(destinationService, milk, 4);
+        }
+
+        Store recovered = recover(new StoreRecovery(directory));
+        Store recoveredDestination = new StoreRecovery(destinationDirectory).recover(StoreEventLogTest::newStore);
+
+        assertSameState(store, recovered);
+        assertSameState(destination, recoveredDestination);
+        assertEquals(6.0, byId(recovered.getInventory()).get(milk.getId()));
+        assertEquals(4.0, byId(recoveredDestination.getInventory()).get(milk.getId()));
+        new StoreService(recovered).verifyAggregates();
+        new StoreService(recoveredDestination).verifyAggregates();
+    }
+
+    //След копие на магазина старите сегменти се изтриват и при старт се прилагат само събитията след копието.
+    @Test
+    void testSnapshot_RecoveryReplaysOnlyTheTail() throws IOException {
+        try (StoreEventLog log = new StoreEventLog(directory)) {
+            log.attach(store);
+
+            storeService.hireCashier(new Cashier("Иван", new BigDecimal("1200")));
+            storeService.deliverBatch(List.of(new DeliveryLine(milk, 10, milk.getDeliveryPrice()),
+                    new DeliveryLine(soap, 10, soap.getDeliveryPrice())));
+            for (int i = 0; i < 20; i++) {
+                storeService.commitSale(Map.of(milk, 0.25));
+            }
+
+            log.snapshot();
+            assertEquals(List.of(StoreEventLog.segmentPath(directory, log.getSegmentNumber())),
+                    StoreEventLog.listSegments(directory));
+
+            storeService.commitSale(Map.of(soap, 2.0));
+            storeService.deliverBatch(List.of(new DeliveryLine(milk, 1, milk.getDeliveryPrice())));
+        }
+
+        StoreRecovery recovery = new StoreRecovery(directory);
+        Store recovered = recover(recovery);
+
+        assertTrue(recovery.getSnapshotSegment() > 0);
+        // Само продажбата и доставката след копието - повторната доставка не променя цената
+        assertEquals(2, recovery.getReplayedEvents());
+        assertSameState(store, recovered);
+        new StoreService(recovered).verifyAggregates();
+    }
+
+    //Без sync и close събитията стигат до диска до интервала за запис - срив губи най-много последния интервал.
+    @Test
+    void testGroupCommit_ReachesDiskWithinSyncInterval() throws Exception {
+        try (StoreEventLog log = new StoreEventLog(directory, Duration.ofMillis(20))) {
+            log.attach(store);
+            storeService.deliverBatch(List.of(new DeliveryLine(milk, 10, milk.getDeliveryPrice())));
+            storeService.commitSale(Map.of(milk, 3.0));
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (log.getDurableEvents() < log.getAppendedEvents() && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(2, log.getDurableEvents());
+
+            // Възстановяване, докато журналът е още отворен - като след срив
+            Store recovered = recover(new StoreRecovery(directory));
+            assertSameState(store, recovered);
+        }
+    }
+
+    //Периодичното и ръчното копие едновременно не трябва да изтрият сегмент или копие, нужни за възстановяването.
+    @Test
+    void testConcurrentSnapshots_KeepRecoveryConsistent() throws Exception {
+        try (StoreEventLog log = new StoreEventLog(directory)) {
+            log.attach(store);
+            storeService.deliverBatch(List.of(new DeliveryLine(milk, 100, milk.getDeliveryPrice()),
+                    new DeliveryLine(soap, 100, soap.getDeliveryPrice())));
+
+            ExecutorService executor = Executors.newFixedThreadPool(3);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 2; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 20; i++) {
+                        log.snapshot();
+                    }
+                    return null;
+                }));
+            }
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 40; i++) {
+                    storeService.commitSale(Map.of(i % 2 == 0 ? milk : soap, 1.0));
+                }
+                return null;
+            }));
+
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            List<Path> snapshots = StoreSnapshot.list(directory);
+            assertEquals(1, snapshots.size());
+            assertEquals(StoreEventLog.latestSnapshotSegment(directory), StoreSnapshot.segmentNumberOf(snapshots.get(0)));
+        }
+
+        Store recovered = recover(new StoreRecovery(directory));
+        assertSameState(store, recovered);
+        new StoreService(recovered).verifyAggregates();
+    }
+
+    //Непълно събитие в края на журнала (прекъснат запис) се пропуска, а журналът продължава след последното цяло.
+    @Test
+    void testRecover_IgnoresTornTailAndContinuesAppending() throws IOException {
+        try (StoreEventLog log = new StoreEventLog(directory)) {
+            log.attach(store);
+            storeService.deliverBatch(List.of(new DeliveryLine(soap, 5, soap.getDeliveryPrice())));
+        }
+
+        Path segment = StoreEventLog.listSegments(directory).get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 40, 1, 2, 3}));
+        }
+
+        Store recovered = recover(new StoreRecovery(directory));
+        StoreService recoveredService = new StoreService(recovered);
+        Stoka recoveredSoap = recovered.getCatalogue().sortedByPrice().get(0);
+
+        try (StoreEventLog log = new StoreEventLog(directory)) {
+            log.attach(recovered);
+            recoveredService.commitSale(Map.of(recoveredSoap, 2.0));
+        }
+
+        StoreRecovery again = new StoreRecovery(directory);
+        Store restarted = recover(again);
+        assertEquals(2, again.getReplayedEvents());
+        assertSameState(recovered, restarted);
+        assertEquals(3.0, byId(restarted.getInventory()).get(soap.getId()));
+    }
+}
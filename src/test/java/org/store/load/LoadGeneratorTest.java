@@ -0,0 +1,65 @@
+package org.store.load;
+
+import org.junit.jupiter.api.Test;
+import org.store.metrics.LatencyHistogram;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadGeneratorTest {
+
+    //При Zipf първите рангове трябва да се падат много по-често от последните, а при равномерното - приблизително еднакво.
+    @Test
+    void testDistributions_ZipfIsSkewedUniformIsFlat() {
+        PopularityDistribution zipf = PopularityDistribution.parse("zipf:1.0", 100);
+        PopularityDistribution uniform = PopularityDistribution.parse("uniform", 100);
+        SplittableRandom random = new SplittableRandom(1);
+
+        int[] zipfHits = new int[100];
+        int[] uniformHits = new int[100];
+        for (int i = 0; i < 100_000; i++) {
+            zipfHits[zipf.next(random)]++;
+            uniformHits[uniform.next(random)]++;
+        }
+
+        assertTrue(zipfHits[0] > 10 * zipfHits[99]);
+        assertTrue(uniformHits[0] < 2 * uniformHits[99]);
+        assertThrows(IllegalArgumentException.class, () -> PopularityDistribution.parse("normal", 10));
+    }
+
+    //Перцентилите от хистограмата трябва да са в рамките на точността на кофите.
+    @Test
+    void testLatencyHistogram_Percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 100_000; nanos++) {
+            histogram.record(nanos);
+        }
+
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(50_000, histogram.percentile(0.50), 50_000 * 0.04);
+        assertEquals(99_000, histogram.percentile(0.99), 99_000 * 0.04);
+        assertTrue(histogram.percentile(0.999) >= 99_900);
+    }
+
+    //Всеки опит за плащане е или успешен, или отчетен по типа на грешката; липсата на пари се брои отделно.
+    @Test
+    void testRun_CountsEveryCheckout() throws InterruptedException {
+        LoadProfile profile = new LoadProfile();
+        profile.setLanes(4);
+        profile.setShoppers(50);
+        profile.setCheckoutsPerShopper(20);
+        profile.setCatalogueSize(50);
+        profile.setCartSize(1, 5);
+        profile.setStockPerStoka(100);
+        profile.setShopperMoney(new BigDecimal("60"));
+
+        LoadReport report = new LoadGenerator(profile).run();
+
+        assertEquals(50 * 20, report.getAttempted());
+        assertTrue(report.getSuccessful() > 0);
+        assertTrue(report.getFailures().containsKey("NotEnoughMoneyException"));
+        assertEquals(report.getSuccessful(), report.getLatency().getCount());
+    }
+}
@@ -0,0 +1,74 @@
+package org.store.log;
+
+import org.junit.jupiter.api.Test;
+import org.store.enums.LogEvent;
+import org.store.enums.LogLevel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiagnosticLogTest {
+
+    //Включените събития излизат на изхода с ниво, вид и попълнен текст, а изключените не се записват изобщо.
+    @Test
+    void testLog_WritesOnlyEnabledEvents() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DiagnosticLog log = new DiagnosticLog(16);
+        log.setOutput(new PrintStream(bytes, true, StandardCharsets.UTF_8));
+
+        log.log(LogEvent.CART_ITEM_ADDED, 2.0, "Хляб");
+        log.log(LogEvent.STOKA_EXPIRED, "Мляко");
+        log.setLevel(LogLevel.DEBUG);
+        log.log(LogEvent.CART_ITEM_ADDED, 3.0, "Сирене");
+        log.setLevel(LogLevel.OFF);
+        log.log(LogEvent.DELIVERY_REJECTED_EXPIRED, "Кашкавал");
+
+        assertTrue(log.flush(5000));
+        String output = bytes.toString(StandardCharsets.UTF_8);
+
+        assertEquals(2, log.getWritten());
+        assertTrue(output.contains(" WARN STOKA_EXPIRED Продуктът Мляко е с изтекъл срок на годност!"));
+        assertTrue(output.contains(" DEBUG CART_ITEM_ADDED Добавени в количката: 3.0 бр. от Сирене"));
+        assertFalse(output.contains("Хляб"));
+        assertFalse(output.contains("Кашкавал"));
+    }
+
+    //Бавен изход не спира записващите нишки - при пълен пръстен събитията се изхвърлят и се броят.
+    @Test
+    void testLog_DropsEventsWhenRingIsFull() throws InterruptedException {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        OutputStream blocking = new OutputStream() {
+            @Override
+            public void write(int b) {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        DiagnosticLog log = new DiagnosticLog(4);
+        log.setOutput(new PrintStream(blocking, true, StandardCharsets.UTF_8));
+
+        // Първото събитие блокира нишката на журнала, докато заема място в пръстена
+        log.log(LogEvent.RECEIPT_EMPTY);
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 10; i++) {
+            log.log(LogEvent.RECEIPT_EMPTY);
+        }
+
+        assertEquals(7, log.getDropped());
+        release.countDown();
+        assertTrue(log.flush(5000));
+        assertEquals(4, log.getWritten());
+    }
+}
@@ -0,0 +1,134 @@
+package org.store.metrics;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.store.data.*;
+import org.store.enums.MetricType;
+import org.store.enums.StokaCategory;
+import org.store.exceptions.NotEnoughMoneyException;
+import org.store.service.KasaService;
+import org.store.service.StoreService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsRegistryTest {
+    @TempDir
+    Path directory;
+
+    //Снимката връща стойностите на броячите, времената и изчисляемите стойности по име и етикети.
+    @Test
+    void testSnapshot_ReadsCountersTimersAndGauges() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter hits = registry.counter("cache_hits_total", "Попадения", "cache", "prices");
+        Timer timer = registry.timer("work_seconds", "Време за работа");
+        registry.gauge("queue_size", "Опашка", () -> 7);
+
+        hits.add(3);
+        hits.increment();
+        timer.record(1_000);
+        timer.record(3_000);
+
+        MetricsSnapshot snapshot = registry.snapshot();
+        assertEquals(4, snapshot.value("cache_hits_total", "cache", "prices"));
+        assertEquals(7, snapshot.value("queue_size"));
+
+        MetricsSnapshot.Sample work = snapshot.get("work_seconds");
+        assertEquals(MetricType.SUMMARY, work.getType());
+        assertEquals(2, work.getCount());
+        assertEquals(4_000, work.getTotalNanos());
+
+        // Повторната регистрация връща същия брояч, а друг вид със същото име е грешка
+        assertSame(hits, registry.counter("cache_hits_total", "Попадения", "cache", "prices"));
+        assertThrows(IllegalArgumentException.class, () -> registry.timer("cache_hits_total", "Попадения"));
+    }
+
+    //Текстовият формат на Prometheus има HELP и TYPE веднъж на метрика, етикети и времена в секунди.
+    @Test
+    void testToPrometheus_WritesTextFormat() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("requests_total", "Заявки", "code", "200").add(5);
+        registry.counter("requests_total", "Заявки", "code", "500").increment();
+        registry.timer("latency_seconds", "Време", "phase", "a\"b").record(2_000_000_000L);
+
+        String text = registry.snapshot().toPrometheus();
+
+        assertEquals(1, text.split("# TYPE requests_total counter", -1).length - 1);
+        assertTrue(text.contains("requests_total{code=\"200\"} 5\n"));
+        assertTrue(text.contains("requests_total{code=\"500\"} 1\n"));
+        assertTrue(text.contains("# TYPE latency_seconds summary\n"));
+        assertTrue(text.contains("latency_seconds_count{phase=\"a\\\"b\"} 1\n"));
+        assertTrue(text.contains("latency_seconds_sum{phase=\"a\\\"b\"} 2\n"));
+        assertTrue(text.contains("latency_seconds{phase=\"a\\\"b\",quantile=\"0.99\"} "));
+    }
+
+    //Плащането, доставката и справките се записват в метриките на магазина, а отказите се броят по причина.
+    @Test
+    void testStoreMetrics_RecordCheckoutDeliveryAndReports() {
+        EnumMap<StokaCategory, Double> marginByCategory = new EnumMap<>(StokaCategory.class);
+        marginByCategory.put(StokaCategory.FOOD, 10.0);
+        marginByCategory.put(StokaCategory.NONFOOD, 15.0);
+        Store store = new Store(5, 10.0, marginByCategory);
+        StoreService storeService = new StoreService(store);
+        Stoka bread = new Stoka("001", "Хляб", new BigDecimal("1.00"), new BigDecimal("1.00"),
+                LocalDate.now().plusDays(30), StokaCategory.FOOD);
+
+        storeService.deliverBatch(List.of(new DeliveryLine(bread, 5, bread.getDeliveryPrice())));
+        KasaService kasaService = new KasaService(new Kasa(new Cashier("Ана", new BigDecimal("1000")), store), storeService);
+
+        Klient klient = new Klient(new BigDecimal("100"));
+        klient.addToCart(bread, 2);
+        kasaService.checkout(klient);
+
+        Klient poor = new Klient(new BigDecimal("0.50"));
+        poor.addToCart(bread, 1);
+        assertThrows(NotEnoughMoneyException.class, () -> kasaService.checkout(poor));
+        storeService.calculateStoreProfit();
+
+        MetricsSnapshot snapshot = store.getMetrics().snapshot();
+        assertEquals(1, snapshot.get("store_checkout_seconds").getCount());
+        assertEquals(2, snapshot.get("store_checkout_phase_seconds", "phase", "validate").getCount());
+        assertEquals(2, snapshot.get("store_checkout_phase_seconds", "phase", "price").getCount());
+        assertEquals(1, snapshot.get("store_checkout_phase_seconds", "phase", "commit").getCount());
+        assertEquals(1, snapshot.value("store_checkout_rejected_total", "reason", "money"));
+        assertEquals(0, snapshot.value("store_checkout_rejected_total", "reason", "stock"));
+        assertEquals(1, snapshot.get("store_delivery_seconds").getCount());
+        assertEquals(1, snapshot.value("store_delivered_lines_total"));
+        assertEquals(1, snapshot.get("store_report_seconds", "report", "profit").getCount());
+        assertEquals(1, snapshot.value("store_catalogue_size"));
+    }
+
+    //Експортът във файл и през HTTP връща един и същ текстов формат.
+    @Test
+    void testExport_ToFileAndHttp() throws IOException {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("exports_total", "Експорти").increment();
+
+        Path file = registry.exportPrometheus(directory.resolve("store.prom"));
+        assertTrue(Files.readString(file).contains("exports_total 1\n"));
+
+        try (PrometheusExporter exporter = PrometheusExporter.serve(registry,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            URL url = new URL("http://127.0.0.1:" + exporter.getPort() + "/metrics");
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+
+            assertEquals(200, connection.getResponseCode());
+            try (InputStream in = connection.getInputStream()) {
+                assertTrue(new String(in.readAllBytes(), StandardCharsets.UTF_8).contains("exports_total 1\n"));
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package org.store.money;
+
+import org.junit.jupiter.api.Test;
+import org.store.data.Cashier;
+import org.store.data.Klient;
+import org.store.data.Receipt;
+import org.store.data.Stoka;
+import org.store.enums.StokaCategory;
+import org.store.service.KlientService;
+import org.store.service.ReceiptSerialSource;
+import org.store.service.ReceiptService;
+import org.store.service.StokaService;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoneyMathTest {
+
+    private static Stoka stoka(String price) {
+        return new Stoka("1", "Стока", new BigDecimal("0.50"), new BigDecimal(price), null, StokaCategory.NONFOOD);
+    }
+
+    //Закръглянето е HALF_UP до стотинка и е симетрично за отрицателни суми.
+    @Test
+    void testRoundMilli_HalfUp() {
+        assertEquals(1, MoneyMath.roundMilli(500));
+        assertEquals(0, MoneyMath.roundMilli(499));
+        assertEquals(-1, MoneyMath.roundMilli(-500));
+        assertEquals(new BigDecimal("12.35"), MoneyMath.toBigDecimal(MoneyMath.toStotinki(new BigDecimal("12.345"))));
+    }
+
+    //Дробните количества се умножават точно, а закръглянето е веднъж за цялата сума, не за всеки ред.
+    @Test
+    void testTotal_ExactQuantitiesSingleRounding() {
+        Map<Stoka, Double> items = new HashMap<>();
+        items.put(stoka("0.99"), 0.1);
+        items.put(stoka("1.01"), 0.3);
+        items.put(stoka("3.00"), 2.0);
+
+        // 0.099 + 0.303 + 6.00 = 6.402
+        assertEquals(new BigDecimal("6.40"), MoneyMath.total(items));
+        assertEquals(640, MoneyMath.totalStotinki(items));
+    }
+
+    //Четирите места, които смятат сума на стоки, трябва да връщат една и съща стойност със същото закръгляне.
+    @Test
+    void testCallSites_AgreeOnRounding() {
+        Klient klient = new Klient(new BigDecimal("1000"));
+        klient.getCart().put(stoka("1.15"), 0.5);
+        klient.getCart().put(stoka("2.49"), 1.5);
+        Map<Stoka, Double> items = new HashMap<>(klient.getCart());
+
+        BigDecimal expected = new BigDecimal("4.31");
+        Receipt receipt = new Receipt("R1", new Cashier("Касиер", new BigDecimal("1000")), LocalDate.now(), items);
+
+        assertEquals(expected, MoneyMath.total(items));
+        assertEquals(expected, new ReceiptService(receipt, new ReceiptSerialSource()).calculateTotalPrice());
+        assertEquals(expected, new KlientService().calculateCartTotal(klient));
+        assertEquals(expected, new StokaService().calculateTotalValue(items));
+    }
+}
@@ -0,0 +1,176 @@
+package org.store.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.store.data.*;
+import org.store.enums.StokaCategory;
+import org.store.exceptions.NotEnoughStokaAvailableException;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckoutCommitterTest {
+    private Store store;
+    private StoreService storeService;
+    private CheckoutCommitter committer;
+    private Stoka bread;
+    private Stoka soap;
+
+    @BeforeEach
+    void setUp() {
+        EnumMap<StokaCategory, Double> marginByCategory = new EnumMap<>(StokaCategory.class);
+        marginByCategory.put(StokaCategory.FOOD, 10.0);
+        marginByCategory.put(StokaCategory.NONFOOD, 15.0);
+
+        store = new Store(15, 10.0, marginByCategory);
+        storeService = new StoreService(store);
+        committer = new CheckoutCommitter(storeService);
+
+        bread = new Stoka("001", "Хляб", new BigDecimal("1.00"), new BigDecimal("1.50"),
+                LocalDate.now().plusDays(60), StokaCategory.FOOD);
+        soap = new Stoka("002", "Сапун", new BigDecimal("1.50"), new BigDecimal("2.00"),
+                LocalDate.now().plusDays(60), StokaCategory.NONFOOD);
+        storeService.deliverBatch(List.of(new DeliveryLine(bread, 5, bread.getDeliveryPrice()),
+                new DeliveryLine(soap, 5, soap.getDeliveryPrice())));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        committer.close();
+    }
+
+    private PendingSale sale(Stoka stoka, double quantity) {
+        return new PendingSale(PricedCart.price(Map.of(stoka, quantity), Stoka::getPriceStotinki));
+    }
+
+    //В една партида количка без достатъчно стока се отказва, а останалите се продават в реда на опашката.
+    @Test
+    void testCommitSales_FailsOnlyTheCartThatCannotBeServed() {
+        PendingSale first = sale(bread, 4);
+        PendingSale tooMuch = sale(bread, 2);
+        PendingSale other = sale(soap, 3);
+
+        storeService.commitSales(List.of(first, tooMuch, other));
+
+        assertDoesNotThrow(() -> first.getResult().join());
+        assertDoesNotThrow(() -> other.getResult().join());
+        ExecutionException e = assertThrows(ExecutionException.class, () -> tooMuch.getResult().get());
+        assertInstanceOf(NotEnoughStokaAvailableException.class, e.getCause());
+
+        assertEquals(1.0, store.getInventory().get(bread));
+        assertEquals(4.0, store.getSoldStoka().get(bread));
+        assertEquals(3.0, store.getSoldStoka().get(soap));
+        storeService.verifyAggregates();
+    }
+
+    //Касата с общ етап за записване хвърля същата грешка като при директна продажба и не променя склада.
+    @Test
+    void testCheckout_ThroughCommitter_RethrowsPerCartFailure() {
+        KasaService kasaService = new KasaService(new Kasa(new Cashier("Ben", new BigDecimal("1000")), store),
+                storeService, committer);
+
+        Klient klient = new Klient(new BigDecimal("100"));
+        klient.addToCart(bread, 2);
+        Receipt receipt = kasaService.checkout(klient);
+        assertEquals(2.0, receipt.getStoka().get(bread));
+
+        Klient greedy = new Klient(new BigDecimal("100"));
+        greedy.addToCart(soap, 6);
+        assertThrows(NotEnoughStokaAvailableException.class, () -> kasaService.checkout(greedy));
+
+        assertEquals(3.0, store.getInventory().get(bread));
+        assertEquals(5.0, store.getInventory().get(soap));
+        assertTrue(klient.getCart().isEmpty());
+        assertFalse(greedy.getCart().isEmpty());
+    }
+
+    //След спиране нови продажби не се приемат, а future-ът им завършва с грешка вместо да виси.
+    @Test
+    void testSubmit_AfterClose_FailsImmediately() throws InterruptedException {
+        committer.close();
+
+        CompletableFuture<Void> result = committer.submit(PricedCart.price(Map.of(bread, 1.0), Stoka::getPriceStotinki));
+        assertTrue(result.isCompletedExceptionally());
+        assertEquals(5.0, store.getInventory().get(bread));
+    }
+
+    //Стрес тест: много каси записват през общия етап - никога не се продава повече от доставеното.
+    @Test
+    void testConcurrentSubmit_NeverOversells() throws Exception {
+        List<Stoka> products = new ArrayList<>();
+        List<DeliveryLine> delivery = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Stoka stoka = new Stoka("p" + i, "Продукт " + i, new BigDecimal("1.00"), new BigDecimal("2.00"),
+                    LocalDate.now().plusDays(60), StokaCategory.FOOD);
+            products.add(stoka);
+            delivery.add(new DeliveryLine(stoka, 150, stoka.getDeliveryPrice()));
+        }
+        storeService.deliverBatch(delivery);
+
+        int lanes = 12;
+        int checkoutsPerLane = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(lanes);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger successful = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int lane = 0; lane < lanes; lane++) {
+            int seed = lane;
+            futures.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                KasaService kasaService = new KasaService(
+                        new Kasa(new Cashier("Касиер " + seed, new BigDecimal("1000")), store), storeService, committer);
+                start.await();
+
+                for (int i = 0; i < checkoutsPerLane; i++) {
+                    Klient klient = new Klient(new BigDecimal("1000000"));
+                    klient.addToCart(products.get(random.nextInt(products.size())), 1 + random.nextInt(3));
+                    try {
+                        kasaService.checkout(klient);
+                        successful.incrementAndGet();
+                    } catch (NotEnoughStokaAvailableException e) {
+                        rejected.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+        for (Future<?> future : futures) {
+            future.get();
+        }
+
+        assertEquals(lanes * checkoutsPerLane, successful.get() + rejected.get());
+        assertTrue(rejected.get() > 0);
+        // Касата отказва предварително количките, за които вече няма стока, затова до етапа стигат не повече от всички
+        assertTrue(committer.getSales() >= successful.get() && committer.getSales() <= lanes * checkoutsPerLane);
+
+        for (Stoka stoka : products) {
+            double inStock = store.getInventory().getOrDefault(stoka, 0.0);
+            double sold = store.getSoldStoka().getOrDefault(stoka, 0.0);
+            assertTrue(inStock >= 0);
+            assertEquals(150.0, inStock + sold);
+        }
+        storeService.verifyAggregates();
+    }
+}
@@ -0,0 +1,129 @@
+package org.store.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.store.data.*;
+import org.store.enums.StokaCategory;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EndOfDayReporterTest {
+    private Store store;
+    private StoreService storeService;
+    private List<Receipt> receipts;
+    private List<Cashier> cashiers;
+
+    @BeforeEach
+    void setUp() {
+        EnumMap<StokaCategory, Double> marginByCategory = new EnumMap<>(StokaCategory.class);
+        marginByCategory.put(StokaCategory.FOOD, 10.0);
+        marginByCategory.put(StokaCategory.NONFOOD, 15.0);
+
+        store = new Store(5, 10.0, marginByCategory);
+        storeService = new StoreService(store);
+        receipts = new ArrayList<>();
+        cashiers = new ArrayList<>();
+
+        // Повече от една страница на регистрите, за да се делят индексите между нишките
+        List<Stoka> products = new ArrayList<>();
+        List<DeliveryLine> delivery = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            StokaCategory category = i % 3 == 0 ? StokaCategory.NONFOOD : StokaCategory.FOOD;
+            Stoka stoka = new Stoka("eod-" + i, "Стока " + i, new BigDecimal("1.37"), new BigDecimal("2.00"),
+                    LocalDate.now().plusDays(60), category);
+            products.add(stoka);
+            delivery.add(new DeliveryLine(stoka, 100, stoka.getDeliveryPrice()));
+        }
+        storeService.deliverBatch(delivery);
+
+        Random random = new Random(7);
+        List<KasaService> lanes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Cashier cashier = new Cashier("Касиер " + i, new BigDecimal("1500"));
+            cashiers.add(cashier);
+            storeService.hireCashier(cashier);
+            lanes.add(new KasaService(new Kasa(cashier, store), storeService));
+        }
+
+        for (int i = 0; i < 600; i++) {
+            Klient klient = new Klient(new BigDecimal("100000"));
+            for (int l = 0; l < 4; l++) {
+                klient.addToCart(products.get(random.nextInt(products.size())), 1 + random.nextInt(3));
+            }
+            receipts.add(lanes.get(i % lanes.size()).checkout(klient));
+        }
+    }
+
+    //Паралелният отчет трябва да е равен на последователния и на сумите, които магазинът поддържа текущо.
+    @Test
+    void testReport_ParallelEqualsSequentialAndRunningTotals() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            EndOfDayReporter reporter = new EndOfDayReporter(store, pool);
+            EndOfDayReport parallel = reporter.report(receipts);
+            EndOfDayReport sequential = reporter.reportSequential(receipts);
+
+            assertEquals(sequential, parallel);
+            assertEquals(0, storeService.recalculateStokaSoldRevenue().compareTo(parallel.getSoldRevenue()));
+            assertEquals(0, storeService.recalculateStokaDeliveryExpenses().compareTo(parallel.getDeliveryExpenses()));
+            assertEquals(0, storeService.calculateStoreProfit().compareTo(parallel.getProfit()));
+            assertEquals(0, storeService.calculateWriteOffExpenses().compareTo(parallel.getProfitBreakdown().getWriteOffExpenses()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    //Маржът на категорията е приходите минус цената на доставка на продаденото, а бележките се разпределят по касиер.
+    @Test
+    void testReport_MarginPerCategoryAndRevenuePerCashier() {
+        EndOfDayReport report = new EndOfDayReporter(store).report(receipts);
+
+        for (StokaCategory category : StokaCategory.values()) {
+            EndOfDayReport.CategoryTotals totals = report.getByCategory().get(category);
+            BigDecimal expectedCost = new BigDecimal("1.37").multiply(BigDecimal.valueOf(totals.getSoldMilli(), 3));
+
+            assertEquals(0, expectedCost.compareTo(totals.getCostOfSold()));
+            assertEquals(totals.getSoldRevenue().subtract(totals.getCostOfSold()), totals.getMargin());
+            assertTrue(totals.getMargin().signum() > 0);
+        }
+
+        BigDecimal cashierRevenue = BigDecimal.ZERO;
+        long cashierReceipts = 0;
+        for (Cashier cashier : cashiers) {
+            EndOfDayReport.CashierTotals totals = report.getByCashier().get(cashier.getId());
+            assertEquals(200, totals.getReceipts());
+            assertEquals(cashier.getName(), totals.getCashierName());
+            cashierRevenue = cashierRevenue.add(totals.getRevenue());
+            cashierReceipts += totals.getReceipts();
+        }
+
+        assertEquals(receipts.size(), cashierReceipts);
+        assertEquals(0, report.getSoldRevenue().compareTo(cashierRevenue));
+    }
+
+    //Бележките без касиер (например прочетени от журнал без касиер) се събират под отделен ключ, вместо отчетът да гърми.
+    @Test
+    void testReport_GroupsReceiptsWithoutCashier() {
+        Receipt first = receipts.get(0);
+        List<Receipt> withOrphans = new ArrayList<>(receipts);
+        withOrphans.add(new Receipt("NC-1", null, LocalDate.now(), first.getStoka()));
+        withOrphans.add(new Receipt("NC-2", null, LocalDate.now(), first.getStoka()));
+
+        EndOfDayReporter reporter = new EndOfDayReporter(store);
+        EndOfDayReport report = reporter.report(withOrphans);
+        EndOfDayReport.CashierTotals orphans = report.getByCashier().get(EndOfDayReport.NO_CASHIER);
+
+        assertEquals(cashiers.size() + 1, report.getByCashier().size());
+        assertEquals(2, orphans.getReceipts());
+        assertEquals(EndOfDayReport.NO_CASHIER_NAME, orphans.getCashierName());
+        assertEquals(reporter.reportSequential(withOrphans), report);
+    }
+}
@@ -0,0 +1,157 @@
+package org.store.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.store.data.DeliveryLine;
+import org.store.data.Stoka;
+import org.store.data.Store;
+import org.store.enums.StokaCategory;
+import org.store.metrics.MetricsSnapshot;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpirySweeperTest {
+    private Store store;
+    private StoreService storeService;
+    private List<Stoka> expiring;
+    private Stoka fresh;
+
+    @BeforeEach
+    void setUp() {
+        EnumMap<StokaCategory, Double> marginByCategory = new EnumMap<>(StokaCategory.class);
+        marginByCategory.put(StokaCategory.FOOD, 10.0);
+        marginByCategory.put(StokaCategory.NONFOOD, 15.0);
+        store = new Store(3, 10.0, marginByCategory);
+        storeService = new StoreService(store);
+
+        List<DeliveryLine> delivery = new ArrayList<>();
+        expiring = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Stoka stoka = new Stoka(String.valueOf(i), "Мляко " + i, new BigDecimal("2.00"), new BigDecimal("3.00"),
+                    LocalDate.now().plusDays(2), StokaCategory.FOOD);
+            expiring.add(stoka);
+            delivery.add(new DeliveryLine(stoka, 4, stoka.getDeliveryPrice()));
+        }
+        fresh = new Stoka("f", "Сирене", new BigDecimal("5.00"), new BigDecimal("8.00"),
+                LocalDate.now().plusDays(60), StokaCategory.FOOD);
+        delivery.add(new DeliveryLine(fresh, 4, fresh.getDeliveryPrice()));
+        storeService.deliverBatch(delivery);
+    }
+
+    //Изтеклите стоки се изваждат от наличността на порции и се записват като брак по цена на доставка.
+    @Test
+    void testSweepNow_MovesExpiredStokaToWriteOff() {
+        storeService.setVerifyAggregates(true);
+        BigDecimal profitBefore = storeService.calculateStoreProfit();
+
+        try (ExpirySweeper sweeper = new ExpirySweeper(storeService, Clock.systemDefaultZone(), 2)) {
+            assertEquals(5, sweeper.sweepNow(LocalDate.now().plusDays(3)));
+            assertEquals(20.0, sweeper.getUnitsEvicted());
+            assertEquals(1, sweeper.getSweeps());
+        }
+
+        for (Stoka stoka : expiring) {
+            assertNull(store.getInventory().get(stoka));
+            assertEquals(4.0, store.getWrittenOffStoka().get(stoka));
+        }
+        assertEquals(4.0, store.getInventory().get(fresh));
+        assertEquals(0, new BigDecimal("40.00").compareTo(storeService.calculateWriteOffExpenses()));
+        assertEquals(0, profitBefore.compareTo(storeService.calculateStoreProfit()));
+        assertTrue(storeService.getExpiredStoka(LocalDate.now().plusDays(3)).isEmpty());
+
+        // Бракът е отделен ред в разбивката - вече е в разходите за доставка и не се изважда втори път
+        ProfitBreakdown breakdown = storeService.calculateProfitBreakdown();
+        assertEquals(0, new BigDecimal("40.00").compareTo(breakdown.getWriteOffExpenses()));
+        assertEquals(0, profitBefore.compareTo(breakdown.getProfit()));
+        assertEquals(0, profitBefore.add(new BigDecimal("40.00")).compareTo(breakdown.getProfitBeforeWriteOffs()));
+    }
+
+    //Фоновото почистване се пуска при смяна на деня и не бракува нищо, преди срокът да е изтекъл.
+    @Test
+    void testBackgroundSweep_RunsOnDayRollover() throws InterruptedException {
+        LocalDate later = LocalDate.now().plusDays(3);
+        Clock clock = Clock.fixed(later.atStartOfDay(ZoneId.systemDefault()).toInstant(), ZoneId.systemDefault());
+
+        try (ExpirySweeper sweeper = new ExpirySweeper(storeService, clock, 2)) {
+            assertEquals(0, sweeper.sweepNow(LocalDate.now()));
+
+            sweeper.start(Duration.ofMillis(5));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!later.equals(sweeper.getLastSweptDay()) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+
+            assertEquals(later, sweeper.getLastSweptDay());
+            assertEquals(5, sweeper.getItemsEvicted());
+            assertTrue(sweeper.getTotalSweepNanos() > 0);
+        }
+    }
+
+    //Грешка при една стока не спира почистването - останалите се бракуват, а броячите се виждат в метриките на магазина.
+    @Test
+    void testSweep_SkipsFailedItemAndExportsCounters() {
+        Stoka broken = expiring.get(0);
+        StoreService failing = new StoreService(store) {
+            @Override
+            public double writeOffIfExpired(Stoka stoka, LocalDate today) {
+                if (stoka == broken) {
+                    throw new IllegalStateException("повредена стока");
+                }
+                return super.writeOffIfExpired(stoka, today);
+            }
+        };
+
+        try (ExpirySweeper sweeper = new ExpirySweeper(failing, Clock.systemDefaultZone(), 2)) {
+            assertEquals(4, sweeper.sweepNow(LocalDate.now().plusDays(3)));
+            assertEquals(1, sweeper.getFailedItems());
+
+            MetricsSnapshot metrics = store.getMetrics().snapshot();
+            assertEquals(1.0, metrics.value("store_expiry_sweeps"));
+            assertEquals(4.0, metrics.value("store_expiry_items_evicted"));
+            assertEquals(16.0, metrics.value("store_expiry_units_evicted"));
+            assertEquals(1.0, metrics.value("store_expiry_failed_items"));
+        }
+
+        assertEquals(4.0, store.getInventory().get(broken));
+        assertEquals(0.0, store.getMetrics().snapshot().value("store_expiry_sweeps"));
+    }
+
+    //Грешка при започване на почистването не спира периодичната проверка - следващата проверка почиства деня.
+    @Test
+    void testBackgroundSweep_RetriesAfterFailure() throws InterruptedException {
+        LocalDate later = LocalDate.now().plusDays(3);
+        Clock clock = Clock.fixed(later.atStartOfDay(ZoneId.systemDefault()).toInstant(), ZoneId.systemDefault());
+        AtomicInteger calls = new AtomicInteger();
+        StoreService failingOnce = new StoreService(store) {
+            @Override
+            public List<Stoka> getExpiredStoka(LocalDate today) {
+                if (calls.getAndIncrement() == 0) {
+                    throw new IllegalStateException("временна грешка");
+                }
+                return super.getExpiredStoka(today);
+            }
+        };
+
+        try (ExpirySweeper sweeper = new ExpirySweeper(failingOnce, clock, 2)) {
+            sweeper.start(Duration.ofMillis(5));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!later.equals(sweeper.getLastSweptDay()) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+
+            assertEquals(later, sweeper.getLastSweptDay());
+            assertEquals(5, sweeper.getItemsEvicted());
+            assertTrue(calls.get() >= 2);
+        }
+    }
+}
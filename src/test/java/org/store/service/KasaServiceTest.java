@@ -0,0 +1,277 @@
+package org.store.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.store.data.*;
+import org.store.enums.StokaCategory;
+import org.store.exceptions.NotEnoughStokaAvailableException;
+import org.store.money.MoneyMath;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KasaServiceTest {
+    private Store store;
+    private StoreService storeService;
+    private List<Stoka> products;
+
+    @BeforeEach
+    void setUp() {
+        EnumMap<StokaCategory, Double> marginByCategory = new EnumMap<>(StokaCategory.class);
+        marginByCategory.put(StokaCategory.FOOD, 10.0);
+        marginByCategory.put(StokaCategory.NONFOOD, 15.0);
+
+        store = new Store(15, 10.0, marginByCategory);
+        storeService = new StoreService(store);
+
+        products = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            StokaCategory category = i % 2 == 0 ? StokaCategory.FOOD : StokaCategory.NONFOOD;
+            products.add(new Stoka(String.valueOf(i), "Продукт " + i, new BigDecimal("1.00"), new BigDecimal("2.00"),
+                    LocalDate.now().plusDays(60), category));
+        }
+    }
+
+    private void deliver(Stoka stoka, int count) {
+        for (int i = 0; i < count; i++) {
+            store.addToDeliveredStoka(stoka);
+            store.addToInventory(stoka);
+        }
+    }
+
+    //Проверява, че при успешна покупка стоката се премахва от склада, записва се като продадена и количката се изчиства.
+    @Test
+    void testCheckout_MovesStokaFromInventoryToSold() {
+        Stoka stoka = products.get(0);
+        deliver(stoka, 5);
+
+        Klient klient = new Klient(new BigDecimal("100"));
+        klient.addToCart(stoka, 3);
+
+        KasaService kasaService = new KasaService(new Kasa(new Cashier("Ben", new BigDecimal("1000")), store), storeService);
+        Receipt receipt = kasaService.checkout(klient);
+
+        assertEquals(3.0, receipt.getStoka().get(stoka));
+        assertEquals(2.0, store.getInventory().get(stoka));
+        assertEquals(3.0, store.getSoldStoka().get(stoka));
+        assertTrue(klient.getCart().isEmpty());
+    }
+
+    //Стока, която изтича в периода за отстъпка, се продава с отстъпката на магазина - в сумата, бележката и прихода.
+    @Test
+    void testCheckout_AppliesExpiryDiscount() {
+        Stoka expiring = new Stoka("exp", "Кисело мляко", new BigDecimal("1.00"), new BigDecimal("1.00"),
+                LocalDate.now().plusDays(3), StokaCategory.FOOD);
+        Stoka fresh = products.get(0);
+        storeService.deliverBatch(List.of(new DeliveryLine(expiring, 5, expiring.getDeliveryPrice()),
+                new DeliveryLine(fresh, 5, fresh.getDeliveryPrice())));
+
+        // Отстъпка 10% от цената след надценката
+        BigDecimal discounted = MoneyMath.toBigDecimal(MoneyMath.discount(expiring.getPriceStotinki(), 1000) * 2);
+        BigDecimal expected = discounted.add(fresh.getPrice());
+        assertTrue(discounted.compareTo(expiring.getPrice().multiply(BigDecimal.valueOf(2))) < 0);
+
+        Klient klient = new Klient(new BigDecimal("100"));
+        klient.addToCart(expiring, 2);
+        klient.addToCart(fresh, 1);
+
+        KasaService kasaService = new KasaService(new Kasa(new Cashier("Ben", new BigDecimal("1000")), store), storeService);
+        Receipt receipt = kasaService.checkout(klient);
+
+        assertEquals(expected, receipt.getTotalPrice());
+        assertEquals(new BigDecimal("100").subtract(expected), klient.getMoney());
+        assertEquals(discounted, store.getSoldRevenue().get(expiring));
+        assertEquals(List.of(expiring), storeService.getStokaForExpiryDiscount());
+    }
+
+    //Сумата се закръглява веднъж за количката - приходът по редове е разпределен от нея и е точно платеното.
+    @Test
+    void testCheckout_RevenueEqualsPaidTotal() {
+        Stoka first = new Stoka("half-1", "Лук", new BigDecimal("0.50"), new BigDecimal("1.01"), null, StokaCategory.NONFOOD);
+        Stoka second = new Stoka("half-2", "Чесън", new BigDecimal("0.50"), new BigDecimal("1.01"), null, StokaCategory.NONFOOD);
+        deliver(first, 5);
+        deliver(second, 5);
+
+        Klient klient = new Klient(new BigDecimal("100"));
+        klient.addToCart(first, 0.5);
+        klient.addToCart(second, 0.5);
+
+        KasaService kasaService = new KasaService(new Kasa(new Cashier("Ben", new BigDecimal("1000")), store), storeService);
+        Receipt receipt = kasaService.checkout(klient);
+
+        // Всеки ред поотделно би бил 0.51, но платеното за двата е 1.01
+        assertEquals(new BigDecimal("1.01"), receipt.getTotalPrice());
+        assertEquals(new BigDecimal("98.99"), klient.getMoney());
+        assertEquals(new BigDecimal("1.01"), store.getSoldRevenueTotal());
+        assertEquals(new BigDecimal("1.01"), store.getSoldRevenue().get(first).add(store.getSoldRevenue().get(second)));
+    }
+
+    //Ако една стока от количката не достига, нищо от количката не трябва да бъде продадено.
+    @Test
+    void testCheckout_NotEnoughStoka_LeavesInventoryUntouched() {
+        Stoka available = products.get(0);
+        Stoka missing = products.get(1);
+        deliver(available, 5);
+        deliver(missing, 1);
+
+        Klient klient = new Klient(new BigDecimal("100"));
+        klient.addToCart(available, 2);
+        klient.addToCart(missing, 2);
+
+        KasaService kasaService = new KasaService(new Kasa(new Cashier("Ben", new BigDecimal("1000")), store), storeService);
+
+        assertThrows(NotEnoughStokaAvailableException.class, () -> kasaService.checkout(klient));
+        assertEquals(5.0, store.getInventory().get(available));
+        assertEquals(1.0, store.getInventory().get(missing));
+        assertTrue(store.getSoldStoka().isEmpty());
+    }
+
+    //При отказ заради наличност парите на клиента не се пипат, а количката му остава цяла.
+    @Test
+    void testCheckout_Rejected_KeepsMoneyAndCart() {
+        Stoka missing = products.get(1);
+        deliver(missing, 1);
+
+        Klient klient = new Klient(new BigDecimal("100"));
+        klient.addToCart(missing, 2);
+
+        KasaService kasaService = new KasaService(new Kasa(new Cashier("Ben", new BigDecimal("1000")), store), storeService);
+
+        assertThrows(NotEnoughStokaAvailableException.class, () -> kasaService.checkout(klient));
+        assertEquals(0, new BigDecimal("100").compareTo(klient.getMoney()));
+        assertEquals(2.0, klient.getCart().get(missing));
+    }
+
+    //Две каси плащат едновременно количката на един клиент - стоката се продава и парите се вземат само веднъж.
+    @Test
+    void testConcurrentCheckout_SameKlient_SellsCartOnce() throws Exception {
+        Stoka stoka = products.get(0);
+        deliver(stoka, 100);
+
+        for (int round = 0; round < 50; round++) {
+            Klient klient = new Klient(new BigDecimal("100"));
+            klient.addToCart(stoka, 1);
+
+            CountDownLatch start = new CountDownLatch(1);
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            List<Future<Receipt>> futures = new ArrayList<>();
+            for (int lane = 0; lane < 2; lane++) {
+                KasaService kasaService = new KasaService(new Kasa(new Cashier("Ben", new BigDecimal("1000")), store), storeService);
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return kasaService.checkout(klient);
+                }));
+            }
+
+            start.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+            int sold = 0;
+            for (Future<Receipt> future : futures) {
+                if (!future.get().getStoka().isEmpty()) {
+                    sold++;
+                }
+            }
+
+            assertEquals(1, sold);
+            assertEquals(0, new BigDecimal("98.00").compareTo(klient.getMoney()));
+            assertTrue(klient.getCart().isEmpty());
+        }
+
+        assertEquals(50.0, store.getSoldStoka().get(stoka));
+        assertEquals(50.0, store.getInventory().get(stoka));
+    }
+
+    //Стрес тест: много каси продават едновременно от един магазин, докато друга нишка доставя стока.
+    //За всяка стока наличността + продаденото трябва винаги да е равно на доставеното, без продажба "на минус".
+    @Test
+    void testConcurrentCheckout_NeverOversells() throws Exception {
+        for (Stoka stoka : products) {
+            deliver(stoka, 200);
+        }
+
+        int lanes = 16;
+        int checkoutsPerLane = 300;
+        ExecutorService executor = Executors.newFixedThreadPool(lanes + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger successful = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int lane = 0; lane < lanes; lane++) {
+            int seed = lane;
+            futures.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                Kasa kasa = new Kasa(new Cashier("Касиер " + seed, new BigDecimal("1000")), store);
+                KasaService kasaService = new KasaService(kasa, storeService);
+                start.await();
+
+                for (int i = 0; i < checkoutsPerLane; i++) {
+                    Klient klient = new Klient(new BigDecimal("1000000"));
+                    int lines = 1 + random.nextInt(3);
+                    for (int l = 0; l < lines; l++) {
+                        klient.addToCart(products.get(random.nextInt(products.size())), 1 + random.nextInt(3));
+                    }
+
+                    try {
+                        kasaService.checkout(klient);
+                        successful.incrementAndGet();
+                    } catch (NotEnoughStokaAvailableException e) {
+                        rejected.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        // Доставка по време на продажбите
+        futures.add(executor.submit(() -> {
+            start.await();
+            for (int i = 0; i < 100; i++) {
+                for (Stoka stoka : products) {
+                    deliver(stoka, 1);
+                }
+            }
+            return null;
+        }));
+
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+
+        // Всяка неочаквана грешка в някоя каса проваля теста
+        for (Future<?> future : futures) {
+            future.get();
+        }
+
+        assertEquals(lanes * checkoutsPerLane, successful.get() + rejected.get());
+        assertTrue(successful.get() > 0);
+
+        Map<Stoka, Double> inventory = store.getInventory();
+        Map<Stoka, Double> sold = store.getSoldStoka();
+        for (Stoka stoka : products) {
+            double inStock = inventory.getOrDefault(stoka, 0.0);
+            double soldQuantity = sold.getOrDefault(stoka, 0.0);
+
+            assertTrue(inStock >= 0, "Отрицателна наличност за " + stoka.getName());
+            assertEquals(store.getDeliveredStoka().get(stoka), inStock + soldQuantity);
+        }
+
+        // Текущите суми трябва да съвпадат с пълното преизчисляване и след паралелните продажби
+        storeService.verifyAggregates();
+    }
+}
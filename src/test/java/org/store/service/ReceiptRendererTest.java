@@ -0,0 +1,81 @@
+package org.store.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.store.data.Cashier;
+import org.store.data.Receipt;
+import org.store.data.Stoka;
+import org.store.enums.StokaCategory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReceiptRendererTest {
+    private Receipt receipt;
+
+    @BeforeEach
+    void setUp() {
+        Stoka bread = new Stoka("001", "Хляб", new BigDecimal("2.00"), new BigDecimal("2.50"),
+                LocalDate.now().plusDays(3), StokaCategory.FOOD);
+        Stoka cheese = new Stoka("002", "Сирене", new BigDecimal("8.00"), new BigDecimal("12.99"),
+                LocalDate.now().plusDays(10), StokaCategory.FOOD);
+
+        Map<Stoka, Double> lines = new LinkedHashMap<>();
+        lines.put(bread, 2.0);
+        lines.put(cheese, 0.125);
+        receipt = new Receipt("0001-7", new Cashier("Иван", new BigDecimal("1000")), LocalDate.of(2025, 5, 2), lines);
+    }
+
+    //Текстът на бележката е същият като досегашния, а общата сума е събрана в същия проход по редовете.
+    @Test
+    void testFormatText_MatchesReceiptLayout() {
+        String text = new ReceiptRenderer().formatText(receipt);
+
+        assertEquals("===== КАСОВА БЕЛЕЖКА =====\n"
+                + "Номер на бележка: 0001-7\n"
+                + "Касиер: Иван\n"
+                + "Дата: 2025-05-02\n"
+                + "----------------------\n"
+                + "Артикули:\n"
+                + "  Хляб - 2.0 бр. x 2.50 лв. = 5.00 лв.\n"
+                + "  Сирене - 0.125 бр. x 12.99 лв. = 1.62 лв.\n"
+                + "----------------------\n"
+                + "Общо: 6.62 лв.\n"
+                + "==========================\n", text);
+        assertEquals(new ReceiptService(receipt).calculateTotalPrice(), new BigDecimal("6.62"));
+    }
+
+    //Печатът в поток с малък буфер дава същите байтове - буферът се изпразва в потока, когато се напълни.
+    @Test
+    void testRenderText_StreamsThroughSmallBuffer() throws IOException {
+        ReceiptRenderer renderer = new ReceiptRenderer(64);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long total = renderer.renderText(receipt, out);
+
+        assertEquals(662, total);
+        assertEquals(new ReceiptRenderer().formatText(receipt), out.toString(StandardCharsets.UTF_8));
+    }
+
+    //Машинният формат е с цели числа - стотинки и хилядни, а записаната от касата сума (с отстъпка) е с предимство.
+    @Test
+    void testRenderMachine_UsesStotinkiAndPaidTotal() {
+        receipt.setTotalPrice(new BigDecimal("6.10"));
+
+        ByteBuffer machine = new ReceiptRenderer().renderMachine(receipt);
+        String text = StandardCharsets.UTF_8.decode(machine).toString();
+
+        assertEquals("R\t0001-7\tИван\t2025-05-02\n"
+                + "L\tХляб\t2000\t250\t500\n"
+                + "L\tСирене\t125\t1299\t162\n"
+                + "T\t610\n", text);
+    }
+}
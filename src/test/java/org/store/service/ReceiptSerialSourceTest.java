@@ -0,0 +1,128 @@
+package org.store.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReceiptSerialSourceTest {
+    @TempDir
+    Path dir;
+
+    //Проверява формата на номера - дата, номер на касата и пореден номер с фиксирана дължина.
+    @Test
+    void testNextSerial_Format() {
+        ReceiptSerialSource source = new ReceiptSerialSource();
+        ReceiptNumberAllocator allocator = source.forLane(source.registerLane());
+
+        assertEquals("20240305-0001-0000000000", allocator.nextSerial(LocalDate.of(2024, 3, 5)));
+        assertEquals("20240305-0001-0000000001", allocator.nextSerial(LocalDate.of(2024, 3, 5)));
+        assertEquals("20240306-0001-0000000002", allocator.nextSerial(LocalDate.of(2024, 3, 6)));
+        assertEquals(3, source.countIssued());
+    }
+
+    //Много каси издават бележки едновременно - не трябва да има повтарящ се номер.
+    @Test
+    void testConcurrentLanes_NoDuplicates() throws Exception {
+        ReceiptSerialSource source = new ReceiptSerialSource(null, 64);
+        int lanes = 8;
+        int perLane = 5000;
+        Set<String> serials = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(lanes);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int lane = 0; lane < lanes; lane++) {
+            futures.add(executor.submit(() -> {
+                ReceiptNumberAllocator allocator = source.forLane(source.registerLane());
+                LocalDate today = LocalDate.now();
+                for (int i = 0; i < perLane; i++) {
+                    serials.add(allocator.nextSerial(today));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(lanes * perLane, serials.size());
+        assertEquals(lanes * perLane, source.countIssued());
+    }
+
+    //След рестарт касата продължава след резервирания блок и не повтаря номер.
+    @Test
+    void testRestart_ContinuesAfterReservedBlock() {
+        Path file = dir.resolve("serials.properties");
+        LocalDate day = LocalDate.of(2024, 3, 5);
+
+        ReceiptSerialSource before = new ReceiptSerialSource(file, 10);
+        ReceiptNumberAllocator allocator = before.forLane(1);
+        for (int i = 0; i < 12; i++) {
+            allocator.nextSerial(day);
+        }
+        assertEquals(20, before.getReservedUpTo(1));
+
+        ReceiptSerialSource after = new ReceiptSerialSource(file, 10);
+        assertEquals("20240305-0001-0000000020", after.forLane(1).nextSerial(day));
+        assertEquals("20240305-0002-0000000000", after.forLane(2).nextSerial(day));
+    }
+
+    //Затворената каса освобождава номера си; новата каса го получава и продължава след резервирания блок.
+    @Test
+    void testReleasedLane_IsReusedWithoutRepeatingSerials() {
+        Path file = dir.resolve("serials.properties");
+        LocalDate day = LocalDate.of(2024, 3, 5);
+        ReceiptSerialSource source = new ReceiptSerialSource(file, 10);
+
+        int first = source.registerLane();
+        int second = source.registerLane();
+        assertEquals("20240305-0001-0000000000", source.forLane(first).nextSerial(day));
+
+        source.releaseLane(first);
+        assertEquals(first, source.registerLane());
+        assertEquals("20240305-0001-0000000010", source.forLane(first).nextSerial(day));
+        assertEquals(2, source.countLanesInUse());
+        assertNotEquals(first, second);
+    }
+
+    //Отваряне и затваряне на каси много пъти не изчерпва номерата на касите.
+    @Test
+    void testRegisterLane_ManyOpenCloseCycles_DoNotExhaustLanes() {
+        ReceiptSerialSource source = new ReceiptSerialSource();
+        for (int i = 0; i < ReceiptSerialSource.MAX_LANES * 2; i++) {
+            int laneId = source.registerLane();
+            assertEquals(1, laneId);
+            source.releaseLane(laneId);
+        }
+        assertEquals(0, source.countLanesInUse());
+    }
+
+    //Общият източник по подразбиране пази номерата във файл.
+    @Test
+    void testShared_IsFileBacked() {
+        assertNotNull(ReceiptSerialSource.shared().getFile());
+    }
+
+    //Броят издадени бележки в ReceiptService идва от източника на номерата.
+    @Test
+    void testCountReceiptsIssued_FollowsSource() {
+        ReceiptSerialSource source = new ReceiptSerialSource();
+        ReceiptNumberAllocator allocator = source.forLane(source.registerLane());
+        allocator.nextSerial(LocalDate.now());
+        allocator.nextSerial(LocalDate.now());
+
+        ReceiptService receiptService = new ReceiptService(null, source);
+        assertEquals(2, receiptService.countReceiptsIssued());
+    }
+}
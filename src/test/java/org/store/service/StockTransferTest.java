@@ -0,0 +1,209 @@
+package org.store.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.store.data.*;
+import org.store.enums.StokaCategory;
+import org.store.enums.TransferState;
+import org.store.exceptions.NotEnoughStokaAvailableException;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StockTransferTest {
+    private StoreChain chain;
+    private Stoka sofiaStoka;
+    private Stoka varnaStoka;
+
+    @BeforeEach
+    void setUp() {
+        chain = new StoreChain();
+        sofiaStoka = new Stoka("transfer-1", "Олио", new BigDecimal("2.00"), new BigDecimal("2.00"),
+                LocalDate.now().plusDays(60), StokaCategory.FOOD);
+        varnaStoka = new Stoka(sofiaStoka.getId(), sofiaStoka.getName(), sofiaStoka.getDeliveryPrice(),
+                sofiaStoka.getPrice(), sofiaStoka.getExpirationDate(), sofiaStoka.getStokaCategory());
+
+        chain.addStore("sofia", newStore())
+                .deliverBatch(List.of(new DeliveryLine(sofiaStoka, 100, sofiaStoka.getDeliveryPrice())));
+        chain.addStore("varna", newStore())
+                .deliverBatch(List.of(new DeliveryLine(varnaStoka, 10, varnaStoka.getDeliveryPrice())));
+    }
+
+    private static Store newStore() {
+        EnumMap<StokaCategory, Double> marginByCategory = new EnumMap<>(StokaCategory.class);
+        marginByCategory.put(StokaCategory.FOOD, 10.0);
+        marginByCategory.put(StokaCategory.NONFOOD, 15.0);
+        return new Store(5, 10.0, marginByCategory);
+    }
+
+    private BigDecimal chainDeliveryExpenses() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (String storeId : chain.getStoreIds()) {
+            total = total.add(chain.getStoreService(storeId).calculateStokaDeliveryExpenses());
+        }
+        return total;
+    }
+
+    //Прехвърлянето мести количеството и разхода за доставката му - разходите на веригата не се променят.
+    @Test
+    void testTransfer_MovesStockAndDeliveryCost() {
+        BigDecimal expensesBefore = chainDeliveryExpenses();
+
+        Stoka received = chain.transfer("sofia", "varna", sofiaStoka, 30);
+
+        assertSame(varnaStoka, received);
+        assertEquals(70.0, chain.getStore("sofia").getInventory().get(sofiaStoka));
+        assertEquals(40.0, chain.getStore("varna").getInventory().get(varnaStoka));
+        assertEquals(70.0, chain.getStore("sofia").getDeliveredStoka().get(sofiaStoka));
+        assertEquals(0, new BigDecimal("140.00").compareTo(chain.getStoreService("sofia").calculateStokaDeliveryExpenses()));
+        assertEquals(0, new BigDecimal("80.00").compareTo(chain.getStoreService("varna").calculateStokaDeliveryExpenses()));
+        assertEquals(0, expensesBefore.compareTo(chainDeliveryExpenses()));
+        assertEquals(110.0, chain.inventoryOf(sofiaStoka));
+
+        chain.getStoreService("sofia").verifyAggregates();
+        chain.getStoreService("varna").verifyAggregates();
+    }
+
+    //Разходът на прехвърлянето е по средната платена цена на доставка, а не по текущата цена на стоката.
+    @Test
+    void testTransfer_CostsAverageRecordedDeliveryPrice() {
+        chain.getStoreService("sofia").deliverBatch(List.of(new DeliveryLine(sofiaStoka, 100, new BigDecimal("3.00"))));
+        BigDecimal expensesBefore = chainDeliveryExpenses();
+
+        StockReservation reservation = chain.getStoreService("sofia").reserveForTransfer(sofiaStoka, 4);
+        assertEquals(0, new BigDecimal("10.00").compareTo(reservation.getCost()));
+        chain.getStoreService("sofia").cancelReservation(reservation);
+
+        chain.transfer("sofia", "varna", sofiaStoka, 4);
+        assertEquals(0, new BigDecimal("490.00").compareTo(chain.getStoreService("sofia").calculateStokaDeliveryExpenses()));
+        assertEquals(0, new BigDecimal("30.00").compareTo(chain.getStoreService("varna").calculateStokaDeliveryExpenses()));
+        assertEquals(0, expensesBefore.compareTo(chainDeliveryExpenses()));
+    }
+
+    //Магазин, който не е имал стоката, получава свое копие с продажна цена по неговите надценки.
+    @Test
+    void testTransfer_CreatesCopyInStoreWithoutStoka() {
+        chain.addStore("burgas", newStore());
+
+        Stoka received = chain.transfer("sofia", "burgas", sofiaStoka, 5);
+
+        assertNotSame(sofiaStoka, received);
+        assertEquals(sofiaStoka.getId(), received.getId());
+        assertEquals(5.0, chain.getStore("burgas").getInventory().get(received));
+        assertTrue(chain.getStore("burgas").getCatalogue().contains(received));
+        assertEquals(sofiaStoka.getPrice(), received.getPrice());
+    }
+
+    //Ако наличността не стига, прехвърлянето се отказва и нищо в двата магазина не се променя.
+    @Test
+    void testTransfer_NotEnoughStoka_ChangesNothing() {
+        assertThrows(NotEnoughStokaAvailableException.class, () -> chain.transfer("sofia", "varna", sofiaStoka, 101));
+
+        assertEquals(100.0, chain.getStore("sofia").getInventory().get(sofiaStoka));
+        assertEquals(10.0, chain.getStore("varna").getInventory().get(varnaStoka));
+        assertEquals(0, chain.getStore("sofia").getReservedLedger().getMilli(sofiaStoka));
+    }
+
+    //Ако приемащият магазин откаже, запазеното количество се връща в наличността на източника.
+    @Test
+    void testTransfer_DestinationFails_RollsBackReservation() {
+        sofiaStoka.setExpirationDate(LocalDate.now().minusDays(1));
+
+        assertThrows(IllegalStateException.class, () -> chain.transfer("sofia", "varna", sofiaStoka, 30));
+
+        assertEquals(100.0, chain.getStore("sofia").getInventory().get(sofiaStoka));
+        assertEquals(100.0, chain.getStore("sofia").getDeliveredStoka().get(sofiaStoka));
+        assertEquals(0, chain.getStore("sofia").getReservedLedger().getMilli(sofiaStoka));
+        assertEquals(10.0, chain.getStore("varna").getInventory().get(varnaStoka));
+    }
+
+    //Запазването вади количеството от продажбите, а запазване може да се завърши само веднъж.
+    @Test
+    void testReservation_HidesStockFromCheckoutAndFinishesOnce() {
+        StoreService sofia = chain.getStoreService("sofia");
+        StockReservation reservation = sofia.reserveForTransfer(sofiaStoka, 95);
+
+        KasaService lane = chain.openLane("sofia", new Cashier("Касиер", new BigDecimal("1000")));
+        Klient klient = new Klient(new BigDecimal("1000"));
+        klient.addToCart(sofiaStoka, 10);
+        assertThrows(NotEnoughStokaAvailableException.class, () -> lane.checkout(klient));
+
+        sofia.cancelReservation(reservation);
+        assertEquals(TransferState.CANCELLED, reservation.getState());
+        assertThrows(IllegalStateException.class, () -> sofia.commitReservation(reservation));
+        assertEquals(100.0, chain.getStore("sofia").getInventory().get(sofiaStoka));
+    }
+
+    //Стрес тест: прехвърляния в двете посоки докато касите продават - за всеки магазин
+    //доставеното винаги е равно на наличното + продаденото, а общото количество във веригата се пази.
+    @Test
+    void testConcurrentTransfersAndCheckouts_KeepLedgersConsistent() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        futures.add(executor.submit(() -> transferLoop(start, "sofia", "varna", sofiaStoka)));
+        futures.add(executor.submit(() -> transferLoop(start, "varna", "sofia", varnaStoka)));
+        for (String storeId : List.of("sofia", "varna")) {
+            Stoka stoka = storeId.equals("sofia") ? sofiaStoka : varnaStoka;
+            futures.add(executor.submit(() -> {
+                KasaService lane = chain.openLane(storeId, new Cashier("Касиер " + storeId, new BigDecimal("1000")));
+                start.await();
+                for (int i = 0; i < 200; i++) {
+                    Klient klient = new Klient(new BigDecimal("1000"));
+                    klient.addToCart(stoka, 1);
+                    try {
+                        lane.checkout(klient);
+                    } catch (NotEnoughStokaAvailableException e) {
+                        // Прехвърлянето е взело наличното
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+        for (Future<?> future : futures) {
+            future.get();
+        }
+
+        double sold = 0;
+        for (String storeId : List.of("sofia", "varna")) {
+            Store store = chain.getStore(storeId);
+            double delivered = store.getDeliveredStoka().getOrDefault(sofiaStoka, 0.0);
+            double inStock = store.getInventory().getOrDefault(sofiaStoka, 0.0);
+            double soldHere = store.getSoldStoka().getOrDefault(sofiaStoka, 0.0);
+
+            assertTrue(inStock >= 0);
+            assertEquals(0, store.getReservedLedger().getMilli(sofiaStoka));
+            assertEquals(delivered, inStock + soldHere);
+            sold += soldHere;
+            chain.getStoreService(storeId).verifyAggregates();
+        }
+        assertEquals(110.0, chain.inventoryOf(sofiaStoka) + sold);
+    }
+
+    private Void transferLoop(CountDownLatch start, String fromId, String toId, Stoka stoka) throws InterruptedException {
+        start.await();
+        for (int i = 0; i < 200; i++) {
+            try {
+                chain.transfer(fromId, toId, stoka, 1);
+            } catch (NotEnoughStokaAvailableException e) {
+                // Източникът е продал или прехвърлил всичко
+            }
+        }
+        return null;
+    }
+}
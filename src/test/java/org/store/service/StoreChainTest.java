@@ -0,0 +1,112 @@
+package org.store.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.store.data.*;
+import org.store.enums.StokaCategory;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StoreChainTest {
+    private StoreChain chain;
+    private List<Stoka> products;
+
+    @BeforeEach
+    void setUp() {
+        chain = new StoreChain();
+        products = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            products.add(new Stoka("chain-" + i, "Стока " + i, new BigDecimal("1.00"), new BigDecimal("1.00"),
+                    LocalDate.now().plusDays(60), StokaCategory.FOOD));
+        }
+
+        for (String storeId : List.of("sofia", "plovdiv", "varna")) {
+            StoreService storeService = chain.addStore(storeId, newStore());
+            List<DeliveryLine> delivery = new ArrayList<>();
+            for (Stoka product : products) {
+                Stoka copy = copyOf(product);
+                delivery.add(new DeliveryLine(copy, 10, copy.getDeliveryPrice()));
+            }
+            storeService.deliverBatch(delivery);
+        }
+    }
+
+    private static Store newStore() {
+        EnumMap<StokaCategory, Double> marginByCategory = new EnumMap<>(StokaCategory.class);
+        marginByCategory.put(StokaCategory.FOOD, 10.0);
+        marginByCategory.put(StokaCategory.NONFOOD, 15.0);
+        return new Store(5, 10.0, marginByCategory);
+    }
+
+    // Всеки магазин има свое копие на стоката със същия id
+    private static Stoka copyOf(Stoka stoka) {
+        return new Stoka(stoka.getId(), stoka.getName(), stoka.getDeliveryPrice(), stoka.getPrice(),
+                stoka.getExpirationDate(), stoka.getStokaCategory());
+    }
+
+    private void sell(String storeId, Stoka stoka, double quantity) {
+        KasaService lane = chain.openLane(storeId, new Cashier("Касиер", new BigDecimal("1000")));
+        Klient klient = new Klient(new BigDecimal("1000"));
+        klient.addToCart(stoka, quantity);
+        lane.checkout(klient);
+    }
+
+    //Касата продава само от своя магазин, а наличността за веригата е сумата от всички магазини.
+    @Test
+    void testOpenLane_SellsOnlyFromItsStore() {
+        Stoka stoka = products.get(0);
+        sell("plovdiv", stoka, 4);
+
+        assertEquals(6.0, chain.getStore("plovdiv").getInventory().get(stoka));
+        assertEquals(10.0, chain.getStore("sofia").getInventory().get(stoka));
+        assertEquals(26.0, chain.inventoryOf(stoka));
+        assertEquals(Map.of("plovdiv", 6.0, "sofia", 10.0, "varna", 10.0), chain.inventoryByStore(stoka));
+    }
+
+    //Печалбата на веригата е сумата от печалбите на магазините.
+    @Test
+    void testCalculateChainProfit_SumsStores() {
+        sell("sofia", products.get(1), 3);
+        sell("varna", products.get(2), 5);
+
+        BigDecimal expected = BigDecimal.ZERO;
+        for (String storeId : chain.getStoreIds()) {
+            expected = expected.add(chain.getStoreService(storeId).calculateStoreProfit());
+        }
+        assertEquals(0, expected.compareTo(chain.calculateChainProfit()));
+        assertEquals(0, expected.compareTo(chain.calculateChainProfitBreakdown().getProfit()));
+    }
+
+    //Най-продаваните се избират след сумиране по всички магазини - стока, която не води никъде, може да води във веригата.
+    @Test
+    void testTopSellers_SumsAcrossStoresBeforeRanking() {
+        sell("sofia", products.get(0), 5);
+        sell("sofia", products.get(1), 4);
+        sell("plovdiv", products.get(2), 5);
+        sell("plovdiv", products.get(1), 4);
+        sell("varna", products.get(3), 6);
+
+        List<Map.Entry<Stoka, Double>> top = chain.topSellers(2);
+
+        assertEquals(2, top.size());
+        assertEquals(products.get(1), top.get(0).getKey());
+        assertEquals(8.0, top.get(0).getValue());
+        assertEquals(products.get(3), top.get(1).getKey());
+        assertEquals(6.0, top.get(1).getValue());
+    }
+
+    //Магазин със същия id не може да бъде добавен втори път, а непознат id е грешка.
+    @Test
+    void testAddStore_RejectsDuplicateId() {
+        assertThrows(IllegalArgumentException.class, () -> chain.addStore("sofia", newStore()));
+        assertThrows(IllegalArgumentException.class, () -> chain.getStore("burgas"));
+        assertEquals(3, chain.size());
+    }
+}
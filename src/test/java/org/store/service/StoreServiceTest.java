@@ -7,8 +7,10 @@ import org.store.enums.StokaCategory;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -33,14 +35,17 @@ class StoreServiceTest {
         stokaNonFood = new Stoka("002", "Тетрадка", new BigDecimal("15.00"), new BigDecimal("20.00"), expDate, StokaCategory.NONFOOD);
     }
 
-//    @Test
-//    void testCalculatePriceWithMargin() {
-//        BigDecimal newPriceFood = storeService.deliverStokaReturnPriceWithMargin(stokaFood);
-//        assertEquals(new BigDecimal("5.50"), newPriceFood);  // 5 + 10%
-//
-//        BigDecimal newPriceNonFood = storeService.deliverStokaReturnPriceWithMargin(stokaNonFood);
-//        assertEquals(new BigDecimal("17.25"), newPriceNonFood); // 15 + 15%
-//    }
+    //Проверява, че продажната цена е цената на доставка плюс надценката на категорията и не расте при повторна доставка.
+    @Test
+    void testCalculatePriceWithMargin() {
+        BigDecimal newPriceFood = storeService.deliverStokaReturnPriceWithMargin(stokaFood);
+        assertEquals(new BigDecimal("5.50"), newPriceFood);  // 5 + 10%
+
+        BigDecimal newPriceNonFood = storeService.deliverStokaReturnPriceWithMargin(stokaNonFood);
+        assertEquals(new BigDecimal("17.25"), newPriceNonFood); // 15 + 15%
+
+        assertEquals(new BigDecimal("5.50"), storeService.deliverStokaReturnPriceWithMargin(stokaFood));
+    }
 
     //Проверява дали методът открива стока с изтекъл срок на годност и го коригира с нова дата. За валидна стока с бъдеща дата се очаква да я приеме без промяна.
     @Test
@@ -83,6 +88,31 @@ class StoreServiceTest {
         assertEquals(1.0, store.getInventory().get(stokaFood));
     }
 
+    //Доставя няколко реда за една и съща стока наведнъж. Надценката трябва да се приложи само веднъж,
+    //а разходът за доставка да е претеглен по доставеното количество.
+    @Test
+    void testDeliverBatch_AppliesMarginOnceAndWeightsCost() {
+        List<DeliveryLine> lines = new ArrayList<>();
+        lines.add(new DeliveryLine(stokaFood, 3, new BigDecimal("5.00")));
+        lines.add(new DeliveryLine(stokaFood, 2, new BigDecimal("4.00")));
+        lines.add(new DeliveryLine(stokaNonFood, 4, new BigDecimal("15.00")));
+
+        storeService.deliverBatch(lines);
+
+        // Същата стока, доставена на един брой - цената трябва да е същата като след цялата доставка
+        Stoka single = new Stoka("003", "Замразен грах", new BigDecimal("5.00"), new BigDecimal("10.00"),
+                LocalDate.now().plusDays(20), StokaCategory.FOOD);
+        storeService.deliverStoka(single);
+
+        assertEquals(5.0, store.getInventory().get(stokaFood));
+        assertEquals(5.0, store.getDeliveredStoka().get(stokaFood));
+        assertEquals(4.0, store.getInventory().get(stokaNonFood));
+        assertEquals(single.getPrice(), stokaFood.getPrice());
+
+        // 3 * 5.00 + 2 * 4.00 + 4 * 15.00 + 1 * 5.00 = 88.00
+        assertEquals(0, new BigDecimal("88.00").compareTo(storeService.calculateStokaDeliveryExpenses()));
+    }
+
 //
 //      Тестът проверява правилното изчисляване на печалбата на магазина.
 //      Симулира се работна среда с:
@@ -118,4 +148,48 @@ class StoreServiceTest {
 
     }
 
+    //Текущите суми за приходи, разходи и печалба трябва да се обновяват при всяко събитие и да съвпадат с пълното преизчисляване.
+    @Test
+    void testRunningAggregates_MatchFullRecalculation() {
+        storeService.setVerifyAggregates(true);
+
+        store.addCashier(new Cashier("Ben", new BigDecimal("1000")));
+        List<DeliveryLine> lines = new ArrayList<>();
+        lines.add(new DeliveryLine(stokaFood, 10, new BigDecimal("5.00")));
+        storeService.deliverBatch(lines);
+
+        Map<Stoka, Double> sold = new HashMap<>();
+        sold.put(stokaFood, 4.0);
+        storeService.commitSale(sold);
+
+        BigDecimal expectedRevenue = stokaFood.getPrice().multiply(new BigDecimal("4"));
+        assertEquals(0, expectedRevenue.compareTo(storeService.calculateStokaSoldRevenue()));
+        assertEquals(0, new BigDecimal("50.00").compareTo(storeService.calculateStokaDeliveryExpenses()));
+        assertEquals(0, new BigDecimal("1000").compareTo(storeService.calculateCashierSalaryExpenses()));
+
+        BigDecimal expectedProfit = expectedRevenue.subtract(new BigDecimal("1050.00"));
+        assertEquals(0, expectedProfit.compareTo(storeService.calculateStoreProfit()));
+    }
+
+    //Цените се фиксират при остойностяването - смяна на цена преди записа на продажбата не променя прихода.
+    @Test
+    void testCommitSale_UsesPricesFixedAtCheckout() {
+        storeService.deliverBatch(List.of(new DeliveryLine(stokaNonFood, 10, stokaNonFood.getDeliveryPrice())));
+        PricedCart sale = PricedCart.price(Map.of(stokaNonFood, 2.0), Stoka::getPriceStotinki);
+
+        stokaNonFood.setPrice(new BigDecimal("99.00"));
+        storeService.commitSale(sale);
+
+        assertEquals(sale.getTotal(), store.getSoldRevenue().get(stokaNonFood));
+        assertEquals(new BigDecimal("34.50"), store.getSoldRevenueTotal());
+    }
+
+    //Режимът на проверка трябва да открие разминаване между текущата сума и пълното преизчисляване.
+    @Test
+    void testVerifyAggregates_DetectsMismatch() {
+        store.addToDeliveredStoka(stokaFood);
+        store.getDeliveryCosts().put(stokaNonFood, new BigDecimal("3.00"));
+
+        assertThrows(IllegalStateException.class, () -> storeService.verifyAggregates());
+    }
 }